@@ -0,0 +1,276 @@
+package com.example.android.books;
+
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.example.android.books.cover.CoverLoader;
+import com.example.android.books.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Flings the main list over a large catalogue and reports the frame times while it scrolls,
+ * with and without covers. Results are logged and sent to the instrumentation status, so they can be compared between builds.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookListScrollTest {
+
+    private static final String LOG_TAG = BookListScrollTest.class.getSimpleName();
+
+    private static final int BOOKS = 5000;
+
+    private static final int FLINGS = 10;
+
+    private static final long FLING_DURATION_MILLIS = 600;
+
+    //Two of every five books get a cover, spread over the list so every fling scrolls through covers
+    private static final int COVER_EVERY = 5;
+    private static final int COVERS_PER_GROUP = 2;
+
+    //Size of the generated cover, about the size of a photo of a cover taken by a phone
+    private static final int COVER_WIDTH = 1200;
+    private static final int COVER_HEIGHT = 1800;
+
+    @Rule
+    public ActivityTestRule<MainActivity> activityRule = new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        contentResolver.delete(BookEntry.CONTENT_URI, null, null);
+        ContentValues[] rows = new ContentValues[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+            values.put(BookEntry.COLUMN_AUTHOR, "Author " + (i % 300));
+            values.put(BookEntry.COLUMN_PRICE, i % 50);
+            values.put(BookEntry.COLUMN_QUANTITY, i % 20);
+            values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 10));
+            rows[i] = values;
+        }
+        contentResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+    }
+
+    @After
+    public void tearDown() {
+        contentResolver.delete(BookEntry.CONTENT_URI, null, null);
+        CoverLoader.getInstance(InstrumentationRegistry.getTargetContext()).deleteOrphanedCovers();
+    }
+
+    @Test
+    public void flingFrameTimes() throws Throwable {
+        Bundle results = fling();
+        Log.i(LOG_TAG, "Frame times while flinging " + BOOKS + " books: " + results);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    @Test
+    public void flingFrameTimesWithCovers() throws Throwable {
+        int covers = setCovers();
+        Bundle results = fling();
+
+        //Memory the covers take once the list has been scrolled through
+        CoverLoader coverLoader = CoverLoader.getInstance(InstrumentationRegistry.getTargetContext());
+        Runtime runtime = Runtime.getRuntime();
+        results.putInt("covers", covers);
+        results.putLong("memory_cache_bytes", coverLoader.getMemoryCacheSize());
+        results.putLong("disk_cache_bytes", coverLoader.getDiskCacheSize());
+        results.putLong("java_heap_bytes", runtime.totalMemory() - runtime.freeMemory());
+        results.putLong("native_heap_bytes", Debug.getNativeHeapAllocatedSize());
+        Log.i(LOG_TAG, "Frame times while flinging " + BOOKS + " books with " + covers + " covers: " + results);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    //Helper method to fling the list up and down and return the frame times
+    private Bundle fling() throws Throwable {
+        activityRule.launchActivity(null);
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.waitForIdleSync();
+
+        final RecyclerView recyclerView = activityRule.getActivity().findViewById(R.id.list);
+        final FrameRecorder recorder = new FrameRecorder();
+        activityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                recorder.start();
+            }
+        });
+
+        for (int i = 0; i < FLINGS; i++) {
+            final int velocity = i % 2 == 0 ? 20000 : -10000;
+            activityRule.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    recyclerView.fling(0, velocity);
+                }
+            });
+            Thread.sleep(FLING_DURATION_MILLIS);
+        }
+
+        activityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                recorder.stop();
+            }
+        });
+
+        long[] frames = recorder.getFrameNanos();
+        assertTrue(frames.length > 0);
+        Arrays.sort(frames);
+        Bundle results = new Bundle();
+        results.putInt("frames", frames.length);
+        results.putDouble("p50_ms", percentile(frames, 50) / 1e6);
+        results.putDouble("p90_ms", percentile(frames, 90) / 1e6);
+        results.putDouble("p99_ms", percentile(frames, 99) / 1e6);
+        results.putInt("janky_frames", countOver(frames, 17000000L));
+        return results;
+    }
+
+    //Helper method to give covers to a share of the books and wait until they are saved. Returns the number of covers
+    private int setCovers() throws Throwable {
+        final CoverLoader coverLoader = CoverLoader.getInstance(InstrumentationRegistry.getTargetContext());
+        Uri source = writeCoverImage();
+
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, new String[] {BookEntry._ID}, null, null, null);
+        long[] ids = new long[cursor.getCount()];
+        int covers = 0;
+        try {
+            while (cursor.moveToNext()) {
+                if (cursor.getPosition() % COVER_EVERY < COVERS_PER_GROUP) {
+                    ids[covers++] = cursor.getLong(0);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        //Listeners are called on the main thread, they must be added there too
+        final CountDownLatch saved = new CountDownLatch(covers);
+        final CoverLoader.Listener listener = new CoverLoader.Listener() {
+            @Override
+            public void onCoverChanged(long bookId) {
+                saved.countDown();
+            }
+        };
+        activityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                coverLoader.addListener(listener);
+            }
+        });
+        for (int i = 0; i < covers; i++) {
+            coverLoader.setCover(ids[i], source);
+        }
+        assertTrue(saved.await(5, TimeUnit.MINUTES));
+        activityRule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                coverLoader.removeListener(listener);
+            }
+        });
+        return covers;
+    }
+
+    //Helper method to write a cover image as large as a photo, with enough detail that it doesn't compress to nothing
+    private static Uri writeCoverImage() throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(COVER_WIDTH, COVER_HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        for (int y = 0; y < COVER_HEIGHT; y += 10) {
+            paint.setColor(Color.rgb(y % 256, (y * 7) % 256, (y * 13) % 256));
+            canvas.drawRect(0, y, COVER_WIDTH, y + 10, paint);
+        }
+        paint.setColor(Color.BLACK);
+        paint.setTextSize(120);
+        canvas.drawText("Cover", 100, COVER_HEIGHT / 2, paint);
+
+        File file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "scroll_test_cover.jpg");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } finally {
+            out.close();
+        }
+        bitmap.recycle();
+        return Uri.fromFile(file);
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    private static int countOver(long[] values, long limit) {
+        int count = 0;
+        for (long value : values) {
+            if (value > limit) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //Records the time between consecutive frames on the main thread
+    private static class FrameRecorder implements Choreographer.FrameCallback {
+
+        private final long[] frameNanos = new long[4096];
+        private int frames = 0;
+        private long lastFrameTimeNanos = 0;
+        private boolean running = false;
+
+        void start() {
+            running = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        long[] getFrameNanos() {
+            return Arrays.copyOf(frameNanos, frames);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!running) {
+                return;
+            }
+            if (lastFrameTimeNanos != 0 && frames < frameNanos.length) {
+                frameNanos[frames++] = frameTimeNanos - lastFrameTimeNanos;
+            }
+            lastFrameTimeNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.books.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the latency of reading single books while another thread keeps writing, once with the
+ * defaults of SQLite and once with the options of the app (write-ahead logging, larger page cache,
+ * synchronous NORMAL). It runs on a device because the JVM tests run every SQLite call on one thread.
+ * Results are logged and sent to the instrumentation status, so they can be compared between builds.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentReadBenchmark {
+
+    private static final String LOG_TAG = ConcurrentReadBenchmark.class.getSimpleName();
+
+    private static final String DB_NAME = "ConcurrentReadBenchmark.db";
+
+    private static final int BOOKS = 10000;
+    private static final int SUPPLIERS = 10;
+
+    private static final int WARMUP_READS = 200;
+    private static final int READS = 3000;
+
+    //Books the writer changes in each of its transactions
+    private static final int BOOKS_PER_WRITE = 50;
+
+    private static final String SQL_READ_BOOK = "SELECT * FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " = ?";
+
+    private final Context context = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void readLatencyUnderConcurrentWrites() throws Exception {
+        Bundle results = new Bundle();
+        measure("sqlite_defaults", BookDbHelper.Options.SQLITE_DEFAULTS, results);
+        measure("tuned", BookDbHelper.Options.DEFAULT, results);
+        Log.i(LOG_TAG, "Read latency while writing: " + results);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+    }
+
+    private void measure(String name, BookDbHelper.Options options, Bundle results) throws Exception {
+        context.deleteDatabase(DB_NAME);
+        BookDbHelper dbHelper = new BookDbHelper(context, DB_NAME, options);
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        insertBooks(db);
+
+        //Keep writing on another thread while the reads are measured
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(1);
+                SQLiteStatement statement = db.compileStatement("UPDATE " + BookEntry.TABLE_NAME +
+                        " SET " + BookEntry.COLUMN_QUANTITY + " = " + BookEntry.COLUMN_QUANTITY + " + 1 WHERE " + BookEntry._ID + " = ?");
+                try {
+                    while (writing.get()) {
+                        db.beginTransaction();
+                        try {
+                            for (int i = 0; i < BOOKS_PER_WRITE; i++) {
+                                statement.bindLong(1, 1 + random.nextInt(BOOKS));
+                                statement.executeUpdateDelete();
+                            }
+                            db.setTransactionSuccessful();
+                        } finally {
+                            db.endTransaction();
+                        }
+                    }
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+        writer.start();
+
+        Random random = new Random(2);
+        long[] nanos = new long[READS];
+        try {
+            for (int i = 0; i < WARMUP_READS + READS; i++) {
+                String[] args = {String.valueOf(1 + random.nextInt(BOOKS))};
+                long start = System.nanoTime();
+                Cursor cursor = db.rawQuery(SQL_READ_BOOK, args);
+                try {
+                    assertTrue(cursor.moveToFirst());
+                } finally {
+                    cursor.close();
+                }
+                if (i >= WARMUP_READS) {
+                    nanos[i - WARMUP_READS] = System.nanoTime() - start;
+                }
+            }
+        } finally {
+            writing.set(false);
+            writer.join();
+            dbHelper.close();
+        }
+
+        Arrays.sort(nanos);
+        results.putDouble(name + "_p50_us", percentile(nanos, 50) / 1e3);
+        results.putDouble(name + "_p90_us", percentile(nanos, 90) / 1e3);
+        results.putDouble(name + "_p99_us", percentile(nanos, 99) / 1e3);
+        results.putDouble(name + "_max_us", nanos[nanos.length - 1] / 1e3);
+    }
+
+    private static void insertBooks(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            long[] supplierIds = new long[SUPPLIERS];
+            for (int i = 0; i < SUPPLIERS; i++) {
+                ContentValues supplier = new ContentValues();
+                supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Supplier " + i);
+                supplierIds[i] = db.insert(SupplierEntry.TABLE_NAME, null, supplier);
+            }
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < BOOKS; i++) {
+                values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+                values.put(BookEntry.COLUMN_AUTHOR, "Author " + (i % 300));
+                values.put(BookEntry.COLUMN_PRICE, i % 50);
+                values.put(BookEntry.COLUMN_QUANTITY, i % 20);
+                values.put(BookEntry.COLUMN_SUPPLIER_ID, supplierIds[i % SUPPLIERS]);
+                db.insert(BookEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+}
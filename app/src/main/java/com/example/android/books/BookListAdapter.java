@@ -0,0 +1,318 @@
+package com.example.android.books;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.example.android.books.cover.CoverLoader;
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookPager;
+import com.example.android.books.data.BookRepository;
+import com.example.android.books.data.QueryResult;
+
+//Adapter that shows the books of a BookPager in a RecyclerView. Rows whose page hasn't been loaded yet
+//are shown empty and are filled in when the page arrives. Reloaded pages only rebind the rows that changed.
+//Covers are decoded in the background, and a recycled row cancels the cover it was still waiting for.
+//Pressing a row hands the row to the query of the details screen and starts checking it, so the details screen
+//shows the book as soon as it opens instead of waiting for a query
+public class BookListAdapter extends RecyclerView.Adapter<BookListAdapter.BookViewHolder>
+        implements BookPager.Listener, View.OnClickListener, View.OnTouchListener, CoverLoader.Listener {
+
+    //Callback for clicks on a book in the list
+    public interface OnBookClickListener {
+        void onBookClick(long id);
+    }
+
+    private final BookRepository repository;
+    private final CoverLoader coverLoader;
+    private final LayoutInflater inflater;
+    private final OnBookClickListener clickListener;
+
+    //Text shown for books without an author, read once instead of once per row
+    private final String unknownAuthor;
+
+    //Distance a finger can move before the touch is a scroll rather than a press
+    private final int touchSlop;
+
+    //Row being touched and where the touch started, until the touch turns out to be a press or not
+    private View touchedView;
+    private float touchStartX;
+    private float touchStartY;
+
+    //Prefetches the touched row once the finger stayed on it for the tap timeout, like a view shows itself pressed
+    private final Runnable confirmPressRunnable = new Runnable() {
+        @Override
+        public void run() {
+            View view = touchedView;
+            touchedView = null;
+            if (view != null) {
+                prefetch((BookViewHolder) view.getTag());
+            }
+        }
+    };
+
+    private BookPager pager;
+
+    //List the adapter is attached to, used to find the rows showing a changed cover
+    private RecyclerView recyclerView;
+
+    //Indices of the columns in the cursors of the pager, resolved once per pager
+    private int idColumnIndex;
+    private int bookNameColumnIndex;
+    private int authorColumnIndex;
+    private int priceColumnIndex;
+    private int quantityColumnIndex;
+
+    public BookListAdapter(Context context, OnBookClickListener clickListener) {
+        this.repository = BookRepository.getInstance(context);
+        this.coverLoader = CoverLoader.getInstance(context);
+        this.inflater = LayoutInflater.from(context);
+        this.clickListener = clickListener;
+        this.unknownAuthor = context.getString(R.string.unknown_author);
+        this.touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    }
+
+    //Shows the rows of the given pager, closing the previous one
+    public void setPager(BookPager newPager) {
+        if (pager != null) {
+            pager.close();
+        }
+        pager = newPager;
+        if (pager != null) {
+            idColumnIndex = pager.getColumnIndex(BookEntry._ID);
+            bookNameColumnIndex = pager.getColumnIndex(BookEntry.COLUMN_BOOK_NAME);
+            authorColumnIndex = pager.getColumnIndex(BookEntry.COLUMN_AUTHOR);
+            priceColumnIndex = pager.getColumnIndex(BookEntry.COLUMN_PRICE);
+            quantityColumnIndex = pager.getColumnIndex(BookEntry.COLUMN_QUANTITY);
+        }
+        notifyDataSetChanged();
+    }
+
+    //Returns true once the pager knows it has no rows, so the empty view doesn't flash while loading
+    public boolean isEmpty() {
+        return pager != null && pager.isCountLoaded() && pager.getCount() == 0;
+    }
+
+    @Override
+    public int getItemCount() {
+        return pager == null ? 0 : pager.getCount();
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        coverLoader.addListener(this);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        coverLoader.removeListener(this);
+        this.recyclerView = null;
+    }
+
+    @Override
+    public BookViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = inflater.inflate(R.layout.list_item, parent, false);
+        BookViewHolder holder = new BookViewHolder(view);
+        //One listener is shared by all rows, it finds the row through the tag of the view
+        view.setTag(holder);
+        view.setOnClickListener(this);
+        view.setOnTouchListener(this);
+        holder.saleBtn.setTag(holder);
+        holder.saleBtn.setOnClickListener(this);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(BookViewHolder holder, int position) {
+        Cursor cursor = pager.moveToPosition(position);
+        if (cursor == null) {
+            //The page of this row is still loading
+            holder.id = -1;
+            holder.textViewBookName.setText("");
+            holder.textViewAuthor.setText("");
+            holder.textViewPrice.setText("");
+            holder.textViewQuantity.setText("");
+            holder.saleBtn.setEnabled(false);
+            coverLoader.cancel(holder.imageViewCover);
+            holder.imageViewCover.setImageResource(R.drawable.cover_placeholder);
+            return;
+        }
+
+        holder.id = cursor.getLong(idColumnIndex);
+        coverLoader.load(holder.id, holder.imageViewCover, R.drawable.cover_placeholder);
+        holder.textViewBookName.setText(cursor.getString(bookNameColumnIndex));
+        String author = cursor.getString(authorColumnIndex);
+        holder.textViewAuthor.setText(TextUtils.isEmpty(author) ? unknownAuthor : author);
+        holder.textViewPrice.setText(Integer.toString(cursor.getInt(priceColumnIndex)));
+        holder.textViewQuantity.setText(Integer.toString(cursor.getInt(quantityColumnIndex)));
+        holder.saleBtn.setEnabled(true);
+    }
+
+    @Override
+    public void onViewRecycled(BookViewHolder holder) {
+        //The row scrolled away, its cover is no longer worth decoding
+        coverLoader.cancel(holder.imageViewCover);
+    }
+
+    @Override
+    public void onCoverChanged(long bookId) {
+        if (recyclerView == null) {
+            return;
+        }
+        //Only the rows on screen show the cover, rows bound later load the new one anyway
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            BookViewHolder holder = (BookViewHolder) recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            if (holder.id == bookId) {
+                coverLoader.load(bookId, holder.imageViewCover, R.drawable.cover_placeholder);
+            }
+        }
+    }
+
+    @Override
+    public void onClick(View view) {
+        BookViewHolder holder = (BookViewHolder) view.getTag();
+        if (holder.id == -1) {
+            return;
+        }
+        if (view == holder.saleBtn) {
+            sale(holder.id);
+        } else {
+            //Clicks from a keyboard or accessibility service come without a touch
+            prefetch(holder);
+            clickListener.onBookClick(holder.id);
+        }
+    }
+
+    @Override
+    public boolean onTouch(View view, MotionEvent event) {
+        //A tap is only recognised when the finger is lifted, the time until then is spent checking the row.
+        //Flings start with a touch too, so the row is only prefetched once the touch is a press
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                cancelPress();
+                touchedView = view;
+                touchStartX = event.getX();
+                touchStartY = event.getY();
+                view.postDelayed(confirmPressRunnable, ViewConfiguration.getTapTimeout());
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (view == touchedView && (Math.abs(event.getX() - touchStartX) > touchSlop
+                        || Math.abs(event.getY() - touchStartY) > touchSlop)) {
+                    cancelPress();
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                //A quick tap is prefetched by onClick
+                cancelPress();
+                break;
+        }
+        return false;
+    }
+
+    //Helper method to forget the touched row before the touch turned out to be a press
+    private void cancelPress() {
+        if (touchedView != null) {
+            touchedView.removeCallbacks(confirmPressRunnable);
+            touchedView = null;
+        }
+    }
+
+    //Helper method to hand the row to the query of the details screen and start checking it against the database
+    private void prefetch(BookViewHolder holder) {
+        int position = holder.getAdapterPosition();
+        if (holder.id == -1 || position == RecyclerView.NO_POSITION) {
+            return;
+        }
+        Cursor cursor = pager.peek(position);
+        QueryResult snapshot = cursor == null || cursor.getLong(idColumnIndex) != holder.id ? null
+                : QueryResult.fromRow(cursor, EditActivity.BOOK_PROJECTION);
+        Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, holder.id);
+        repository.query(uri, EditActivity.BOOK_PROJECTION, null, null, null).prefetch(snapshot);
+    }
+
+    @Override
+    public void onCountChanged() {
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void onRowsLoaded(int positionStart, int itemCount) {
+        //Rows past the known count aren't shown yet, they are bound once the count arrives
+        int count = getItemCount();
+        if (positionStart < count) {
+            notifyItemRangeChanged(positionStart, Math.min(itemCount, count - positionStart));
+        }
+    }
+
+    @Override
+    public void onRowsUpdated(final int positionStart, DiffUtil.DiffResult diff) {
+        //Positions of the diff are relative to the page, shift them to the position of the page
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(positionStart + position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(positionStart + position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(positionStart + fromPosition, positionStart + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(positionStart + position, count, payload);
+            }
+        });
+    }
+
+    //Helper method to sell one copy when "Sale" button is clicked, recording the sale in the ledger.
+    //The provider refuses the sale when the quantity is already 0, and the list shows the new value
+    //when the provider notifies the change
+    private void sale(long id) {
+        repository.sell(id, 1, null);
+    }
+
+    //Holds the views of a row, so they are looked up once per row view instead of once per bind
+    static class BookViewHolder extends RecyclerView.ViewHolder {
+
+        final ImageView imageViewCover;
+        final TextView textViewBookName;
+        final TextView textViewAuthor;
+        final TextView textViewPrice;
+        final TextView textViewQuantity;
+        final Button saleBtn;
+
+        //Id of the book shown in the row, or -1 while it is loading
+        long id = -1;
+
+        BookViewHolder(View view) {
+            super(view);
+            imageViewCover = view.findViewById(R.id.cover);
+            textViewBookName = view.findViewById(R.id.book_name);
+            textViewAuthor = view.findViewById(R.id.author);
+            textViewPrice = view.findViewById(R.id.price);
+            textViewQuantity = view.findViewById(R.id.quantity);
+            saleBtn = view.findViewById(R.id.sale_btn);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.android.books;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+import com.example.android.books.data.BookRepository;
+import com.example.android.books.maintenance.MaintenanceJobService;
+
+public class BookstoreApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        //In debug builds log any disk access on the main thread and any cursor or database that is never closed,
+        //so that work which slipped back onto the main thread shows up during development
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedSqlLiteObjects()
+                    .detectLeakedClosableObjects()
+                    .penaltyLog()
+                    .build());
+        }
+
+        MaintenanceJobService.schedule(this);
+        //Books deleted shortly before the app was last closed weren't purged yet
+        BookRepository.getInstance(this).purgeDeleted();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.books;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CursorAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.example.android.books.data.BookContract.AggregateEntry;
+import com.example.android.books.data.BookRepository;
+import com.example.android.books.data.QueryResult;
+import com.example.android.books.data.SharedQuery;
+
+//Screen with the value of the stock, the number of books and copies and the books running out, in total and per supplier.
+//It reads the aggregates the database keeps up to date, so it costs one row per supplier however many books there are
+public class DashboardActivity extends AppCompatActivity {
+
+    //Columns shown for every supplier
+    private static final String[] SUPPLIER_PROJECTION = {
+            AggregateEntry._ID,
+            AggregateEntry.COLUMN_SUPPLIER_NAME,
+            AggregateEntry.COLUMN_TITLE_COUNT,
+            AggregateEntry.COLUMN_UNIT_COUNT,
+            AggregateEntry.COLUMN_STOCK_VALUE,
+            AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT,
+            AggregateEntry.COLUMN_LOW_STOCK_COUNT};
+
+    //Suppliers with books out of stock or low on stock come first
+    private static final String SUPPLIER_SORT_ORDER = AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + " DESC, " +
+            AggregateEntry.COLUMN_LOW_STOCK_COUNT + " DESC, " +
+            AggregateEntry.COLUMN_SUPPLIER_NAME;
+
+    private TextView textViewStockValue;
+    private TextView textViewUnits;
+    private TextView textViewLowStock;
+
+    private SupplierAdapter supplierAdapter;
+
+    private SharedQuery totalsQuery;
+    private SharedQuery suppliersQuery;
+
+    private final SharedQuery.Observer totalsObserver = new SharedQuery.Observer() {
+        @Override
+        public void onChanged(QueryResult result) {
+            Cursor cursor = result.toCursor();
+            try {
+                showTotals(cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+    };
+
+    private final SharedQuery.Observer suppliersObserver = new SharedQuery.Observer() {
+        @Override
+        public void onChanged(QueryResult result) {
+            Cursor oldCursor = supplierAdapter.swapCursor(result.toCursor());
+            if (oldCursor != null) {
+                oldCursor.close();
+            }
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_dashboard);
+
+        textViewStockValue = findViewById(R.id.dashboard_stock_value);
+        textViewUnits = findViewById(R.id.dashboard_units);
+        textViewLowStock = findViewById(R.id.dashboard_low_stock);
+
+        ListView listViewSuppliers = findViewById(R.id.dashboard_suppliers);
+        listViewSuppliers.setEmptyView(findViewById(R.id.dashboard_empty));
+        supplierAdapter = new SupplierAdapter(this);
+        listViewSuppliers.setAdapter(supplierAdapter);
+
+        BookRepository repository = BookRepository.getInstance(this);
+        totalsQuery = repository.query(AggregateEntry.TOTALS_URI, null, null, null, null);
+        suppliersQuery = repository.query(AggregateEntry.CONTENT_URI, SUPPLIER_PROJECTION, null, null, SUPPLIER_SORT_ORDER);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        totalsQuery.observe(totalsObserver);
+        suppliersQuery.observe(suppliersObserver);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        totalsQuery.removeObserver(totalsObserver);
+        suppliersQuery.removeObserver(suppliersObserver);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        Cursor cursor = supplierAdapter.swapCursor(null);
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+    //Helper method to show the totals of all suppliers
+    private void showTotals(Cursor cursor) {
+        //Return early if the cursor contains less than 1 row
+        if (!cursor.moveToFirst()) {
+            return;
+        }
+        textViewStockValue.setText(getString(R.string.dashboard_stock_value,
+                cursor.getLong(cursor.getColumnIndex(AggregateEntry.COLUMN_STOCK_VALUE))));
+        textViewUnits.setText(getString(R.string.dashboard_units,
+                cursor.getLong(cursor.getColumnIndex(AggregateEntry.COLUMN_UNIT_COUNT)),
+                cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_TITLE_COUNT)),
+                cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_SUPPLIER_COUNT))));
+        textViewLowStock.setText(getString(R.string.dashboard_low_stock,
+                cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT)),
+                cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_LOW_STOCK_COUNT))));
+    }
+
+    //Shows the aggregates of one supplier per row
+    private static class SupplierAdapter extends CursorAdapter {
+
+        SupplierAdapter(Context context) {
+            super(context, null, 0);
+        }
+
+        @Override
+        public View newView(Context context, Cursor cursor, ViewGroup parent) {
+            return LayoutInflater.from(context).inflate(R.layout.list_item_supplier, parent, false);
+        }
+
+        @Override
+        public void bindView(View view, Context context, Cursor cursor) {
+            TextView textViewName = view.findViewById(R.id.supplier_name);
+            TextView textViewStock = view.findViewById(R.id.supplier_stock);
+            TextView textViewLowStock = view.findViewById(R.id.supplier_low_stock);
+
+            textViewName.setText(cursor.getString(cursor.getColumnIndex(AggregateEntry.COLUMN_SUPPLIER_NAME)));
+            textViewStock.setText(context.getString(R.string.dashboard_supplier_stock,
+                    cursor.getLong(cursor.getColumnIndex(AggregateEntry.COLUMN_UNIT_COUNT)),
+                    cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_TITLE_COUNT)),
+                    cursor.getLong(cursor.getColumnIndex(AggregateEntry.COLUMN_STOCK_VALUE))));
+            textViewLowStock.setText(context.getString(R.string.dashboard_low_stock,
+                    cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT)),
+                    cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_LOW_STOCK_COUNT))));
+        }
+    }
+}
@@ -1,12 +1,9 @@
 package com.example.android.books;
 
 import android.app.AlertDialog;
-import android.app.LoaderManager;
-import android.content.ContentValues;
-import android.content.CursorLoader;
+import android.content.ContentUris;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -16,13 +13,16 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
+import android.widget.ImageView;
 import android.widget.TextView;
-import android.widget.Toast;
 
-import com.example.android.books.data.BookContract;
+import com.example.android.books.cover.CoverLoader;
 import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookRepository;
+import com.example.android.books.data.QueryResult;
+import com.example.android.books.data.SharedQuery;
 
-public class DetailsActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor>{
+public class DetailsActivity extends AppCompatActivity {
 
     //URI for the current book
     private Uri currentBookUri;
@@ -45,16 +45,55 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
     //TextView for supplier phone number
     private TextView textViewSupplierNumber;
 
+    //TextView for ISBN
+    private TextView textViewIsbn;
+
+    //ImageView for the cover
+    private ImageView imageViewCover;
+
     //Global string in order to store supplier number
     private String supplierNumber;
 
-    private static final int DETAILS_BOOK_LOADER = 1;
+    //Result asking the activity that started this one to delete the book of the result data
+    static final int RESULT_DELETE_BOOK = RESULT_FIRST_USER;
+
+    private BookRepository repository;
+
+    private CoverLoader coverLoader;
+
+    //Query of the book, shared with the edit screen that shows the same columns
+    private SharedQuery bookQuery;
+
+    private final SharedQuery.Observer bookObserver = new SharedQuery.Observer() {
+        @Override
+        public void onChanged(QueryResult result) {
+            Cursor cursor = result.toCursor();
+            try {
+                showBook(cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+    };
+
+    //Shows the new cover once an edit of the book has saved it, which can happen after this activity is back
+    private final CoverLoader.Listener coverListener = new CoverLoader.Listener() {
+        @Override
+        public void onCoverChanged(long bookId) {
+            if (bookId == ContentUris.parseId(currentBookUri)) {
+                loadCover();
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_details);
 
+        repository = BookRepository.getInstance(this);
+        coverLoader = CoverLoader.getInstance(this);
+
         //Save the URI from the Intent that launched this activity to currentBookUri
         Intent intent = getIntent();
         currentBookUri = intent.getData();
@@ -66,6 +105,8 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
         textViewQuantity = findViewById(R.id.details_quantity);
         textViewSupplierName = findViewById(R.id.details_supplier_name);
         textViewSupplierNumber = findViewById(R.id.details_supplier_number);
+        textViewIsbn = findViewById(R.id.details_isbn);
+        imageViewCover = findViewById(R.id.details_cover);
 
         //Set onClickListener on "Update" button
         final Button updateBtn = findViewById(R.id.update_btn);
@@ -108,7 +149,8 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        getLoaderManager().initLoader(DETAILS_BOOK_LOADER, null, this);
+        //Query that contains all the columns for this specific item
+        bookQuery = repository.query(currentBookUri, EditActivity.BOOK_PROJECTION, null, null, null);
     }
 
     @Override
@@ -131,15 +173,30 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
         return super.onOptionsItemSelected(item);
     }
 
-    //Helper method to delete one book from the database
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bookQuery.observe(bookObserver);
+        coverLoader.addListener(coverListener);
+        loadCover();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        bookQuery.removeObserver(bookObserver);
+        coverLoader.removeListener(coverListener);
+        coverLoader.cancel(imageViewCover);
+    }
+
+    //Helper method to show the cover of the book, decoded in the background
+    private void loadCover() {
+        coverLoader.load(ContentUris.parseId(currentBookUri), imageViewCover, R.drawable.cover_placeholder);
+    }
+
+    //Helper method to delete one book from the database. The list deletes it, so it can offer to undo the delete
     private void deleteBook() {
-        int rowsDeleted = getContentResolver().delete(currentBookUri, null, null);
-        //Show toast message if the delete was successful
-        if(rowsDeleted == 0) {
-            Toast.makeText(this, "Delete unsuccessful", Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(this, "Book deleted", Toast.LENGTH_SHORT).show();
-        }
+        setResult(RESULT_DELETE_BOOK, new Intent().setData(currentBookUri));
         //Finish the activity to return to main
         finish();
     }
@@ -173,48 +230,30 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
 
     //Method to increase quantity by 1
     private void increaseQuantity() {
-        int quantity = Integer.parseInt(textViewQuantity.getText().toString());
-        int newQuantity = quantity + 1;
-        textViewQuantity.setText(String.valueOf(newQuantity));
-        //Create content values with the new quantity
-        ContentValues values = new ContentValues();
-        values.put(BookContract.BookEntry.COLUMN_QUANTITY, newQuantity);
-        //Update the database
-        int rowsAffected = getContentResolver().update(currentBookUri, values, null, null);
-
+        adjustQuantity(1);
     }
 
     //Method to decrease quantity by 1
     private void decreaseQuantity() {
-        int quantity = Integer.parseInt(textViewQuantity.getText().toString());
-        //Check if the quantity is not already 0
-        if(quantity == 0) {
-            return;
-        }
-        int newQuantity = quantity - 1;
-        textViewQuantity.setText(String.valueOf(newQuantity));
-        //Create content values with the new quantity
-        ContentValues values = new ContentValues();
-        values.put(BookContract.BookEntry.COLUMN_QUANTITY, newQuantity);
-        //Update the database
-        int rowsAffected = getContentResolver().update(currentBookUri, values, null, null);
+        //The provider refuses the change if the quantity is already 0
+        adjustQuantity(-1);
     }
 
-    @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        //Query that contains all the columns for this specific item
-        String[] projection = {BookEntry._ID,
-                    BookEntry.COLUMN_BOOK_NAME,
-                    BookEntry.COLUMN_AUTHOR,
-                    BookEntry.COLUMN_PRICE,
-                    BookEntry.COLUMN_QUANTITY,
-                    BookEntry.COLUMN_SUPPLIER_NAME,
-                    BookEntry.COLUMN_SUPPLIER_NUMBER};
-        return new CursorLoader(this, currentBookUri, projection, null, null, null);
+    //Helper method to change the quantity in the database and show the value it returns
+    private void adjustQuantity(int delta) {
+        long id = ContentUris.parseId(currentBookUri);
+        repository.adjustQuantity(id, delta, new BookRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer newQuantity) {
+                if(newQuantity != -1 && !isFinishing()) {
+                    textViewQuantity.setText(String.valueOf(newQuantity));
+                }
+            }
+        });
     }
 
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+    //Helper method to show the values of the book
+    private void showBook(Cursor cursor) {
         //Return early if the cursor is null or contains less than 1 row
         if (cursor == null || cursor.getCount() < 1) {
             return;
@@ -229,6 +268,7 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
             int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_QUANTITY);
             int supplierNameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_NAME);
             int supplierNumberColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_NUMBER);
+            int isbnColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_ISBN);
 
             //Extract the values from columns
             String bookTitle = cursor.getString(bookTitleColumnIndex);
@@ -237,6 +277,7 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
             int quantity = cursor.getInt(quantityColumnIndex);
             String supplierName = cursor.getString(supplierNameColumnIndex);
             supplierNumber = cursor.getString(supplierNumberColumnIndex);
+            String isbn = cursor.getString(isbnColumnIndex);
 
             //If author is empty, set text to "unknown author"
             if(TextUtils.isEmpty(author)) {
@@ -248,6 +289,11 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
                 supplierNumber = getString(R.string.unknown_number);
             }
 
+            //If ISBN is empty, set the text to "No ISBN saved"
+            if(TextUtils.isEmpty(isbn)) {
+                isbn = getString(R.string.unknown_isbn);
+            }
+
             //Set the values on the TextViews
             textViewBookTitle.setText(bookTitle);
             textViewAuthor.setText(author);
@@ -255,17 +301,8 @@ public class DetailsActivity extends AppCompatActivity implements LoaderManager.
             textViewQuantity.setText(Integer.toString(quantity));
             textViewSupplierName.setText(supplierName);
             textViewSupplierNumber.setText(supplierNumber);
+            textViewIsbn.setText(isbn);
         }
 
     }
-
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        textViewBookTitle.setText("");
-        textViewAuthor.setText("");
-        textViewPrice.setText("");
-        textViewQuantity.setText("");
-        textViewSupplierName.setText("");
-        textViewSupplierNumber.setText("");
-    }
 }
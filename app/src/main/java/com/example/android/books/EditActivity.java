@@ -1,12 +1,10 @@
 package com.example.android.books;
 
 import android.app.AlertDialog;
-import android.app.LoaderManager;
+import android.content.ContentUris;
 import android.content.ContentValues;
-import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -18,12 +16,27 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.android.books.cover.CoverLoader;
 import com.example.android.books.data.BookContract.BookEntry;
-
-public class EditActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+import com.example.android.books.data.BookRepository;
+import com.example.android.books.data.QueryResult;
+import com.example.android.books.data.SharedQuery;
+
+public class EditActivity extends AppCompatActivity {
+
+    //Columns of the book shown by this screen and the details screen, which share its query
+    static final String[] BOOK_PROJECTION = {BookEntry._ID,
+            BookEntry.COLUMN_BOOK_NAME,
+            BookEntry.COLUMN_AUTHOR,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_NUMBER,
+            BookEntry.COLUMN_ISBN};
 
     //URI for the current book
     private Uri currentBookUri;
@@ -46,10 +59,44 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
     //EditText for supplier phone number
     private EditText editTextSupplierNumber;
 
+    //EditText for ISBN, typed in or read by a barcode scanner
+    private EditText editTextIsbn;
+
+    //ImageView showing the cover of the book, or the newly chosen one
+    private ImageView imageViewCover;
+
+    //Image chosen as the new cover, saved with the book, or null to keep the current cover
+    private Uri coverUri;
+
     //Default quantity
     private int quantity = 1;
 
-    private static final int EDIT_BOOK_LOADER = 1;
+    //"Save" button, disabled while a save is being written
+    private Button saveBtn;
+
+    private static final int PICK_COVER_REQUEST = 1;
+
+    //Key of the chosen cover in the saved instance state
+    private static final String STATE_COVER_URI = "cover_uri";
+
+    private BookRepository repository;
+
+    private CoverLoader coverLoader;
+
+    //Query of the book being edited, null when adding a book
+    private SharedQuery bookQuery;
+
+    private final SharedQuery.Observer bookObserver = new SharedQuery.Observer() {
+        @Override
+        public void onChanged(QueryResult result) {
+            Cursor cursor = result.toCursor();
+            try {
+                showBook(cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+    };
 
     //Boolean to track if the book has been edited or not
     private boolean bookHasChanged = false;
@@ -68,12 +115,17 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_edit);
 
+        repository = BookRepository.getInstance(this);
+        coverLoader = CoverLoader.getInstance(this);
+
         editTextBookTitle = findViewById(R.id.edit_book_title);
         editTextAuthor = findViewById(R.id.edit_author);
         editTextPrice = findViewById(R.id.edit_price);
         textViewQuantity = findViewById(R.id.edit_quantity);
         editTextSupplierName = findViewById(R.id.edit_supplier_name);
         editTextSupplierNumber = findViewById(R.id.edit_supplier_number);
+        editTextIsbn = findViewById(R.id.edit_isbn);
+        imageViewCover = findViewById(R.id.edit_cover);
 
         //Set default value to the text view quantity
         textViewQuantity.setText(String.valueOf(quantity));
@@ -90,9 +142,29 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
             invalidateOptionsMenu();
         } else {
             setTitle(getString(R.string.edit_title));
-            getLoaderManager().initLoader(EDIT_BOOK_LOADER, null, this);
+            //Opened from the details screen, the query is already there and its result shows right away
+            bookQuery = repository.query(currentBookUri, BOOK_PROJECTION, null, null, null);
         }
 
+        //Show the cover chosen before a configuration change, or the current cover of the book
+        if (savedInstanceState != null) {
+            coverUri = savedInstanceState.getParcelable(STATE_COVER_URI);
+        }
+        if (coverUri != null) {
+            coverLoader.preview(coverUri, imageViewCover, R.drawable.cover_placeholder);
+        } else if (currentBookUri != null) {
+            coverLoader.load(ContentUris.parseId(currentBookUri), imageViewCover, R.drawable.cover_placeholder);
+        }
+
+        //Set onClickListener on "Choose cover" button
+        Button chooseCoverBtn = findViewById(R.id.choose_cover_btn);
+        chooseCoverBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                chooseCover();
+            }
+        });
+
         //Set onClickListener on "+" button
         Button minusBtn = findViewById(R.id.edit_decrease_quantity);
         minusBtn.setOnClickListener(new View.OnClickListener() {
@@ -112,16 +184,11 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
         });
 
         //Set onClickListener on "Save" button
-        final Button saveBtn = findViewById(R.id.save_btn);
+        saveBtn = findViewById(R.id.save_btn);
         saveBtn.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                boolean saveSuccessful = saveBook();
-                //if the save was successful, finish the activity
-                //otherwise stay in the activity so that the user can still edit the item
-                if (saveSuccessful) {
-                    finish();
-                }
+                saveBook();
             }
         });
 
@@ -134,13 +201,70 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
         minusBtn.setOnTouchListener(touchListener);
         editTextSupplierName.setOnTouchListener(touchListener);
         editTextSupplierNumber.setOnTouchListener(touchListener);
+        editTextIsbn.setOnTouchListener(touchListener);
+        chooseCoverBtn.setOnTouchListener(touchListener);
     }
 
-    //Helper method to save book from user input
-    private boolean saveBook() {
-        //boolean to store the info if the book was successfully saved or not
-        boolean isSaveSuccessful = false;
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(STATE_COVER_URI, coverUri);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (bookQuery != null) {
+            bookQuery.observe(bookObserver);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (bookQuery != null) {
+            bookQuery.removeObserver(bookObserver);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        coverLoader.cancel(imageViewCover);
+    }
+
+    //Helper method to let the user pick an image as the cover of the book
+    private void chooseCover() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("image/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            startActivityForResult(intent, PICK_COVER_REQUEST);
+        }
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == PICK_COVER_REQUEST && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            coverUri = data.getData();
+            bookHasChanged = true;
+            coverLoader.preview(coverUri, imageViewCover, R.drawable.cover_placeholder);
+        }
+    }
 
+    //Helper method to save the chosen cover once the book is saved, since the cover is stored under the id of the book.
+    //The image is copied in the background, while the picker still grants access to it
+    private void saveCover(Uri bookUri) {
+        if (coverUri != null) {
+            coverLoader.setCover(ContentUris.parseId(bookUri), coverUri);
+        }
+    }
+
+    //Helper method to save book from user input
+    //The book is written in the background, the activity finishes once the write succeeded,
+    //otherwise it stays open so that the user can still edit the item
+    private void saveBook() {
         //Read from input fields and delete whitespace
         String bookName = editTextBookTitle.getText().toString().trim();
         String author = editTextAuthor.getText().toString().trim();
@@ -148,14 +272,15 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
         String quantityString = textViewQuantity.getText().toString().trim();
         String supplierName = editTextSupplierName.getText().toString().trim();
         String supplierNumber = editTextSupplierNumber.getText().toString().trim();
+        String isbn = editTextIsbn.getText().toString().trim();
 
         int quantity = Integer.parseInt(quantityString);
 
         //If all the fields are empty and quantity is 1(which is default value), this means the user did not edit anything and nothing can be saved
         // so just finish the activity
-        if(currentBookUri == null && TextUtils.isEmpty(bookName) && TextUtils.isEmpty(author) && TextUtils.isEmpty(priceString) && TextUtils.isEmpty(supplierName) && TextUtils.isEmpty(supplierNumber) && quantity == 1) {
-            isSaveSuccessful = true;
-            return isSaveSuccessful;
+        if(currentBookUri == null && TextUtils.isEmpty(bookName) && TextUtils.isEmpty(author) && TextUtils.isEmpty(priceString) && TextUtils.isEmpty(supplierName) && TextUtils.isEmpty(supplierNumber) && TextUtils.isEmpty(isbn) && coverUri == null && quantity == 1) {
+            finish();
+            return;
         }
 
         //Add the values from fields to content values
@@ -169,56 +294,71 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
                 price = Integer.parseInt(priceString);
             } catch (NumberFormatException e) {
                 Toast.makeText(this, "Please enter valid price", Toast.LENGTH_LONG).show();
-                isSaveSuccessful = false;
-                return isSaveSuccessful;
+                return;
             }
         }
         values.put(BookEntry.COLUMN_PRICE, price);
         values.put(BookEntry.COLUMN_QUANTITY, quantity);
         values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplierName);
         values.put(BookEntry.COLUMN_SUPPLIER_NUMBER, supplierNumber);
+        //An empty ISBN removes the ISBN of the book
+        values.put(BookEntry.COLUMN_ISBN, isbn);
+
+        //Don't allow a second save while the first one is still being written
+        saveBtn.setEnabled(false);
 
         //If the current uri is null, new book is created
         if(currentBookUri == null) {
-            try {
-                Uri newUri = getContentResolver().insert(BookEntry.CONTENT_URI, values);
-                //Show toast message if the insert was successful or not
-                if (newUri == null) {
-                    isSaveSuccessful = false;
-                    //Error
-                    Toast.makeText(this, "Save unsuccessful", Toast.LENGTH_SHORT).show();
-                } else {
-                    isSaveSuccessful = true;
-                    //Success
-                    Toast.makeText(this, "Book saved", Toast.LENGTH_SHORT).show();
+            repository.insert(values, new BookRepository.Callback<Uri>() {
+                @Override
+                public void onResult(Uri newUri) {
+                    //Show toast message if the insert was successful or not
+                    if (newUri == null) {
+                        //Error
+                        saveBtn.setEnabled(true);
+                        Toast.makeText(EditActivity.this, "Save unsuccessful", Toast.LENGTH_SHORT).show();
+                    } else {
+                        //Success
+                        saveCover(newUri);
+                        Toast.makeText(EditActivity.this, "Book saved", Toast.LENGTH_SHORT).show();
+                        finish();
+                    }
                 }
-            } catch (IllegalArgumentException ex) {
-                //Catch the exception thrown by the provider, which means some value was null
-                //Show the error message in toast
-                isSaveSuccessful = false;
-                Toast.makeText(this, ex.getMessage(), Toast.LENGTH_SHORT).show();
-            }
+
+                @Override
+                public void onError(RuntimeException e) {
+                    //The provider threw an exception, which means some value was not valid
+                    //Show the error message in toast
+                    saveBtn.setEnabled(true);
+                    Toast.makeText(EditActivity.this, e.getMessage(), Toast.LENGTH_SHORT).show();
+                }
+            });
         } else {
-            try {
-                int rowsUpdated = getContentResolver().update(currentBookUri, values, null, null);
-                //Show toast message if update was successful or not
-                if (rowsUpdated == 0) {
-                    //Error
-                    isSaveSuccessful = false;
-                    Toast.makeText(this, "Update unsuccessful", Toast.LENGTH_SHORT).show();
-                } else {
-                    //Success
-                    isSaveSuccessful = true;
-                    Toast.makeText(this, "Book updated", Toast.LENGTH_SHORT).show();
+            repository.update(currentBookUri, values, new BookRepository.Callback<Integer>() {
+                @Override
+                public void onResult(Integer rowsUpdated) {
+                    //Show toast message if update was successful or not
+                    if (rowsUpdated == 0) {
+                        //Error
+                        saveBtn.setEnabled(true);
+                        Toast.makeText(EditActivity.this, "Update unsuccessful", Toast.LENGTH_SHORT).show();
+                    } else {
+                        //Success
+                        saveCover(currentBookUri);
+                        Toast.makeText(EditActivity.this, "Book updated", Toast.LENGTH_SHORT).show();
+                        finish();
+                    }
                 }
-            } catch (IllegalArgumentException ex) {
-                //Catch the exception thrown by the provider, which means some value was null
-                //Show the error message in toast
-                isSaveSuccessful = false;
-                Toast.makeText(this, ex.getMessage(), Toast.LENGTH_SHORT).show();
-            }
+
+                @Override
+                public void onError(RuntimeException e) {
+                    //The provider threw an exception, which means some value was not valid
+                    //Show the error message in toast
+                    saveBtn.setEnabled(true);
+                    Toast.makeText(EditActivity.this, e.getMessage(), Toast.LENGTH_SHORT).show();
+                }
+            });
         }
-        return isSaveSuccessful;
     }
 
     @Override
@@ -304,21 +444,8 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
         textViewQuantity.setText(String.valueOf(newQuantity));
     }
 
-    @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        //Query that contains all the columns for this specific item
-        String[] projection = {BookEntry._ID,
-                BookEntry.COLUMN_BOOK_NAME,
-                BookEntry.COLUMN_AUTHOR,
-                BookEntry.COLUMN_PRICE,
-                BookEntry.COLUMN_QUANTITY,
-                BookEntry.COLUMN_SUPPLIER_NAME,
-                BookEntry.COLUMN_SUPPLIER_NUMBER};
-        return new CursorLoader(this, currentBookUri, projection, null, null, null);
-    }
-
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+    //Helper method to fill the fields with the values of the book
+    private void showBook(Cursor cursor) {
         //Return early if the cursor is null or contains less than 1 row
         if (cursor == null || cursor.getCount() < 1) {
             return;
@@ -333,6 +460,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
             int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_QUANTITY);
             int supplierNameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_NAME);
             int supplierNumberColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_NUMBER);
+            int isbnColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_ISBN);
 
             //Extract the values from columns
             String bookTitle = cursor.getString(bookTitleColumnIndex);
@@ -341,6 +469,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
             int quantity = cursor.getInt(quantityColumnIndex);
             String supplierName = cursor.getString(supplierNameColumnIndex);
             String supplierNumber = cursor.getString(supplierNumberColumnIndex);
+            String isbn = cursor.getString(isbnColumnIndex);
 
             //Set the values on the TextViews
             editTextBookTitle.setText(bookTitle);
@@ -349,16 +478,7 @@ public class EditActivity extends AppCompatActivity implements LoaderManager.Loa
             textViewQuantity.setText(Integer.toString(quantity));
             editTextSupplierName.setText(supplierName);
             editTextSupplierNumber.setText(supplierNumber);
+            editTextIsbn.setText(isbn);
         }
     }
-
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        editTextBookTitle.setText("");
-        editTextAuthor.setText("");
-        editTextPrice.setText("");
-        textViewQuantity.setText("");
-        editTextSupplierName.setText("");
-        editTextSupplierNumber.setText("");
-    }
 }
@@ -1,60 +1,144 @@
 package com.example.android.books;
 
 import android.app.AlertDialog;
-import android.app.LoaderManager;
+import android.app.ProgressDialog;
 import android.content.ContentUris;
 import android.content.ContentValues;
-import android.content.CursorLoader;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.Loader;
-import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
+import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.EditText;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.android.books.catalog.CatalogExporter;
+import com.example.android.books.catalog.CatalogImporter;
+import com.example.android.books.catalog.ExportTask;
+import com.example.android.books.catalog.ImportReport;
+import com.example.android.books.catalog.ImportTask;
+import com.example.android.books.cover.CoverLoader;
+import com.example.android.books.data.BookContract;
 import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.DeletionEntry;
+import com.example.android.books.data.BookPager;
+import com.example.android.books.data.BookRepository;
 
-public class MainActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+import java.io.File;
 
-    private static final int BOOK_LOADER = 1;
+public class MainActivity extends AppCompatActivity implements ImportTask.Callbacks, ExportTask.Callbacks {
 
-    private BookCursorAdapter cursorAdapter;
+    //Columns read for the list, which are all the columns of the details screen, so a row can be handed to it
+    private static final String[] PROJECTION = EditActivity.BOOK_PROJECTION;
+
+    //Time to wait after the last typed character before searching
+    private static final long SEARCH_DELAY_MILLIS = 300;
+
+    //Request code for picking the catalogue file to import
+    private static final int REQUEST_IMPORT = 1;
+
+    //Request code for creating the file a catalogue is exported to
+    private static final int REQUEST_EXPORT = 2;
+
+    //Request code for showing the details of a book, which can ask for the book to be deleted
+    private static final int REQUEST_DETAILS = 3;
+
+    //Time the offer to undo a delete is shown, ending before the delete can no longer be undone
+    private static final int UNDO_DURATION_MILLIS = (int) DeletionEntry.UNDO_WINDOW_MILLIS - 2000;
+
+    //Number of rows shown in the import report dialog
+    private static final int MAX_SHOWN_ERRORS = 10;
+
+    private BookRepository repository;
+
+    private BookListAdapter listAdapter;
+
+    //View shown instead of the list when there are no books
+    private View emptyView;
+
+    //Running import or export and the dialog that shows its progress
+    private ImportTask importTask;
+    private ExportTask exportTask;
+    private ProgressDialog progressDialog;
+
+    //Format chosen for the export while the user picks the file
+    private int exportFormat = CatalogExporter.FORMAT_CSV;
+
+    //Search query that is waiting for the user to stop typing
+    private String pendingSearchQuery;
+
+    //Handler that delays searches until the user stops typing
+    private final Handler searchHandler = new Handler();
+
+    //Shows the books matching the latest search query
+    private final Runnable searchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            showBooks(pendingSearchQuery);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        ListView listView = findViewById(R.id.list);
+        repository = BookRepository.getInstance(this);
 
-        //Find and set empty view on the listView
-        View emptyView = findViewById(R.id.empty_view);
-        listView.setEmptyView(emptyView);
+        RecyclerView recyclerView = findViewById(R.id.list);
+        recyclerView.setHasFixedSize(true);
 
-        //Setup cursor adapter
-        cursorAdapter = new BookCursorAdapter(this, null);
-        //Attach it to listView
-        listView.setAdapter(cursorAdapter);
+        //Find the empty view, shown when the list has no books
+        emptyView = findViewById(R.id.empty_view);
 
-        listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        //Setup list adapter
+        listAdapter = new BookListAdapter(this, new BookListAdapter.OnBookClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+            public void onBookClick(long id) {
                 Intent intent = new Intent(MainActivity.this, DetailsActivity.class);
                 //Create the content URI of the item that was clicked
                 Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
                 intent.setData(uri);
-                startActivity(intent);
+                startActivityForResult(intent, REQUEST_DETAILS);
             }
         });
+        //The number of rows only changes together with a full refresh, so that is when the empty view is updated
+        listAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                emptyView.setVisibility(listAdapter.isEmpty() ? View.VISIBLE : View.GONE);
+            }
+        });
+        //Attach it to recyclerView
+        recyclerView.setAdapter(listAdapter);
+
+        showBooks(null);
+    }
 
-        getLoaderManager().initLoader(0, null,this);
+    //Helper method to show the books matching the search query, or all books if there is none.
+    //Replacing the pager drops the results of queries that are still running for older input
+    private void showBooks(String query) {
+        //Pages need a stable order: by id for all books, by rank for search results
+        Uri uri = BookEntry.CONTENT_URI;
+        String sortOrder = BookEntry._ID;
+        if (!TextUtils.isEmpty(query) && !TextUtils.isEmpty(query.trim())) {
+            uri = BookEntry.buildSearchUri(query.trim());
+            sortOrder = null;
+        }
+        listAdapter.setPager(new BookPager(getContentResolver(), repository.getReadExecutor(), uri, PROJECTION, sortOrder,
+                BookPager.DEFAULT_PAGE_SIZE, listAdapter));
     }
 
     @Override
@@ -62,9 +146,37 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_main, menu);
+
+        //The metrics screen is only offered in debug builds
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
+
+        //Search as the user types
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query, 0);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                search(query, SEARCH_DELAY_MILLIS);
+                return true;
+            }
+        });
         return true;
     }
 
+    //Helper method to show the books matching the query after the given delay.
+    //Every call replaces the search that is still waiting, so fast typing runs a single query
+    private void search(String query, long delayMillis) {
+        pendingSearchQuery = query;
+        searchHandler.removeCallbacks(searchRunnable);
+        searchHandler.postDelayed(searchRunnable, delayMillis);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
@@ -74,10 +186,30 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
                 Intent intent = new Intent(MainActivity.this, EditActivity.class);
                 startActivity(intent);
                 return true;
+            // Respond to a click on the "Sell by Barcode" menu option
+            case R.id.action_sell_by_isbn:
+                showSellByIsbnDialog();
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_data:
                 insertData();
                 return true;
+            // Respond to a click on the "Import catalogue" menu option
+            case R.id.action_import:
+                pickImportFile();
+                return true;
+            // Respond to a click on the "Export catalogue" menu option
+            case R.id.action_export:
+                showExportFormatDialog();
+                return true;
+            // Respond to a click on the "Inventory Dashboard" menu option
+            case R.id.action_dashboard:
+                startActivity(new Intent(MainActivity.this, DashboardActivity.class));
+                return true;
+            // Respond to a click on the "Provider Metrics" menu option
+            case R.id.action_metrics:
+                startActivity(new Intent(MainActivity.this, MetricsActivity.class));
+                return true;
             // Respond to a click on the "Delete all" menu option
             case R.id.action_delete_all:
                 showConfirmationDialog();
@@ -86,6 +218,58 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         return super.onOptionsItemSelected(item);
     }
 
+    //Helper method to sell books by scanning their barcodes. A barcode scanner that works as a keyboard types the ISBN
+    //followed by Enter, so every Enter sells one copy and clears the field for the next scan. Sales are written
+    //in the background, so scanning never waits for the database
+    private void showSellByIsbnDialog() {
+        View view = getLayoutInflater().inflate(R.layout.dialog_sell_by_isbn, null);
+        final EditText isbnField = view.findViewById(R.id.sell_isbn);
+        final TextView statusView = view.findViewById(R.id.sell_status);
+        isbnField.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView textView, int actionId, KeyEvent event) {
+                //Scanners send Enter as a key press and release, the soft keyboard sends the Done action without an event
+                if (event != null && event.getAction() != KeyEvent.ACTION_DOWN) {
+                    return true;
+                }
+                String isbn = isbnField.getText().toString().trim();
+                isbnField.setText("");
+                if (!TextUtils.isEmpty(isbn)) {
+                    sellByIsbn(isbn, statusView);
+                }
+                return true;
+            }
+        });
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.action_sell_by_isbn);
+        builder.setView(view);
+        builder.setPositiveButton(R.string.done, null);
+        builder.create().show();
+        isbnField.requestFocus();
+    }
+
+    //Helper method to sell one copy of the book with the ISBN and show the result in the status view
+    private void sellByIsbn(final String isbn, final TextView statusView) {
+        repository.sellByIsbn(isbn, 1, new BookRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer quantity) {
+                if (quantity >= 0) {
+                    statusView.setText(getString(R.string.sell_by_isbn_sold, isbn, quantity));
+                } else if (quantity == BookContract.SALE_UNKNOWN_ISBN) {
+                    statusView.setText(getString(R.string.sell_by_isbn_unknown, isbn));
+                } else {
+                    statusView.setText(getString(R.string.sell_by_isbn_out_of_stock, isbn));
+                }
+            }
+
+            @Override
+            public void onError(RuntimeException e) {
+                statusView.setText(getString(R.string.sell_by_isbn_failed, isbn));
+            }
+        });
+    }
+
     //Helper method to insert dummy data when the option is clicked in the menu
     private void insertData() {
         //Create values to be inserted
@@ -97,13 +281,288 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         values.put(BookEntry.COLUMN_SUPPLIER_NAME, "SuperNova");
         values.put(BookEntry.COLUMN_SUPPLIER_NUMBER, "789654321");
 
-        getContentResolver().insert(BookEntry.CONTENT_URI, values);
+        repository.insert(values, null);
+    }
+
+    //Helper method to let the user pick the catalogue file to import
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(Intent.createChooser(intent, getString(R.string.action_import)), REQUEST_IMPORT);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_DETAILS && resultCode == DetailsActivity.RESULT_DELETE_BOOK && data != null) {
+            deleteBook(data.getData());
+            return;
+        }
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        if (requestCode == REQUEST_IMPORT) {
+            startImport(data.getData());
+        } else if (requestCode == REQUEST_EXPORT) {
+            startExport(data.getData());
+        }
+    }
+
+    //Helper method to import the catalogue file in the background while showing its progress
+    private void startImport(Uri uri) {
+        if (importTask != null || exportTask != null) {
+            return;
+        }
+
+        showProgressDialog(R.string.import_in_progress, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialogInterface, int i) {
+                //CANCEL clicked, stop the import after the current chunk
+                if (importTask != null) {
+                    importTask.cancelImport();
+                }
+            }
+        });
+
+        importTask = new ImportTask(getContentResolver(), CatalogImporter.DEFAULT_CHUNK_SIZE, this);
+        importTask.execute(uri);
+    }
+
+    //Helper method to show a dialog with the progress of an import or export
+    private void showProgressDialog(int messageId, DialogInterface.OnClickListener cancelListener) {
+        progressDialog = new ProgressDialog(this);
+        progressDialog.setMessage(getString(messageId));
+        progressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        progressDialog.setMax(100);
+        progressDialog.setCancelable(false);
+        progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE, getString(R.string.cancel), cancelListener);
+        progressDialog.show();
+    }
+
+    //Helper method to dismiss the progress dialog if it is showing
+    private void dismissProgressDialog() {
+        if (progressDialog != null) {
+            progressDialog.dismiss();
+            progressDialog = null;
+        }
+    }
+
+    @Override
+    public void onImportProgress(int percent, int rowsRead) {
+        if (progressDialog == null) {
+            return;
+        }
+        progressDialog.setIndeterminate(percent < 0);
+        if (percent >= 0) {
+            progressDialog.setProgress(percent);
+        }
+        progressDialog.setMessage(getString(R.string.import_progress, rowsRead));
+    }
+
+    @Override
+    public void onImportFinished(ImportReport report) {
+        importTask = null;
+        dismissProgressDialog();
+        if (isFinishing()) {
+            return;
+        }
+
+        if (report == null) {
+            Toast.makeText(this, R.string.import_failed, Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        //Show how many rows were imported and why the first rejected rows failed
+        StringBuilder message = new StringBuilder(getString(R.string.import_result, report.getRowsImported(), report.getRowsFailed()));
+        int shownErrors = Math.min(MAX_SHOWN_ERRORS, report.getErrors().size());
+        for (int i = 0; i < shownErrors; i++) {
+            message.append('\n').append(report.getErrors().get(i));
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(report.isCancelled() ? R.string.import_cancelled : R.string.import_finished);
+        builder.setMessage(message);
+        builder.setPositiveButton(android.R.string.ok, null);
+        builder.create().show();
+    }
+
+    //Method to let the user choose the format of the exported file
+    private void showExportFormatDialog() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.action_export);
+        builder.setItems(R.array.export_formats, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialogInterface, int i) {
+                //The items are listed in the order of the format constants
+                exportFormat = i == 1 ? CatalogExporter.FORMAT_JSON : CatalogExporter.FORMAT_CSV;
+                pickExportFile();
+            }
+        });
+        builder.create().show();
+    }
+
+    //Helper method to let the user create the file the catalogue is exported to.
+    //Before KitKat there is no document picker, so the app's own external files directory is used
+    private void pickExportFile() {
+        boolean json = exportFormat == CatalogExporter.FORMAT_JSON;
+        String fileName = json ? "books.json" : "books.csv";
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType(json ? "application/json" : "text/csv");
+            intent.putExtra(Intent.EXTRA_TITLE, fileName);
+            startActivityForResult(intent, REQUEST_EXPORT);
+        } else {
+            //Finding the directory reads the disk, so it is done off the main thread
+            final Context appContext = getApplicationContext();
+            final String exportFileName = fileName;
+            repository.getReadExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    File directory = appContext.getExternalFilesDir(null);
+                    if (directory == null) {
+                        directory = appContext.getFilesDir();
+                    }
+                    final Uri uri = Uri.fromFile(new File(directory, exportFileName));
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!isFinishing()) {
+                                startExport(uri);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    //Helper method to export the catalogue in the background while showing its progress
+    private void startExport(Uri uri) {
+        if (importTask != null || exportTask != null) {
+            return;
+        }
+
+        showProgressDialog(R.string.export_in_progress, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialogInterface, int i) {
+                //CANCEL clicked, stop the export after the current window
+                if (exportTask != null) {
+                    exportTask.cancelExport();
+                }
+            }
+        });
+
+        exportTask = new ExportTask(getContentResolver(), exportFormat, null, null, this);
+        exportTask.execute(uri);
+    }
+
+    @Override
+    public void onExportProgress(int rowsWritten, int totalRows) {
+        if (progressDialog != null && totalRows > 0) {
+            progressDialog.setProgress(rowsWritten * 100 / totalRows);
+            progressDialog.setMessage(getString(R.string.export_progress, rowsWritten, totalRows));
+        }
+    }
+
+    @Override
+    public void onExportFinished(int rowsWritten, boolean cancelled) {
+        exportTask = null;
+        dismissProgressDialog();
+        if (isFinishing()) {
+            return;
+        }
+
+        if (rowsWritten < 0) {
+            Toast.makeText(this, R.string.export_failed, Toast.LENGTH_LONG).show();
+        } else if (cancelled) {
+            Toast.makeText(this, getString(R.string.export_cancelled, rowsWritten), Toast.LENGTH_LONG).show();
+        } else {
+            Toast.makeText(this, getString(R.string.export_finished, rowsWritten), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        searchHandler.removeCallbacks(searchRunnable);
+        listAdapter.setPager(null);
+        //An import or export keeps running, but this screen no longer shows its progress
+        dismissProgressDialog();
+        super.onDestroy();
+    }
+
+    //Helper method to delete one book when its details screen asks for it
+    private void deleteBook(Uri uri) {
+        final long id = ContentUris.parseId(uri);
+        repository.delete(uri, new BookRepository.Callback<BookRepository.Deletion>() {
+            @Override
+            public void onResult(BookRepository.Deletion deletion) {
+                if (deletion.rowsDeleted == 0) {
+                    Toast.makeText(MainActivity.this, "Delete unsuccessful", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                showUndo(getString(R.string.book_deleted), deletion.id, new Runnable() {
+                    @Override
+                    public void run() {
+                        CoverLoader.getInstance(MainActivity.this).deleteCover(id);
+                    }
+                });
+            }
+        });
     }
 
     //Helper method to delete all items when "Delete All" option in the menu is clicked
     private void deleteAll() {
-        int rowsDeleted = getContentResolver().delete(BookEntry.CONTENT_URI, null, null);
-        Toast.makeText(this, "Deleted " + rowsDeleted + " rows", Toast.LENGTH_SHORT).show();
+        repository.delete(BookEntry.CONTENT_URI, new BookRepository.Callback<BookRepository.Deletion>() {
+            @Override
+            public void onResult(BookRepository.Deletion deletion) {
+                if (deletion.rowsDeleted == 0) {
+                    return;
+                }
+                showUndo(getString(R.string.books_deleted, deletion.rowsDeleted), deletion.id, new Runnable() {
+                    @Override
+                    public void run() {
+                        //Books added since keep their covers
+                        final CoverLoader coverLoader = CoverLoader.getInstance(MainActivity.this);
+                        repository.getReadExecutor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                coverLoader.deleteOrphanedCovers();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    //Helper method to offer undoing the delete with the given id for a while. The covers of the deleted books are deleted
+    //by deleteCovers once the offer is gone without being taken, since they can't be brought back
+    private void showUndo(String message, final long deletionId, final Runnable deleteCovers) {
+        Snackbar snackbar = Snackbar.make(findViewById(R.id.list), message, UNDO_DURATION_MILLIS);
+        snackbar.setAction(R.string.undo, new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                repository.undoDelete(deletionId, new BookRepository.Callback<Integer>() {
+                    @Override
+                    public void onResult(Integer restored) {
+                        if (restored == 0) {
+                            Toast.makeText(MainActivity.this, R.string.undo_too_late, Toast.LENGTH_SHORT).show();
+                            deleteCovers.run();
+                        }
+                    }
+                });
+            }
+        });
+        snackbar.addCallback(new Snackbar.Callback() {
+            @Override
+            public void onDismissed(Snackbar bar, int event) {
+                if (event != DISMISS_EVENT_ACTION) {
+                    deleteCovers.run();
+                }
+            }
+        });
+        snackbar.show();
     }
 
     //Method to show confirmation dialog when DELETE is clicked
@@ -132,22 +591,4 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         AlertDialog alertDialog = builder.create();
         alertDialog.show();
     }
-
-    @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        //Perform SQL query "SELECT book_name, author, price, quantity, supplier_name FROM books"
-        String[] projection = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_AUTHOR, BookEntry.COLUMN_PRICE, BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_SUPPLIER_NUMBER};
-
-        return new CursorLoader(this, BookEntry.CONTENT_URI, projection, null, null, null);
-    }
-
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        cursorAdapter.swapCursor(cursor);
-    }
-
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        cursorAdapter.swapCursor(null);
-    }
 }
@@ -0,0 +1,60 @@
+package com.example.android.books;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import com.example.android.books.data.BookContract;
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.ProviderMetrics;
+
+//Debug screen that shows how often each operation of the provider ran, how long it took and how many rows it touched
+public class MetricsActivity extends AppCompatActivity {
+
+    private TextView textViewMetrics;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        textViewMetrics = findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            //Respond to a click on the "Refresh" menu option
+            case R.id.action_refresh_metrics:
+                showMetrics();
+                return true;
+            //Respond to a click on the "Reset" menu option
+            case R.id.action_reset_metrics:
+                getContentResolver().call(BookEntry.CONTENT_URI, BookContract.METHOD_RESET_METRICS, null, null);
+                showMetrics();
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    //Helper method to read the counters from the provider and show them.
+    //Reading them only copies counters in memory, so it doesn't need a background thread
+    private void showMetrics() {
+        Bundle metrics = getContentResolver().call(BookEntry.CONTENT_URI, BookContract.METHOD_GET_METRICS, null, null);
+        textViewMetrics.setText(metrics == null ? "" : ProviderMetrics.format(metrics));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.android.books.catalog;
+
+import android.content.ContentValues;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+//Columns of the books table that can be imported and exported, and the conversion
+//of their text form from a catalogue file to the values stored by the provider
+final class CatalogColumns {
+
+    //Columns in the order they are written to catalogue files
+    static final String[] ALL = {
+            BookEntry.COLUMN_BOOK_NAME,
+            BookEntry.COLUMN_AUTHOR,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_NUMBER,
+            BookEntry.COLUMN_ISBN};
+
+    private CatalogColumns() {
+
+    }
+
+    //Returns true if the column can be read from a catalogue file
+    static boolean isKnown(String column) {
+        for (String known : ALL) {
+            if (known.equals(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Returns true if the column holds a whole number
+    static boolean isInteger(String column) {
+        return BookEntry.COLUMN_PRICE.equals(column) || BookEntry.COLUMN_QUANTITY.equals(column);
+    }
+
+    //Puts the text value of a column into values with the type the provider expects.
+    //Empty values are left out, invalid numbers throw an exception describing the column
+    static void put(ContentValues values, String column, String text) {
+        if (text == null) {
+            return;
+        }
+        text = text.trim();
+        if (text.isEmpty()) {
+            return;
+        }
+        if (isInteger(column)) {
+            try {
+                values.put(column, Integer.parseInt(text));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + column + ": " + text);
+            }
+        } else {
+            values.put(column, text);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.android.books.catalog;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.JsonWriter;
+
+import com.example.android.books.data.BookContract;
+import com.example.android.books.data.BookContract.BookEntry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+//Exports books from the provider to a CSV or JSON catalogue file that the importer can read back.
+//Rows are read in windows ordered by _id and written straight from the cursor to a buffered writer,
+//so memory use depends on the window size only, never on the number of books.
+//Must be run off the main thread
+public class CatalogExporter {
+
+    //Formats of the exported file
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_JSON = 1;
+
+    //Default number of rows read from the provider at a time
+    public static final int DEFAULT_WINDOW_SIZE = 500;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //Callback that receives the progress of an export
+    public interface ProgressListener {
+        //Called after every window with the number of rows written so far and the number of rows to write
+        void onProgress(int rowsWritten, int totalRows);
+    }
+
+    private final ContentResolver contentResolver;
+    private final int windowSize;
+
+    private volatile boolean cancelled = false;
+
+    public CatalogExporter(ContentResolver contentResolver, int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        this.contentResolver = contentResolver;
+        this.windowSize = windowSize;
+    }
+
+    //Stops a running export after the current window
+    public void cancel() {
+        cancelled = true;
+    }
+
+    //Exports the books matching the filter to the file with the given URI.
+    //Columns must be catalogue columns, or null to export all of them.
+    //Returns the number of rows written
+    public int exportCatalog(Uri uri, int format, String[] columns, ExportFilter filter, ProgressListener listener) throws IOException {
+        OutputStream outputStream = contentResolver.openOutputStream(uri);
+        if (outputStream == null) {
+            throw new IOException("Cannot open " + uri);
+        }
+        try {
+            return exportCatalog(outputStream, format, columns, filter, listener);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    //Exports the books matching the filter to the stream, returning the number of rows written
+    public int exportCatalog(OutputStream outputStream, int format, String[] columns, ExportFilter filter, ProgressListener listener) throws IOException {
+        if (columns == null) {
+            columns = CatalogColumns.ALL;
+        }
+        for (String column : columns) {
+            if (!CatalogColumns.isKnown(column)) {
+                throw new IllegalArgumentException("Unknown column " + column);
+            }
+        }
+        if (filter == null) {
+            filter = ExportFilter.ALL;
+        }
+
+        //Projection starts with the id, which is used to read the next window
+        String[] projection = new String[columns.length + 1];
+        projection[0] = BookEntry._ID;
+        System.arraycopy(columns, 0, projection, 1, columns.length);
+
+        int totalRows = countRows(filter);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8), 16 * 1024);
+        RowWriter rowWriter = format == FORMAT_JSON ? new JsonRowWriter(writer, columns) : new CsvRowWriter(writer, columns);
+
+        rowWriter.begin();
+        int rowsWritten = 0;
+        long lastId = -1;
+        while (!cancelled) {
+            Cursor cursor = queryWindow(projection, filter, lastId);
+            if (cursor == null) {
+                throw new IOException("Query failed");
+            }
+            int rowsInWindow;
+            try {
+                rowsInWindow = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    rowWriter.writeRow(cursor);
+                    lastId = cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            rowsWritten += rowsInWindow;
+            if (listener != null) {
+                listener.onProgress(rowsWritten, Math.max(totalRows, rowsWritten));
+            }
+            //A window that isn't full is the last one
+            if (rowsInWindow < windowSize) {
+                break;
+            }
+        }
+        rowWriter.end();
+        writer.flush();
+        return rowsWritten;
+    }
+
+    //Helper method that queries the next window of rows after the given id.
+    //Seeking by id keeps every window as cheap as the first one, unlike an offset
+    private Cursor queryWindow(String[] projection, ExportFilter filter, long lastId) {
+        StringBuilder selection = new StringBuilder(BookEntry._ID + " > ?");
+        List<String> selectionArgs = new ArrayList<>();
+        selectionArgs.add(String.valueOf(lastId));
+        filter.appendTo(selection, selectionArgs);
+
+        Uri windowUri = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(windowSize))
+                .build();
+        return contentResolver.query(windowUri, projection, selection.toString(),
+                selectionArgs.toArray(new String[selectionArgs.size()]), BookEntry._ID);
+    }
+
+    //Helper method that counts the rows matching the filter, used for the progress
+    private int countRows(ExportFilter filter) {
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, new String[] {"COUNT(*)"},
+                filter.getSelection(), filter.getSelectionArgs(), null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //Writes rows in the format of the file. The first column of the cursor is the id, which isn't written
+    private interface RowWriter {
+        void begin() throws IOException;
+
+        void writeRow(Cursor cursor) throws IOException;
+
+        void end() throws IOException;
+    }
+
+    //Writes a header record with the column names followed by one record per row
+    private static class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+        private final String[] columns;
+
+        CsvRowWriter(Writer writer, String[] columns) {
+            this.writer = writer;
+            this.columns = columns;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeField(columns[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void writeRow(Cursor cursor) throws IOException {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (!cursor.isNull(i + 1)) {
+                    writeField(cursor.getString(i + 1));
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void end() {
+
+        }
+
+        //Helper method that writes a field, quoting it only if it contains special characters
+        private void writeField(String value) throws IOException {
+            boolean needsQuotes = false;
+            for (int i = 0; i < value.length() && !needsQuotes; i++) {
+                char c = value.charAt(i);
+                needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!needsQuotes) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    writer.write('"');
+                }
+                writer.write(c);
+            }
+            writer.write('"');
+        }
+    }
+
+    //Writes an array with one object per row, using the column names as keys
+    private static class JsonRowWriter implements RowWriter {
+
+        private final JsonWriter writer;
+        private final String[] columns;
+
+        JsonRowWriter(Writer writer, String[] columns) {
+            this.writer = new JsonWriter(writer);
+            this.columns = columns;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            writer.beginArray();
+        }
+
+        @Override
+        public void writeRow(Cursor cursor) throws IOException {
+            writer.beginObject();
+            for (int i = 0; i < columns.length; i++) {
+                writer.name(columns[i]);
+                if (cursor.isNull(i + 1)) {
+                    writer.nullValue();
+                } else if (CatalogColumns.isInteger(columns[i])) {
+                    writer.value(cursor.getLong(i + 1));
+                } else {
+                    writer.value(cursor.getString(i + 1));
+                }
+            }
+            writer.endObject();
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.endArray();
+            writer.flush();
+        }
+    }
+}
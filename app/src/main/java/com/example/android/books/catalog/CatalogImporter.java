@@ -0,0 +1,212 @@
+package com.example.android.books.catalog;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.net.Uri;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookValidator;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+//Imports books from a CSV or JSON catalogue file into the provider.
+//The file is streamed row by row and stored in chunks through bulkInsert(), so memory use
+//depends on the chunk size only, never on the size of the file.
+//Must be run off the main thread
+public class CatalogImporter {
+
+    //Default number of rows stored in one transaction
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //Callback that receives the progress of an import
+    public interface ProgressListener {
+        //Called after every stored chunk with the number of rows and bytes read so far
+        void onProgress(int rowsRead, long bytesRead);
+    }
+
+    private final ContentResolver contentResolver;
+    private final int chunkSize;
+
+    private volatile boolean cancelled = false;
+
+    public CatalogImporter(ContentResolver contentResolver, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.contentResolver = contentResolver;
+        this.chunkSize = chunkSize;
+    }
+
+    //Stops a running import after the current chunk. Chunks that were already stored are kept
+    public void cancel() {
+        cancelled = true;
+    }
+
+    //Imports the catalogue file with the given URI
+    public ImportReport importCatalog(Uri uri, ProgressListener listener) throws IOException {
+        InputStream inputStream = contentResolver.openInputStream(uri);
+        if (inputStream == null) {
+            throw new IOException("Cannot open " + uri);
+        }
+        try {
+            return importCatalog(inputStream, listener);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    //Imports a catalogue from the stream, detecting CSV or JSON from its first character
+    public ImportReport importCatalog(InputStream inputStream, ProgressListener listener) throws IOException {
+        CountingInputStream countingStream = new CountingInputStream(inputStream);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(countingStream, UTF_8));
+        RowSource rowSource = isJson(reader) ? new JsonRowSource(reader) : new CsvRowSource(reader);
+
+        ImportReport report = new ImportReport();
+        //The chunk and its rows are allocated once and reused for the whole file
+        ContentValues[] chunk = new ContentValues[chunkSize];
+        int[] rowNumbers = new int[chunkSize];
+        for (int i = 0; i < chunkSize; i++) {
+            chunk[i] = new ContentValues();
+        }
+
+        int rowsRead = 0;
+        int chunkLength = 0;
+        while (!cancelled) {
+            ContentValues values = chunk[chunkLength];
+            boolean hasRow;
+            try {
+                hasRow = rowSource.next(values);
+                if (hasRow) {
+                    BookValidator.validateBook(values);
+                }
+            } catch (IllegalArgumentException e) {
+                //Invalid row, report it and continue with the next one
+                rowsRead++;
+                report.addError(rowSource.getRowNumber(), e.getMessage());
+                continue;
+            }
+            if (!hasRow) {
+                break;
+            }
+
+            rowsRead++;
+            rowNumbers[chunkLength] = rowSource.getRowNumber();
+            chunkLength++;
+            //Storing a full chunk blocks the parser, so reading never runs ahead of the database
+            if (chunkLength == chunkSize) {
+                storeChunk(chunk, rowNumbers, chunkLength, report);
+                chunkLength = 0;
+                if (listener != null) {
+                    listener.onProgress(rowsRead, countingStream.getCount());
+                }
+            }
+        }
+
+        if (cancelled) {
+            report.setCancelled();
+        } else if (chunkLength > 0) {
+            storeChunk(chunk, rowNumbers, chunkLength, report);
+            if (listener != null) {
+                listener.onProgress(rowsRead, countingStream.getCount());
+            }
+        }
+        return report;
+    }
+
+    //Helper method to store a chunk of valid rows in one transaction.
+    //If the database rejects the chunk, the rows are stored one by one to find the failing ones
+    private void storeChunk(ContentValues[] chunk, int[] rowNumbers, int length, ImportReport report) {
+        ContentValues[] rows = chunk;
+        if (length < chunk.length) {
+            rows = new ContentValues[length];
+            System.arraycopy(chunk, 0, rows, 0, length);
+        }
+
+        try {
+            report.addImported(contentResolver.bulkInsert(BookEntry.CONTENT_URI, rows));
+            return;
+        } catch (SQLException | IllegalArgumentException e) {
+            //The provider rejects some rows with an IllegalArgumentException too, like an ISBN still held by a deleted book.
+            //Fall through to storing the rows one by one
+        }
+
+        for (int i = 0; i < length; i++) {
+            try {
+                if (contentResolver.insert(BookEntry.CONTENT_URI, rows[i]) != null) {
+                    report.addImported(1);
+                } else {
+                    report.addError(rowNumbers[i], "Failed to insert row");
+                }
+            } catch (SQLException | IllegalArgumentException e) {
+                report.addError(rowNumbers[i], e.getMessage());
+            }
+        }
+    }
+
+    //Helper method that peeks at the first non-whitespace character to tell JSON from CSV
+    private static boolean isJson(BufferedReader reader) throws IOException {
+        reader.mark(1024);
+        try {
+            int c;
+            int skipped = 0;
+            while ((c = reader.read()) != -1 && skipped < 1024 - 1) {
+                //Skip the byte order mark and whitespace
+                if (c == '\uFEFF' || Character.isWhitespace(c)) {
+                    skipped++;
+                    continue;
+                }
+                return c == '[';
+            }
+            return false;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    //Input stream that counts the bytes read through it, used to report progress
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
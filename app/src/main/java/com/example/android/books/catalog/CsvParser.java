@@ -0,0 +1,115 @@
+package com.example.android.books.catalog;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+//Streaming parser for comma separated values that reads one record at a time.
+//Fields may be wrapped in double quotes, which allows commas, line breaks and escaped ("") quotes inside them
+class CsvParser {
+
+    //Longest field accepted, so that a broken file can't make a single field grow without limit
+    static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+    private final Reader reader;
+
+    //Builder reused for every field
+    private final StringBuilder field = new StringBuilder();
+
+    //Fields of the record being read, reused for every record
+    private final ArrayList<String> fields = new ArrayList<>();
+
+    //Line the reader is currently on, and the line the last record started on
+    private int currentLine = 1;
+    private int recordLine = 0;
+
+    //Character that was read ahead and has to be returned by the next read()
+    private int pushedBack = -2;
+
+    CsvParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    //Returns the fields of the next record, or null at the end of the input
+    String[] readRecord() throws IOException {
+        int c = read();
+        //Skip blank lines between records
+        while (c == '\r' || c == '\n') {
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+
+        recordLine = currentLine;
+        fields.clear();
+        field.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field on line " + recordLine);
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        //Escaped quote inside a quoted field
+                        append('"');
+                    } else {
+                        //End of the quoted part, handle the next character as unquoted
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                //Treat "\r\n" as a single line break
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        pushedBack = next;
+                    }
+                }
+                fields.add(field.toString());
+                break;
+            } else {
+                append((char) c);
+            }
+            c = read();
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    //Returns the line number on which the last record returned by readRecord() started
+    int getRecordLine() {
+        return recordLine;
+    }
+
+    private void append(char c) throws IOException {
+        if (field.length() >= MAX_FIELD_LENGTH) {
+            throw new IOException("Field too long on line " + recordLine);
+        }
+        field.append(c);
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pushedBack != -2) {
+            c = pushedBack;
+            pushedBack = -2;
+        } else {
+            c = reader.read();
+        }
+        if (c == '\n') {
+            currentLine++;
+        }
+        return c;
+    }
+}
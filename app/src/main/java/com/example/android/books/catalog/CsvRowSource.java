@@ -0,0 +1,60 @@
+package com.example.android.books.catalog;
+
+import android.content.ContentValues;
+
+import java.io.IOException;
+import java.io.Reader;
+
+//Reads book rows from a CSV file whose first record names the columns
+class CsvRowSource implements RowSource {
+
+    private final CsvParser parser;
+
+    //Column name for each field position, or null for fields that are ignored
+    private String[] columns;
+
+    CsvRowSource(Reader reader) {
+        parser = new CsvParser(reader);
+    }
+
+    @Override
+    public boolean next(ContentValues values) throws IOException {
+        if (columns == null && !readHeader()) {
+            return false;
+        }
+
+        String[] fields = parser.readRecord();
+        if (fields == null) {
+            return false;
+        }
+
+        values.clear();
+        int count = Math.min(fields.length, columns.length);
+        for (int i = 0; i < count; i++) {
+            if (columns[i] != null) {
+                CatalogColumns.put(values, columns[i], fields[i]);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getRowNumber() {
+        return parser.getRecordLine();
+    }
+
+    //Helper method to map the field positions to column names using the header record
+    private boolean readHeader() throws IOException {
+        String[] header = parser.readRecord();
+        if (header == null) {
+            return false;
+        }
+        columns = new String[header.length];
+        for (int i = 0; i < header.length; i++) {
+            //The first column may carry a byte order mark
+            String column = header[i].replace("\uFEFF", "").trim();
+            columns[i] = CatalogColumns.isKnown(column) ? column : null;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.android.books.catalog;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Rows to include in a catalogue export: a range of quantities and optionally a single supplier
+public class ExportFilter {
+
+    //Used for a bound of the quantity range that isn't limited
+    public static final int NO_LIMIT = -1;
+
+    //Filter that includes every book
+    public static final ExportFilter ALL = new ExportFilter(NO_LIMIT, NO_LIMIT, null);
+
+    private final int minQuantity;
+    private final int maxQuantity;
+    private final String supplierName;
+
+    public ExportFilter(int minQuantity, int maxQuantity, String supplierName) {
+        this.minQuantity = minQuantity;
+        this.maxQuantity = maxQuantity;
+        this.supplierName = supplierName;
+    }
+
+    //Appends the conditions of this filter to the selection and its arguments
+    void appendTo(StringBuilder selection, List<String> selectionArgs) {
+        if (minQuantity != NO_LIMIT) {
+            append(selection, BookEntry.COLUMN_QUANTITY + " >= ?");
+            selectionArgs.add(String.valueOf(minQuantity));
+        }
+        if (maxQuantity != NO_LIMIT) {
+            append(selection, BookEntry.COLUMN_QUANTITY + " <= ?");
+            selectionArgs.add(String.valueOf(maxQuantity));
+        }
+        if (supplierName != null) {
+            append(selection, BookEntry.COLUMN_SUPPLIER_NAME + " = ?");
+            selectionArgs.add(supplierName);
+        }
+    }
+
+    //Returns the selection of this filter, or null if it includes every book
+    String getSelection() {
+        StringBuilder selection = new StringBuilder();
+        appendTo(selection, new ArrayList<String>());
+        return selection.length() == 0 ? null : selection.toString();
+    }
+
+    //Returns the arguments of the selection of this filter
+    String[] getSelectionArgs() {
+        List<String> selectionArgs = new ArrayList<>();
+        appendTo(new StringBuilder(), selectionArgs);
+        return selectionArgs.toArray(new String[selectionArgs.size()]);
+    }
+
+    private static void append(StringBuilder selection, String condition) {
+        if (selection.length() > 0) {
+            selection.append(" AND ");
+        }
+        selection.append(condition);
+    }
+}
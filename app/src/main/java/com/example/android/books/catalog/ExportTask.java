@@ -0,0 +1,84 @@
+package com.example.android.books.catalog;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+
+//Runs a catalogue export on a background thread and reports its progress to the UI
+public class ExportTask extends AsyncTask<Uri, Integer, Integer> {
+
+    private static final String LOG_TAG = ExportTask.class.getSimpleName();
+
+    //Callbacks the UI receives on the main thread
+    public interface Callbacks {
+        //Called with the number of rows written so far and the number of rows to write
+        void onExportProgress(int rowsWritten, int totalRows);
+
+        //Called when the export has finished or was cancelled, with the number of rows written,
+        //or -1 if the file couldn't be written
+        void onExportFinished(int rowsWritten, boolean cancelled);
+    }
+
+    private final CatalogExporter exporter;
+    private final int format;
+    private final String[] columns;
+    private final ExportFilter filter;
+
+    //Weak, so that a running export doesn't keep a closed screen in memory
+    private final WeakReference<Callbacks> callbacks;
+
+    public ExportTask(ContentResolver contentResolver, int format, String[] columns, ExportFilter filter, Callbacks callbacks) {
+        this.exporter = new CatalogExporter(contentResolver, CatalogExporter.DEFAULT_WINDOW_SIZE);
+        this.format = format;
+        this.columns = columns;
+        this.filter = filter;
+        this.callbacks = new WeakReference<>(callbacks);
+    }
+
+    //Stops the export after the window that is being written
+    public void cancelExport() {
+        exporter.cancel();
+        cancel(false);
+    }
+
+    @Override
+    protected Integer doInBackground(Uri... uris) {
+        Uri uri = uris[0];
+        try {
+            return exporter.exportCatalog(uri, format, columns, filter, new CatalogExporter.ProgressListener() {
+                @Override
+                public void onProgress(int rowsWritten, int totalRows) {
+                    publishProgress(rowsWritten, totalRows);
+                }
+            });
+        } catch (IOException | IllegalStateException e) {
+            Log.e(LOG_TAG, "Failed to export to " + uri, e);
+            return -1;
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        Callbacks target = callbacks.get();
+        if (target != null) {
+            target.onExportProgress(values[0], values[1]);
+        }
+    }
+
+    @Override
+    protected void onPostExecute(Integer rowsWritten) {
+        Callbacks target = callbacks.get();
+        if (target != null) {
+            target.onExportFinished(rowsWritten, isCancelled());
+        }
+    }
+
+    @Override
+    protected void onCancelled(Integer rowsWritten) {
+        onPostExecute(rowsWritten == null ? 0 : rowsWritten);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.android.books.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Outcome of a catalogue import: how many rows were stored, and why the others were rejected
+public class ImportReport {
+
+    //Only the first errors are kept, so that a file full of bad rows can't exhaust memory
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    private int rowsImported = 0;
+    private int rowsFailed = 0;
+    private boolean cancelled = false;
+    private final List<String> errors = new ArrayList<>();
+
+    void addImported(int rows) {
+        rowsImported += rows;
+    }
+
+    void addError(int rowNumber, String message) {
+        rowsFailed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("Row " + rowNumber + ": " + message);
+        }
+    }
+
+    void setCancelled() {
+        cancelled = true;
+    }
+
+    public int getRowsImported() {
+        return rowsImported;
+    }
+
+    public int getRowsFailed() {
+        return rowsFailed;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    //Returns the messages of the first rejected rows, one per row
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+}
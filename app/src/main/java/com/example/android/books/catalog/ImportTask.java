@@ -0,0 +1,106 @@
+package com.example.android.books.catalog;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+
+//Runs a catalogue import on a background thread and reports its progress to the UI
+public class ImportTask extends AsyncTask<Uri, Integer, ImportReport> {
+
+    private static final String LOG_TAG = ImportTask.class.getSimpleName();
+
+    //Callbacks the UI receives on the main thread
+    public interface Callbacks {
+        //Called with the percentage of the file read so far, or -1 if the size of the file is unknown,
+        //and the number of rows read so far
+        void onImportProgress(int percent, int rowsRead);
+
+        //Called when the import has finished or was cancelled. The report is null if the file couldn't be read
+        void onImportFinished(ImportReport report);
+    }
+
+    private final ContentResolver contentResolver;
+    private final CatalogImporter importer;
+
+    //Weak, so that a running import doesn't keep a closed screen in memory
+    private final WeakReference<Callbacks> callbacks;
+
+    public ImportTask(ContentResolver contentResolver, int chunkSize, Callbacks callbacks) {
+        this.contentResolver = contentResolver;
+        this.importer = new CatalogImporter(contentResolver, chunkSize);
+        this.callbacks = new WeakReference<>(callbacks);
+    }
+
+    //Stops the import after the chunk that is being stored
+    public void cancelImport() {
+        importer.cancel();
+        cancel(false);
+    }
+
+    @Override
+    protected ImportReport doInBackground(Uri... uris) {
+        Uri uri = uris[0];
+        final long size = querySize(uri);
+        try {
+            return importer.importCatalog(uri, new CatalogImporter.ProgressListener() {
+                @Override
+                public void onProgress(int rowsRead, long bytesRead) {
+                    int percent = size > 0 ? (int) Math.min(100, bytesRead * 100 / size) : -1;
+                    publishProgress(percent, rowsRead);
+                }
+            });
+        } catch (IOException | IllegalStateException e) {
+            Log.e(LOG_TAG, "Failed to import " + uri, e);
+            return null;
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        Callbacks target = callbacks.get();
+        if (target != null) {
+            target.onImportProgress(values[0], values[1]);
+        }
+    }
+
+    @Override
+    protected void onPostExecute(ImportReport report) {
+        Callbacks target = callbacks.get();
+        if (target != null) {
+            target.onImportFinished(report);
+        }
+    }
+
+    @Override
+    protected void onCancelled(ImportReport report) {
+        onPostExecute(report);
+    }
+
+    //Helper method to get the size of the file in bytes, or -1 if the size is unknown
+    private long querySize(Uri uri) {
+        Cursor cursor;
+        try {
+            cursor = contentResolver.query(uri, new String[] {OpenableColumns.SIZE}, null, null, null);
+        } catch (RuntimeException e) {
+            //Some providers don't support the size column
+            return -1;
+        }
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+            return -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
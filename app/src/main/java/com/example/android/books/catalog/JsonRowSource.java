@@ -0,0 +1,68 @@
+package com.example.android.books.catalog;
+
+import android.content.ContentValues;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+//Reads book rows from a JSON array of objects, one object per book,
+//using the column names as keys. The array is streamed, never held in memory as a whole
+class JsonRowSource implements RowSource {
+
+    private final JsonReader reader;
+
+    private boolean started = false;
+
+    //Number of the last object read from the array
+    private int rowNumber = 0;
+
+    JsonRowSource(Reader reader) {
+        this.reader = new JsonReader(reader);
+    }
+
+    @Override
+    public boolean next(ContentValues values) throws IOException {
+        if (!started) {
+            reader.beginArray();
+            started = true;
+        }
+        if (!reader.hasNext()) {
+            reader.endArray();
+            return false;
+        }
+
+        rowNumber++;
+        values.clear();
+        reader.beginObject();
+        //Keep reading to the end of the object even if a value is invalid,
+        //so that the following rows can still be read
+        IllegalArgumentException invalidValue = null;
+        while (reader.hasNext()) {
+            String column = reader.nextName();
+            if (!CatalogColumns.isKnown(column) || reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            //nextString() also returns numbers in their text form
+            String text = reader.nextString();
+            try {
+                CatalogColumns.put(values, column, text);
+            } catch (IllegalArgumentException e) {
+                invalidValue = e;
+            }
+        }
+        reader.endObject();
+
+        if (invalidValue != null) {
+            throw invalidValue;
+        }
+        return true;
+    }
+
+    @Override
+    public int getRowNumber() {
+        return rowNumber;
+    }
+}
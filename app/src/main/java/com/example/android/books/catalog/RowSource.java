@@ -0,0 +1,16 @@
+package com.example.android.books.catalog;
+
+import android.content.ContentValues;
+
+import java.io.IOException;
+
+//Source of book rows that are read one at a time from a catalogue file
+interface RowSource {
+
+    //Clears values and fills them with the next row.
+    //Returns false when there are no more rows
+    boolean next(ContentValues values) throws IOException;
+
+    //Returns the line or record number of the last row read, used in error reports
+    int getRowNumber();
+}
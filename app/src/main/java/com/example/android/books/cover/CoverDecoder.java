@@ -0,0 +1,98 @@
+package com.example.android.books.cover;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+//Decodes cover images at the size they are shown at. Covers are usually photos far larger than a row of the list,
+//so they are decoded with a sample size that skips most of their pixels, instead of decoding them whole and scaling down
+final class CoverDecoder {
+
+    private CoverDecoder() {
+
+    }
+
+    //Returns the largest power of 2 the image can be divided by while still covering the requested size
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    //Decodes the image of the file scaled down to cover the requested size, keeping its aspect ratio.
+    //Returns null if the file isn't an image
+    static Bitmap decode(File file, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        //Read the size of the image first, without decoding its pixels
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (!prepareOptions(options, reqWidth, reqHeight)) {
+            return null;
+        }
+        return scale(BitmapFactory.decodeFile(file.getPath(), options), reqWidth, reqHeight);
+    }
+
+    //Decodes the image of the content URI like decode(File), for images that aren't stored yet.
+    //The stream is opened twice, once for the size and once for the pixels
+    static Bitmap decode(ContentResolver contentResolver, Uri uri, int reqWidth, int reqHeight) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(contentResolver, uri, options);
+        if (!prepareOptions(options, reqWidth, reqHeight)) {
+            return null;
+        }
+        return scale(decodeStream(contentResolver, uri, options), reqWidth, reqHeight);
+    }
+
+    //Helper method to set the options decoding the pixels, once the size of the image has been read.
+    //Returns false if the size couldn't be read because the source isn't an image
+    private static boolean prepareOptions(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return false;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        //Covers have no transparency, so 2 bytes per pixel are enough and take half the memory
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return true;
+    }
+
+    //Helper method to decode the stream of a content URI with the options
+    private static Bitmap decodeStream(ContentResolver contentResolver, Uri uri, BitmapFactory.Options options)
+            throws IOException {
+        InputStream in = contentResolver.openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Can't open " + uri);
+        }
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    //Helper method to scale a sampled bitmap the rest of the way, since sampling only divides by powers of 2,
+    //so the caches hold no extra pixels
+    private static Bitmap scale(Bitmap bitmap, int reqWidth, int reqHeight) {
+        if (bitmap == null) {
+            return null;
+        }
+        float scale = Math.max((float) reqWidth / bitmap.getWidth(), (float) reqHeight / bitmap.getHeight());
+        if (scale >= 1) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)), Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+}
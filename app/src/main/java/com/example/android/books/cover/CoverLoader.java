@@ -0,0 +1,381 @@
+package com.example.android.books.cover;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.example.android.books.R;
+import com.example.android.books.data.BookContract.BookEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+//Shows the covers of the books in image views without touching the disk on the main thread.
+//A cover is looked up in a memory cache of decoded thumbnails, then in a disk cache of thumbnails, and only then
+//decoded from its full-size image, scaled down to the size of the view. Reads and decodes run on a small pool
+//of background threads, newest request first, so the rows that just scrolled into view are served before the ones
+//that already scrolled past. A view that is bound to another book cancels the request of the book it showed before
+public class CoverLoader {
+
+    private static final String LOG_TAG = CoverLoader.class.getSimpleName();
+
+    //Number of threads that read and decode covers. Decoding is limited by memory bandwidth, more threads don't help
+    private static final int THREADS = 2;
+
+    //Share of the heap of the app the decoded thumbnails may take
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+
+    //Bytes the thumbnails may take on disk
+    private static final long DISK_CACHE_BYTES = 32 * 1024 * 1024;
+
+    private static CoverLoader instance;
+
+    //Notified on the main thread when the cover of a book has changed, so views showing it can load it again
+    public interface Listener {
+        void onCoverChanged(long bookId);
+    }
+
+    private final Context appContext;
+    private final ContentResolver contentResolver;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor executor;
+    private final List<Listener> listeners = new ArrayList<>();
+
+    //Created on first use, since finding their directories reads the disk. Guarded by this
+    private CoverStore store;
+    private ThumbnailDiskCache diskCache;
+
+    //Books known to have no cover, so binding them again doesn't look for a file every time
+    private final Set<Long> missingCovers = Collections.synchronizedSet(new HashSet<Long>());
+
+    private CoverLoader(Context context) {
+        appContext = context.getApplicationContext();
+        contentResolver = appContext.getContentResolver();
+        memoryCache = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        //A deque taking new tasks at its head runs the newest request first
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS, new LinkedBlockingDeque<Runnable>() {
+            @Override
+            public boolean offer(Runnable task) {
+                return offerFirst(task);
+            }
+        }, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, LOG_TAG);
+            }
+        });
+    }
+
+    public static synchronized CoverLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new CoverLoader(context);
+        }
+        return instance;
+    }
+
+    //Shows the cover of a book in the view, scaled to the size of its layout, or the placeholder if the book has none.
+    //Replaces any request still running for the view. Must be called on the main thread
+    public void load(long bookId, ImageView view, int placeholderId) {
+        cancel(view);
+        int width = getWidth(view);
+        int height = getHeight(view);
+        if (width <= 0 || height <= 0 || missingCovers.contains(bookId)) {
+            view.setImageResource(placeholderId);
+            return;
+        }
+
+        String key = getKey(bookId, width, height);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+            return;
+        }
+        view.setImageResource(placeholderId);
+        submit(new Request(bookId, null, key, width, height, view));
+    }
+
+    //Shows an image that isn't a cover yet, like the one just chosen for a book that is being edited.
+    //The image is decoded in the background at the size of the view and isn't cached. Must be called on the main thread
+    public void preview(Uri source, ImageView view, int placeholderId) {
+        cancel(view);
+        view.setImageResource(placeholderId);
+        int width = getWidth(view);
+        int height = getHeight(view);
+        if (width > 0 && height > 0) {
+            submit(new Request(-1, source, null, width, height, view));
+        }
+    }
+
+    //Cancels the request running for the view, for example because its row was recycled. Must be called on the main thread
+    public void cancel(ImageView view) {
+        Request request = (Request) view.getTag(R.id.cover_request);
+        if (request == null) {
+            return;
+        }
+        view.setTag(R.id.cover_request, null);
+        request.cancelled = true;
+        if (request.future != null) {
+            request.future.cancel(false);
+            //Take the cancelled request out of the queue, so fast scrolling doesn't fill it with dead requests
+            if (request.future instanceof Runnable) {
+                executor.remove((Runnable) request.future);
+            }
+        }
+    }
+
+    //Saves the image of the content URI as the cover of a book in the background. The thumbnails of the old cover
+    //are dropped and the listeners are notified once the cover is saved
+    public void setCover(final long bookId, final Uri source) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    InputStream in = contentResolver.openInputStream(source);
+                    if (in == null) {
+                        throw new IOException("Can't open " + source);
+                    }
+                    try {
+                        getStore().save(bookId, in);
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException | SecurityException e) {
+                    Log.e(LOG_TAG, "Can't save the cover of book " + bookId, e);
+                    return;
+                }
+                coverChanged(bookId);
+            }
+        });
+    }
+
+    //Deletes the cover of a book in the background
+    public void deleteCover(final long bookId) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (getStore().delete(bookId)) {
+                    coverChanged(bookId);
+                }
+            }
+        });
+    }
+
+    //Deletes the covers of the books that no longer exist, for example because they were deleted on another device
+    //or their delete can no longer be undone.
+    //Runs on the calling thread, so it must be called off the main thread
+    public void deleteOrphanedCovers() {
+        Set<Long> bookIds = new HashSet<>();
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, new String[] {BookEntry._ID}, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                bookIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        for (long bookId : getStore().getBookIds()) {
+            if (!bookIds.contains(bookId) && getStore().delete(bookId)) {
+                coverChanged(bookId);
+            }
+        }
+    }
+
+    //Adds a listener notified when a cover changes. Must be called on the main thread
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    //Returns the number of bytes the decoded thumbnails in memory take
+    public int getMemoryCacheSize() {
+        return memoryCache.size();
+    }
+
+    //Returns the number of bytes the thumbnails on disk take. Reads the disk the first time, so must be called off the main thread
+    public long getDiskCacheSize() {
+        return getDiskCache().getSize();
+    }
+
+    //Helper method to get the store of the covers. Finds its directory on first use, so must be called off the main thread
+    private synchronized CoverStore getStore() {
+        if (store == null) {
+            store = new CoverStore(new File(appContext.getFilesDir(), "covers"));
+        }
+        return store;
+    }
+
+    //Helper method to get the disk cache of the thumbnails. Finds its directory on first use, so must be called off the main thread
+    private synchronized ThumbnailDiskCache getDiskCache() {
+        if (diskCache == null) {
+            diskCache = new ThumbnailDiskCache(new File(appContext.getCacheDir(), "cover_thumbnails"), DISK_CACHE_BYTES);
+        }
+        return diskCache;
+    }
+
+    //Helper method that drops the cached thumbnails of a book and notifies the listeners. Runs on a background thread
+    private void coverChanged(final long bookId) {
+        missingCovers.remove(bookId);
+        getDiskCache().removeAll(bookId + "_");
+        String prefix = bookId + "_";
+        for (String key : memoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                memoryCache.remove(key);
+            }
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : new ArrayList<>(listeners)) {
+                    listener.onCoverChanged(bookId);
+                }
+            }
+        });
+    }
+
+    //Helper method to run a request for its view, which keeps it as a tag until it is done or cancelled
+    private void submit(Request request) {
+        request.view.setTag(R.id.cover_request, request);
+        request.future = executor.submit(request);
+    }
+
+    //Helper method to get the width the view is laid out with, or has if its layout doesn't fix it
+    private static int getWidth(ImageView view) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        return params != null && params.width > 0 ? params.width : view.getWidth();
+    }
+
+    //Helper method to get the height the view is laid out with, or has if its layout doesn't fix it
+    private static int getHeight(ImageView view) {
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        return params != null && params.height > 0 ? params.height : view.getHeight();
+    }
+
+    //Helper method that builds the key of the thumbnail of a book at a size, which is also its file name on disk
+    private static String getKey(long bookId, int width, int height) {
+        return bookId + "_" + width + "x" + height;
+    }
+
+    //Loads the thumbnail of one book, or the preview of one image, for one view, on a background thread
+    private class Request implements Runnable {
+
+        final long bookId;
+        //Image to preview, or null to load the cover of the book
+        final Uri source;
+        //Key of the thumbnail in the caches, or null for a preview
+        final String key;
+        final int width;
+        final int height;
+        final ImageView view;
+        volatile boolean cancelled = false;
+        Future<?> future;
+
+        Request(long bookId, Uri source, String key, int width, int height, ImageView view) {
+            this.bookId = bookId;
+            this.source = source;
+            this.key = key;
+            this.width = width;
+            this.height = height;
+            this.view = view;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            if (source != null) {
+                try {
+                    show(CoverDecoder.decode(contentResolver, source, width, height));
+                } catch (IOException | SecurityException e) {
+                    Log.e(LOG_TAG, "Can't preview " + source, e);
+                }
+                return;
+            }
+            Bitmap bitmap = readThumbnail();
+            if (bitmap == null && !cancelled) {
+                File file = getStore().getFile(bookId);
+                if (!file.exists()) {
+                    missingCovers.add(bookId);
+                } else {
+                    bitmap = CoverDecoder.decode(file, width, height);
+                    if (bitmap != null) {
+                        getDiskCache().put(key, bitmap);
+                    }
+                }
+            }
+            if (bitmap == null) {
+                return;
+            }
+            //Cache the thumbnail even if the request was cancelled meanwhile, the row is likely to come back
+            memoryCache.put(key, bitmap);
+            show(bitmap);
+        }
+
+        //Helper method to show the bitmap in the view on the main thread, unless the request was cancelled meanwhile
+        private void show(final Bitmap result) {
+            if (result == null) {
+                return;
+            }
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    //The view may show another book by now
+                    if (!cancelled && view.getTag(R.id.cover_request) == Request.this) {
+                        view.setTag(R.id.cover_request, null);
+                        view.setImageBitmap(result);
+                    }
+                }
+            });
+        }
+
+        //Helper method to decode the thumbnail from the disk cache, or return null if it isn't there
+        private Bitmap readThumbnail() {
+            File file = getDiskCache().get(key);
+            if (file == null) {
+                return null;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+    }
+}
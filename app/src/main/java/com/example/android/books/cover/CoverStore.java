@@ -0,0 +1,72 @@
+package com.example.android.books.cover;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+//Original cover images, one file per book named by the id of the book.
+//Files are only read and written on background threads
+final class CoverStore {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File dir;
+
+    CoverStore(File dir) {
+        this.dir = dir;
+    }
+
+    //Returns the file of the cover of a book, which doesn't exist if the book has no cover
+    File getFile(long bookId) {
+        return new File(dir, String.valueOf(bookId));
+    }
+
+    //Saves the image read from the stream as the cover of a book, replacing its old cover.
+    //The image is written to a temporary file first, so a failed copy leaves the old cover in place
+    void save(long bookId, InputStream in) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        File temp = new File(dir, bookId + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(getFile(bookId))) {
+            temp.delete();
+            throw new IOException("Can't save the cover of book " + bookId);
+        }
+    }
+
+    //Deletes the cover of a book. Returns true if the book had one
+    boolean delete(long bookId) {
+        return getFile(bookId).delete();
+    }
+
+    //Returns the ids of the books that have a cover
+    List<Long> getBookIds() {
+        List<Long> ids = new ArrayList<>();
+        String[] names = dir.list();
+        if (names == null) {
+            return ids;
+        }
+        for (String name : names) {
+            try {
+                ids.add(Long.parseLong(name));
+            } catch (NumberFormatException e) {
+                //Temporary file of a save that didn't finish
+            }
+        }
+        return ids;
+    }
+}
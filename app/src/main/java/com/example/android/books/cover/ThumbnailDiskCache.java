@@ -0,0 +1,157 @@
+package com.example.android.books.cover;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Cover thumbnails already decoded at the size they are shown at, kept on disk so a cover is decoded from its
+//full-size image once instead of every time it scrolls into view. The files are limited to a number of bytes,
+//and the least recently used ones are deleted first. The time of last use is kept as the time the file was modified,
+//so the order survives restarts
+final class ThumbnailDiskCache {
+
+    private static final String LOG_TAG = ThumbnailDiskCache.class.getSimpleName();
+
+    private static final int JPEG_QUALITY = 85;
+
+    private final File dir;
+    private final long maxBytes;
+
+    //Size of every file by its key, from the least to the most recently used
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private boolean loaded = false;
+
+    ThumbnailDiskCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    //Returns the file of the thumbnail with the key, or null if there is none. The file can be deleted by a later put()
+    synchronized File get(String key) {
+        load();
+        if (entries.get(key) == null) {
+            return null;
+        }
+        File file = new File(dir, key);
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    //Compresses the thumbnail into the cache
+    void put(String key, Bitmap bitmap) {
+        //Compress outside the lock, so other threads can read the cache meanwhile
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, bytes);
+        put(key, bytes.toByteArray());
+    }
+
+    //Writes the compressed thumbnail into the cache, deleting the least recently used ones if it is full
+    synchronized void put(String key, byte[] data) {
+        load();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        File file = new File(dir, key);
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Can't write thumbnail " + key, e);
+            file.delete();
+            return;
+        }
+        Long old = entries.put(key, (long) data.length);
+        size += data.length - (old == null ? 0 : old);
+        trim();
+    }
+
+    //Deletes the thumbnails whose key starts with the prefix
+    synchronized void removeAll(String prefix) {
+        load();
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                new File(dir, entry.getKey()).delete();
+                size -= entry.getValue();
+                iterator.remove();
+            }
+        }
+    }
+
+    //Returns the number of bytes the thumbnails take
+    synchronized long getSize() {
+        load();
+        return size;
+    }
+
+    //Helper method to read the files left by earlier runs the first time the cache is used, oldest first
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        //Read the times once, a file touched meanwhile mustn't change its place during the sort
+        List<StoredFile> stored = new ArrayList<>(files.length);
+        for (File file : files) {
+            stored.add(new StoredFile(file.getName(), file.lastModified(), file.length()));
+        }
+        Collections.sort(stored, new Comparator<StoredFile>() {
+            @Override
+            public int compare(StoredFile a, StoredFile b) {
+                return a.modified < b.modified ? -1 : (a.modified == b.modified ? 0 : 1);
+            }
+        });
+        for (StoredFile file : stored) {
+            entries.put(file.name, file.length);
+            size += file.length;
+        }
+        trim();
+    }
+
+    //Helper method to delete the least recently used thumbnails until the cache fits its size
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            new File(dir, entry.getKey()).delete();
+            size -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+    //Name, time of last use and size of a file found on disk
+    private static class StoredFile {
+
+        final String name;
+        final long modified;
+        final long length;
+
+        StoredFile(String name, long modified, long length) {
+            this.name = name;
+            this.modified = modified;
+            this.length = length;
+        }
+    }
+}
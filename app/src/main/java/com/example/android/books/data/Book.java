@@ -0,0 +1,113 @@
+package com.example.android.books.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+//Immutable copy of one row of the books table, so it can be shared between threads
+final class Book {
+
+    //Columns of the table in the order they are read by fromCursor()
+    static final String[] COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_BOOK_NAME,
+            BookEntry.COLUMN_AUTHOR,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_NUMBER,
+            BookEntry.COLUMN_ISBN};
+
+    final long id;
+    final String name;
+    final String author;
+    final int price;
+    final int quantity;
+    final String supplierName;
+    final String supplierNumber;
+    final String isbn;
+
+    private Book(long id, String name, String author, int price, int quantity, String supplierName, String supplierNumber,
+                 String isbn) {
+        this.id = id;
+        this.name = name;
+        this.author = author;
+        this.price = price;
+        this.quantity = quantity;
+        this.supplierName = supplierName;
+        this.supplierNumber = supplierNumber;
+        this.isbn = isbn;
+    }
+
+    //Reads the book at the current row of a cursor over COLUMNS
+    static Book fromCursor(Cursor cursor) {
+        return new Book(cursor.getLong(0),
+                cursor.getString(1),
+                cursor.getString(2),
+                cursor.getInt(3),
+                cursor.getInt(4),
+                cursor.getString(5),
+                cursor.getString(6),
+                cursor.getString(7));
+    }
+
+    //Returns true if every column of the projection can be read from a book. A null projection means all columns
+    static boolean hasColumns(String[] projection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (indexOf(column) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Returns a cursor with this book as its only row, with the columns of the projection
+    Cursor toCursor(String[] projection) {
+        String[] columns = projection == null ? COLUMNS : projection;
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            row[i] = getValue(indexOf(columns[i]));
+        }
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    //Helper method to get the value of the column at the index in COLUMNS
+    private Object getValue(int column) {
+        switch (column) {
+            case 0:
+                return id;
+            case 1:
+                return name;
+            case 2:
+                return author;
+            case 3:
+                return price;
+            case 4:
+                return quantity;
+            case 5:
+                return supplierName;
+            case 6:
+                return supplierNumber;
+            case 7:
+                return isbn;
+            default:
+                throw new IllegalArgumentException("Unknown column " + column);
+        }
+    }
+
+    //Helper method to find the index of a column in COLUMNS, or -1 if it isn't one of them
+    private static int indexOf(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
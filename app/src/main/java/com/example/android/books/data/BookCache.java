@@ -0,0 +1,79 @@
+package com.example.android.books.data;
+
+import android.util.LruCache;
+
+//Size-bounded cache of the most recently read books by their id, so that opening the same book
+//on several screens reads it from the database only once.
+//Writers invalidate the books they change after their change is committed. Every invalidation also increases
+//a generation number, and a book read from the database is only cached if no invalidation happened since the
+//read started, so a reader that raced with a writer can never put an outdated book back into the cache
+class BookCache {
+
+    //Maximum number of books kept in the cache
+    static final int MAX_BOOKS = 200;
+
+    private final LruCache<Long, Book> books = new LruCache<Long, Book>(MAX_BOOKS) {
+        @Override
+        protected void entryRemoved(boolean evicted, Long key, Book oldValue, Book newValue) {
+            //Runs on the thread holding the lock of the cache, which is the one changing the books
+            if (evicted && !clearing) {
+                evictionCount++;
+            }
+        }
+    };
+
+    //Guarded by this
+    private long generation = 0;
+    private long evictionCount = 0;
+    private boolean clearing = false;
+
+    //Returns the generation to pass to put() for a book that is about to be read from the database
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    //Returns the cached book, or null if it isn't cached
+    Book get(long id) {
+        return books.get(id);
+    }
+
+    //Caches a book read from the database, unless a write invalidated the cache after the read started
+    synchronized void put(Book book, long readGeneration) {
+        if (readGeneration == generation) {
+            books.put(book.id, book);
+        }
+    }
+
+    //Removes a book that has been changed or deleted
+    synchronized void invalidate(long id) {
+        generation++;
+        books.remove(id);
+    }
+
+    //Removes all books, after a change that may have touched any of them
+    synchronized void invalidateAll() {
+        generation++;
+        clearing = true;
+        try {
+            books.evictAll();
+        } finally {
+            clearing = false;
+        }
+    }
+
+    int getHitCount() {
+        return books.hitCount();
+    }
+
+    int getMissCount() {
+        return books.missCount();
+    }
+
+    synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    int getSize() {
+        return books.size();
+    }
+}
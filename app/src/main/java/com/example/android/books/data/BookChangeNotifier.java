@@ -0,0 +1,134 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+//Collects the changes BookProvider makes and notifies listeners of them once per short window, instead of once per write.
+//Books that changed in place are reported with their own URI, so a listener can reload just those books.
+//Changes that add or remove books move the position of other books, so they are reported with the URI of all books
+class BookChangeNotifier {
+
+    //Time in milliseconds during which changes are collected before listeners are notified
+    static final long WINDOW_MILLIS = 100;
+
+    //Above this number of changed books a single notification for all books is cheaper than one per book
+    static final int MAX_ROW_NOTIFICATIONS = 20;
+
+    private final ContentResolver contentResolver;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    //Changes waiting for the end of the window
+    private final Set<Long> changedIds = new LinkedHashSet<>();
+    private boolean tableChanged = false;
+    private boolean flushScheduled = false;
+
+    //Changes made inside a batch are held back on the thread applying it until the batch has been committed
+    private final ThreadLocal<Batch> batch = new ThreadLocal<>();
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    BookChangeNotifier(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    //Records that the values of one book have changed
+    void rowChanged(long id) {
+        Batch currentBatch = batch.get();
+        if (currentBatch != null) {
+            currentBatch.changedIds.add(id);
+            return;
+        }
+        synchronized (this) {
+            changedIds.add(id);
+            scheduleFlush();
+        }
+    }
+
+    //Records that books have been added or removed, or that it is unknown which books have changed
+    void tableChanged() {
+        Batch currentBatch = batch.get();
+        if (currentBatch != null) {
+            currentBatch.tableChanged = true;
+            return;
+        }
+        synchronized (this) {
+            tableChanged = true;
+            scheduleFlush();
+        }
+    }
+
+    //Holds back the changes recorded on this thread until endBatch() is called
+    void beginBatch() {
+        batch.set(new Batch());
+    }
+
+    //Passes on the changes held back since beginBatch(), or drops them if the batch was rolled back
+    void endBatch(boolean committed) {
+        Batch endedBatch = batch.get();
+        batch.remove();
+        if (endedBatch == null || !committed) {
+            return;
+        }
+        synchronized (this) {
+            changedIds.addAll(endedBatch.changedIds);
+            tableChanged |= endedBatch.tableChanged;
+            if (tableChanged || !changedIds.isEmpty()) {
+                scheduleFlush();
+            }
+        }
+    }
+
+    //Helper method to start the window, unless one is already running. Must hold the lock
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postAtTime(flushRunnable, SystemClock.uptimeMillis() + WINDOW_MILLIS);
+        }
+    }
+
+    //Notifies listeners of all the changes collected in the window
+    private void flush() {
+        Long[] ids;
+        boolean notifyTable;
+        synchronized (this) {
+            flushScheduled = false;
+            notifyTable = tableChanged || changedIds.size() > MAX_ROW_NOTIFICATIONS;
+            ids = notifyTable ? null : changedIds.toArray(new Long[changedIds.size()]);
+            changedIds.clear();
+            tableChanged = false;
+        }
+
+        ProviderMetrics metrics = ProviderMetrics.getInstance();
+        long start = metrics.start();
+        //Notifying the URI of all books also reaches the listeners of single books
+        if (notifyTable) {
+            contentResolver.notifyChange(BookEntry.CONTENT_URI, null);
+            metrics.record(ProviderMetrics.OP_NOTIFY, ProviderMetrics.MATCH_BOOKS, start, 1);
+            return;
+        }
+        for (Long id : ids) {
+            contentResolver.notifyChange(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), null);
+        }
+        metrics.record(ProviderMetrics.OP_NOTIFY, ProviderMetrics.MATCH_BOOK_ID, start, ids.length);
+    }
+
+    //Changes recorded while a batch is being applied
+    private static class Batch {
+
+        final Set<Long> changedIds = new LinkedHashSet<>();
+        boolean tableChanged = false;
+    }
+}
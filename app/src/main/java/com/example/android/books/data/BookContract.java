@@ -2,6 +2,7 @@ package com.example.android.books.data;
 
 import android.content.ContentResolver;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.BaseColumns;
 
 public final class BookContract {
@@ -19,6 +20,182 @@ public final class BookContract {
     //Path for books table
     public static final String PATH_BOOKS = "books";
 
+    //Path for suppliers table
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    //Path for the ledger of sales, and for the sales summed up per hour and per day below it
+    public static final String PATH_SALES = "sales";
+    public static final String PATH_HOURLY = "hourly";
+    public static final String PATH_DAILY = "daily";
+
+    //Path for full-text search of books, followed by the search query
+    public static final String PATH_SEARCH = "search";
+
+    //Path for the book with an ISBN, followed by the ISBN
+    public static final String PATH_ISBN = "isbn";
+
+    //Path for the journal of the changes of the books that haven't been sent to the server yet
+    public static final String PATH_CHANGES = "changes";
+
+    //Path for the log of the maintenance passes of the database
+    public static final String PATH_MAINTENANCE = "maintenance";
+
+    //Path for the inventory aggregates per supplier, and for the totals over all suppliers below it
+    public static final String PATH_AGGREGATES = "aggregates";
+    public static final String PATH_TOTALS = "totals";
+
+    //Query parameters that limit the number of rows a query on CONTENT_URI or a search URI returns,
+    //and the number of rows skipped before the first one returned
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+    public static final String QUERY_PARAMETER_OFFSET = "offset";
+
+    //Name of the provider method that atomically adjusts the quantity of a book
+    public static final String METHOD_ADJUST_QUANTITY = "adjust_quantity";
+
+    //Name of the provider method that returns the counters of the cache of single books
+    public static final String METHOD_GET_CACHE_STATS = "get_cache_stats";
+
+    //Name of the provider method that sells books: it lowers the quantity of every book and records the sale
+    //in the ledger in one transaction. Sales are passed as arrays, so a burst of sales is committed at once
+    public static final String METHOD_SELL = "sell";
+
+    //Name of the provider method that sells books by their ISBN, like METHOD_SELL. Every sale finds its book and
+    //lowers its quantity in a single statement through the unique index on the ISBN, and returns the ids of the books
+    public static final String METHOD_SELL_BY_ISBN = "sell_by_isbn";
+
+    //Name of the provider method that applies changes of the books received from the server, passed as a list of
+    //ContentValues with the columns of ChangeEntry. The changes are applied in one transaction and aren't added to the journal
+    public static final String METHOD_APPLY_REMOTE_CHANGES = "apply_remote_changes";
+
+    //Name of the provider method that runs a maintenance pass of the database and returns its entry of the log
+    //as extras named like the columns of MaintenanceEntry. A pass is skipped, returning null, if the last one
+    //finished less than MaintenanceEntry.MIN_INTERVAL_MILLIS ago, unless EXTRA_FORCE is true.
+    //The optional argument is a tag that METHOD_STOP_MAINTENANCE stops the pass by.
+    //Runs on the calling thread, so it must be called off the main thread
+    public static final String METHOD_RUN_MAINTENANCE = "run_maintenance";
+
+    //Name of the provider method that stops the maintenance pass tagged with its argument after its current step.
+    //A pass that hasn't started yet is skipped once it does. Without an argument it stops the running pass
+    public static final String METHOD_STOP_MAINTENANCE = "stop_maintenance";
+
+    //Names of the provider methods that return the counters of the work done by the provider,
+    //as a bundle that ProviderMetrics.format() turns into text, and that set them back to 0
+    public static final String METHOD_GET_METRICS = "get_metrics";
+    public static final String METHOD_RESET_METRICS = "reset_metrics";
+
+    //Name of the provider method that deletes the books of the URI given as its argument, the URI of all books
+    //or of one book, like delete() does. Returns the number of books deleted as EXTRA_DELETED and the id
+    //METHOD_UNDO_DELETE takes to undo the delete as EXTRA_DELETION_ID, -1 if no book was deleted
+    public static final String METHOD_DELETE = "delete";
+
+    //Name of the provider method that undoes the delete with the id given as EXTRA_DELETION_ID, if it was made less than
+    //DeletionEntry.UNDO_WINDOW_MILLIS ago. Books deleted again by a later delete stay deleted.
+    //Returns the number of books brought back as EXTRA_RESTORED
+    public static final String METHOD_UNDO_DELETE = "undo_delete";
+
+    //Name of the provider method that removes one batch of deleted books that can no longer be brought back
+    //from the database. Returns the number of books removed as EXTRA_PURGED, fewer than a full batch once none are left.
+    //EXTRA_FORCE removes the books of deletes that could still be undone too.
+    //Runs on the calling thread, so it must be called off the main thread
+    public static final String METHOD_PURGE_DELETED = "purge_deleted";
+
+    //Keys of the extras passed to and returned from the provider methods
+    public static final String EXTRA_BOOK_ID = "book_id";
+    public static final String EXTRA_DELTA = "delta";
+    public static final String EXTRA_QUANTITY = "quantity";
+    public static final String EXTRA_BOOK_IDS = "book_ids";
+    public static final String EXTRA_ISBNS = "isbns";
+    public static final String EXTRA_QUANTITIES = "quantities";
+    public static final String EXTRA_CHANGES = "changes";
+    public static final String EXTRA_APPLIED = "applied";
+    public static final String EXTRA_FORCE = "force";
+    public static final String EXTRA_CACHE_HITS = "cache_hits";
+    public static final String EXTRA_CACHE_MISSES = "cache_misses";
+    public static final String EXTRA_CACHE_EVICTIONS = "cache_evictions";
+    public static final String EXTRA_CACHE_SIZE = "cache_size";
+    public static final String EXTRA_DELETED = "deleted";
+    public static final String EXTRA_DELETION_ID = "deletion_id";
+    public static final String EXTRA_RESTORED = "restored";
+    public static final String EXTRA_PURGED = "purged";
+
+    //Helper method to change the quantity of a book by the given delta in a single statement.
+    //Returns the new quantity, or -1 if the book doesn't exist or the quantity would drop below 0
+    public static int adjustQuantity(ContentResolver contentResolver, long bookId, int delta) {
+        Bundle extras = new Bundle();
+        extras.putLong(EXTRA_BOOK_ID, bookId);
+        extras.putInt(EXTRA_DELTA, delta);
+        Bundle result = contentResolver.call(BookEntry.CONTENT_URI, METHOD_ADJUST_QUANTITY, null, extras);
+        if (result == null) {
+            return -1;
+        }
+        return result.getInt(EXTRA_QUANTITY, -1);
+    }
+
+    //Helper method to sell copies of a book. Returns the new quantity, or -1 if the book doesn't exist
+    //or doesn't have enough copies, in which case nothing is recorded
+    public static int sell(ContentResolver contentResolver, long bookId, int quantity) {
+        int[] quantities = sell(contentResolver, new long[] {bookId}, new int[] {quantity});
+        return quantities == null ? -1 : quantities[0];
+    }
+
+    //Helper method to sell copies of several books in one transaction. Every sale is applied or refused on its own.
+    //Returns the new quantity after every sale, -1 for the refused ones
+    public static int[] sell(ContentResolver contentResolver, long[] bookIds, int[] quantities) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(EXTRA_BOOK_IDS, bookIds);
+        extras.putIntArray(EXTRA_QUANTITIES, quantities);
+        Bundle result = contentResolver.call(SaleEntry.CONTENT_URI, METHOD_SELL, null, extras);
+        if (result == null) {
+            return null;
+        }
+        return result.getIntArray(EXTRA_QUANTITIES);
+    }
+
+    //Result of a sale by ISBN when no book has the ISBN, which also covers text that isn't an ISBN
+    public static final int SALE_UNKNOWN_ISBN = -2;
+
+    //Helper method to sell copies of the book with an ISBN. Returns the new quantity, -1 if the book doesn't have
+    //enough copies or SALE_UNKNOWN_ISBN if no book has the ISBN, in which case nothing is recorded
+    public static int sellByIsbn(ContentResolver contentResolver, String isbn, int quantity) {
+        Bundle result = sellByIsbn(contentResolver, new String[] {isbn}, new int[] {quantity});
+        if (result == null) {
+            return -1;
+        }
+        return result.getIntArray(EXTRA_QUANTITIES)[0];
+    }
+
+    //Helper method to sell copies of several books by their ISBN in one transaction. Every sale is applied or refused
+    //on its own. Returns the new quantity after every sale as EXTRA_QUANTITIES, -1 or SALE_UNKNOWN_ISBN for the refused
+    //ones, and the id of the book of every sale as EXTRA_BOOK_IDS, -1 for unknown ISBNs
+    public static Bundle sellByIsbn(ContentResolver contentResolver, String[] isbns, int[] quantities) {
+        Bundle extras = new Bundle();
+        extras.putStringArray(EXTRA_ISBNS, isbns);
+        extras.putIntArray(EXTRA_QUANTITIES, quantities);
+        return contentResolver.call(SaleEntry.CONTENT_URI, METHOD_SELL_BY_ISBN, null, extras);
+    }
+
+    //Helper method to delete the books of the URI of all books or of one book. Returns the number of books deleted
+    //as EXTRA_DELETED and the id of the delete for undoDelete() as EXTRA_DELETION_ID
+    public static Bundle delete(ContentResolver contentResolver, Uri uri) {
+        return contentResolver.call(BookEntry.CONTENT_URI, METHOD_DELETE, uri.toString(), null);
+    }
+
+    //Helper method to undo the delete with the id delete() returned. Returns the number of books brought back,
+    //0 if there is no such delete or it was made too long ago to be undone
+    public static int undoDelete(ContentResolver contentResolver, long deletionId) {
+        Bundle extras = new Bundle();
+        extras.putLong(EXTRA_DELETION_ID, deletionId);
+        Bundle result = contentResolver.call(BookEntry.CONTENT_URI, METHOD_UNDO_DELETE, null, extras);
+        return result == null ? 0 : result.getInt(EXTRA_RESTORED);
+    }
+
+    //Helper method to remove one batch of deleted books that can no longer be brought back.
+    //Returns the number of books removed, so callers can go on until it returns 0
+    public static int purgeDeleted(ContentResolver contentResolver) {
+        Bundle result = contentResolver.call(BookEntry.CONTENT_URI, METHOD_PURGE_DELETED, null, null);
+        return result == null ? 0 : result.getInt(EXTRA_PURGED);
+    }
+
     //Class that defines constant values for books table
     //Each entry represents a single item
     public static abstract class BookEntry implements BaseColumns {
@@ -35,15 +212,254 @@ public final class BookContract {
         //Constant for Table Name
         public static final String TABLE_NAME = "books";
 
+        //View of the books joined to their supplier, with the supplier name and number as columns of every book.
+        //Queries of the provider read it, so callers can keep using the supplier columns as before
+        public static final String VIEW_NAME = "books_with_suppliers";
+
+        //Full-text index over the title, author and supplier of the books
+        public static final String FTS_TABLE_NAME = "books_fts";
+
         //Constants for Column names
         public static final String _ID = BaseColumns._ID;
         public static final String COLUMN_BOOK_NAME = "book_name";
         public static final String COLUMN_AUTHOR = "author";
         public static final String COLUMN_PRICE = "price";
         public static final String COLUMN_QUANTITY = "quantity";
+        //The id of the supplier in the suppliers table
+        public static final String COLUMN_SUPPLIER_ID = "supplier_id";
+        //Name and number of the supplier, read from the suppliers table. When a book is inserted or updated with
+        //a supplier name the book is linked to the supplier of that name, which is created if it doesn't exist yet,
+        //and a supplier number that isn't null is saved on the supplier, for all of its books
         public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
         public static final String COLUMN_SUPPLIER_NUMBER = "supplier_number";
+        //Id of the book shared by all devices, set by the database when a book is inserted without one
+        public static final String COLUMN_SYNC_ID = "sync_id";
+        //Number of changes of the book, and time of the last change in milliseconds since the epoch.
+        //Both are set by the database whenever the title, author, price, quantity, supplier or ISBN of the book changes
+        public static final String COLUMN_VERSION = "version";
+        public static final String COLUMN_UPDATED_AT = "updated_at";
+        //ISBN of the book, optional. It is stored as the 13 digits Isbn.normalize() returns, and no two books share one
+        public static final String COLUMN_ISBN = "isbn";
+        //Id of the entry of DeletionEntry that deleted the book, null for books that aren't deleted.
+        //Deleted books are left out of every query of the provider until they are purged
+        public static final String COLUMN_DELETION_ID = "deletion_id";
+
+        //Returns the content URI that searches the title, author and supplier for words starting with the words of the query
+        public static Uri buildSearchUri(String query) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query).build();
+        }
+
+        //Returns the content URI of the book with an ISBN, written in any form Isbn.normalize() accepts
+        public static Uri buildIsbnUri(String isbn) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_ISBN).appendPath(isbn).build();
+        }
+    }
+
+    //Class that defines constant values for suppliers table
+    //Each entry represents a single supplier. A supplier that still has books can't be deleted
+    public static abstract class SupplierEntry implements BaseColumns {
+
+        //Content URI to access the supplier data
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        //The MIME type of CONTENT_URI for a list of suppliers
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        //The MIME type of CONTENT_URI for a single supplier
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        //Constant for Table Name
+        public static final String TABLE_NAME = "suppliers";
+
+        //Constants for Column names
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
+        public static final String COLUMN_SUPPLIER_NUMBER = "supplier_number";
+
+        //Returns the content URI of the books of one supplier, with the same columns as BookEntry.CONTENT_URI
+        public static Uri buildBooksUri(long supplierId) {
+            return CONTENT_URI.buildUpon().appendPath(String.valueOf(supplierId)).appendPath(PATH_BOOKS).build();
+        }
+    }
+
+    //Class that defines constant values for the ledger of sales
+    //Each entry records one sale. Entries are only ever added, the database refuses to change or delete them,
+    //so they are kept when their book is deleted. Every sale is also added to the totals of its hour and of its day,
+    //so reports over long periods read one row per hour or day instead of every sale
+    public static abstract class SaleEntry implements BaseColumns {
+
+        //Content URI to access the sales
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SALES);
+
+        //Content URIs to access the totals of the sales per hour and per day
+        public static final Uri HOURLY_URI = Uri.withAppendedPath(CONTENT_URI, PATH_HOURLY);
+        public static final Uri DAILY_URI = Uri.withAppendedPath(CONTENT_URI, PATH_DAILY);
+
+        //The MIME type of CONTENT_URI for a list of sales
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SALES;
+
+        //The MIME type of HOURLY_URI and DAILY_URI for a list of totals
+        public static final String BUCKET_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SALES + "." + PATH_DAILY;
+
+        //Constants for Table Names
+        public static final String TABLE_NAME = "sales";
+        public static final String HOURLY_TABLE_NAME = "sales_hourly";
+        public static final String DAILY_TABLE_NAME = "sales_daily";
+
+        //Length of the periods the sales are summed up over, in milliseconds.
+        //Periods start at multiples of their length since the epoch, so days are UTC days
+        public static final long HOUR_MILLIS = 60 * 60 * 1000;
+        public static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+        //Constants for Column names of the sales
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_BOOK_ID = "book_id";
+        //Number of copies sold
+        public static final String COLUMN_QUANTITY = "quantity";
+        //Price of one copy at the time of the sale
+        public static final String COLUMN_PRICE = "price";
+        //Time of the sale in milliseconds since the epoch
+        public static final String COLUMN_SOLD_AT = "sold_at";
+
+        //Constants for Column names of the totals per hour and per day
+        //Start of the hour or day in milliseconds since the epoch
+        public static final String COLUMN_BUCKET_START = "bucket_start";
+        public static final String COLUMN_SALE_COUNT = "sale_count";
+        public static final String COLUMN_UNITS = "units";
+        //Sum of quantity * price of the sales
+        public static final String COLUMN_REVENUE = "revenue";
+    }
+
+    //Class that defines constant values for the journal of changes.
+    //Every insert, update and delete of a book adds an entry, until the changes are sent to the server and deleted.
+    //A query of CONTENT_URI returns one row per changed book instead, with all of its pending changes merged:
+    //the sum of the quantity deltas, whether the book was deleted, and the current columns of the book.
+    //The row has the id of the last entry merged into it, so the entries that were sent can be deleted
+    //with the selection "sync_id = ? AND _id <= ?" while newer changes of the book stay in the journal
+    public static abstract class ChangeEntry implements BaseColumns {
+
+        //Content URI to access the pending changes
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_CHANGES);
+
+        //The MIME type of CONTENT_URI for a list of changes
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CHANGES;
+
+        //Constant for Table Name
+        public static final String TABLE_NAME = "book_changes";
+
+        //Possible values for the operation of an entry
+        public static final int OPERATION_INSERT = 1;
+        public static final int OPERATION_UPDATE = 2;
+        public static final int OPERATION_DELETE = 3;
+
+        //Constants for Column names of the entries
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_BOOK_ID = "book_id";
+        public static final String COLUMN_SYNC_ID = BookEntry.COLUMN_SYNC_ID;
+        public static final String COLUMN_OPERATION = "operation";
+        //Change of the quantity made by the entry: the whole quantity for an insert, 0 for a delete
+        public static final String COLUMN_QUANTITY_DELTA = "quantity_delta";
+
+        //Constant for the Column of the merged rows that is 1 if the book was deleted, 0 otherwise.
+        //The other columns of the merged rows are the columns of the book in BookEntry, null after a delete
+        public static final String COLUMN_DELETED = "deleted";
+    }
+
+    //Class that defines constant values for the log of the maintenance passes.
+    //A pass refreshes the statistics of the query planner, returns the free pages of the file to the file system
+    //in small steps and checks the database for corruption. Each pass adds one entry
+    public static abstract class MaintenanceEntry implements BaseColumns {
+
+        //Content URI to access the log, newest pass first
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_MAINTENANCE);
+
+        //The MIME type of CONTENT_URI for a list of passes
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_MAINTENANCE;
 
+        //Constant for Table Name
+        public static final String TABLE_NAME = "maintenance_log";
+
+        //Shortest time between two passes that aren't forced
+        public static final long MIN_INTERVAL_MILLIS = 12 * 60 * 60 * 1000;
+
+        //Constants for Column names
+        public static final String _ID = BaseColumns._ID;
+        //Start of the pass in milliseconds since the epoch, and its length in milliseconds
+        public static final String COLUMN_STARTED_AT = "started_at";
+        public static final String COLUMN_DURATION_MILLIS = "duration_millis";
+        //Size the file shrank by
+        public static final String COLUMN_BYTES_RECLAIMED = "bytes_reclaimed";
+        //1 if the statistics were refreshed, which is skipped while the books haven't changed much
+        public static final String COLUMN_ANALYZED = "analyzed";
+        //Number of books when the pass ran
+        public static final String COLUMN_BOOK_COUNT = "book_count";
+        //1 if the integrity check found no problems
+        public static final String COLUMN_INTEGRITY_OK = "integrity_ok";
+        //1 if the pass ran to the end, 0 if it was stopped
+        public static final String COLUMN_COMPLETED = "completed";
+    }
+
+    //Class that defines constant values for the log of deletes of books.
+    //Deleting books only marks them with the id of their entry, so the delete is quick and can be undone for a while,
+    //and the books are removed from the database later, a batch at a time. Deleting all books doesn't mark any book:
+    //the entry keeps the highest id of the books instead, and every book up to that id counts as deleted
+    public static abstract class DeletionEntry implements BaseColumns {
+
+        //Constant for Table Name
+        public static final String TABLE_NAME = "book_deletions";
+
+        //Time a delete can be undone after it was made
+        public static final long UNDO_WINDOW_MILLIS = 10 * 1000;
+
+        //Constants for Column names
+        public static final String _ID = BaseColumns._ID;
+        //Time of the delete in milliseconds since the epoch
+        public static final String COLUMN_DELETED_AT = "deleted_at";
+        //Highest id of the books when all books were deleted, null if only some books were deleted
+        public static final String COLUMN_THROUGH_BOOK_ID = "through_book_id";
+    }
+
+    //Class that defines constant values for the inventory aggregates.
+    //Each entry sums up the books of one supplier, and is kept up to date by the database on every change of the books,
+    //so reading the aggregates costs one row per supplier instead of a scan of all books
+    public static abstract class AggregateEntry implements BaseColumns {
+
+        //Content URI to access the aggregates of every supplier
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_AGGREGATES);
+
+        //Content URI to access a single row with the totals over all suppliers
+        public static final Uri TOTALS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_TOTALS);
+
+        //The MIME type of CONTENT_URI for the list of suppliers
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_AGGREGATES;
+
+        //The MIME type of TOTALS_URI for the single row of totals
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_AGGREGATES;
+
+        //Constant for Table Name
+        public static final String TABLE_NAME = "supplier_summary";
+
+        //View of the aggregates with the name of their supplier. The id of an entry is the id of its supplier
+        public static final String VIEW_NAME = "supplier_summary_with_names";
+
+        //Books with fewer copies than this are counted as low on stock
+        public static final int LOW_STOCK_QUANTITY = 5;
+
+        //Constants for Column names
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
+        //Number of books of the supplier
+        public static final String COLUMN_TITLE_COUNT = "title_count";
+        //Sum of the quantities of the books
+        public static final String COLUMN_UNIT_COUNT = "unit_count";
+        //Sum of price * quantity of the books
+        public static final String COLUMN_STOCK_VALUE = "stock_value";
+        //Number of books with a quantity of 0
+        public static final String COLUMN_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+        //Number of books with a quantity below LOW_STOCK_QUANTITY, including those out of stock
+        public static final String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
+        //Number of suppliers, only in the row of TOTALS_URI
+        public static final String COLUMN_SUPPLIER_COUNT = "supplier_count";
     }
 }
 
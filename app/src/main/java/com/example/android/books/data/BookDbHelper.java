@@ -1,41 +1,172 @@
 package com.example.android.books.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.example.android.books.data.BookContract.BookEntry;
-
 public class BookDbHelper extends SQLiteOpenHelper {
 
-    public static final int DB_VERSION = 1;
+    public static final int DB_VERSION = 10;
     public static final String DB_NAME = "Bookstore.db";
 
+    //How the database file is opened
+    public static class Options {
+
+        //Values of the synchronous pragma. NORMAL skips the sync after every commit in WAL mode,
+        //which can lose the last commits on power loss but never corrupts the database
+        public static final String SYNCHRONOUS_FULL = "FULL";
+        public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+
+        //Write-ahead logging, page cache size in KB and synchronous level used by the app
+        public static final Options DEFAULT = new Options(true, 2048, SYNCHRONOUS_NORMAL);
+
+        //The defaults of SQLite: rollback journal, its own page cache size and full syncs
+        public static final Options SQLITE_DEFAULTS = new Options(false, 0, SYNCHRONOUS_FULL);
+
+        //With write-ahead logging, readers read the last committed state while a writer is writing,
+        //instead of waiting for it
+        public final boolean writeAheadLogging;
+
+        //Size of the page cache in KB, or 0 to keep the default of SQLite
+        public final int cacheSizeKb;
+
+        public final String synchronous;
+
+        public Options(boolean writeAheadLogging, int cacheSizeKb, String synchronous) {
+            this.writeAheadLogging = writeAheadLogging;
+            this.cacheSizeKb = cacheSizeKb;
+            this.synchronous = synchronous;
+        }
+    }
+
+    private static final String LOG_TAG = BookDbHelper.class.getSimpleName();
+
+    //Value of the auto_vacuum pragma that keeps the pointer map incremental vacuum needs
+    static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    //Number of compiled statements each connection keeps for reuse, enough for all the queries of the provider
+    private static final int STATEMENT_CACHE_SIZE = 50;
+
+    private final Options options;
+
+    //Set once the database has been opened, so only the first call of the getters is measured
+    private volatile boolean opened = false;
+
     public BookDbHelper(Context context) {
-        super(context, DB_NAME, null, DB_VERSION);
+        this(context, Options.DEFAULT);
+    }
+
+    public BookDbHelper(Context context, Options options) {
+        this(context, DB_NAME, options);
     }
 
+    //Opens a database with another name, so tests can compare options without touching the books of the app
+    BookDbHelper(Context context, String name, Options options) {
+        super(context, name, null, DB_VERSION);
+        this.options = options;
+        //From API 16 the helper enables WAL itself before the database is opened, which also
+        //gives it a pool of connections for the readers
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(options.writeAheadLogging);
+        }
+    }
+
+    //From API 16 foreign keys are enabled on every connection before the database is created or upgraded
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Override
-    public void onCreate(SQLiteDatabase database) {
-        //String that contains the SQL statement that creates the books table
-        String SQL_CREATE_BOOKS_TABLE = "CREATE TABLE " + BookEntry.TABLE_NAME + " (" +
-                BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                BookEntry.COLUMN_BOOK_NAME + " TEXT NOT NULL, " +
-                BookEntry.COLUMN_AUTHOR + " TEXT, " +
-                BookEntry.COLUMN_PRICE + " INTEGER NOT NULL, " +
-                BookEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, " +
-                BookEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, " +
-                BookEntry.COLUMN_SUPPLIER_NUMBER + " TEXT);";
+    public void onConfigure(SQLiteDatabase database) {
+        super.onConfigure(database);
+        database.setForeignKeyConstraintsEnabled(true);
+    }
 
-        Log.v("Book helper", "Create statement:\n" + SQL_CREATE_BOOKS_TABLE);
+    @Override
+    public void onOpen(SQLiteDatabase database) {
+        super.onOpen(database);
+        if (database.isReadOnly()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            database.execSQL("PRAGMA foreign_keys = ON");
+        }
+        enableIncrementalVacuum(database);
+        if (options.writeAheadLogging && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            database.enableWriteAheadLogging();
+        }
+        //These pragmas apply to the connection that writes. Readers keep the defaults, which only affects their cache
+        if (options.cacheSizeKb > 0) {
+            //A negative size is in KB instead of pages
+            database.execSQL("PRAGMA cache_size = -" + options.cacheSizeKb);
+        }
+        database.execSQL("PRAGMA synchronous = " + options.synchronous);
+        database.setMaxSqlCacheSize(STATEMENT_CACHE_SIZE);
+    }
 
-        database.execSQL(SQL_CREATE_BOOKS_TABLE);
+    //Helper method to add the pointer map incremental vacuum needs, so maintenance can return free pages to the file
+    //system in small steps. SQLite only takes the pragma on its own before the first table, which Android creates
+    //before onCreate(), so every database needs one VACUUM to add it. It runs once, outside write-ahead logging,
+    //and takes little time on a new database
+    private void enableIncrementalVacuum(SQLiteDatabase database) {
+        if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL) {
+            return;
+        }
+        boolean walEnabled = options.writeAheadLogging && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+        if (walEnabled) {
+            database.disableWriteAheadLogging();
+        }
+        long start = SystemClock.elapsedRealtime();
+        database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        database.execSQL("VACUUM");
+        Log.i(LOG_TAG, "Incremental vacuum enabled in " + (SystemClock.elapsedRealtime() - start) + " ms");
+        if (walEnabled) {
+            database.enableWriteAheadLogging();
+        }
+    }
+
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        if (opened) {
+            return super.getWritableDatabase();
+        }
+        long start = ProviderMetrics.getInstance().start();
+        SQLiteDatabase database = super.getWritableDatabase();
+        recordOpen(start);
+        return database;
+    }
+
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        if (opened) {
+            return super.getReadableDatabase();
+        }
+        long start = ProviderMetrics.getInstance().start();
+        SQLiteDatabase database = super.getReadableDatabase();
+        recordOpen(start);
+        return database;
+    }
+
+    //Helper method to record the time it took to open, create or upgrade the database
+    private synchronized void recordOpen(long start) {
+        if (!opened) {
+            opened = true;
+            ProviderMetrics.getInstance().record(ProviderMetrics.OP_OPEN_DATABASE, ProviderMetrics.MATCH_NONE, start, 0);
+        }
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+        //Create the first version of the schema, then upgrade it like an existing database
+        BookMigrations.createVersion1(database);
+        BookMigrations.migrate(database, 1, DB_VERSION);
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int i, int i1) {
-        sqLiteDatabase.execSQL("DROP TABLE books");
-        onCreate(sqLiteDatabase);
+    public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        //Upgrade step by step, keeping all the books
+        BookMigrations.migrate(database, oldVersion, newVersion);
     }
 }
@@ -0,0 +1,347 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+//In-memory copy of the books that can be sorted and filtered without another query.
+//The values are kept by column in primitive arrays rather than as one object per book, and equal strings
+//are stored once, so the index of a large catalogue stays small. Rows are kept in the order of their ids.
+//Sorting packs the sort key and the row of every book into one long and sorts those, filters are bit sets over the rows.
+//All methods are synchronized, so the index can be updated on one thread and read on another.
+//The list screen doesn't use it yet: it has no sorting or filtering, and BookPager reads its pages with SQL.
+//It is meant for a list that sorts by price or quantity and filters low stock, see BookIndexBenchmark
+public class BookIndex {
+
+    //Columns read from the provider, in the order expected by putRow()
+    public static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_BOOK_NAME,
+            BookEntry.COLUMN_AUTHOR,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME};
+
+    //Keys the books can be sorted by
+    public static final int SORT_ID = 0;
+    public static final int SORT_TITLE = 1;
+    public static final int SORT_PRICE = 2;
+    public static final int SORT_QUANTITY = 3;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    //Rows of the arrays that are in use, including removed rows
+    private int rowCount = 0;
+
+    private long[] ids;
+    private int[] prices;
+    private int[] quantities;
+    private String[] titles;
+    private String[] authors;
+    private String[] suppliers;
+
+    //Removed rows stay in the arrays until enough of them have piled up to compact the arrays
+    private final BitSet removedRows = new BitSet();
+    private int removedCount = 0;
+
+    //One instance of every string in the index
+    private final Map<String, String> strings = new HashMap<>();
+
+    public BookIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private BookIndex(int capacity) {
+        capacity = Math.max(capacity, INITIAL_CAPACITY);
+        ids = new long[capacity];
+        prices = new int[capacity];
+        quantities = new int[capacity];
+        titles = new String[capacity];
+        authors = new String[capacity];
+        suppliers = new String[capacity];
+    }
+
+    //Builds an index of all books with a single query. Must not be called on the main thread
+    public static BookIndex build(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, PROJECTION, null, null, BookEntry._ID);
+        if (cursor == null) {
+            return new BookIndex();
+        }
+        try {
+            BookIndex index = new BookIndex(cursor.getCount());
+            while (cursor.moveToNext()) {
+                index.putRow(cursor);
+            }
+            return index;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //Returns the number of books
+    public synchronized int size() {
+        return rowCount - removedCount;
+    }
+
+    //Adds the book at the current row of a cursor over PROJECTION, or replaces it if it is in the index already
+    public synchronized void putRow(Cursor cursor) {
+        put(cursor.getLong(0), cursor.getString(1), cursor.getString(2), cursor.getInt(3), cursor.getInt(4), cursor.getString(5));
+    }
+
+    //Adds a book, or replaces it if it is in the index already
+    public synchronized void put(long id, String title, String author, int price, int quantity, String supplier) {
+        int row = findRow(id);
+        if (row < 0) {
+            row = -(row + 1);
+            insertRow(row);
+            ids[row] = id;
+        } else if (removedRows.get(row)) {
+            removedRows.clear(row);
+            removedCount--;
+        }
+        titles[row] = intern(title);
+        authors[row] = intern(author);
+        prices[row] = price;
+        quantities[row] = quantity;
+        suppliers[row] = intern(supplier);
+    }
+
+    //Removes a book, returns false if it wasn't in the index
+    public synchronized boolean remove(long id) {
+        int row = findRow(id);
+        if (row < 0 || removedRows.get(row)) {
+            return false;
+        }
+        removedRows.set(row);
+        removedCount++;
+        titles[row] = null;
+        authors[row] = null;
+        suppliers[row] = null;
+        if (removedCount > INITIAL_CAPACITY && removedCount > rowCount / 4) {
+            compact();
+        }
+        return true;
+    }
+
+    //Returns the quantity of a book, or -1 if it isn't in the index
+    public synchronized int getQuantity(long id) {
+        int row = findRow(id);
+        return row < 0 || removedRows.get(row) ? -1 : quantities[row];
+    }
+
+    //Returns the ids of the books that match the filter, sorted by the key. Books with equal keys are in the order of their ids
+    public synchronized long[] query(int sortKey, boolean descending, Filter filter) {
+        BitSet rows = new BitSet(rowCount);
+        rows.set(0, rowCount);
+        rows.andNot(removedRows);
+        if (filter != null) {
+            filter.apply(this, rows);
+        }
+
+        if (sortKey == SORT_ID) {
+            return idsInOrder(rows, descending);
+        }
+
+        int[] keys = sortKey == SORT_TITLE ? titleRanks() : sortKey == SORT_PRICE ? prices : sortKey == SORT_QUANTITY ? quantities : null;
+        if (keys == null) {
+            throw new IllegalArgumentException("Unknown sort key " + sortKey);
+        }
+
+        //The key goes in the upper half and the row in the lower half, so sorting the longs sorts by key and then by row.
+        //Inverting the bits of the key reverses its order without overflowing
+        long[] packed = new long[rows.cardinality()];
+        int i = 0;
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            int key = descending ? ~keys[row] : keys[row];
+            packed[i++] = ((long) key << 32) | row;
+        }
+        Arrays.sort(packed);
+
+        long[] result = new long[packed.length];
+        for (i = 0; i < packed.length; i++) {
+            result[i] = ids[(int) packed[i]];
+        }
+        return result;
+    }
+
+    //Helper method to list the ids of the rows, which are already in the order of the ids
+    private long[] idsInOrder(BitSet rows, boolean descending) {
+        long[] result = new long[rows.cardinality()];
+        int i = descending ? result.length - 1 : 0;
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            result[i] = ids[row];
+            i += descending ? -1 : 1;
+        }
+        return result;
+    }
+
+    //Helper method to give every row the position of its title among the sorted distinct titles.
+    //Titles are interned, so they can be looked up by identity and each distinct title is compared only once
+    private int[] titleRanks() {
+        IdentityHashMap<String, Integer> distinct = new IdentityHashMap<>();
+        for (int row = 0; row < rowCount; row++) {
+            if (titles[row] != null) {
+                distinct.put(titles[row], 0);
+            }
+        }
+        String[] sortedTitles = distinct.keySet().toArray(new String[distinct.size()]);
+        Arrays.sort(sortedTitles);
+        for (int i = 0; i < sortedTitles.length; i++) {
+            distinct.put(sortedTitles[i], i);
+        }
+
+        int[] ranks = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            if (titles[row] != null) {
+                ranks[row] = distinct.get(titles[row]);
+            }
+        }
+        return ranks;
+    }
+
+    //Helper method to find the row of an id, or -(insertion point + 1) if it isn't in the index
+    private int findRow(long id) {
+        return Arrays.binarySearch(ids, 0, rowCount, id);
+    }
+
+    //Helper method to open an empty row at the position, growing the arrays if they are full
+    private void insertRow(int row) {
+        if (rowCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            authors = Arrays.copyOf(authors, capacity);
+            suppliers = Arrays.copyOf(suppliers, capacity);
+        }
+        //New books have the highest id, so this only moves rows when an older id comes back
+        if (row < rowCount) {
+            int moved = rowCount - row;
+            System.arraycopy(ids, row, ids, row + 1, moved);
+            System.arraycopy(prices, row, prices, row + 1, moved);
+            System.arraycopy(quantities, row, quantities, row + 1, moved);
+            System.arraycopy(titles, row, titles, row + 1, moved);
+            System.arraycopy(authors, row, authors, row + 1, moved);
+            System.arraycopy(suppliers, row, suppliers, row + 1, moved);
+            for (int i = removedRows.previousSetBit(rowCount - 1); i >= row; i = removedRows.previousSetBit(i - 1)) {
+                removedRows.clear(i);
+                removedRows.set(i + 1);
+            }
+        }
+        rowCount++;
+    }
+
+    //Helper method to drop the removed rows from the arrays
+    private void compact() {
+        int target = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (removedRows.get(row)) {
+                continue;
+            }
+            ids[target] = ids[row];
+            prices[target] = prices[row];
+            quantities[target] = quantities[row];
+            titles[target] = titles[row];
+            authors[target] = authors[row];
+            suppliers[target] = suppliers[row];
+            target++;
+        }
+        Arrays.fill(titles, target, rowCount, null);
+        Arrays.fill(authors, target, rowCount, null);
+        Arrays.fill(suppliers, target, rowCount, null);
+        rowCount = target;
+        removedRows.clear();
+        removedCount = 0;
+        //Strings of removed books may not be used anymore
+        strings.clear();
+        for (int row = 0; row < rowCount; row++) {
+            titles[row] = intern(titles[row]);
+            authors[row] = intern(authors[row]);
+            suppliers[row] = intern(suppliers[row]);
+        }
+    }
+
+    //Helper method to return the one instance of a string kept in the index
+    private String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String interned = strings.get(value);
+        if (interned == null) {
+            strings.put(value, value);
+            interned = value;
+        }
+        return interned;
+    }
+
+    //Selects the rows of a query. Filters clear the bits of the rows they reject
+    public abstract static class Filter {
+
+        abstract void apply(BookIndex index, BitSet rows);
+
+        //Books with at most the given quantity
+        public static Filter lowStock(final int maxQuantity) {
+            return new Filter() {
+                @Override
+                void apply(BookIndex index, BitSet rows) {
+                    for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                        if (index.quantities[row] > maxQuantity) {
+                            rows.clear(row);
+                        }
+                    }
+                }
+            };
+        }
+
+        //Books with a price between min and max, both included
+        public static Filter priceBetween(final int minPrice, final int maxPrice) {
+            return new Filter() {
+                @Override
+                void apply(BookIndex index, BitSet rows) {
+                    for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                        int price = index.prices[row];
+                        if (price < minPrice || price > maxPrice) {
+                            rows.clear(row);
+                        }
+                    }
+                }
+            };
+        }
+
+        //Books from the given supplier
+        public static Filter supplier(final String supplier) {
+            return new Filter() {
+                @Override
+                void apply(BookIndex index, BitSet rows) {
+                    //The index keeps one instance of every string, so a supplier it doesn't know matches no book
+                    String interned = index.strings.get(supplier);
+                    for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                        if (interned == null || index.suppliers[row] != interned) {
+                            rows.clear(row);
+                        }
+                    }
+                }
+            };
+        }
+
+        //Books that match both this filter and the other one
+        public Filter and(final Filter other) {
+            final Filter first = this;
+            return new Filter() {
+                @Override
+                void apply(BookIndex index, BitSet rows) {
+                    first.apply(index, rows);
+                    other.apply(index, rows);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import java.util.concurrent.Executor;
+
+//Builds a BookIndex in the background and keeps it current with the changes reported by BookProvider.
+//A change of single books rereads just those books, any other change rebuilds the index with one query.
+//Must be started and stopped on the main thread, the listener is called on the main thread.
+//Nothing starts it yet, see BookIndex
+public class BookIndexUpdater {
+
+    //Callback that receives the index whenever it has been built or changed
+    public interface Listener {
+        void onIndexChanged(BookIndex index);
+    }
+
+    private final ContentResolver contentResolver;
+    private final Executor executor;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    //Written on the executor, read on the main thread
+    private volatile BookIndex index;
+
+    //Increased whenever the index is rebuilt or the updater stops, updates started before are dropped
+    private volatile int generation = 0;
+
+    private boolean started = false;
+
+    private final ContentObserver observer = new ContentObserver(handler) {
+        //Called before API 16, where the URI that changed isn't known
+        @Override
+        public void onChange(boolean selfChange) {
+            rebuild();
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri changedUri) {
+            if (changedUri == null || changedUri.equals(BookEntry.CONTENT_URI)) {
+                rebuild();
+            } else {
+                refreshBook(ContentUris.parseId(changedUri));
+            }
+        }
+    };
+
+    public BookIndexUpdater(ContentResolver contentResolver, Executor executor, Listener listener) {
+        this.contentResolver = contentResolver;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    //Returns the index, or null if it hasn't been built yet
+    public BookIndex getIndex() {
+        return index;
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        contentResolver.registerContentObserver(BookEntry.CONTENT_URI, true, observer);
+        rebuild();
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        generation++;
+        contentResolver.unregisterContentObserver(observer);
+    }
+
+    //Helper method to build a new index in the background
+    private void rebuild() {
+        final int buildGeneration = ++generation;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                BookIndex newIndex = BookIndex.build(contentResolver);
+                if (buildGeneration == generation) {
+                    index = newIndex;
+                    notifyListener(buildGeneration);
+                }
+            }
+        });
+    }
+
+    //Helper method to reread a single book in the background and put it into the index, or remove it if it is gone
+    private void refreshBook(final long id) {
+        final int updateGeneration = generation;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                BookIndex currentIndex = index;
+                //Without an index the rebuild that is running reads the book anyway
+                if (currentIndex == null || updateGeneration != generation) {
+                    return;
+                }
+                //Read and apply under the lock of the index, so that two updates of the same book
+                //running on different threads can't apply an older read after a newer one
+                synchronized (currentIndex) {
+                    Cursor cursor = contentResolver.query(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id),
+                            BookIndex.PROJECTION, null, null, null);
+                    if (cursor == null) {
+                        return;
+                    }
+                    try {
+                        if (cursor.moveToFirst()) {
+                            currentIndex.putRow(cursor);
+                        } else {
+                            currentIndex.remove(id);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                notifyListener(updateGeneration);
+            }
+        });
+    }
+
+    //Helper method to pass the index to the listener on the main thread, unless it has been replaced since
+    private void notifyListener(final int changeGeneration) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (started && changeGeneration == generation) {
+                    listener.onIndexChanged(index);
+                }
+            }
+        });
+    }
+}
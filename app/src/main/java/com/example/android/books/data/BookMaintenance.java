@@ -0,0 +1,210 @@
+package com.example.android.books.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.MaintenanceEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Maintenance pass of the database: refreshes the statistics of the query planner one table at a time,
+//returns the free pages of the file to the file system in small steps and checks the database for corruption.
+//Every step is a short statement of its own with a pause after it, so writes of the provider wait for one step
+//at most, and the pass can be stopped between steps
+final class BookMaintenance {
+
+    private static final String LOG_TAG = BookMaintenance.class.getSimpleName();
+
+    //Free pages returned per step, and the pause after every step
+    static final int VACUUM_STEP_PAGES = 128;
+    private static final long STEP_PAUSE_MILLIS = 20;
+
+    //Fewer free pages than this aren't worth a vacuum
+    static final int MIN_FREE_PAGES = 64;
+
+    //The statistics are refreshed when the number of books has changed by this fraction since the last refresh,
+    //or when the last refresh is older than the interval
+    private static final double ANALYZE_CHANGE_RATIO = 0.2;
+    private static final long ANALYZE_INTERVAL_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    //Guards the fields below, apart from the lock of run(), which is held for the whole pass
+    private final Object stopLock = new Object();
+
+    //Tag and stop flag of the running pass, each pass has a flag of its own
+    private String runningTag;
+    private AtomicBoolean runningStopped;
+
+    //Tag of the last stop that came before its pass started, so the pass ends right away once it does start
+    private String earlyStopTag;
+
+    //Stops the pass with the tag after its current step, or as soon as it starts if it hasn't yet.
+    //A null tag stops the running pass, whatever its tag
+    void stop(String tag) {
+        synchronized (stopLock) {
+            if (runningStopped != null && (tag == null || tag.equals(runningTag))) {
+                runningStopped.set(true);
+            } else if (tag != null) {
+                earlyStopTag = tag;
+            }
+        }
+    }
+
+    //Runs a pass and adds it to the log. Returns the entry of the log, or null if the pass was skipped
+    //because the last one finished less than MaintenanceEntry.MIN_INTERVAL_MILLIS ago and force is false,
+    //or because it was stopped before it started. The tag names the pass for stop(), and may be null
+    synchronized ContentValues run(SQLiteDatabase db, boolean force, String tag) {
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        synchronized (stopLock) {
+            if (tag != null && tag.equals(earlyStopTag)) {
+                earlyStopTag = null;
+                return null;
+            }
+            runningTag = tag;
+            runningStopped = stopped;
+        }
+        try {
+            return run(db, force, stopped);
+        } finally {
+            synchronized (stopLock) {
+                runningTag = null;
+                runningStopped = null;
+            }
+        }
+    }
+
+    //Helper method to run a pass until it is done or its stop flag is set
+    private ContentValues run(SQLiteDatabase db, boolean force, AtomicBoolean stopped) {
+        long startedAt = System.currentTimeMillis();
+        long start = SystemClock.elapsedRealtime();
+
+        long lastFinished = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(" +
+                MaintenanceEntry.COLUMN_STARTED_AT + " + " + MaintenanceEntry.COLUMN_DURATION_MILLIS + "), 0) FROM " +
+                MaintenanceEntry.TABLE_NAME + " WHERE " + MaintenanceEntry.COLUMN_COMPLETED + " = 1", null);
+        if (!force && startedAt - lastFinished < MaintenanceEntry.MIN_INTERVAL_MILLIS) {
+            return null;
+        }
+
+        long sizeBefore = getFileSize(db);
+        long bookCount = DatabaseUtils.queryNumEntries(db, BookEntry.TABLE_NAME);
+        boolean analyzed = false;
+        boolean integrityOk = false;
+        if (shouldAnalyze(db, startedAt, bookCount)) {
+            analyzed = analyze(db, stopped);
+        }
+        if (!stopped.get()) {
+            vacuum(db, stopped);
+        }
+        if (!stopped.get()) {
+            integrityOk = checkIntegrity(db);
+        }
+        boolean completed = !stopped.get();
+
+        ContentValues pass = new ContentValues();
+        pass.put(MaintenanceEntry.COLUMN_STARTED_AT, startedAt);
+        pass.put(MaintenanceEntry.COLUMN_DURATION_MILLIS, SystemClock.elapsedRealtime() - start);
+        pass.put(MaintenanceEntry.COLUMN_BYTES_RECLAIMED, Math.max(0, sizeBefore - getFileSize(db)));
+        pass.put(MaintenanceEntry.COLUMN_ANALYZED, analyzed ? 1 : 0);
+        pass.put(MaintenanceEntry.COLUMN_BOOK_COUNT, bookCount);
+        pass.put(MaintenanceEntry.COLUMN_INTEGRITY_OK, integrityOk ? 1 : 0);
+        pass.put(MaintenanceEntry.COLUMN_COMPLETED, completed ? 1 : 0);
+        db.insert(MaintenanceEntry.TABLE_NAME, null, pass);
+        Log.i(LOG_TAG, "Maintenance pass: " + pass);
+        return pass;
+    }
+
+    //Helper method to check if the statistics are missing, old, or were taken with a quite different number of books
+    private static boolean shouldAnalyze(SQLiteDatabase db, long now, long bookCount) {
+        Cursor cursor = db.query(MaintenanceEntry.TABLE_NAME,
+                new String[] {MaintenanceEntry.COLUMN_STARTED_AT, MaintenanceEntry.COLUMN_BOOK_COUNT},
+                MaintenanceEntry.COLUMN_ANALYZED + " = 1", null, null, null, MaintenanceEntry._ID + " DESC", "1");
+        try {
+            if (!cursor.moveToFirst()) {
+                return true;
+            }
+            long lastCount = cursor.getLong(1);
+            return now - cursor.getLong(0) >= ANALYZE_INTERVAL_MILLIS
+                    || Math.abs(bookCount - lastCount) >= Math.max(1, lastCount * ANALYZE_CHANGE_RATIO);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //Helper method to refresh the statistics one table at a time. Returns false if the pass was stopped in between
+    private static boolean analyze(SQLiteDatabase db, AtomicBoolean stopped) {
+        List<String> tables = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%'", null);
+        try {
+            while (cursor.moveToNext()) {
+                tables.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        for (String table : tables) {
+            if (stopped.get()) {
+                return false;
+            }
+            db.execSQL("ANALYZE \"" + table + "\"");
+            pause();
+        }
+        return true;
+    }
+
+    //Helper method to return the free pages to the file system
+    private static void vacuum(SQLiteDatabase db, AtomicBoolean stopped) {
+        if (DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null) < MIN_FREE_PAGES) {
+            return;
+        }
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != BookDbHelper.AUTO_VACUUM_INCREMENTAL) {
+            //BookDbHelper adds the pointer map incremental vacuum needs when it opens the database. Without it the pass
+            //would need a full VACUUM, which holds the database for the time it takes to copy it, so the free pages
+            //are left to be reused by new books instead
+            Log.w(LOG_TAG, "Incremental vacuum is off, free pages are kept");
+        } else {
+            while (!stopped.get() && DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null) > 0) {
+                db.execSQL("PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ")");
+                pause();
+            }
+        }
+        //With write-ahead logging the file only shrinks when the log is copied back into it.
+        //A passive checkpoint copies what it can without waiting for readers or writers, without the log it does nothing
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //Helper method to check the database for corruption. It only reads, so with write-ahead logging writes go on meanwhile
+    private static boolean checkIntegrity(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("PRAGMA quick_check", null);
+        try {
+            if (cursor.moveToFirst() && "ok".equals(cursor.getString(0))) {
+                return true;
+            }
+            Log.e(LOG_TAG, "Integrity check failed: " + (cursor.getCount() > 0 ? cursor.getString(0) : "no result"));
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //Helper method that returns the size of the database in bytes, without the write-ahead log
+    private static long getFileSize(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)
+                * DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+    }
+
+    //Helper method to leave the database to writers waiting for it between two steps
+    private static void pause() {
+        SystemClock.sleep(STEP_PAUSE_MILLIS);
+    }
+}
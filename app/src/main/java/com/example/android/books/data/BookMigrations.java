@@ -0,0 +1,558 @@
+package com.example.android.books.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.android.books.data.BookContract.AggregateEntry;
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.ChangeEntry;
+import com.example.android.books.data.BookContract.DeletionEntry;
+import com.example.android.books.data.BookContract.MaintenanceEntry;
+import com.example.android.books.data.BookContract.SaleEntry;
+import com.example.android.books.data.BookContract.SupplierEntry;
+
+//Schema of the first version of the database, and the ordered steps that upgrade it to the current version.
+//New databases are created at version 1 and run through the same steps as upgraded ones,
+//so there is only one definition of every version of the schema
+final class BookMigrations {
+
+    private static final String LOG_TAG = BookMigrations.class.getSimpleName();
+
+    //SQL expressions for a new random sync id, and for the current time in milliseconds since the epoch
+    private static final String SQL_NEW_SYNC_ID = "lower(hex(randomblob(16)))";
+    private static final String SQL_NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    private BookMigrations() {
+
+    }
+
+    //Version 1 to 2: indexes on the columns the books are sorted, searched and filtered by
+    static final Migration MIGRATION_1_2 = new Migration(1) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            createIndex(db, BookEntry.COLUMN_BOOK_NAME);
+            createIndex(db, BookEntry.COLUMN_AUTHOR);
+            createIndex(db, BookEntry.COLUMN_SUPPLIER_NAME);
+            createIndex(db, BookEntry.COLUMN_QUANTITY);
+        }
+    };
+
+    //Version 2 to 3: full-text index over title, author and supplier, kept in sync with the books by triggers.
+    //The rows of the index use the id of their book as docid
+    static final Migration MIGRATION_2_3 = new Migration(2) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            String indexedColumns = BookEntry.COLUMN_BOOK_NAME + ", " +
+                    BookEntry.COLUMN_AUTHOR + ", " +
+                    BookEntry.COLUMN_SUPPLIER_NAME;
+
+            db.execSQL("CREATE VIRTUAL TABLE " + BookEntry.FTS_TABLE_NAME + " USING fts4(" + indexedColumns + ")");
+            db.execSQL("INSERT INTO " + BookEntry.FTS_TABLE_NAME + " (docid, " + indexedColumns + ") " +
+                    "SELECT " + BookEntry._ID + ", " + indexedColumns + " FROM " + BookEntry.TABLE_NAME);
+
+            db.execSQL("CREATE TRIGGER " + BookEntry.FTS_TABLE_NAME + "_insert AFTER INSERT ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    "INSERT INTO " + BookEntry.FTS_TABLE_NAME + " (docid, " + indexedColumns + ") VALUES (" +
+                    "NEW." + BookEntry._ID + ", " +
+                    "NEW." + BookEntry.COLUMN_BOOK_NAME + ", " +
+                    "NEW." + BookEntry.COLUMN_AUTHOR + ", " +
+                    "NEW." + BookEntry.COLUMN_SUPPLIER_NAME + "); END");
+            //Only changes of the indexed columns touch the index, so quantity changes stay cheap
+            db.execSQL("CREATE TRIGGER " + BookEntry.FTS_TABLE_NAME + "_update AFTER UPDATE OF " + indexedColumns +
+                    " ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    "UPDATE " + BookEntry.FTS_TABLE_NAME + " SET " +
+                    BookEntry.COLUMN_BOOK_NAME + " = NEW." + BookEntry.COLUMN_BOOK_NAME + ", " +
+                    BookEntry.COLUMN_AUTHOR + " = NEW." + BookEntry.COLUMN_AUTHOR + ", " +
+                    BookEntry.COLUMN_SUPPLIER_NAME + " = NEW." + BookEntry.COLUMN_SUPPLIER_NAME +
+                    " WHERE docid = NEW." + BookEntry._ID + "; END");
+            db.execSQL("CREATE TRIGGER " + BookEntry.FTS_TABLE_NAME + "_delete AFTER DELETE ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    "DELETE FROM " + BookEntry.FTS_TABLE_NAME + " WHERE docid = OLD." + BookEntry._ID + "; END");
+        }
+    };
+
+    //Version 3 to 4: aggregates of the books of every supplier, filled from the existing books and kept
+    //up to date by triggers in the same transaction as every insert, update and delete of a book.
+    //A supplier's row is removed when its last book is removed or moved to another supplier
+    static final Migration MIGRATION_3_4 = new Migration(3) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + AggregateEntry.TABLE_NAME + " (" +
+                    AggregateEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    AggregateEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE, " +
+                    AggregateEntry.COLUMN_TITLE_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                    AggregateEntry.COLUMN_UNIT_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                    AggregateEntry.COLUMN_STOCK_VALUE + " INTEGER NOT NULL DEFAULT 0, " +
+                    AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                    AggregateEntry.COLUMN_LOW_STOCK_COUNT + " INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("INSERT INTO " + AggregateEntry.TABLE_NAME + " (" +
+                    AggregateEntry.COLUMN_SUPPLIER_NAME + ", " +
+                    AggregateEntry.COLUMN_TITLE_COUNT + ", " +
+                    AggregateEntry.COLUMN_UNIT_COUNT + ", " +
+                    AggregateEntry.COLUMN_STOCK_VALUE + ", " +
+                    AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + ", " +
+                    AggregateEntry.COLUMN_LOW_STOCK_COUNT + ") " +
+                    "SELECT " + BookEntry.COLUMN_SUPPLIER_NAME + ", " +
+                    "COUNT(*), " +
+                    "SUM(" + BookEntry.COLUMN_QUANTITY + "), " +
+                    "SUM(" + BookEntry.COLUMN_PRICE + " * " + BookEntry.COLUMN_QUANTITY + "), " +
+                    "SUM(" + BookEntry.COLUMN_QUANTITY + " = 0), " +
+                    "SUM(" + BookEntry.COLUMN_QUANTITY + " < " + AggregateEntry.LOW_STOCK_QUANTITY + ") " +
+                    "FROM " + BookEntry.TABLE_NAME + " GROUP BY " + BookEntry.COLUMN_SUPPLIER_NAME);
+
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_insert AFTER INSERT ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    addToSummary("NEW", AggregateEntry.COLUMN_SUPPLIER_NAME, BookEntry.COLUMN_SUPPLIER_NAME) +
+                    "END");
+            //Only changes of the summed columns touch the aggregates, so renaming a book stays cheap
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_update AFTER UPDATE OF " +
+                    BookEntry.COLUMN_PRICE + ", " + BookEntry.COLUMN_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_NAME +
+                    " ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    removeFromSummary("OLD", AggregateEntry.COLUMN_SUPPLIER_NAME, BookEntry.COLUMN_SUPPLIER_NAME) +
+                    addToSummary("NEW", AggregateEntry.COLUMN_SUPPLIER_NAME, BookEntry.COLUMN_SUPPLIER_NAME) +
+                    deleteEmptySummary("OLD", AggregateEntry.COLUMN_SUPPLIER_NAME, BookEntry.COLUMN_SUPPLIER_NAME) +
+                    "END");
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_delete AFTER DELETE ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    removeFromSummary("OLD", AggregateEntry.COLUMN_SUPPLIER_NAME, BookEntry.COLUMN_SUPPLIER_NAME) +
+                    deleteEmptySummary("OLD", AggregateEntry.COLUMN_SUPPLIER_NAME, BookEntry.COLUMN_SUPPLIER_NAME) +
+                    "END");
+        }
+    };
+
+    //Version 4 to 5: suppliers move to their own table, one row per distinct supplier name, and books refer to
+    //them by id. A supplier that had different numbers on different books keeps the number of its newest book.
+    //SQLite can't change the columns of a table in place, so the books are copied to a new table with the same ids,
+    //which drops the old triggers and indexes; they are created again on the supplier id. The aggregates are
+    //keyed by supplier id too, so renaming a supplier changes one row instead of every book
+    static final Migration MIGRATION_4_5 = new Migration(4) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " (" +
+                    SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE, " +
+                    SupplierEntry.COLUMN_SUPPLIER_NUMBER + " TEXT)");
+            db.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " (" +
+                    SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_NUMBER + ") " +
+                    "SELECT " + BookEntry.COLUMN_SUPPLIER_NAME + ", " +
+                    "(SELECT newest." + BookEntry.COLUMN_SUPPLIER_NUMBER + " FROM " + BookEntry.TABLE_NAME + " AS newest" +
+                    " WHERE newest." + BookEntry.COLUMN_SUPPLIER_NAME + " = books." + BookEntry.COLUMN_SUPPLIER_NAME +
+                    " AND newest." + BookEntry.COLUMN_SUPPLIER_NUMBER + " IS NOT NULL" +
+                    " ORDER BY newest." + BookEntry._ID + " DESC LIMIT 1) " +
+                    "FROM " + BookEntry.TABLE_NAME + " GROUP BY " + BookEntry.COLUMN_SUPPLIER_NAME);
+
+            //Copy the books with the id of their supplier instead of its name and number
+            String bookColumns = BookEntry._ID + ", " +
+                    BookEntry.COLUMN_BOOK_NAME + ", " +
+                    BookEntry.COLUMN_AUTHOR + ", " +
+                    BookEntry.COLUMN_PRICE + ", " +
+                    BookEntry.COLUMN_QUANTITY;
+            db.execSQL("CREATE TABLE " + BookEntry.TABLE_NAME + "_new (" +
+                    BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    BookEntry.COLUMN_BOOK_NAME + " TEXT NOT NULL, " +
+                    BookEntry.COLUMN_AUTHOR + " TEXT, " +
+                    BookEntry.COLUMN_PRICE + " INTEGER NOT NULL, " +
+                    BookEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, " +
+                    BookEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES " +
+                    SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "))");
+            db.execSQL("INSERT INTO " + BookEntry.TABLE_NAME + "_new (" + bookColumns + ", " + BookEntry.COLUMN_SUPPLIER_ID + ") " +
+                    "SELECT books." + BookEntry._ID + ", " +
+                    "books." + BookEntry.COLUMN_BOOK_NAME + ", " +
+                    "books." + BookEntry.COLUMN_AUTHOR + ", " +
+                    "books." + BookEntry.COLUMN_PRICE + ", " +
+                    "books." + BookEntry.COLUMN_QUANTITY + ", " +
+                    "suppliers." + SupplierEntry._ID +
+                    " FROM " + BookEntry.TABLE_NAME + " AS books JOIN " + SupplierEntry.TABLE_NAME + " AS suppliers" +
+                    " ON suppliers." + SupplierEntry.COLUMN_SUPPLIER_NAME + " = books." + BookEntry.COLUMN_SUPPLIER_NAME);
+            db.execSQL("DROP TABLE " + BookEntry.TABLE_NAME);
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + "_new RENAME TO " + BookEntry.TABLE_NAME);
+
+            createIndex(db, BookEntry.COLUMN_BOOK_NAME);
+            createIndex(db, BookEntry.COLUMN_AUTHOR);
+            createIndex(db, BookEntry.COLUMN_QUANTITY);
+            //Finds the books of a supplier, and lets a supplier be deleted without scanning the books
+            createIndex(db, BookEntry.COLUMN_SUPPLIER_ID);
+
+            db.execSQL("CREATE VIEW " + BookEntry.VIEW_NAME + " AS SELECT " +
+                    "books." + BookEntry._ID + " AS " + BookEntry._ID + ", " +
+                    "books." + BookEntry.COLUMN_BOOK_NAME + " AS " + BookEntry.COLUMN_BOOK_NAME + ", " +
+                    "books." + BookEntry.COLUMN_AUTHOR + " AS " + BookEntry.COLUMN_AUTHOR + ", " +
+                    "books." + BookEntry.COLUMN_PRICE + " AS " + BookEntry.COLUMN_PRICE + ", " +
+                    "books." + BookEntry.COLUMN_QUANTITY + " AS " + BookEntry.COLUMN_QUANTITY + ", " +
+                    "books." + BookEntry.COLUMN_SUPPLIER_ID + " AS " + BookEntry.COLUMN_SUPPLIER_ID + ", " +
+                    "suppliers." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_SUPPLIER_NAME + ", " +
+                    "suppliers." + SupplierEntry.COLUMN_SUPPLIER_NUMBER + " AS " + BookEntry.COLUMN_SUPPLIER_NUMBER +
+                    " FROM " + BookEntry.TABLE_NAME + " AS books JOIN " + SupplierEntry.TABLE_NAME + " AS suppliers" +
+                    " ON suppliers." + SupplierEntry._ID + " = books." + BookEntry.COLUMN_SUPPLIER_ID);
+
+            //The full-text index keeps the supplier name of every book, read from the suppliers table
+            String supplierName = "(SELECT " + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + SupplierEntry.TABLE_NAME +
+                    " WHERE " + SupplierEntry._ID + " = NEW." + BookEntry.COLUMN_SUPPLIER_ID + ")";
+            db.execSQL("CREATE TRIGGER " + BookEntry.FTS_TABLE_NAME + "_insert AFTER INSERT ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    "INSERT INTO " + BookEntry.FTS_TABLE_NAME + " (docid, " +
+                    BookEntry.COLUMN_BOOK_NAME + ", " + BookEntry.COLUMN_AUTHOR + ", " + BookEntry.COLUMN_SUPPLIER_NAME + ") VALUES (" +
+                    "NEW." + BookEntry._ID + ", " +
+                    "NEW." + BookEntry.COLUMN_BOOK_NAME + ", " +
+                    "NEW." + BookEntry.COLUMN_AUTHOR + ", " +
+                    supplierName + "); END");
+            db.execSQL("CREATE TRIGGER " + BookEntry.FTS_TABLE_NAME + "_update AFTER UPDATE OF " +
+                    BookEntry.COLUMN_BOOK_NAME + ", " + BookEntry.COLUMN_AUTHOR + ", " + BookEntry.COLUMN_SUPPLIER_ID +
+                    " ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    "UPDATE " + BookEntry.FTS_TABLE_NAME + " SET " +
+                    BookEntry.COLUMN_BOOK_NAME + " = NEW." + BookEntry.COLUMN_BOOK_NAME + ", " +
+                    BookEntry.COLUMN_AUTHOR + " = NEW." + BookEntry.COLUMN_AUTHOR + ", " +
+                    BookEntry.COLUMN_SUPPLIER_NAME + " = " + supplierName +
+                    " WHERE docid = NEW." + BookEntry._ID + "; END");
+            db.execSQL("CREATE TRIGGER " + BookEntry.FTS_TABLE_NAME + "_delete AFTER DELETE ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    "DELETE FROM " + BookEntry.FTS_TABLE_NAME + " WHERE docid = OLD." + BookEntry._ID + "; END");
+            //Renaming a supplier updates the index of its books
+            db.execSQL("CREATE TRIGGER " + BookEntry.FTS_TABLE_NAME + "_supplier_update AFTER UPDATE OF " +
+                    SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME + " BEGIN " +
+                    "UPDATE " + BookEntry.FTS_TABLE_NAME + " SET " +
+                    BookEntry.COLUMN_SUPPLIER_NAME + " = NEW." + SupplierEntry.COLUMN_SUPPLIER_NAME +
+                    " WHERE docid IN (SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME +
+                    " WHERE " + BookEntry.COLUMN_SUPPLIER_ID + " = NEW." + SupplierEntry._ID + "); END");
+
+            //Key the aggregates by supplier id, filled again from the copied books
+            db.execSQL("DROP TABLE " + AggregateEntry.TABLE_NAME);
+            db.execSQL("CREATE TABLE " + AggregateEntry.TABLE_NAME + " (" +
+                    AggregateEntry._ID + " INTEGER PRIMARY KEY, " +
+                    AggregateEntry.COLUMN_TITLE_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                    AggregateEntry.COLUMN_UNIT_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                    AggregateEntry.COLUMN_STOCK_VALUE + " INTEGER NOT NULL DEFAULT 0, " +
+                    AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                    AggregateEntry.COLUMN_LOW_STOCK_COUNT + " INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("INSERT INTO " + AggregateEntry.TABLE_NAME + " (" +
+                    AggregateEntry._ID + ", " +
+                    AggregateEntry.COLUMN_TITLE_COUNT + ", " +
+                    AggregateEntry.COLUMN_UNIT_COUNT + ", " +
+                    AggregateEntry.COLUMN_STOCK_VALUE + ", " +
+                    AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + ", " +
+                    AggregateEntry.COLUMN_LOW_STOCK_COUNT + ") " +
+                    "SELECT " + BookEntry.COLUMN_SUPPLIER_ID + ", " +
+                    "COUNT(*), " +
+                    "SUM(" + BookEntry.COLUMN_QUANTITY + "), " +
+                    "SUM(" + BookEntry.COLUMN_PRICE + " * " + BookEntry.COLUMN_QUANTITY + "), " +
+                    "SUM(" + BookEntry.COLUMN_QUANTITY + " = 0), " +
+                    "SUM(" + BookEntry.COLUMN_QUANTITY + " < " + AggregateEntry.LOW_STOCK_QUANTITY + ") " +
+                    "FROM " + BookEntry.TABLE_NAME + " GROUP BY " + BookEntry.COLUMN_SUPPLIER_ID);
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_insert AFTER INSERT ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    addToSummary("NEW", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    "END");
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_update AFTER UPDATE OF " +
+                    BookEntry.COLUMN_PRICE + ", " + BookEntry.COLUMN_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_ID +
+                    " ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    removeFromSummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    addToSummary("NEW", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    deleteEmptySummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    "END");
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_delete AFTER DELETE ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    removeFromSummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    deleteEmptySummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    "END");
+            db.execSQL("CREATE VIEW " + AggregateEntry.VIEW_NAME + " AS SELECT " +
+                    "summary.*, suppliers." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + AggregateEntry.COLUMN_SUPPLIER_NAME +
+                    " FROM " + AggregateEntry.TABLE_NAME + " AS summary JOIN " + SupplierEntry.TABLE_NAME + " AS suppliers" +
+                    " ON suppliers." + SupplierEntry._ID + " = summary." + AggregateEntry._ID);
+        }
+    };
+
+    //Version 5 to 6: append-only ledger of sales, with totals per hour and per day kept by a trigger.
+    //The ledger has no foreign key to the books, so it keeps the sales of deleted books
+    static final Migration MIGRATION_5_6 = new Migration(5) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + SaleEntry.TABLE_NAME + " (" +
+                    SaleEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    SaleEntry.COLUMN_BOOK_ID + " INTEGER NOT NULL, " +
+                    SaleEntry.COLUMN_QUANTITY + " INTEGER NOT NULL CHECK (" + SaleEntry.COLUMN_QUANTITY + " > 0), " +
+                    SaleEntry.COLUMN_PRICE + " INTEGER NOT NULL, " +
+                    SaleEntry.COLUMN_SOLD_AT + " INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX " + SaleEntry.TABLE_NAME + "_" + SaleEntry.COLUMN_BOOK_ID + "_index ON " +
+                    SaleEntry.TABLE_NAME + " (" + SaleEntry.COLUMN_BOOK_ID + ")");
+            db.execSQL("CREATE INDEX " + SaleEntry.TABLE_NAME + "_" + SaleEntry.COLUMN_SOLD_AT + "_index ON " +
+                    SaleEntry.TABLE_NAME + " (" + SaleEntry.COLUMN_SOLD_AT + ")");
+            db.execSQL("CREATE TRIGGER " + SaleEntry.TABLE_NAME + "_no_update BEFORE UPDATE ON " + SaleEntry.TABLE_NAME + " BEGIN " +
+                    "SELECT RAISE(ABORT, 'Sales can not be changed'); END");
+            db.execSQL("CREATE TRIGGER " + SaleEntry.TABLE_NAME + "_no_delete BEFORE DELETE ON " + SaleEntry.TABLE_NAME + " BEGIN " +
+                    "SELECT RAISE(ABORT, 'Sales can not be deleted'); END");
+
+            createSalesBuckets(db, SaleEntry.HOURLY_TABLE_NAME, SaleEntry.HOUR_MILLIS);
+            createSalesBuckets(db, SaleEntry.DAILY_TABLE_NAME, SaleEntry.DAY_MILLIS);
+        }
+    };
+
+    //Version 6 to 7: sync id, version and time of the last change of every book, and the journal of the changes
+    //the server hasn't received yet. Triggers keep both, so every way of changing the books is tracked
+    static final Migration MIGRATION_6_7 = new Migration(6) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + BookEntry.COLUMN_SYNC_ID + " TEXT");
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + BookEntry.COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 1");
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + BookEntry.COLUMN_UPDATED_AT + " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET " +
+                    BookEntry.COLUMN_SYNC_ID + " = " + SQL_NEW_SYNC_ID + ", " +
+                    BookEntry.COLUMN_UPDATED_AT + " = " + SQL_NOW_MILLIS);
+            db.execSQL("CREATE UNIQUE INDEX " + BookEntry.TABLE_NAME + "_" + BookEntry.COLUMN_SYNC_ID + "_index ON " +
+                    BookEntry.TABLE_NAME + " (" + BookEntry.COLUMN_SYNC_ID + ")");
+
+            //The view lists the columns of the books with *, so it keeps up with new columns
+            db.execSQL("DROP VIEW " + BookEntry.VIEW_NAME);
+            db.execSQL("CREATE VIEW " + BookEntry.VIEW_NAME + " AS SELECT books.*, " +
+                    "suppliers." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_SUPPLIER_NAME + ", " +
+                    "suppliers." + SupplierEntry.COLUMN_SUPPLIER_NUMBER + " AS " + BookEntry.COLUMN_SUPPLIER_NUMBER +
+                    " FROM " + BookEntry.TABLE_NAME + " AS books JOIN " + SupplierEntry.TABLE_NAME + " AS suppliers" +
+                    " ON suppliers." + SupplierEntry._ID + " = books." + BookEntry.COLUMN_SUPPLIER_ID);
+
+            db.execSQL("CREATE TABLE " + ChangeEntry.TABLE_NAME + " (" +
+                    ChangeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    ChangeEntry.COLUMN_BOOK_ID + " INTEGER NOT NULL, " +
+                    ChangeEntry.COLUMN_SYNC_ID + " TEXT NOT NULL, " +
+                    ChangeEntry.COLUMN_OPERATION + " INTEGER NOT NULL, " +
+                    ChangeEntry.COLUMN_QUANTITY_DELTA + " INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("CREATE INDEX " + ChangeEntry.TABLE_NAME + "_" + ChangeEntry.COLUMN_SYNC_ID + "_index ON " +
+                    ChangeEntry.TABLE_NAME + " (" + ChangeEntry.COLUMN_SYNC_ID + ")");
+            //Books that exist before the journal are journaled as inserts, so the first sync sends them
+            db.execSQL("INSERT INTO " + ChangeEntry.TABLE_NAME + " (" + ChangeEntry.COLUMN_BOOK_ID + ", " +
+                    ChangeEntry.COLUMN_SYNC_ID + ", " + ChangeEntry.COLUMN_OPERATION + ", " + ChangeEntry.COLUMN_QUANTITY_DELTA + ") " +
+                    "SELECT " + BookEntry._ID + ", " + BookEntry.COLUMN_SYNC_ID + ", " + ChangeEntry.OPERATION_INSERT + ", " +
+                    BookEntry.COLUMN_QUANTITY + " FROM " + BookEntry.TABLE_NAME);
+
+            //Inserted books get a sync id unless they have one, like the books received from the server
+            db.execSQL("CREATE TRIGGER " + ChangeEntry.TABLE_NAME + "_insert AFTER INSERT ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    "UPDATE " + BookEntry.TABLE_NAME + " SET " +
+                    BookEntry.COLUMN_SYNC_ID + " = IFNULL(NEW." + BookEntry.COLUMN_SYNC_ID + ", " + SQL_NEW_SYNC_ID + "), " +
+                    BookEntry.COLUMN_UPDATED_AT + " = " + SQL_NOW_MILLIS +
+                    " WHERE " + BookEntry._ID + " = NEW." + BookEntry._ID + "; " +
+                    journal("NEW", "(SELECT " + BookEntry.COLUMN_SYNC_ID + " FROM " + BookEntry.TABLE_NAME +
+                            " WHERE " + BookEntry._ID + " = NEW." + BookEntry._ID + ")",
+                            ChangeEntry.OPERATION_INSERT, "NEW." + BookEntry.COLUMN_QUANTITY) +
+                    "END");
+            //Only changes of the synced columns are journaled, so setting the sync columns themselves doesn't recurse
+            createJournalUpdateTrigger(db, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_AUTHOR, BookEntry.COLUMN_PRICE,
+                    BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_SUPPLIER_ID);
+            db.execSQL("CREATE TRIGGER " + ChangeEntry.TABLE_NAME + "_delete AFTER DELETE ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                    journal("OLD", "OLD." + BookEntry.COLUMN_SYNC_ID, ChangeEntry.OPERATION_DELETE, "0") +
+                    "END");
+        }
+    };
+
+    //Version 7 to 8: log of the maintenance passes
+    static final Migration MIGRATION_7_8 = new Migration(7) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + MaintenanceEntry.TABLE_NAME + " (" +
+                    MaintenanceEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    MaintenanceEntry.COLUMN_STARTED_AT + " INTEGER NOT NULL, " +
+                    MaintenanceEntry.COLUMN_DURATION_MILLIS + " INTEGER NOT NULL, " +
+                    MaintenanceEntry.COLUMN_BYTES_RECLAIMED + " INTEGER NOT NULL, " +
+                    MaintenanceEntry.COLUMN_ANALYZED + " INTEGER NOT NULL, " +
+                    MaintenanceEntry.COLUMN_BOOK_COUNT + " INTEGER NOT NULL, " +
+                    MaintenanceEntry.COLUMN_INTEGRITY_OK + " INTEGER NOT NULL, " +
+                    MaintenanceEntry.COLUMN_COMPLETED + " INTEGER NOT NULL)");
+        }
+    };
+
+    //Version 8 to 9: ISBN of the books, unique so a scanned barcode finds at most one book through the index.
+    //Books without an ISBN hold null, which the unique index allows any number of times
+    static final Migration MIGRATION_8_9 = new Migration(8) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + BookEntry.COLUMN_ISBN + " TEXT");
+            db.execSQL("CREATE UNIQUE INDEX " + BookEntry.TABLE_NAME + "_" + BookEntry.COLUMN_ISBN + "_index ON " +
+                    BookEntry.TABLE_NAME + " (" + BookEntry.COLUMN_ISBN + ")");
+
+            //The ISBN is synced like the other columns of the book
+            db.execSQL("DROP TRIGGER " + ChangeEntry.TABLE_NAME + "_update");
+            createJournalUpdateTrigger(db, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_AUTHOR, BookEntry.COLUMN_PRICE,
+                    BookEntry.COLUMN_QUANTITY, BookEntry.COLUMN_SUPPLIER_ID, BookEntry.COLUMN_ISBN);
+        }
+    };
+
+    //Version 9 to 10: deleted books are marked instead of removed, so a delete can be undone for a while and deleting
+    //all books writes one row of the deletion log instead of touching every book. The view and the aggregates leave
+    //the deleted books out. The full-text index and the journal keep them until they are purged, the view filters
+    //the search results and the journal sends the delete once it can't be undone anymore
+    static final Migration MIGRATION_9_10 = new Migration(9) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + DeletionEntry.TABLE_NAME + " (" +
+                    DeletionEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    DeletionEntry.COLUMN_DELETED_AT + " INTEGER NOT NULL, " +
+                    DeletionEntry.COLUMN_THROUGH_BOOK_ID + " INTEGER)");
+            //Finds the highest id deleted by deleting all books without scanning the log
+            db.execSQL("CREATE INDEX " + DeletionEntry.TABLE_NAME + "_" + DeletionEntry.COLUMN_THROUGH_BOOK_ID + "_index ON " +
+                    DeletionEntry.TABLE_NAME + " (" + DeletionEntry.COLUMN_THROUGH_BOOK_ID + ")");
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + BookEntry.COLUMN_DELETION_ID + " INTEGER");
+            //Finds the books of a delete to undo or purge it
+            createIndex(db, BookEntry.COLUMN_DELETION_ID);
+
+            db.execSQL("DROP VIEW " + BookEntry.VIEW_NAME);
+            db.execSQL("CREATE VIEW " + BookEntry.VIEW_NAME + " AS SELECT books.*, " +
+                    "suppliers." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_SUPPLIER_NAME + ", " +
+                    "suppliers." + SupplierEntry.COLUMN_SUPPLIER_NUMBER + " AS " + BookEntry.COLUMN_SUPPLIER_NUMBER +
+                    " FROM " + BookEntry.TABLE_NAME + " AS books JOIN " + SupplierEntry.TABLE_NAME + " AS suppliers" +
+                    " ON suppliers." + SupplierEntry._ID + " = books." + BookEntry.COLUMN_SUPPLIER_ID +
+                    " WHERE " + isLiveBook("books."));
+
+            //Deleted books already left the aggregates when they were marked, so changing or purging them leaves them alone
+            db.execSQL("DROP TRIGGER " + AggregateEntry.TABLE_NAME + "_update");
+            db.execSQL("DROP TRIGGER " + AggregateEntry.TABLE_NAME + "_delete");
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_update AFTER UPDATE OF " +
+                    BookEntry.COLUMN_PRICE + ", " + BookEntry.COLUMN_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_ID +
+                    " ON " + BookEntry.TABLE_NAME + " WHEN " + isLiveBook("OLD.") + " BEGIN " +
+                    removeFromSummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    addToSummary("NEW", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    deleteEmptySummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    "END");
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_delete AFTER DELETE ON " + BookEntry.TABLE_NAME +
+                    " WHEN " + isLiveBook("OLD.") + " BEGIN " +
+                    removeFromSummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    deleteEmptySummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    "END");
+            //Marking a book takes it out of the aggregates, and undoing its delete puts it back
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_mark_deleted AFTER UPDATE OF " +
+                    BookEntry.COLUMN_DELETION_ID + " ON " + BookEntry.TABLE_NAME +
+                    " WHEN " + isLiveBook("OLD.") + " AND NEW." + BookEntry.COLUMN_DELETION_ID + " IS NOT NULL BEGIN " +
+                    removeFromSummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    deleteEmptySummary("OLD", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    "END");
+            db.execSQL("CREATE TRIGGER " + AggregateEntry.TABLE_NAME + "_restore AFTER UPDATE OF " +
+                    BookEntry.COLUMN_DELETION_ID + " ON " + BookEntry.TABLE_NAME +
+                    " WHEN OLD." + BookEntry.COLUMN_DELETION_ID + " IS NOT NULL AND " + isLiveBook("NEW.") + " BEGIN " +
+                    addToSummary("NEW", AggregateEntry._ID, BookEntry.COLUMN_SUPPLIER_ID) +
+                    "END");
+        }
+    };
+
+    //All steps, ordered by their start version
+    static final Migration[] ALL = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10
+    };
+
+    //Creates the books table as it was in version 1 of the database
+    static void createVersion1(SQLiteDatabase db) {
+        //String that contains the SQL statement that creates the books table
+        String SQL_CREATE_BOOKS_TABLE = "CREATE TABLE " + BookEntry.TABLE_NAME + " (" +
+                BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                BookEntry.COLUMN_BOOK_NAME + " TEXT NOT NULL, " +
+                BookEntry.COLUMN_AUTHOR + " TEXT, " +
+                BookEntry.COLUMN_PRICE + " INTEGER NOT NULL, " +
+                BookEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, " +
+                BookEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, " +
+                BookEntry.COLUMN_SUPPLIER_NUMBER + " TEXT);";
+
+        Log.v(LOG_TAG, "Create statement:\n" + SQL_CREATE_BOOKS_TABLE);
+
+        db.execSQL(SQL_CREATE_BOOKS_TABLE);
+    }
+
+    //Runs the steps that upgrade the database from oldVersion to newVersion, in order
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        int version = oldVersion;
+        for (Migration migration : ALL) {
+            if (migration.startVersion == version && version < newVersion) {
+                Log.v(LOG_TAG, "Migrating from version " + version + " to " + (version + 1));
+                migration.migrate(db);
+                version++;
+            }
+        }
+        if (version != newVersion) {
+            throw new IllegalStateException("No migration from version " + version + " to " + newVersion);
+        }
+    }
+
+    //Helper method that builds the condition a book has to meet to not be deleted: it isn't marked by a delete, and it
+    //was added after the last time all books were deleted. The columns of the book are read with the given prefix,
+    //like "NEW." in a trigger or "" in a query of the books table or the view
+    static String isLiveBook(String prefix) {
+        return prefix + BookEntry.COLUMN_DELETION_ID + " IS NULL AND " + prefix + BookEntry._ID + " > " +
+                "IFNULL((SELECT MAX(" + DeletionEntry.COLUMN_THROUGH_BOOK_ID + ") FROM " + DeletionEntry.TABLE_NAME + "), 0)";
+    }
+
+    //Helper method that builds the trigger statements adding the book in row (NEW or OLD) to the aggregates of its supplier.
+    //The aggregates are found by their summaryKey column, holding the value of the bookKey column of the book
+    private static String addToSummary(String row, String summaryKey, String bookKey) {
+        return "INSERT OR IGNORE INTO " + AggregateEntry.TABLE_NAME + " (" + summaryKey + ") " +
+                "VALUES (" + row + "." + bookKey + "); " +
+                updateSummary(row, "+", summaryKey, bookKey);
+    }
+
+    //Helper method that builds the trigger statement subtracting the book in row from the aggregates of its supplier
+    private static String removeFromSummary(String row, String summaryKey, String bookKey) {
+        return updateSummary(row, "-", summaryKey, bookKey);
+    }
+
+    //Helper method that builds the statement adding or subtracting, depending on sign, the book in row
+    private static String updateSummary(String row, String sign, String summaryKey, String bookKey) {
+        String quantity = row + "." + BookEntry.COLUMN_QUANTITY;
+        return "UPDATE " + AggregateEntry.TABLE_NAME + " SET " +
+                AggregateEntry.COLUMN_TITLE_COUNT + " = " + AggregateEntry.COLUMN_TITLE_COUNT + " " + sign + " 1, " +
+                AggregateEntry.COLUMN_UNIT_COUNT + " = " + AggregateEntry.COLUMN_UNIT_COUNT + " " + sign + " " + quantity + ", " +
+                AggregateEntry.COLUMN_STOCK_VALUE + " = " + AggregateEntry.COLUMN_STOCK_VALUE + " " + sign + " " +
+                row + "." + BookEntry.COLUMN_PRICE + " * " + quantity + ", " +
+                AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + " " + sign +
+                " (" + quantity + " = 0), " +
+                AggregateEntry.COLUMN_LOW_STOCK_COUNT + " = " + AggregateEntry.COLUMN_LOW_STOCK_COUNT + " " + sign +
+                " (" + quantity + " < " + AggregateEntry.LOW_STOCK_QUANTITY + ")" +
+                " WHERE " + summaryKey + " = " + row + "." + bookKey + "; ";
+    }
+
+    //Helper method that builds the trigger statement removing the aggregates of the supplier of row once it has no books left
+    private static String deleteEmptySummary(String row, String summaryKey, String bookKey) {
+        return "DELETE FROM " + AggregateEntry.TABLE_NAME + " WHERE " +
+                summaryKey + " = " + row + "." + bookKey +
+                " AND " + AggregateEntry.COLUMN_TITLE_COUNT + " = 0; ";
+    }
+
+    //Helper method to create a table of the totals of the sales per period of the given length,
+    //with the trigger that adds every new sale to the totals of its period
+    private static void createSalesBuckets(SQLiteDatabase db, String table, long periodMillis) {
+        db.execSQL("CREATE TABLE " + table + " (" +
+                SaleEntry.COLUMN_BUCKET_START + " INTEGER PRIMARY KEY, " +
+                SaleEntry.COLUMN_SALE_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                SaleEntry.COLUMN_UNITS + " INTEGER NOT NULL DEFAULT 0, " +
+                SaleEntry.COLUMN_REVENUE + " INTEGER NOT NULL DEFAULT 0)");
+        String bucketStart = "NEW." + SaleEntry.COLUMN_SOLD_AT + " - NEW." + SaleEntry.COLUMN_SOLD_AT + " % " + periodMillis;
+        db.execSQL("CREATE TRIGGER " + table + "_insert AFTER INSERT ON " + SaleEntry.TABLE_NAME + " BEGIN " +
+                "INSERT OR IGNORE INTO " + table + " (" + SaleEntry.COLUMN_BUCKET_START + ") VALUES (" + bucketStart + "); " +
+                "UPDATE " + table + " SET " +
+                SaleEntry.COLUMN_SALE_COUNT + " = " + SaleEntry.COLUMN_SALE_COUNT + " + 1, " +
+                SaleEntry.COLUMN_UNITS + " = " + SaleEntry.COLUMN_UNITS + " + NEW." + SaleEntry.COLUMN_QUANTITY + ", " +
+                SaleEntry.COLUMN_REVENUE + " = " + SaleEntry.COLUMN_REVENUE + " + NEW." + SaleEntry.COLUMN_QUANTITY +
+                " * NEW." + SaleEntry.COLUMN_PRICE +
+                " WHERE " + SaleEntry.COLUMN_BUCKET_START + " = " + bucketStart + "; END");
+    }
+
+    //Helper method that builds the trigger statement adding an entry for the book in row to the journal of changes
+    private static String journal(String row, String syncId, int operation, String quantityDelta) {
+        return "INSERT INTO " + ChangeEntry.TABLE_NAME + " (" + ChangeEntry.COLUMN_BOOK_ID + ", " +
+                ChangeEntry.COLUMN_SYNC_ID + ", " + ChangeEntry.COLUMN_OPERATION + ", " + ChangeEntry.COLUMN_QUANTITY_DELTA + ") " +
+                "VALUES (" + row + "." + BookEntry._ID + ", " + syncId + ", " + operation + ", " + quantityDelta + "); ";
+    }
+
+    //Helper method to create the trigger that counts the version of a book, sets the time of its last change
+    //and journals the change whenever one of the given columns is updated
+    private static void createJournalUpdateTrigger(SQLiteDatabase db, String... columns) {
+        db.execSQL("CREATE TRIGGER " + ChangeEntry.TABLE_NAME + "_update AFTER UPDATE OF " + TextUtils.join(", ", columns) +
+                " ON " + BookEntry.TABLE_NAME + " BEGIN " +
+                "UPDATE " + BookEntry.TABLE_NAME + " SET " +
+                BookEntry.COLUMN_VERSION + " = OLD." + BookEntry.COLUMN_VERSION + " + 1, " +
+                BookEntry.COLUMN_UPDATED_AT + " = " + SQL_NOW_MILLIS +
+                " WHERE " + BookEntry._ID + " = NEW." + BookEntry._ID + "; " +
+                journal("NEW", "NEW." + BookEntry.COLUMN_SYNC_ID, ChangeEntry.OPERATION_UPDATE,
+                        "NEW." + BookEntry.COLUMN_QUANTITY + " - OLD." + BookEntry.COLUMN_QUANTITY) +
+                "END");
+    }
+
+    //Helper method to create an index on a single column of the books table
+    private static void createIndex(SQLiteDatabase db, String column) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + BookEntry.TABLE_NAME + "_" + column + "_index ON " +
+                BookEntry.TABLE_NAME + " (" + column + ")");
+    }
+}
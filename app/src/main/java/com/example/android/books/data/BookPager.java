@@ -0,0 +1,444 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+//Loads the rows of a books query in pages of a fixed size instead of a single cursor over all of them.
+//Pages are loaded in the background when the rows they hold are about to be shown, and pages far from
+//the rows being shown are closed, so memory and time to the first row don't grow with the number of books.
+//When a page is reloaded after a change, it is compared with the old page in the background,
+//so that only the rows that really changed have to be shown again.
+//When single books change, only the loaded pages holding them are reloaded.
+//Must be used from the main thread
+public class BookPager {
+
+    //Default number of rows in a page
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    //Number of pages kept on each side of the page being shown, further pages are closed
+    private static final int KEPT_PAGES = 3;
+
+    //Distance in rows from the end of a page at which the neighbouring page is loaded
+    private static final int PREFETCH_DISTANCE = 15;
+
+    //Count used before the first count has been loaded
+    private static final int COUNT_UNKNOWN = -1;
+
+    //Callback that receives changes of the rows on the main thread
+    public interface Listener {
+        //Called when the number of rows has changed, so every row has to be shown again
+        void onCountChanged();
+
+        //Called when the rows of a page that wasn't loaded before have arrived
+        void onRowsLoaded(int positionStart, int itemCount);
+
+        //Called when a page has been reloaded, with the changes relative to the start of the page
+        void onRowsUpdated(int positionStart, DiffUtil.DiffResult diff);
+    }
+
+    private final ContentResolver contentResolver;
+    private final Executor executor;
+    private final Uri uri;
+    private final String[] projection;
+    private final String sortOrder;
+    private final int pageSize;
+    private final Listener listener;
+
+    //True if changing a book can't move it or change whether it is part of the rows, which holds for all books
+    //in the order of their ids. Only then can a change of single books be applied to the pages holding them
+    private final boolean rowChangesInPlace;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    //Loaded pages by their index, and the pages that are being loaded
+    private final SparseArray<Page> pages = new SparseArray<>();
+    private final SparseBooleanArray loadingPages = new SparseBooleanArray();
+
+    private int count = COUNT_UNKNOWN;
+
+    //Page of the last row that was shown
+    private int currentPage = 0;
+
+    //Increased whenever the data changes, results of loads started before are dropped
+    private int generation = 0;
+
+    private boolean closed = false;
+
+    //Ids of the single books that have changed since the last time changes were applied
+    private final Set<Long> changedIds = new HashSet<>();
+    private boolean applyChangesPosted = false;
+
+    private final Runnable applyChangesRunnable = new Runnable() {
+        @Override
+        public void run() {
+            applyChanges();
+        }
+    };
+
+    //Reloads the rows whenever a book changes
+    private final ContentObserver observer = new ContentObserver(handler) {
+        //Called before API 16, where the URI that changed isn't known
+        @Override
+        public void onChange(boolean selfChange) {
+            invalidate();
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri changedUri) {
+            onBooksChanged(changedUri);
+        }
+    };
+
+    //Queries run on the given executor. The projection must contain the id of the books
+    public BookPager(ContentResolver contentResolver, Executor executor, Uri uri, String[] projection, String sortOrder,
+                     int pageSize, Listener listener) {
+        this.contentResolver = contentResolver;
+        this.executor = executor;
+        this.uri = uri;
+        this.projection = projection.clone();
+        this.sortOrder = sortOrder;
+        this.pageSize = pageSize;
+        this.listener = listener;
+        rowChangesInPlace = uri.equals(BookEntry.CONTENT_URI) && BookEntry._ID.equals(sortOrder);
+
+        contentResolver.registerContentObserver(BookEntry.CONTENT_URI, true, observer);
+        loadCount();
+        loadPage(0, false);
+    }
+
+    //Returns the index of the column in the cursors of every page. All pages share the projection,
+    //so the index can be looked up once instead of once per row
+    public int getColumnIndex(String column) {
+        for (int i = 0; i < projection.length; i++) {
+            if (projection[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //Returns the number of rows, which is 0 until it has been loaded
+    public int getCount() {
+        return Math.max(count, 0);
+    }
+
+    //Returns true once the number of rows has been loaded
+    public boolean isCountLoaded() {
+        return count != COUNT_UNKNOWN;
+    }
+
+    //Returns a cursor moved to the row at the position, or null if its page hasn't been loaded yet.
+    //Loads the page if needed, and the neighbouring page when the position is close to it
+    public Cursor moveToPosition(int position) {
+        int page = position / pageSize;
+        int positionInPage = position % pageSize;
+        currentPage = page;
+
+        if (positionInPage >= pageSize - PREFETCH_DISTANCE) {
+            loadPage(page + 1, false);
+        } else if (positionInPage < PREFETCH_DISTANCE) {
+            loadPage(page - 1, false);
+        }
+
+        Page loadedPage = pages.get(page);
+        if (loadedPage == null) {
+            loadPage(page, false);
+            return null;
+        }
+        return loadedPage.cursor.moveToPosition(positionInPage) ? loadedPage.cursor : null;
+    }
+
+    //Returns a cursor moved to the row at the position if its page is loaded, without loading anything
+    public Cursor peek(int position) {
+        Page page = pages.get(position / pageSize);
+        if (page == null || !page.cursor.moveToPosition(position % pageSize)) {
+            return null;
+        }
+        return page.cursor;
+    }
+
+    //Reloads the number of rows and the loaded pages. The old pages are shown until the new ones arrive
+    public void invalidate() {
+        if (closed) {
+            return;
+        }
+        generation++;
+        loadingPages.clear();
+        loadCount();
+        for (int i = 0; i < pages.size(); i++) {
+            loadPage(pages.keyAt(i), true);
+        }
+    }
+
+    //Helper method to note a change of the URI. Changes of single books are collected and applied together,
+    //since the provider reports all books that changed in a window one after another
+    private void onBooksChanged(Uri changedUri) {
+        if (closed) {
+            return;
+        }
+        if (!rowChangesInPlace || changedUri == null || changedUri.equals(BookEntry.CONTENT_URI)) {
+            invalidate();
+            return;
+        }
+        try {
+            changedIds.add(ContentUris.parseId(changedUri));
+        } catch (NumberFormatException e) {
+            invalidate();
+            return;
+        }
+        if (!applyChangesPosted) {
+            applyChangesPosted = true;
+            handler.post(applyChangesRunnable);
+        }
+    }
+
+    //Helper method to reload the loaded pages that hold any of the changed books.
+    //Books that aren't loaded are read fresh when their page is loaded, so they need nothing
+    private void applyChanges() {
+        applyChangesPosted = false;
+        if (closed || changedIds.isEmpty()) {
+            changedIds.clear();
+            return;
+        }
+        for (int i = 0; i < pages.size(); i++) {
+            int page = pages.keyAt(i);
+            if (!pages.valueAt(i).containsAny(changedIds)) {
+                continue;
+            }
+            if (loadingPages.get(page)) {
+                //The load in progress may have read the rows before the change, so start over
+                invalidate();
+                break;
+            }
+            loadPage(page, true);
+        }
+        changedIds.clear();
+    }
+
+    //Stops watching for changes and closes all pages
+    public void close() {
+        closed = true;
+        contentResolver.unregisterContentObserver(observer);
+        handler.removeCallbacks(applyChangesRunnable);
+        changedIds.clear();
+        for (int i = 0; i < pages.size(); i++) {
+            pages.valueAt(i).cursor.close();
+        }
+        pages.clear();
+        loadingPages.clear();
+    }
+
+    //Helper method to load the number of rows in the background
+    private void loadCount() {
+        final int loadGeneration = generation;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int newCount = queryCount();
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onCountLoaded(loadGeneration, newCount);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onCountLoaded(int loadGeneration, int newCount) {
+        if (closed || loadGeneration != generation || newCount == count) {
+            return;
+        }
+        count = newCount;
+        //Close the pages that are past the last row now
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            if (pages.keyAt(i) * pageSize >= count) {
+                pages.valueAt(i).cursor.close();
+                pages.removeAt(i);
+            }
+        }
+        listener.onCountChanged();
+    }
+
+    //Helper method to load a page in the background, unless it is loaded or being loaded already.
+    //A forced load replaces the page that is loaded
+    private void loadPage(final int page, boolean force) {
+        if (closed || page < 0 || (isCountLoaded() && page * pageSize >= count)) {
+            return;
+        }
+        final Page oldPage = pages.get(page);
+        if (loadingPages.get(page) || (!force && oldPage != null)) {
+            return;
+        }
+
+        loadingPages.put(page, true);
+        final int loadGeneration = generation;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Page newPage = queryPage(page);
+                //Compare with the old page here, its ids and hashes never change so they can be read off the main thread
+                final DiffUtil.DiffResult diff = oldPage == null || newPage == null ? null
+                        : DiffUtil.calculateDiff(new PageDiffCallback(oldPage, newPage), false);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(loadGeneration, page, oldPage, newPage, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int loadGeneration, int page, Page oldPage, Page newPage, DiffUtil.DiffResult diff) {
+        if (closed || loadGeneration != generation) {
+            if (newPage != null) {
+                newPage.cursor.close();
+            }
+            return;
+        }
+        loadingPages.delete(page);
+        if (newPage == null) {
+            return;
+        }
+
+        Page replacedPage = pages.get(page);
+        if (replacedPage != null) {
+            replacedPage.cursor.close();
+        }
+        pages.put(page, newPage);
+        closeFarPages();
+
+        if (replacedPage == null) {
+            listener.onRowsLoaded(page * pageSize, newPage.ids.length);
+        } else if (diff != null && replacedPage == oldPage && oldPage.ids.length == newPage.ids.length) {
+            //Only changes that keep the size of the page can be applied to it alone
+            listener.onRowsUpdated(page * pageSize, diff);
+        } else {
+            listener.onCountChanged();
+        }
+    }
+
+    //Helper method to close the pages far away from the page being shown
+    private void closeFarPages() {
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            if (Math.abs(pages.keyAt(i) - currentPage) > KEPT_PAGES) {
+                pages.valueAt(i).cursor.close();
+                pages.removeAt(i);
+            }
+        }
+    }
+
+    //Runs on the background thread
+    private Page queryPage(int page) {
+        Uri pageUri = uri.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(pageSize))
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_OFFSET, String.valueOf(page * pageSize))
+                .build();
+        Cursor cursor = contentResolver.query(pageUri, projection, null, null, sortOrder);
+        if (cursor == null) {
+            return null;
+        }
+
+        //Read the ids and a hash of every row here rather than on the main thread,
+        //which also fills the cursor window
+        int idColumnIndex = getColumnIndex(BookEntry._ID);
+        long[] ids = new long[cursor.getCount()];
+        int[] hashes = new int[ids.length];
+        int columnCount = cursor.getColumnCount();
+        for (int row = 0; cursor.moveToNext(); row++) {
+            ids[row] = cursor.getLong(idColumnIndex);
+            int hash = 17;
+            for (int column = 0; column < columnCount; column++) {
+                String value = cursor.getString(column);
+                hash = 31 * hash + (value == null ? 0 : value.hashCode());
+            }
+            hashes[row] = hash;
+        }
+        return new Page(cursor, ids, hashes);
+    }
+
+    //Runs on the background thread
+    private int queryCount() {
+        Cursor cursor = contentResolver.query(uri, new String[] {"COUNT(*)"}, null, null, null);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //Rows of one page: the cursor that is shown, and the ids and content hashes used to compare pages
+    private static class Page {
+
+        final Cursor cursor;
+        final long[] ids;
+        final int[] hashes;
+
+        Page(Cursor cursor, long[] ids, int[] hashes) {
+            this.cursor = cursor;
+            this.ids = ids;
+            this.hashes = hashes;
+        }
+
+        //Returns true if any of the books is in this page
+        boolean containsAny(Set<Long> bookIds) {
+            for (long id : ids) {
+                if (bookIds.contains(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    //Compares two versions of a page: rows are the same book if their ids match,
+    //and show the same content if their hashes match
+    private static class PageDiffCallback extends DiffUtil.Callback {
+
+        private final Page oldPage;
+        private final Page newPage;
+
+        PageDiffCallback(Page oldPage, Page newPage) {
+            this.oldPage = oldPage;
+            this.newPage = newPage;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldPage.ids.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newPage.ids.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldPage.ids[oldItemPosition] == newPage.ids[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldPage.hashes[oldItemPosition] == newPage.hashes[newItemPosition];
+        }
+    }
+}
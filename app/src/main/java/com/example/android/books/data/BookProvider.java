@@ -1,16 +1,38 @@
 package com.example.android.books.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.annotation.TargetApi;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.example.android.books.data.BookContract.AggregateEntry;
 import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.ChangeEntry;
+import com.example.android.books.data.BookContract.DeletionEntry;
+import com.example.android.books.data.BookContract.MaintenanceEntry;
+import com.example.android.books.data.BookContract.SaleEntry;
+import com.example.android.books.data.BookContract.SupplierEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
 
 public class BookProvider extends ContentProvider {
 
@@ -23,24 +45,223 @@ public class BookProvider extends ContentProvider {
     //URI matcher code for the content URI for single book in books table
     private static final int BOOK_ID = 2;
 
+    //URI matcher code for the content URI for a full-text search of books
+    private static final int BOOKS_SEARCH = 3;
+
+    //URI matcher code for the content URI for the aggregates of every supplier
+    private static final int AGGREGATES = 4;
+
+    //URI matcher code for the content URI for the totals over all suppliers
+    private static final int AGGREGATE_TOTALS = 5;
+
+    //URI matcher code for the content URI for the suppliers table
+    private static final int SUPPLIERS = 6;
+
+    //URI matcher code for the content URI for single supplier in suppliers table
+    private static final int SUPPLIER_ID = 7;
+
+    //URI matcher code for the content URI for the books of a single supplier
+    private static final int SUPPLIER_BOOKS = 8;
+
+    //URI matcher codes for the content URIs for the sales, and for their totals per hour and per day
+    private static final int SALES = 9;
+    private static final int SALES_HOURLY = 10;
+    private static final int SALES_DAILY = 11;
+
+    //URI matcher code for the content URI for the pending changes of the books
+    private static final int CHANGES = 12;
+
+    //URI matcher code for the content URI for the log of the maintenance passes
+    private static final int MAINTENANCE = 13;
+
+    //URI matcher code for the content URI for the book with an ISBN
+    private static final int BOOK_ISBN = 14;
+
     //UriMatcher object
     private static final UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
+    //Condition on the columns of the books table or the view that leaves out the deleted books
+    private static final String SQL_LIVE_BOOK = BookMigrations.isLiveBook("");
+
+    //Number of deleted books a call of METHOD_PURGE_DELETED removes, small enough to keep its transaction short
+    private static final int PURGE_BATCH_SIZE = 200;
+
+    //Statement that changes the quantity of one book, refusing to let it drop below 0
+    private static final String SQL_ADJUST_QUANTITY = "UPDATE " + BookEntry.TABLE_NAME +
+            " SET " + BookEntry.COLUMN_QUANTITY + " = " + BookEntry.COLUMN_QUANTITY + " + ?" +
+            " WHERE " + BookEntry._ID + " = ? AND " + BookEntry.COLUMN_QUANTITY + " + ? >= 0 AND " + SQL_LIVE_BOOK;
+
+    //Statement that finds the book with an ISBN through the unique index and changes its quantity,
+    //refusing to let it drop below 0, and the query that finds the id of the book with an ISBN
+    private static final String SQL_ADJUST_QUANTITY_BY_ISBN = "UPDATE " + BookEntry.TABLE_NAME +
+            " SET " + BookEntry.COLUMN_QUANTITY + " = " + BookEntry.COLUMN_QUANTITY + " + ?" +
+            " WHERE " + BookEntry.COLUMN_ISBN + " = ? AND " + BookEntry.COLUMN_QUANTITY + " + ? >= 0 AND " + SQL_LIVE_BOOK;
+    private static final String SQL_FIND_BOOK_BY_ISBN = "SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME +
+            " WHERE " + BookEntry.COLUMN_ISBN + " = ? AND " + SQL_LIVE_BOOK;
+
+    //Statement that purges the deleted book holding an ISBN, so a book that isn't deleted can take it.
+    //Only a book whose delete was made before the given time, and so can't be undone anymore, is purged
+    private static final String SQL_PURGE_DELETED_ISBN = "DELETE FROM " + BookEntry.TABLE_NAME +
+            " WHERE " + BookEntry.COLUMN_ISBN + " = ? AND NOT (" + SQL_LIVE_BOOK + ") AND (" +
+            BookEntry.COLUMN_DELETION_ID + " IN (SELECT " + DeletionEntry._ID + " FROM " + DeletionEntry.TABLE_NAME +
+            " WHERE " + DeletionEntry.COLUMN_DELETED_AT + " <= ?) OR " +
+            BookEntry._ID + " <= (SELECT IFNULL(MAX(" + DeletionEntry.COLUMN_THROUGH_BOOK_ID + "), 0) FROM " +
+            DeletionEntry.TABLE_NAME + " WHERE " + DeletionEntry.COLUMN_DELETED_AT + " <= ?))";
+
+    //Query that counts the deleted books holding an ISBN, which are left once the ones that can't be brought back are purged
+    private static final String SQL_COUNT_DELETED_ISBN = "SELECT COUNT(*) FROM " + BookEntry.TABLE_NAME +
+            " WHERE " + BookEntry.COLUMN_ISBN + " = ? AND NOT (" + SQL_LIVE_BOOK + ")";
+
+    //Statement that inserts one book, reused for every row of a bulk insert
+    private static final String SQL_INSERT_BOOK = "INSERT INTO " + BookEntry.TABLE_NAME + " (" +
+            BookEntry.COLUMN_BOOK_NAME + ", " +
+            BookEntry.COLUMN_AUTHOR + ", " +
+            BookEntry.COLUMN_PRICE + ", " +
+            BookEntry.COLUMN_QUANTITY + ", " +
+            BookEntry.COLUMN_SUPPLIER_ID + ", " +
+            BookEntry.COLUMN_ISBN + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+    //Statements that find the id of a supplier by its name, add a new supplier and change the number of a supplier
+    private static final String SQL_FIND_SUPPLIER = "SELECT " + SupplierEntry._ID + " FROM " + SupplierEntry.TABLE_NAME +
+            " WHERE " + SupplierEntry.COLUMN_SUPPLIER_NAME + " = ?";
+    private static final String SQL_INSERT_SUPPLIER = "INSERT INTO " + SupplierEntry.TABLE_NAME + " (" +
+            SupplierEntry.COLUMN_SUPPLIER_NAME + ", " +
+            SupplierEntry.COLUMN_SUPPLIER_NUMBER + ") VALUES (?, ?)";
+    private static final String SQL_UPDATE_SUPPLIER_NUMBER = "UPDATE " + SupplierEntry.TABLE_NAME +
+            " SET " + SupplierEntry.COLUMN_SUPPLIER_NUMBER + " = ?" +
+            " WHERE " + SupplierEntry._ID + " = ? AND " + SupplierEntry.COLUMN_SUPPLIER_NUMBER + " IS NOT ?";
+
+    //Statement that records the sale of a book at its current price
+    private static final String SQL_INSERT_SALE = "INSERT INTO " + SaleEntry.TABLE_NAME + " (" +
+            SaleEntry.COLUMN_BOOK_ID + ", " +
+            SaleEntry.COLUMN_QUANTITY + ", " +
+            SaleEntry.COLUMN_PRICE + ", " +
+            SaleEntry.COLUMN_SOLD_AT + ") SELECT " + BookEntry._ID + ", ?, " + BookEntry.COLUMN_PRICE + ", ?" +
+            " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " = ?";
+
+    //Subquery that finds the ids of the books matching a full-text query, ranked by the number
+    //of matched words, which is the number of offset entries the index reports for the row
+    private static final String SQL_SEARCH_MATCHES = "SELECT docid, " +
+            "length(offsets(" + BookEntry.FTS_TABLE_NAME + ")) AS search_rank" +
+            " FROM " + BookEntry.FTS_TABLE_NAME +
+            " WHERE " + BookEntry.FTS_TABLE_NAME + " MATCH ?";
+
+    //Query that reads back the quantity of one book
+    private static final String SQL_QUERY_QUANTITY = "SELECT " + BookEntry.COLUMN_QUANTITY +
+            " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " = ?";
+
+    //Query that sums up the aggregates of all suppliers into one row, reading one row per supplier
+    private static final String SQL_AGGREGATE_TOTALS = "SELECT " +
+            "COUNT(*) AS " + AggregateEntry.COLUMN_SUPPLIER_COUNT + ", " +
+            "IFNULL(SUM(" + AggregateEntry.COLUMN_TITLE_COUNT + "), 0) AS " + AggregateEntry.COLUMN_TITLE_COUNT + ", " +
+            "IFNULL(SUM(" + AggregateEntry.COLUMN_UNIT_COUNT + "), 0) AS " + AggregateEntry.COLUMN_UNIT_COUNT + ", " +
+            "IFNULL(SUM(" + AggregateEntry.COLUMN_STOCK_VALUE + "), 0) AS " + AggregateEntry.COLUMN_STOCK_VALUE + ", " +
+            "IFNULL(SUM(" + AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + "), 0) AS " + AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + ", " +
+            "IFNULL(SUM(" + AggregateEntry.COLUMN_LOW_STOCK_COUNT + "), 0) AS " + AggregateEntry.COLUMN_LOW_STOCK_COUNT +
+            " FROM " + AggregateEntry.TABLE_NAME;
+
+    //Statement that deletes all books by adding one entry to the deletion log, holding the highest id of the books
+    private static final String SQL_DELETE_ALL_BOOKS = "INSERT INTO " + DeletionEntry.TABLE_NAME + " (" +
+            DeletionEntry.COLUMN_DELETED_AT + ", " + DeletionEntry.COLUMN_THROUGH_BOOK_ID + ") " +
+            "SELECT ?, MAX(" + BookEntry._ID + ") FROM " + BookEntry.TABLE_NAME;
+
+    //Statements that fill the aggregates again from the books that aren't deleted, after undoing a delete of all books
+    private static final String SQL_REFILL_AGGREGATES = "INSERT INTO " + AggregateEntry.TABLE_NAME + " (" +
+            AggregateEntry._ID + ", " +
+            AggregateEntry.COLUMN_TITLE_COUNT + ", " +
+            AggregateEntry.COLUMN_UNIT_COUNT + ", " +
+            AggregateEntry.COLUMN_STOCK_VALUE + ", " +
+            AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT + ", " +
+            AggregateEntry.COLUMN_LOW_STOCK_COUNT + ") " +
+            "SELECT " + BookEntry.COLUMN_SUPPLIER_ID + ", " +
+            "COUNT(*), " +
+            "SUM(" + BookEntry.COLUMN_QUANTITY + "), " +
+            "SUM(" + BookEntry.COLUMN_PRICE + " * " + BookEntry.COLUMN_QUANTITY + "), " +
+            "SUM(" + BookEntry.COLUMN_QUANTITY + " = 0), " +
+            "SUM(" + BookEntry.COLUMN_QUANTITY + " < " + AggregateEntry.LOW_STOCK_QUANTITY + ") " +
+            "FROM " + BookEntry.TABLE_NAME + " WHERE " + SQL_LIVE_BOOK + " GROUP BY " + BookEntry.COLUMN_SUPPLIER_ID;
+
+    //Query that counts the books that aren't deleted from the aggregates, reading one row per supplier
+    private static final String SQL_COUNT_LIVE_BOOKS = "SELECT IFNULL(SUM(" + AggregateEntry.COLUMN_TITLE_COUNT + "), 0)" +
+            " FROM " + AggregateEntry.TABLE_NAME;
+
+    //Query that merges the pending changes of every book into one row with the current columns of the book.
+    //It joins the tables rather than the view, so SQLite can look the books up by their sync id
+    private static final String SQL_PENDING_CHANGES = "SELECT " +
+            "MAX(changes." + ChangeEntry._ID + ") AS " + ChangeEntry._ID + ", " +
+            "changes." + ChangeEntry.COLUMN_SYNC_ID + " AS " + ChangeEntry.COLUMN_SYNC_ID + ", " +
+            "MAX(changes." + ChangeEntry.COLUMN_OPERATION + " = " + ChangeEntry.OPERATION_DELETE + ") AS " + ChangeEntry.COLUMN_DELETED + ", " +
+            "SUM(changes." + ChangeEntry.COLUMN_QUANTITY_DELTA + ") AS " + ChangeEntry.COLUMN_QUANTITY_DELTA + ", " +
+            "books." + BookEntry.COLUMN_BOOK_NAME + " AS " + BookEntry.COLUMN_BOOK_NAME + ", " +
+            "books." + BookEntry.COLUMN_AUTHOR + " AS " + BookEntry.COLUMN_AUTHOR + ", " +
+            "books." + BookEntry.COLUMN_PRICE + " AS " + BookEntry.COLUMN_PRICE + ", " +
+            "books." + BookEntry.COLUMN_QUANTITY + " AS " + BookEntry.COLUMN_QUANTITY + ", " +
+            "suppliers." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_SUPPLIER_NAME + ", " +
+            "suppliers." + SupplierEntry.COLUMN_SUPPLIER_NUMBER + " AS " + BookEntry.COLUMN_SUPPLIER_NUMBER + ", " +
+            "books." + BookEntry.COLUMN_ISBN + " AS " + BookEntry.COLUMN_ISBN + ", " +
+            "books." + BookEntry.COLUMN_VERSION + " AS " + BookEntry.COLUMN_VERSION + ", " +
+            "books." + BookEntry.COLUMN_UPDATED_AT + " AS " + BookEntry.COLUMN_UPDATED_AT +
+            " FROM " + ChangeEntry.TABLE_NAME + " AS changes" +
+            " LEFT JOIN " + BookEntry.TABLE_NAME + " AS books ON books." + BookEntry.COLUMN_SYNC_ID + " = changes." + ChangeEntry.COLUMN_SYNC_ID +
+            " LEFT JOIN " + SupplierEntry.TABLE_NAME + " AS suppliers ON suppliers." + SupplierEntry._ID + " = books." + BookEntry.COLUMN_SUPPLIER_ID +
+            " GROUP BY changes." + ChangeEntry.COLUMN_SYNC_ID;
+
     static {
         //All the content URI patterns that the provider should recognize
         uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS, BOOKS);
         uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/#", BOOK_ID);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/" + BookContract.PATH_SEARCH + "/*", BOOKS_SEARCH);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/" + BookContract.PATH_ISBN + "/*", BOOK_ISBN);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_AGGREGATES, AGGREGATES);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_AGGREGATES + "/" + BookContract.PATH_TOTALS, AGGREGATE_TOTALS);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS, SUPPLIERS);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS + "/#/" + BookContract.PATH_BOOKS, SUPPLIER_BOOKS);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SALES, SALES);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SALES + "/" + BookContract.PATH_HOURLY, SALES_HOURLY);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_SALES + "/" + BookContract.PATH_DAILY, SALES_DAILY);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_CHANGES, CHANGES);
+        uriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_MAINTENANCE, MAINTENANCE);
     }
 
+    //Collects the changes and notifies listeners of them
+    private BookChangeNotifier changeNotifier;
+
+    //Books recently read by their id
+    private final BookCache bookCache = new BookCache();
+
+    //Counters of the work done by the provider
+    private final ProviderMetrics metrics = ProviderMetrics.getInstance();
+
+    //Compiled statements of the writable database, created when it is first used
+    private BookStatements statements;
+
+    //Maintenance passes of the database
+    private final BookMaintenance maintenance = new BookMaintenance();
+
     @Override
     public boolean onCreate() {
         //Initialize database helper object to get access to the database
         dbHelper = new BookDbHelper(getContext());
+        changeNotifier = new BookChangeNotifier(getContext().getContentResolver());
         return true;
     }
 
+    //Closes the compiled statements and the database, for tests that create providers one after another
+    @Override
+    public synchronized void shutdown() {
+        if (statements != null) {
+            statements.close();
+            statements = null;
+        }
+        dbHelper.close();
+        super.shutdown();
+    }
+
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        long start = metrics.start();
+
         //Get readable database
         SQLiteDatabase db = dbHelper.getReadableDatabase();
 
@@ -51,14 +272,102 @@ public class BookProvider extends ContentProvider {
         int match = uriMatcher.match(uri);
         switch (match) {
             case BOOKS:
-                //Query the books table directly with the given parameters
-                cursor = db.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                //Query the books joined to their suppliers with the given parameters, optionally limiting the number of rows
+                cursor = db.query(BookEntry.VIEW_NAME, projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri));
                 break;
             case BOOK_ID:
+                //Serve the book from the cache if it has all the columns asked for
+                if (Book.hasColumns(projection)) {
+                    cursor = queryCachedBook(db, ContentUris.parseId(uri), projection);
+                    break;
+                }
                 selection = BookEntry._ID + "=?";
                 selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri))};
 
-                cursor = db.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                cursor = db.query(BookEntry.VIEW_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                break;
+            case BOOK_ISBN:
+                //Look the book up through the unique index on the ISBN. Text that isn't an ISBN matches no book
+                String isbn = Isbn.normalize(uri.getLastPathSegment());
+                cursor = db.query(BookEntry.VIEW_NAME, projection,
+                        appendSelection(BookEntry.COLUMN_ISBN + "=?", selection),
+                        prependArg(isbn == null ? "" : isbn, selectionArgs),
+                        null, null, sortOrder);
+                //Any book can be given the ISBN, so watch the whole table
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                recordQuery(match, start, cursor);
+                return cursor;
+            case BOOKS_SEARCH:
+                cursor = db.rawQuery(buildSearchQuery(projection, selection, sortOrder, getLimit(uri)), buildSearchArgs(uri, selectionArgs));
+                //Search results depend on every book, so watch the whole table
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                recordQuery(match, start, cursor);
+                return cursor;
+            case AGGREGATES:
+                if (TextUtils.isEmpty(sortOrder)) {
+                    sortOrder = AggregateEntry.COLUMN_SUPPLIER_NAME;
+                }
+                cursor = db.query(AggregateEntry.VIEW_NAME, projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri));
+                //The aggregates change with the books, so watch the books
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                recordQuery(match, start, cursor);
+                return cursor;
+            case AGGREGATE_TOTALS:
+                cursor = db.rawQuery(buildTotalsQuery(projection), null);
+                //The totals change with the books, so watch the books
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                recordQuery(match, start, cursor);
+                return cursor;
+            case SUPPLIERS:
+                cursor = db.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri));
+                //Adding books can add suppliers, and changes of suppliers are reported as changes of the books
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                recordQuery(match, start, cursor);
+                return cursor;
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
+                cursor = db.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                recordQuery(match, start, cursor);
+                return cursor;
+            case SUPPLIER_BOOKS:
+                //Query the books of the supplier, through the index on the supplier id
+                cursor = db.query(BookEntry.VIEW_NAME, projection,
+                        appendSelection(BookEntry.COLUMN_SUPPLIER_ID + "=?", selection),
+                        prependArg(uri.getPathSegments().get(1), selectionArgs),
+                        null, null, sortOrder, getLimit(uri));
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                recordQuery(match, start, cursor);
+                return cursor;
+            case SALES:
+            case SALES_HOURLY:
+            case SALES_DAILY:
+                String table = match == SALES ? SaleEntry.TABLE_NAME
+                        : match == SALES_HOURLY ? SaleEntry.HOURLY_TABLE_NAME : SaleEntry.DAILY_TABLE_NAME;
+                if (TextUtils.isEmpty(sortOrder)) {
+                    sortOrder = match == SALES ? SaleEntry.COLUMN_SOLD_AT : SaleEntry.COLUMN_BUCKET_START;
+                }
+                cursor = db.query(table, projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri));
+                //Every sale changes the quantity of its book, so watch the books
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                recordQuery(match, start, cursor);
+                return cursor;
+            case CHANGES:
+                //The oldest changes come first, so they are sent in the order they were made
+                if (TextUtils.isEmpty(sortOrder)) {
+                    sortOrder = ChangeEntry._ID;
+                }
+                cursor = db.query("(" + SQL_PENDING_CHANGES + ")", projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri));
+                //Every change of the books adds to the journal, so watch the books
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                recordQuery(match, start, cursor);
+                return cursor;
+            case MAINTENANCE:
+                if (TextUtils.isEmpty(sortOrder)) {
+                    sortOrder = MaintenanceEntry._ID + " DESC";
+                }
+                cursor = db.query(MaintenanceEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder, getLimit(uri));
                 break;
             default:
                 throw new IllegalArgumentException("Query not possible for unknown URI " + uri);
@@ -66,9 +375,178 @@ public class BookProvider extends ContentProvider {
 
         //Set notification URI on the cursor
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        recordQuery(match, start, cursor);
         return cursor;
     }
 
+    //Helper method to record a query with the number of rows it returned.
+    //Counting the rows runs the query right away, which callers do anyway when they first read the cursor
+    private void recordQuery(int match, long start, Cursor cursor) {
+        if (metrics.isEnabled()) {
+            metrics.record(ProviderMetrics.OP_QUERY, match, start, cursor.getCount());
+        }
+    }
+
+    //Helper method to read a book through the cache, returns an empty cursor if the book doesn't exist
+    private Cursor queryCachedBook(SQLiteDatabase db, long id, String[] projection) {
+        Book book = bookCache.get(id);
+        if (book == null) {
+            //Take the generation before reading, so the book isn't cached if a write happens in between
+            long generation = bookCache.getGeneration();
+            Cursor cursor = db.query(BookEntry.VIEW_NAME, Book.COLUMNS, BookEntry._ID + "=?",
+                    new String[] {String.valueOf(id)}, null, null, null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    return new MatrixCursor(projection == null ? Book.COLUMNS : projection, 0);
+                }
+                book = Book.fromCursor(cursor);
+            } finally {
+                cursor.close();
+            }
+            bookCache.put(book, generation);
+        }
+        return book.toCursor(projection);
+    }
+
+    //Helper method to remove the changed book or books of the URI from the cache
+    private void invalidateCache(Uri uri) {
+        if (uriMatcher.match(uri) == BOOK_ID) {
+            bookCache.invalidate(ContentUris.parseId(uri));
+        } else {
+            bookCache.invalidateAll();
+        }
+    }
+
+    //Searches can be cancelled while they run, so that a search the user has already typed past
+    //doesn't keep the database busy. Other queries are short and run to completion
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder,
+                        CancellationSignal cancellationSignal) {
+        if (cancellationSignal == null || uriMatcher.match(uri) != BOOKS_SEARCH) {
+            return query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+        long start = metrics.start();
+
+        //Get readable database
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery(buildSearchQuery(projection, selection, sortOrder, getLimit(uri)),
+                buildSearchArgs(uri, selectionArgs), cancellationSignal);
+        //Search results depend on every book, so watch the whole table
+        cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+        recordQuery(BOOKS_SEARCH, start, cursor);
+        return cursor;
+    }
+
+    //Helper method that reads the limit and offset query parameters of the URI as an SQL LIMIT clause,
+    //or returns null if the URI has no limit
+    private static String getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(BookContract.QUERY_PARAMETER_LIMIT);
+        if (limit == null) {
+            return null;
+        }
+        if (TextUtils.isEmpty(limit) || !TextUtils.isDigitsOnly(limit)) {
+            throw new IllegalArgumentException("Invalid limit " + limit);
+        }
+        String offset = uri.getQueryParameter(BookContract.QUERY_PARAMETER_OFFSET);
+        if (offset == null) {
+            return limit;
+        }
+        if (TextUtils.isEmpty(offset) || !TextUtils.isDigitsOnly(offset)) {
+            throw new IllegalArgumentException("Invalid offset " + offset);
+        }
+        //SQLite reads "LIMIT offset, limit"
+        return offset + "," + limit;
+    }
+
+    //Helper method that builds the SQL of a full-text search, joining the matching ids to the books.
+    //Results are ordered by rank and then by title, unless a sort order is given
+    private static String buildSearchQuery(String[] projection, String selection, String sortOrder, String limit) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        if (projection == null) {
+            sql.append(BookEntry.VIEW_NAME).append(".*");
+        } else {
+            sql.append(TextUtils.join(", ", projection));
+        }
+        sql.append(" FROM ").append(BookEntry.VIEW_NAME)
+                .append(" JOIN (").append(SQL_SEARCH_MATCHES).append(") AS search ON ")
+                .append(BookEntry.VIEW_NAME).append('.').append(BookEntry._ID).append(" = search.docid");
+        if (!TextUtils.isEmpty(selection)) {
+            sql.append(" WHERE ").append(selection);
+        }
+        sql.append(" ORDER BY ");
+        if (TextUtils.isEmpty(sortOrder)) {
+            sql.append("search.search_rank DESC, ").append(BookEntry.COLUMN_BOOK_NAME);
+        } else {
+            sql.append(sortOrder);
+        }
+        if (limit != null) {
+            sql.append(" LIMIT ").append(limit);
+        }
+        return sql.toString();
+    }
+
+    //Helper method that builds the SQL returning the given columns of the single row of totals
+    private static String buildTotalsQuery(String[] projection) {
+        if (projection == null) {
+            return SQL_AGGREGATE_TOTALS;
+        }
+        return "SELECT " + TextUtils.join(", ", projection) + " FROM (" + SQL_AGGREGATE_TOTALS + ")";
+    }
+
+    //Helper method that puts the full-text expression for the search URI in front of the selection arguments
+    private static String[] buildSearchArgs(Uri uri, String[] selectionArgs) {
+        return prependArg(buildMatchExpression(uri.getLastPathSegment()), selectionArgs);
+    }
+
+    //Helper method that puts an argument in front of the selection arguments
+    private static String[] prependArg(String arg, String[] selectionArgs) {
+        int extraArgs = selectionArgs == null ? 0 : selectionArgs.length;
+        String[] args = new String[extraArgs + 1];
+        args[0] = arg;
+        if (extraArgs != 0) {
+            System.arraycopy(selectionArgs, 0, args, 1, extraArgs);
+        }
+        return args;
+    }
+
+    //Helper method that combines a selection of the provider with the selection of the caller
+    private static String appendSelection(String selection, String callerSelection) {
+        if (TextUtils.isEmpty(callerSelection)) {
+            return selection;
+        }
+        return selection + " AND (" + callerSelection + ")";
+    }
+
+    //Helper method that turns a selection over the columns of the joined view into one over the books table,
+    //so books can be updated and deleted by the name or number of their supplier. Deleted books are never selected
+    private static String selectBooks(String selection) {
+        if (TextUtils.isEmpty(selection)) {
+            return SQL_LIVE_BOOK;
+        }
+        return BookEntry._ID + " IN (SELECT " + BookEntry._ID + " FROM " + BookEntry.VIEW_NAME + " WHERE " + selection + ")";
+    }
+
+    //Helper method that turns the words typed by the user into a full-text expression
+    //that matches rows containing words starting with every one of them.
+    //Everything but letters and digits is dropped, so user input can't break the expression syntax
+    static String buildMatchExpression(String query) {
+        StringBuilder expression = new StringBuilder();
+        if (query != null) {
+            for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                if (expression.length() > 0) {
+                    expression.append(' ');
+                }
+                //Lower case keeps words like "or" and "not" from being read as operators
+                expression.append(word.toLowerCase(Locale.ROOT)).append('*');
+            }
+        }
+        return expression.toString();
+    }
+
     @Override
     public String getType(Uri uri) {
         final int match = uriMatcher.match(uri);
@@ -77,6 +555,29 @@ public class BookProvider extends ContentProvider {
                 return BookEntry.CONTENT_LIST_TYPE;
             case BOOK_ID:
                 return BookEntry.CONTENT_ITEM_TYPE;
+            case BOOK_ISBN:
+                return BookEntry.CONTENT_ITEM_TYPE;
+            case BOOKS_SEARCH:
+                return BookEntry.CONTENT_LIST_TYPE;
+            case AGGREGATES:
+                return AggregateEntry.CONTENT_LIST_TYPE;
+            case AGGREGATE_TOTALS:
+                return AggregateEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIER_BOOKS:
+                return BookEntry.CONTENT_LIST_TYPE;
+            case SALES:
+                return SaleEntry.CONTENT_LIST_TYPE;
+            case SALES_HOURLY:
+            case SALES_DAILY:
+                return SaleEntry.BUCKET_LIST_TYPE;
+            case CHANGES:
+                return ChangeEntry.CONTENT_LIST_TYPE;
+            case MAINTENANCE:
+                return MaintenanceEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri + " with match " + match);
         }
@@ -84,10 +585,17 @@ public class BookProvider extends ContentProvider {
 
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = metrics.start();
         final int match = uriMatcher.match(uri);
         switch (match) {
             case BOOKS:
-                return insertBook(uri, contentValues);
+                Uri newUri = insertBook(uri, contentValues);
+                metrics.record(ProviderMetrics.OP_INSERT, match, start, newUri == null ? 0 : 1);
+                return newUri;
+            case SUPPLIERS:
+                Uri newSupplierUri = insertSupplier(uri, contentValues);
+                metrics.record(ProviderMetrics.OP_INSERT, match, start, newSupplierUri == null ? 0 : 1);
+                return newSupplierUri;
             default:
                 throw new IllegalArgumentException("Insertion not supported for " + uri);
         }
@@ -95,45 +603,327 @@ public class BookProvider extends ContentProvider {
 
     //Helper method for inserting book into the database based on the given content values.
     private Uri insertBook(Uri uri, ContentValues contentValues) {
-        //Check that book name is not null
-        String bookName = contentValues.getAsString(BookEntry.COLUMN_BOOK_NAME);
-        if(bookName == null || TextUtils.isEmpty(bookName)) {
-            throw new IllegalArgumentException("Book requires a title");
+        BookValidator.validateBook(contentValues);
+        normalizeIsbn(contentValues);
+
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        //Link the book to its supplier and insert it with the given values in one transaction,
+        //through the compiled statement if it has all of them
+        long id;
+        boolean supplierChanged;
+        BookStatements pool = getStatements(db);
+        db.beginTransaction();
+        try {
+            long supplierId = findOrInsertSupplier(pool, contentValues.getAsString(BookEntry.COLUMN_SUPPLIER_NAME));
+            supplierChanged = saveSupplierNumber(pool, supplierId, contentValues);
+            purgeDeletedIsbn(pool, contentValues);
+            if (isInsertStatementFor(contentValues)) {
+                SQLiteStatement statement = pool.acquire(BookStatements.INSERT_BOOK);
+                try {
+                    bindBook(statement, contentValues, supplierId);
+                    id = statement.executeInsert();
+                } catch (SQLException e) {
+                    //Report a rejected row the same way SQLiteDatabase.insert() does
+                    Log.e("BookProvider", "Failed to insert row", e);
+                    id = -1;
+                } finally {
+                    pool.release(BookStatements.INSERT_BOOK, statement);
+                }
+            } else {
+                id = db.insert(BookEntry.TABLE_NAME, null, toBookRow(contentValues, supplierId));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
         }
 
-        //Check that price is not null, and not negative
-        Integer price = contentValues.getAsInteger(BookEntry.COLUMN_PRICE);
-        if((price != null && price < 0) || price == null) {
-            throw new IllegalArgumentException("Book requires a price");
+        //Check if the row was inserted successfully
+        if (id == -1) {
+            //Insertion error
+            Log.e("BookProvider", "Failed to insert row");
+            return null;
         }
 
-        //Check that supplier name is not null
-        String supplierName = contentValues.getAsString(BookEntry.COLUMN_SUPPLIER_NAME);
-        if(supplierName == null || TextUtils.isEmpty(supplierName)) {
-            throw new IllegalArgumentException("Book requires a name of supplier");
+        //A new number of the supplier changes the other books of the supplier too
+        if (supplierChanged) {
+            bookCache.invalidateAll();
+        }
+        //Notify all listeners that a book was added
+        changeNotifier.tableChanged();
+        //Return the new URI with the ID appended
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = metrics.start();
+        final int match = uriMatcher.match(uri);
+        if (match != BOOKS) {
+            throw new IllegalArgumentException("Insertion not supported for " + uri);
+        }
+
+        //Validate every row up front, so that an invalid row rejects the whole batch
+        for (ContentValues contentValues : values) {
+            BookValidator.validateBook(contentValues);
+            normalizeIsbn(contentValues);
         }
 
         //Get writable database
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
-        //Insert the new book with the given values
-        long id = db.insert(BookEntry.TABLE_NAME, null, contentValues);
+        //Insert all the rows in one transaction with one compiled statement.
+        //Most batches repeat a few suppliers, so their ids are looked up once per batch
+        int rowsInserted = 0;
+        boolean supplierChanged = false;
+        HashMap<String, Long> supplierIds = new HashMap<>();
+        BookStatements pool = getStatements(db);
+        db.beginTransaction();
+        try {
+            SQLiteStatement statement = pool.acquire(BookStatements.INSERT_BOOK);
+            try {
+                for (ContentValues contentValues : values) {
+                    String supplierName = contentValues.getAsString(BookEntry.COLUMN_SUPPLIER_NAME);
+                    Long supplierId = supplierIds.get(supplierName);
+                    if (supplierId == null) {
+                        supplierId = findOrInsertSupplier(pool, supplierName);
+                        supplierIds.put(supplierName, supplierId);
+                    }
+                    supplierChanged |= saveSupplierNumber(pool, supplierId, contentValues);
+                    purgeDeletedIsbn(pool, contentValues);
+                    bindBook(statement, contentValues, supplierId);
+                    if (statement.executeInsert() != -1) {
+                        rowsInserted++;
+                    }
+                }
+            } finally {
+                pool.release(BookStatements.INSERT_BOOK, statement);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
+        }
 
-        //Check if the row was inserted successfully
+        //Notify all listeners once for the whole batch
+        if (supplierChanged) {
+            bookCache.invalidateAll();
+        }
+        if (rowsInserted != 0 || supplierChanged) {
+            changeNotifier.tableChanged();
+        }
+        metrics.record(ProviderMetrics.OP_BULK_INSERT, match, start, rowsInserted);
+        return rowsInserted;
+    }
+
+    //Helper method to return the compiled statements of the database, compiling them if it was opened again
+    private synchronized BookStatements getStatements(SQLiteDatabase db) {
+        if (statements == null || !statements.isFor(db)) {
+            //The statements of a database that was closed and opened again can't be used anymore
+            if (statements != null) {
+                statements.close();
+            }
+            statements = new BookStatements(db, SQL_INSERT_BOOK, SQL_ADJUST_QUANTITY, SQL_QUERY_QUANTITY,
+                    SQL_FIND_SUPPLIER, SQL_INSERT_SUPPLIER, SQL_UPDATE_SUPPLIER_NUMBER, SQL_INSERT_SALE,
+                    SQL_ADJUST_QUANTITY_BY_ISBN, SQL_FIND_BOOK_BY_ISBN, SQL_PURGE_DELETED_ISBN, SQL_COUNT_DELETED_ISBN);
+        }
+        return statements;
+    }
+
+    //Helper method to return the id of the supplier with the given name, adding the supplier if there is none.
+    //Must run inside a transaction, so the supplier isn't left behind if the book is rejected
+    private static long findOrInsertSupplier(BookStatements pool, String supplierName) {
+        SQLiteStatement query = pool.acquire(BookStatements.FIND_SUPPLIER);
+        try {
+            query.bindString(1, supplierName);
+            return query.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            //No supplier with that name yet
+        } finally {
+            pool.release(BookStatements.FIND_SUPPLIER, query);
+        }
+        SQLiteStatement insert = pool.acquire(BookStatements.INSERT_SUPPLIER);
+        try {
+            insert.bindString(1, supplierName);
+            return insert.executeInsert();
+        } finally {
+            pool.release(BookStatements.INSERT_SUPPLIER, insert);
+        }
+    }
+
+    //Helper method to save the supplier number of the values on the supplier, if the values have one.
+    //Returns true if the number of the supplier has changed
+    private static boolean saveSupplierNumber(BookStatements pool, long supplierId, ContentValues contentValues) {
+        String supplierNumber = contentValues.getAsString(BookEntry.COLUMN_SUPPLIER_NUMBER);
+        if (supplierNumber == null) {
+            return false;
+        }
+        SQLiteStatement statement = pool.acquire(BookStatements.UPDATE_SUPPLIER_NUMBER);
+        try {
+            statement.bindString(1, supplierNumber);
+            statement.bindLong(2, supplierId);
+            statement.bindString(3, supplierNumber);
+            return statement.executeUpdateDelete() != 0;
+        } finally {
+            pool.release(BookStatements.UPDATE_SUPPLIER_NUMBER, statement);
+        }
+    }
+
+    //Helper method to purge the deleted book holding the ISBN of the values, if they have one, since the unique index
+    //still counts deleted books. A book whose delete can still be undone keeps its ISBN, so the values are rejected
+    //until DeletionEntry.UNDO_WINDOW_MILLIS have passed. Must run inside a transaction
+    private static void purgeDeletedIsbn(BookStatements pool, ContentValues contentValues) {
+        String isbn = contentValues.getAsString(BookEntry.COLUMN_ISBN);
+        if (isbn == null) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - DeletionEntry.UNDO_WINDOW_MILLIS;
+        SQLiteStatement statement = pool.acquire(BookStatements.PURGE_DELETED_ISBN);
+        try {
+            statement.bindString(1, isbn);
+            statement.bindLong(2, cutoff);
+            statement.bindLong(3, cutoff);
+            statement.executeUpdateDelete();
+        } finally {
+            pool.release(BookStatements.PURGE_DELETED_ISBN, statement);
+        }
+        SQLiteStatement query = pool.acquire(BookStatements.COUNT_DELETED_ISBN);
+        try {
+            query.bindString(1, isbn);
+            if (query.simpleQueryForLong() != 0) {
+                throw new IllegalArgumentException("ISBN belongs to a book whose delete can still be undone");
+            }
+        } finally {
+            pool.release(BookStatements.COUNT_DELETED_ISBN, query);
+        }
+    }
+
+    //Helper method that turns the values of a book into the values of a row of the books table,
+    //with the id of its supplier in place of the name and number of the supplier
+    private static ContentValues toBookRow(ContentValues contentValues, long supplierId) {
+        ContentValues row = new ContentValues(contentValues);
+        row.remove(BookEntry.COLUMN_SUPPLIER_NAME);
+        row.remove(BookEntry.COLUMN_SUPPLIER_NUMBER);
+        row.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+        return row;
+    }
+
+    //Helper method to store the ISBN of the values, if they have one, in the form Isbn.normalize() returns,
+    //so it is found by any form it is looked up with. An empty ISBN is stored as no ISBN
+    private static void normalizeIsbn(ContentValues contentValues) {
+        if (!contentValues.containsKey(BookEntry.COLUMN_ISBN)) {
+            return;
+        }
+        String isbn = contentValues.getAsString(BookEntry.COLUMN_ISBN);
+        if (TextUtils.isEmpty(isbn)) {
+            contentValues.putNull(BookEntry.COLUMN_ISBN);
+            return;
+        }
+        String normalized = Isbn.normalize(isbn);
+        if (normalized == null) {
+            throw new IllegalArgumentException("Book requires a valid ISBN");
+        }
+        contentValues.put(BookEntry.COLUMN_ISBN, normalized);
+    }
+
+    //Helper method for inserting a supplier into the database based on the given content values
+    private Uri insertSupplier(Uri uri, ContentValues contentValues) {
+        String supplierName = contentValues.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+        if (TextUtils.isEmpty(supplierName)) {
+            throw new IllegalArgumentException("Supplier requires a name");
+        }
+
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long id = db.insert(SupplierEntry.TABLE_NAME, null, contentValues);
         if (id == -1) {
-            //Insertion error
-            Log.e("BookProvider", "Failed to insert row");
+            Log.e("BookProvider", "Failed to insert supplier");
             return null;
         }
 
-        //Notify all listeners that the data has changed
-        getContext().getContentResolver().notifyChange(uri, null);
-        //Return the new URI with the ID appended
+        changeNotifier.tableChanged();
         return ContentUris.withAppendedId(uri, id);
     }
 
+    //Helper method to check that the compiled insert statement covers every value, since it ignores any other column
+    private static boolean isInsertStatementFor(ContentValues contentValues) {
+        for (String column : contentValues.keySet()) {
+            if (!BookEntry.COLUMN_BOOK_NAME.equals(column)
+                    && !BookEntry.COLUMN_AUTHOR.equals(column)
+                    && !BookEntry.COLUMN_PRICE.equals(column)
+                    && !BookEntry.COLUMN_QUANTITY.equals(column)
+                    && !BookEntry.COLUMN_SUPPLIER_NAME.equals(column)
+                    && !BookEntry.COLUMN_SUPPLIER_NUMBER.equals(column)
+                    && !BookEntry.COLUMN_ISBN.equals(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Helper method to bind the values of a book and the id of its supplier to the compiled insert statement
+    private static void bindBook(SQLiteStatement statement, ContentValues contentValues, long supplierId) {
+        statement.clearBindings();
+        statement.bindString(1, contentValues.getAsString(BookEntry.COLUMN_BOOK_NAME));
+        String author = contentValues.getAsString(BookEntry.COLUMN_AUTHOR);
+        if (author != null) {
+            statement.bindString(2, author);
+        }
+        statement.bindLong(3, contentValues.getAsInteger(BookEntry.COLUMN_PRICE));
+        //Quantity defaults to 0, the same as the column default
+        Integer quantity = contentValues.getAsInteger(BookEntry.COLUMN_QUANTITY);
+        statement.bindLong(4, quantity == null ? 0 : quantity);
+        statement.bindLong(5, supplierId);
+        String isbn = contentValues.getAsString(BookEntry.COLUMN_ISBN);
+        if (isbn != null) {
+            statement.bindString(6, isbn);
+        }
+    }
+
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = metrics.start();
+
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        //Apply all operations in one transaction, and hold back their notifications until it is committed
+        ContentProviderResult[] results;
+        boolean committed = false;
+        changeNotifier.beginBatch();
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            //The operations invalidated the cache before they were committed, when readers could still
+            //cache the old rows, so invalidate again now that the changes are visible
+            bookCache.invalidateAll();
+            changeNotifier.endBatch(committed);
+            metrics.recordTransaction();
+        }
+        metrics.record(ProviderMetrics.OP_APPLY_BATCH, ProviderMetrics.MATCH_NONE, start, operations.size());
+        return results;
+    }
+
+    //Helper method to record a change of the book or books of the URI
+    private void notifyChange(Uri uri) {
+        if (uriMatcher.match(uri) == BOOK_ID) {
+            changeNotifier.rowChanged(ContentUris.parseId(uri));
+        } else {
+            changeNotifier.tableChanged();
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = metrics.start();
+
         //Get writable database
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
@@ -143,78 +933,762 @@ public class BookProvider extends ContentProvider {
         final int match = uriMatcher.match(uri);
         switch (match) {
             case BOOKS:
-                rowsDeleted = db.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+            case BOOK_ID:
+                rowsDeleted = deleteBooks(uri, selection, selectionArgs).getInt(BookContract.EXTRA_DELETED);
+                metrics.record(ProviderMetrics.OP_DELETE, match, start, rowsDeleted);
+                return rowsDeleted;
+            case SUPPLIERS:
+            case SUPPLIER_ID:
+                //Fails with a constraint exception if a supplier still has books
+                if (match == SUPPLIER_ID) {
+                    selection = SupplierEntry._ID + "=?";
+                    selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
+                }
+                //Deleted books still refer to their supplier until they are purged, so purge those of the suppliers first
+                db.beginTransaction();
+                try {
+                    db.delete(BookEntry.TABLE_NAME, "NOT (" + SQL_LIVE_BOOK + ") AND " + BookEntry.COLUMN_SUPPLIER_ID +
+                            " IN (SELECT " + SupplierEntry._ID + " FROM " + SupplierEntry.TABLE_NAME +
+                            (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection) + ")", selectionArgs);
+                    rowsDeleted = db.delete(SupplierEntry.TABLE_NAME, selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                    metrics.recordTransaction();
+                }
+                if (rowsDeleted != 0) {
+                    changeNotifier.tableChanged();
+                }
+                metrics.record(ProviderMetrics.OP_DELETE, match, start, rowsDeleted);
+                return rowsDeleted;
+            case CHANGES:
+                //Deletes the entries of the journal the server has received. The books don't change, so nobody is notified
+                rowsDeleted = db.delete(ChangeEntry.TABLE_NAME, selection, selectionArgs);
+                metrics.record(ProviderMetrics.OP_DELETE, match, start, rowsDeleted);
+                return rowsDeleted;
+            default:
+                throw new IllegalArgumentException("Deletion is not possible");
+        }
+    }
+
+    //Helper method to delete the books of the URI of all books or of one book. Returns the number of books deleted
+    //as EXTRA_DELETED and the id of the entry of the deletion log, which undoDelete() takes, as EXTRA_DELETION_ID
+    private Bundle deleteBooks(Uri uri, String selection, String[] selectionArgs) {
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        Bundle deletion = new Bundle();
+        switch (uriMatcher.match(uri)) {
+            case BOOKS:
+                //Books are only marked as deleted, and all books are deleted without touching any of them
+                if (TextUtils.isEmpty(selection)) {
+                    deleteAllBooks(db, deletion);
+                } else {
+                    deleteBooks(db, selectBooks(selection), selectionArgs, deletion);
+                }
                 break;
             case BOOK_ID:
                 //Delete a single row by the given ID
-                selection = BookEntry._ID + "=?";
+                selection = BookEntry._ID + "=? AND " + SQL_LIVE_BOOK;
                 selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
-                getContext().getContentResolver().notifyChange(uri, null);
-                rowsDeleted = db.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                deleteBooks(db, selection, selectionArgs, deletion);
                 break;
             default:
                 throw new IllegalArgumentException("Deletion is not possible");
         }
 
-        if(rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        //Removing books moves the books after them, so notify listeners of all books
+        if (deletion.getInt(BookContract.EXTRA_DELETED) != 0) {
+            invalidateCache(uri);
+            changeNotifier.tableChanged();
         }
-        return rowsDeleted;
+        return deletion;
+    }
+
+    //Helper method to mark the books of the selection as deleted by a new entry of the deletion log,
+    //so the delete can be undone until the books are purged. Puts the number of books deleted and the id
+    //of the entry, -1 if no book was deleted, into the deletion
+    private void deleteBooks(SQLiteDatabase db, String selection, String[] selectionArgs, Bundle deletion) {
+        int rowsDeleted;
+        long deletionId;
+        db.beginTransaction();
+        try {
+            ContentValues entry = new ContentValues();
+            entry.put(DeletionEntry.COLUMN_DELETED_AT, System.currentTimeMillis());
+            deletionId = db.insertOrThrow(DeletionEntry.TABLE_NAME, null, entry);
+            ContentValues marked = new ContentValues();
+            marked.put(BookEntry.COLUMN_DELETION_ID, deletionId);
+            rowsDeleted = db.update(BookEntry.TABLE_NAME, marked, selection, selectionArgs);
+            //An empty entry has nothing to undo or purge
+            if (rowsDeleted == 0) {
+                db.delete(DeletionEntry.TABLE_NAME, DeletionEntry._ID + " = ?", new String[] {String.valueOf(deletionId)});
+                deletionId = -1;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
+        }
+        deletion.putInt(BookContract.EXTRA_DELETED, rowsDeleted);
+        deletion.putLong(BookContract.EXTRA_DELETION_ID, deletionId);
+    }
+
+    //Helper method to delete all books with one entry of the deletion log, which holds the highest id of the books,
+    //and by emptying the aggregates, so the time it takes doesn't grow with the number of books.
+    //Puts the number of books deleted, read from the aggregates, and the id of the entry, -1 if there were no books,
+    //into the deletion
+    private void deleteAllBooks(SQLiteDatabase db, Bundle deletion) {
+        int rowsDeleted;
+        long deletionId = -1;
+        db.beginTransaction();
+        try {
+            rowsDeleted = (int) DatabaseUtils.longForQuery(db, SQL_COUNT_LIVE_BOOKS, null);
+            if (rowsDeleted != 0) {
+                db.execSQL(SQL_DELETE_ALL_BOOKS, new Object[] {System.currentTimeMillis()});
+                deletionId = DatabaseUtils.longForQuery(db, "SELECT last_insert_rowid()", null);
+                db.delete(AggregateEntry.TABLE_NAME, null, null);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
+        }
+        deletion.putInt(BookContract.EXTRA_DELETED, rowsDeleted);
+        deletion.putLong(BookContract.EXTRA_DELETION_ID, deletionId);
+    }
+
+    //Helper method to undo the delete with the given id of the deletion log if it was made less than
+    //DeletionEntry.UNDO_WINDOW_MILLIS ago. Books deleted again by a later delete stay deleted.
+    //Returns the number of books brought back
+    private int undoDelete(long deletionId) {
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        int restored = 0;
+        db.beginTransaction();
+        try {
+            String[] deletionArgs = {String.valueOf(deletionId)};
+            Cursor cursor = db.query(DeletionEntry.TABLE_NAME,
+                    new String[] {DeletionEntry.COLUMN_DELETED_AT, DeletionEntry.COLUMN_THROUGH_BOOK_ID},
+                    DeletionEntry._ID + " = ?", deletionArgs, null, null, null);
+            boolean undoable = false;
+            boolean allBooks = false;
+            try {
+                if (cursor.moveToFirst()
+                        && cursor.getLong(0) > System.currentTimeMillis() - DeletionEntry.UNDO_WINDOW_MILLIS) {
+                    undoable = true;
+                    allBooks = !cursor.isNull(1);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (undoable) {
+                if (allBooks) {
+                    //The books are back once the entry is gone, only the aggregates have to be filled again
+                    long booksBefore = DatabaseUtils.longForQuery(db, SQL_COUNT_LIVE_BOOKS, null);
+                    db.delete(DeletionEntry.TABLE_NAME, DeletionEntry._ID + " = ?", deletionArgs);
+                    db.delete(AggregateEntry.TABLE_NAME, null, null);
+                    db.execSQL(SQL_REFILL_AGGREGATES);
+                    restored = (int) (DatabaseUtils.longForQuery(db, SQL_COUNT_LIVE_BOOKS, null) - booksBefore);
+                } else {
+                    ContentValues unmarked = new ContentValues();
+                    unmarked.putNull(BookEntry.COLUMN_DELETION_ID);
+                    restored = db.update(BookEntry.TABLE_NAME, unmarked, BookEntry.COLUMN_DELETION_ID + " = ?", deletionArgs);
+                    db.delete(DeletionEntry.TABLE_NAME, DeletionEntry._ID + " = ?", deletionArgs);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
+        }
+
+        if (restored != 0) {
+            bookCache.invalidateAll();
+            changeNotifier.tableChanged();
+        }
+        return restored;
+    }
+
+    //Helper method to remove up to PURGE_BATCH_SIZE deleted books from the database, taking first the books deleted
+    //by deleting all books and then the marked ones. Only deletes older than DeletionEntry.UNDO_WINDOW_MILLIS
+    //are purged, unless force is true. Their entries of the log are removed once they have no books left.
+    //The books were already left out of every query, so nobody is notified. Returns the number of books removed
+    private int purgeDeleted(boolean force) {
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long cutoff = force ? Long.MAX_VALUE : System.currentTimeMillis() - DeletionEntry.UNDO_WINDOW_MILLIS;
+        String[] cutoffArgs = {String.valueOf(cutoff)};
+        int purged;
+        db.beginTransaction();
+        try {
+            long throughBookId = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(" + DeletionEntry.COLUMN_THROUGH_BOOK_ID + "), 0)" +
+                    " FROM " + DeletionEntry.TABLE_NAME + " WHERE " + DeletionEntry.COLUMN_DELETED_AT + " <= ?", cutoffArgs);
+            purged = db.delete(BookEntry.TABLE_NAME, BookEntry._ID + " IN (SELECT " + BookEntry._ID +
+                    " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " <= ? LIMIT " + PURGE_BATCH_SIZE + ")",
+                    new String[] {String.valueOf(throughBookId)});
+            if (purged < PURGE_BATCH_SIZE) {
+                purged += db.delete(BookEntry.TABLE_NAME, BookEntry._ID + " IN (SELECT " + BookEntry._ID +
+                        " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_DELETION_ID + " IN (SELECT " + DeletionEntry._ID +
+                        " FROM " + DeletionEntry.TABLE_NAME + " WHERE " + DeletionEntry.COLUMN_DELETED_AT + " <= ?)" +
+                        " LIMIT " + (PURGE_BATCH_SIZE - purged) + ")", cutoffArgs);
+            }
+            if (purged < PURGE_BATCH_SIZE) {
+                db.delete(DeletionEntry.TABLE_NAME, DeletionEntry.COLUMN_DELETED_AT + " <= ?", cutoffArgs);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
+        }
+        return purged;
     }
 
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
+        long start = metrics.start();
+        int rowsUpdated;
         final int match = uriMatcher.match(uri);
         switch (match) {
             case BOOKS:
-                return updateBook(uri, contentValues, selection, selectionArgs);
+                rowsUpdated = updateBook(uri, contentValues, selectBooks(selection), selectionArgs);
+                break;
             case BOOK_ID:
-                selection = BookEntry._ID + "=?";
+                selection = BookEntry._ID + "=? AND " + SQL_LIVE_BOOK;
                 selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
-                return updateBook(uri, contentValues, selection, selectionArgs);
+                rowsUpdated = updateBook(uri, contentValues, selection, selectionArgs);
+                break;
+            case SUPPLIERS:
+                rowsUpdated = updateSupplier(contentValues, selection, selectionArgs);
+                break;
+            case SUPPLIER_ID:
+                selection = SupplierEntry._ID + "=?";
+                selectionArgs = new String[] {String.valueOf(ContentUris.parseId(uri))};
+                rowsUpdated = updateSupplier(contentValues, selection, selectionArgs);
+                break;
             default:
                 throw new IllegalArgumentException("Update is not possible");
         }
+        metrics.record(ProviderMetrics.OP_UPDATE, match, start, rowsUpdated);
+        return rowsUpdated;
     }
 
     //Helper method to update a book
     private int updateBook(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
 
-        //If book name is updated, check if it is not null
-        if(contentValues.containsKey(BookEntry.COLUMN_BOOK_NAME)) {
-            String bookName = contentValues.getAsString(BookEntry.COLUMN_BOOK_NAME);
-            if(bookName == null || TextUtils.isEmpty(bookName)) {
-                throw new IllegalArgumentException("Book requires a name");
+        //Check the values the update changes by the rules of a new book
+        BookValidator.validateChanges(contentValues);
+
+        //If the ISBN is updated, check that it is one. Only one book can have it, which the database checks
+        normalizeIsbn(contentValues);
+
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        //The supplier name and number are saved on the supplier, the other values on the books
+        ContentValues bookValues = new ContentValues(contentValues);
+        bookValues.remove(BookEntry.COLUMN_SUPPLIER_NAME);
+        bookValues.remove(BookEntry.COLUMN_SUPPLIER_NUMBER);
+
+        int rowsAffected;
+        boolean supplierChanged = false;
+        BookStatements pool = getStatements(db);
+        db.beginTransaction();
+        try {
+            if (contentValues.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)) {
+                //Move the books to the supplier of that name
+                long supplierId = findOrInsertSupplier(pool, contentValues.getAsString(BookEntry.COLUMN_SUPPLIER_NAME));
+                supplierChanged = saveSupplierNumber(pool, supplierId, contentValues);
+                bookValues.put(BookEntry.COLUMN_SUPPLIER_ID, supplierId);
+            } else if (contentValues.getAsString(BookEntry.COLUMN_SUPPLIER_NUMBER) != null) {
+                //Change the number of the suppliers of the books
+                ContentValues supplierValues = new ContentValues();
+                supplierValues.put(SupplierEntry.COLUMN_SUPPLIER_NUMBER, contentValues.getAsString(BookEntry.COLUMN_SUPPLIER_NUMBER));
+                String supplierSelection = SupplierEntry._ID + " IN (SELECT " + BookEntry.COLUMN_SUPPLIER_ID +
+                        " FROM " + BookEntry.VIEW_NAME + (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection) + ")";
+                supplierChanged = db.update(SupplierEntry.TABLE_NAME, supplierValues, supplierSelection, selectionArgs) != 0;
+            }
+
+            //The new ISBN may still be held by a deleted book
+            purgeDeletedIsbn(pool, bookValues);
+
+            //Update and get the number of rows affected
+            if (bookValues.size() != 0) {
+                rowsAffected = db.update(BookEntry.TABLE_NAME, bookValues, selection, selectionArgs);
+            } else {
+                rowsAffected = (int) DatabaseUtils.queryNumEntries(db, BookEntry.VIEW_NAME, selection, selectionArgs);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
+        }
+
+        //A changed supplier changes all of its books, otherwise notify of change if 1 or more rows were updated
+        if (supplierChanged) {
+            bookCache.invalidateAll();
+            changeNotifier.tableChanged();
+        } else if(rowsAffected != 0) {
+            invalidateCache(uri);
+            notifyChange(uri);
+        }
+
+        return rowsAffected;
+    }
+
+    //Helper method to update suppliers. Renaming a supplier renames it for all of its books in a single row
+    private int updateSupplier(ContentValues contentValues, String selection, String[] selectionArgs) {
+        if (contentValues.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)
+                && TextUtils.isEmpty(contentValues.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME))) {
+            throw new IllegalArgumentException("Supplier requires a name");
+        }
+
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int rowsAffected = db.update(SupplierEntry.TABLE_NAME, contentValues, selection, selectionArgs);
+
+        //The name and number are shown with every book of the supplier
+        if (rowsAffected != 0) {
+            bookCache.invalidateAll();
+            changeNotifier.tableChanged();
+        }
+        return rowsAffected;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        switch (method) {
+            case BookContract.METHOD_ADJUST_QUANTITY:
+                if (extras == null || !extras.containsKey(BookContract.EXTRA_BOOK_ID)
+                        || !extras.containsKey(BookContract.EXTRA_DELTA)) {
+                    throw new IllegalArgumentException("Adjusting the quantity requires a book id and a delta");
+                }
+                long start = metrics.start();
+                long id = extras.getLong(BookContract.EXTRA_BOOK_ID);
+                int delta = extras.getInt(BookContract.EXTRA_DELTA);
+                int newQuantity = adjustQuantity(id, delta);
+                metrics.record(ProviderMetrics.OP_ADJUST_QUANTITY, BOOK_ID, start, newQuantity == -1 ? 0 : 1);
+                Bundle result = new Bundle();
+                result.putInt(BookContract.EXTRA_QUANTITY, newQuantity);
+                return result;
+            case BookContract.METHOD_SELL:
+                long sellStart = metrics.start();
+                int[] newQuantities = sell(extras.getLongArray(BookContract.EXTRA_BOOK_IDS),
+                        extras.getIntArray(BookContract.EXTRA_QUANTITIES));
+                metrics.record(ProviderMetrics.OP_SELL, SALES, sellStart, newQuantities.length);
+                Bundle sold = new Bundle();
+                sold.putIntArray(BookContract.EXTRA_QUANTITIES, newQuantities);
+                return sold;
+            case BookContract.METHOD_SELL_BY_ISBN:
+                long sellByIsbnStart = metrics.start();
+                String[] isbns = extras.getStringArray(BookContract.EXTRA_ISBNS);
+                int[] isbnQuantities = extras.getIntArray(BookContract.EXTRA_QUANTITIES);
+                long[] soldIds = isbns == null ? null : new long[isbns.length];
+                int[] quantitiesAfterSale = sellByIsbn(isbns, isbnQuantities, soldIds);
+                metrics.record(ProviderMetrics.OP_SELL, BOOK_ISBN, sellByIsbnStart, quantitiesAfterSale.length);
+                Bundle soldByIsbn = new Bundle();
+                soldByIsbn.putIntArray(BookContract.EXTRA_QUANTITIES, quantitiesAfterSale);
+                soldByIsbn.putLongArray(BookContract.EXTRA_BOOK_IDS, soldIds);
+                return soldByIsbn;
+            case BookContract.METHOD_APPLY_REMOTE_CHANGES:
+                long applyStart = metrics.start();
+                ArrayList<ContentValues> changes = extras.getParcelableArrayList(BookContract.EXTRA_CHANGES);
+                int applied = applyRemoteChanges(changes);
+                metrics.record(ProviderMetrics.OP_APPLY_REMOTE_CHANGES, CHANGES, applyStart, applied);
+                Bundle appliedResult = new Bundle();
+                appliedResult.putInt(BookContract.EXTRA_APPLIED, applied);
+                return appliedResult;
+            case BookContract.METHOD_RUN_MAINTENANCE:
+                long maintenanceStart = metrics.start();
+                ContentValues pass = maintenance.run(dbHelper.getWritableDatabase(),
+                        extras != null && extras.getBoolean(BookContract.EXTRA_FORCE), arg);
+                metrics.record(ProviderMetrics.OP_MAINTENANCE, MAINTENANCE, maintenanceStart, pass == null ? 0 : 1);
+                if (pass == null) {
+                    return null;
+                }
+                getContext().getContentResolver().notifyChange(MaintenanceEntry.CONTENT_URI, null);
+                Bundle passResult = new Bundle();
+                for (String column : pass.keySet()) {
+                    passResult.putLong(column, pass.getAsLong(column));
+                }
+                return passResult;
+            case BookContract.METHOD_DELETE:
+                if (arg == null) {
+                    throw new IllegalArgumentException("Delete requires the URI of the books");
+                }
+                long deleteStart = metrics.start();
+                Uri deleteUri = Uri.parse(arg);
+                Bundle deletion = deleteBooks(deleteUri, null, null);
+                metrics.record(ProviderMetrics.OP_DELETE, uriMatcher.match(deleteUri), deleteStart,
+                        deletion.getInt(BookContract.EXTRA_DELETED));
+                return deletion;
+            case BookContract.METHOD_UNDO_DELETE:
+                long undoStart = metrics.start();
+                int restored = undoDelete(extras == null ? -1 : extras.getLong(BookContract.EXTRA_DELETION_ID, -1));
+                metrics.record(ProviderMetrics.OP_UNDO_DELETE, BOOKS, undoStart, restored);
+                Bundle undoResult = new Bundle();
+                undoResult.putInt(BookContract.EXTRA_RESTORED, restored);
+                return undoResult;
+            case BookContract.METHOD_PURGE_DELETED:
+                long purgeStart = metrics.start();
+                int purged = purgeDeleted(extras != null && extras.getBoolean(BookContract.EXTRA_FORCE));
+                metrics.record(ProviderMetrics.OP_PURGE_DELETED, BOOKS, purgeStart, purged);
+                Bundle purgeResult = new Bundle();
+                purgeResult.putInt(BookContract.EXTRA_PURGED, purged);
+                return purgeResult;
+            case BookContract.METHOD_STOP_MAINTENANCE:
+                maintenance.stop(arg);
+                return null;
+            case BookContract.METHOD_GET_CACHE_STATS:
+                Bundle stats = new Bundle();
+                stats.putLong(BookContract.EXTRA_CACHE_HITS, bookCache.getHitCount());
+                stats.putLong(BookContract.EXTRA_CACHE_MISSES, bookCache.getMissCount());
+                stats.putLong(BookContract.EXTRA_CACHE_EVICTIONS, bookCache.getEvictionCount());
+                stats.putInt(BookContract.EXTRA_CACHE_SIZE, bookCache.getSize());
+                return stats;
+            case BookContract.METHOD_GET_METRICS:
+                return metrics.toBundle();
+            case BookContract.METHOD_RESET_METRICS:
+                metrics.reset();
+                return null;
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    //Helper method to change the quantity of a book by delta inside the database,
+    //so concurrent callers never overwrite each other's changes.
+    //Returns the new quantity, or -1 if nothing was updated
+    private int adjustQuantity(long id, int delta) {
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        int newQuantity;
+        BookStatements pool = getStatements(db);
+        db.beginTransaction();
+        try {
+            newQuantity = adjustQuantity(pool, id, delta);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
+        }
+
+        //Notify listeners of the single book that has changed
+        if (newQuantity != -1) {
+            bookCache.invalidate(id);
+            changeNotifier.rowChanged(id);
+        }
+        return newQuantity;
+    }
+
+    //Helper method to change the quantity of a book with the compiled statements. Must run inside a transaction.
+    //Returns the new quantity, or -1 if nothing was updated
+    private static int adjustQuantity(BookStatements pool, long id, int delta) {
+        SQLiteStatement statement = pool.acquire(BookStatements.ADJUST_QUANTITY);
+        int rowsAffected;
+        try {
+            statement.bindLong(1, delta);
+            statement.bindLong(2, id);
+            statement.bindLong(3, delta);
+            rowsAffected = statement.executeUpdateDelete();
+        } finally {
+            pool.release(BookStatements.ADJUST_QUANTITY, statement);
+        }
+        if (rowsAffected == 0) {
+            return -1;
+        }
+
+        //Read the new value back in the same transaction, so no other write can slip in between
+        SQLiteStatement query = pool.acquire(BookStatements.QUERY_QUANTITY);
+        try {
+            query.bindLong(1, id);
+            return (int) query.simpleQueryForLong();
+        } finally {
+            pool.release(BookStatements.QUERY_QUANTITY, query);
+        }
+    }
+
+    //Helper method to sell the given quantities of the books in one transaction, so a burst of sales costs one commit.
+    //Every sale lowers the quantity of its book and is recorded in the ledger, or is refused on its own if the book
+    //doesn't have enough copies. Returns the new quantity after every sale, or -1 for the refused ones
+    private int[] sell(long[] ids, int[] quantities) {
+        if (ids == null || quantities == null || ids.length != quantities.length) {
+            throw new IllegalArgumentException("Sales require a quantity for every book");
+        }
+        for (int quantity : quantities) {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Sales require a positive quantity");
             }
         }
 
-        //If price is updated, check if it is not null or negative
-        if(contentValues.containsKey(BookEntry.COLUMN_PRICE)) {
-            Integer price = contentValues.getAsInteger(BookEntry.COLUMN_PRICE);
-            if((price != null && price < 0) || price == null) {
-                throw new IllegalArgumentException("Book requires a valid price");
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        int[] newQuantities = new int[ids.length];
+        long soldAt = System.currentTimeMillis();
+        BookStatements pool = getStatements(db);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                newQuantities[i] = adjustQuantity(pool, ids[i], -quantities[i]);
+                if (newQuantities[i] != -1) {
+                    recordSale(pool, ids[i], quantities[i], soldAt);
+                }
             }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
         }
 
-        //If supplier name is updated, check if it is not null
-        if(contentValues.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)) {
-            String supplierName = contentValues.getAsString(BookEntry.COLUMN_SUPPLIER_NAME);
-            if(supplierName == null || TextUtils.isEmpty(supplierName)) {
-                throw new IllegalArgumentException("Book requires supplier name");
+        //Notify listeners of the books that have changed
+        for (int i = 0; i < ids.length; i++) {
+            if (newQuantities[i] != -1) {
+                bookCache.invalidate(ids[i]);
+                changeNotifier.rowChanged(ids[i]);
+            }
+        }
+        return newQuantities;
+    }
+
+    //Helper method to sell the given quantities of the books with the ISBNs in one transaction, like sell().
+    //Every sale finds its book and lowers its quantity in one statement through the unique index on the ISBN,
+    //so the time of a sale doesn't grow with the number of books. Puts the id of the book of every sale into ids,
+    //-1 for unknown ISBNs. Returns the new quantity after every sale, -1 if the book doesn't have enough copies
+    //or BookContract.SALE_UNKNOWN_ISBN if no book has the ISBN
+    private int[] sellByIsbn(String[] isbns, int[] quantities, long[] ids) {
+        if (isbns == null || quantities == null || isbns.length != quantities.length) {
+            throw new IllegalArgumentException("Sales require a quantity for every book");
+        }
+        for (int quantity : quantities) {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Sales require a positive quantity");
             }
         }
 
         //Get writable database
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
-        //Update and get the number of rows affected
-        int rowsAffected = db.update(BookEntry.TABLE_NAME, contentValues, selection, selectionArgs);
+        int[] newQuantities = new int[isbns.length];
+        long soldAt = System.currentTimeMillis();
+        BookStatements pool = getStatements(db);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < isbns.length; i++) {
+                String isbn = Isbn.normalize(isbns[i]);
+                if (isbn == null) {
+                    ids[i] = -1;
+                    newQuantities[i] = BookContract.SALE_UNKNOWN_ISBN;
+                    continue;
+                }
+                int rowsAffected;
+                SQLiteStatement statement = pool.acquire(BookStatements.ADJUST_QUANTITY_BY_ISBN);
+                try {
+                    statement.bindLong(1, -quantities[i]);
+                    statement.bindString(2, isbn);
+                    statement.bindLong(3, -quantities[i]);
+                    rowsAffected = statement.executeUpdateDelete();
+                } finally {
+                    pool.release(BookStatements.ADJUST_QUANTITY_BY_ISBN, statement);
+                }
 
-        //Notify of change if 1 or more rows were updated
-        if(rowsAffected != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+                //The id tells an unknown ISBN from a book without enough copies, and is needed to record the sale
+                SQLiteStatement query = pool.acquire(BookStatements.FIND_BOOK_BY_ISBN);
+                try {
+                    query.bindString(1, isbn);
+                    ids[i] = query.simpleQueryForLong();
+                } catch (SQLiteDoneException e) {
+                    ids[i] = -1;
+                } finally {
+                    pool.release(BookStatements.FIND_BOOK_BY_ISBN, query);
+                }
+                if (ids[i] == -1) {
+                    newQuantities[i] = BookContract.SALE_UNKNOWN_ISBN;
+                    continue;
+                }
+                if (rowsAffected == 0) {
+                    newQuantities[i] = -1;
+                    continue;
+                }
+                recordSale(pool, ids[i], quantities[i], soldAt);
+                SQLiteStatement quantityQuery = pool.acquire(BookStatements.QUERY_QUANTITY);
+                try {
+                    quantityQuery.bindLong(1, ids[i]);
+                    newQuantities[i] = (int) quantityQuery.simpleQueryForLong();
+                } finally {
+                    pool.release(BookStatements.QUERY_QUANTITY, quantityQuery);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
         }
 
-        return rowsAffected;
+        //Notify listeners of the books that have changed
+        for (int i = 0; i < isbns.length; i++) {
+            if (newQuantities[i] >= 0) {
+                bookCache.invalidate(ids[i]);
+                changeNotifier.rowChanged(ids[i]);
+            }
+        }
+        return newQuantities;
+    }
+
+    //Helper method to record the sale of a book at its current price in the ledger. Must run inside a transaction
+    private static void recordSale(BookStatements pool, long id, int quantity, long soldAt) {
+        SQLiteStatement statement = pool.acquire(BookStatements.INSERT_SALE);
+        try {
+            statement.bindLong(1, quantity);
+            statement.bindLong(2, soldAt);
+            statement.bindLong(3, id);
+            statement.executeInsert();
+        } finally {
+            pool.release(BookStatements.INSERT_SALE, statement);
+        }
+    }
+
+    //Helper method to apply the changes of the books received from the server in one transaction.
+    //The changes the triggers journal while applying them are deleted again, so they aren't sent back to the server,
+    //while local changes the server hasn't received yet stay in the journal. Returns the number of changes applied
+    private int applyRemoteChanges(ArrayList<ContentValues> changes) {
+        if (changes == null) {
+            throw new IllegalArgumentException("Remote changes are required");
+        }
+
+        //Get writable database
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        int applied = 0;
+        BookStatements pool = getStatements(db);
+        db.beginTransaction();
+        try {
+            //Entries up to this one are local changes, the ones after it are written while applying
+            long lastLocalChange = DatabaseUtils.longForQuery(db,
+                    "SELECT IFNULL(MAX(" + ChangeEntry._ID + "), 0) FROM " + ChangeEntry.TABLE_NAME, null);
+            for (ContentValues change : changes) {
+                if (applyRemoteChange(db, pool, change, lastLocalChange)) {
+                    applied++;
+                }
+            }
+            db.delete(ChangeEntry.TABLE_NAME, ChangeEntry._ID + " > ?", new String[] {String.valueOf(lastLocalChange)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            metrics.recordTransaction();
+        }
+
+        if (applied != 0) {
+            bookCache.invalidateAll();
+            changeNotifier.tableChanged();
+        }
+        return applied;
+    }
+
+    //Helper method to apply one change received from the server, by the rules every device and the server share:
+    //a delete wins over any other change, the title, author, price, supplier and ISBN of the most recent change win,
+    //and quantities add up, so the local changes of the quantity the server hasn't received yet are added
+    //to its quantity. A delete made here that can still be undone is a delete too, so it wins over a remote edit:
+    //the book stays deleted, with the remote values, until its delete is undone or purged and sent to the server.
+    //Must run inside a transaction. Returns true if the books have changed
+    private static boolean applyRemoteChange(SQLiteDatabase db, BookStatements pool, ContentValues change, long lastLocalChange) {
+        String syncId = change.getAsString(ChangeEntry.COLUMN_SYNC_ID);
+        if (TextUtils.isEmpty(syncId)) {
+            throw new IllegalArgumentException("Remote change requires a sync id");
+        }
+        String[] syncIdArgs = {syncId};
+
+        if (Boolean.TRUE.equals(change.getAsBoolean(ChangeEntry.COLUMN_DELETED))) {
+            //The local changes of a deleted book are dropped, there is nothing left to send
+            db.delete(ChangeEntry.TABLE_NAME, ChangeEntry.COLUMN_SYNC_ID + " = ?", syncIdArgs);
+            //The book is removed right away instead of being marked, since undoing a delete the server has already made
+            //would bring back a book no other device has. A delete of the book made here is taken over by it,
+            //so its entry of the deletion log goes too once it holds no other book, and undoing it restores nothing
+            Long deletionId = null;
+            Cursor deleted = db.query(BookEntry.TABLE_NAME, new String[] {BookEntry.COLUMN_DELETION_ID},
+                    BookEntry.COLUMN_SYNC_ID + " = ?", syncIdArgs, null, null, null);
+            try {
+                if (deleted.moveToFirst() && !deleted.isNull(0)) {
+                    deletionId = deleted.getLong(0);
+                }
+            } finally {
+                deleted.close();
+            }
+            boolean removed = db.delete(BookEntry.TABLE_NAME, BookEntry.COLUMN_SYNC_ID + " = ?", syncIdArgs) != 0;
+            if (deletionId != null) {
+                String id = String.valueOf(deletionId);
+                db.delete(DeletionEntry.TABLE_NAME, DeletionEntry._ID + " = ? AND NOT EXISTS (SELECT 1 FROM " +
+                        BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_DELETION_ID + " = ?)", new String[] {id, id});
+            }
+            return removed;
+        }
+
+        ContentValues book = new ContentValues();
+        book.put(BookEntry.COLUMN_BOOK_NAME, change.getAsString(BookEntry.COLUMN_BOOK_NAME));
+        book.put(BookEntry.COLUMN_AUTHOR, change.getAsString(BookEntry.COLUMN_AUTHOR));
+        book.put(BookEntry.COLUMN_PRICE, change.getAsInteger(BookEntry.COLUMN_PRICE));
+        book.put(BookEntry.COLUMN_SUPPLIER_NAME, change.getAsString(BookEntry.COLUMN_SUPPLIER_NAME));
+        BookValidator.validateBook(book);
+        Integer quantity = change.getAsInteger(BookEntry.COLUMN_QUANTITY);
+        long version = change.getAsLong(BookEntry.COLUMN_VERSION);
+        long updatedAt = change.getAsLong(BookEntry.COLUMN_UPDATED_AT);
+
+        //Find the book and the sum of its local quantity changes
+        long localUpdatedAt = -1;
+        Cursor cursor = db.query(BookEntry.TABLE_NAME, new String[] {BookEntry.COLUMN_UPDATED_AT},
+                BookEntry.COLUMN_SYNC_ID + " = ?", syncIdArgs, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                localUpdatedAt = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        long localDelta = DatabaseUtils.longForQuery(db, "SELECT IFNULL(SUM(" + ChangeEntry.COLUMN_QUANTITY_DELTA + "), 0)" +
+                " FROM " + ChangeEntry.TABLE_NAME + " WHERE " + ChangeEntry.COLUMN_SYNC_ID + " = ? AND " + ChangeEntry._ID + " <= ?",
+                new String[] {syncId, String.valueOf(lastLocalChange)});
+
+        long supplierId = findOrInsertSupplier(pool, book.getAsString(BookEntry.COLUMN_SUPPLIER_NAME));
+        saveSupplierNumber(pool, supplierId, change);
+        ContentValues row = toBookRow(book, supplierId);
+        row.put(BookEntry.COLUMN_QUANTITY, (quantity == null ? 0 : quantity) + localDelta);
+
+        //The ISBN is only changed if the server sent one. The server has already taken it from any other book,
+        //which may not have reached this device yet, so it is taken from the other book here too
+        if (change.containsKey(BookEntry.COLUMN_ISBN) && localUpdatedAt <= updatedAt) {
+            String isbn = Isbn.normalize(change.getAsString(BookEntry.COLUMN_ISBN));
+            if (isbn != null) {
+                ContentValues noIsbn = new ContentValues();
+                noIsbn.putNull(BookEntry.COLUMN_ISBN);
+                db.update(BookEntry.TABLE_NAME, noIsbn, BookEntry.COLUMN_ISBN + " = ? AND " + BookEntry.COLUMN_SYNC_ID + " != ?",
+                        new String[] {isbn, syncId});
+            }
+            row.put(BookEntry.COLUMN_ISBN, isbn);
+        }
+
+        if (localUpdatedAt == -1) {
+            row.put(BookEntry.COLUMN_SYNC_ID, syncId);
+            if (db.insert(BookEntry.TABLE_NAME, null, row) == -1) {
+                return false;
+            }
+        } else if (localUpdatedAt > updatedAt) {
+            //The local change is more recent, only the quantity is merged. The local change is sent on the next push
+            ContentValues quantityRow = new ContentValues();
+            quantityRow.put(BookEntry.COLUMN_QUANTITY, row.getAsLong(BookEntry.COLUMN_QUANTITY));
+            db.update(BookEntry.TABLE_NAME, quantityRow, BookEntry.COLUMN_SYNC_ID + " = ?", syncIdArgs);
+            return true;
+        } else {
+            db.update(BookEntry.TABLE_NAME, row, BookEntry.COLUMN_SYNC_ID + " = ?", syncIdArgs);
+        }
+
+        //Take over the version and time of the change from the server, which the triggers have just replaced
+        ContentValues syncRow = new ContentValues();
+        syncRow.put(BookEntry.COLUMN_VERSION, version);
+        syncRow.put(BookEntry.COLUMN_UPDATED_AT, updatedAt);
+        db.update(BookEntry.TABLE_NAME, syncRow, BookEntry.COLUMN_SYNC_ID + " = ?", syncIdArgs);
+        return true;
     }
 }
@@ -0,0 +1,446 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.DeletionEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Single access point of the screens to the books in BookProvider, so that no screen touches the database
+//on the main thread. All writes run one after another on a single background thread, reads run on a separate
+//pool so they never wait behind writes, and results are delivered to the main thread through callbacks
+public class BookRepository {
+
+    private static final String LOG_TAG = BookRepository.class.getSimpleName();
+
+    //Number of threads that run reads
+    private static final int READ_THREADS = 2;
+
+    //Number of queries nobody observes that are kept with their last result
+    private static final int MAX_INACTIVE_QUERIES = 16;
+
+    //Time from a delete until its books are purged, a little longer than it can be undone
+    private static final long PURGE_DELAY_MILLIS = DeletionEntry.UNDO_WINDOW_MILLIS + 1000;
+
+    private static BookRepository instance;
+
+    //Receives the result of an operation on the main thread
+    public abstract static class Callback<T> {
+
+        public abstract void onResult(T result);
+
+        //Called instead of onResult() when the provider rejected the operation, for example because of an invalid value
+        public void onError(RuntimeException e) {
+            Log.e(LOG_TAG, "Operation failed", e);
+        }
+    }
+
+    //Result of a delete: the number of books deleted, and the id undoDelete() takes to bring them back
+    public static final class Deletion {
+
+        public final int rowsDeleted;
+        public final long id;
+
+        Deletion(int rowsDeleted, long id) {
+            this.rowsDeleted = rowsDeleted;
+            this.id = id;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService readExecutor = Executors.newFixedThreadPool(READ_THREADS);
+
+    //Quantity changes by book id that are waiting for the writer thread. Taps that arrive while
+    //a change is waiting are merged into it, so a burst of taps costs a single write
+    private final Map<Long, PendingAdjustment> pendingAdjustments = new HashMap<>();
+
+    //Sales waiting for the writer thread. All sales that arrive while the writer is busy are committed
+    //together in one transaction when it gets to them, so a burst of sales costs a single commit
+    private final List<PendingSale> pendingSales = new ArrayList<>();
+
+    //Queries observed by the screens by their key, so equal queries are shared. Only used on the main thread
+    private final Map<String, SharedQuery> activeQueries = new HashMap<>();
+
+    //Queries that lost their last observer, kept so a screen coming back to them shows their last result right away
+    private final LruCache<String, SharedQuery> inactiveQueries = new LruCache<>(MAX_INACTIVE_QUERIES);
+
+    //Moves queries between the active and the inactive ones as they gain and lose observers
+    private final SharedQuery.ActivityListener queryActivityListener = new SharedQuery.ActivityListener() {
+        @Override
+        public void onActive(SharedQuery query) {
+            inactiveQueries.remove(query.getKey());
+            //A query dropped from the inactive ones may have been replaced meanwhile, keep the one already shared
+            if (!activeQueries.containsKey(query.getKey())) {
+                activeQueries.put(query.getKey(), query);
+            }
+        }
+
+        @Override
+        public void onInactive(SharedQuery query) {
+            if (activeQueries.get(query.getKey()) == query) {
+                activeQueries.remove(query.getKey());
+                inactiveQueries.put(query.getKey(), query);
+            }
+        }
+    };
+
+    //Purges the deleted books once the last delete can't be undone anymore
+    private final Runnable purgeTask = new Runnable() {
+        @Override
+        public void run() {
+            purgeDeleted();
+        }
+    };
+
+    private BookRepository(Context context) {
+        contentResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    public static synchronized BookRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new BookRepository(context);
+        }
+        return instance;
+    }
+
+    //Returns the executor that runs reads, for components that query the provider themselves
+    public Executor getReadExecutor() {
+        return readExecutor;
+    }
+
+    //Returns the query of the provider with these parameters, shared with every other caller asking for the same query.
+    //Observe it to receive its results, it only runs while it has observers. Must be called on the main thread
+    public SharedQuery query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String key = SharedQuery.getKey(uri, projection, selection, selectionArgs, sortOrder);
+        SharedQuery query = activeQueries.get(key);
+        if (query == null) {
+            query = inactiveQueries.get(key);
+        }
+        if (query == null) {
+            query = new SharedQuery(contentResolver, readExecutor, uri, projection, selection, selectionArgs, sortOrder,
+                    queryActivityListener);
+            inactiveQueries.put(key, query);
+        }
+        return query;
+    }
+
+    //Changes the quantity of a book by delta. The callback receives the new quantity, or -1 if the book
+    //doesn't exist or the change would make the quantity negative. The callback may be null
+    public void adjustQuantity(final long id, int delta, Callback<Integer> callback) {
+        synchronized (pendingAdjustments) {
+            PendingAdjustment pending = pendingAdjustments.get(id);
+            if (pending != null) {
+                pending.add(delta, callback);
+                return;
+            }
+            pending = new PendingAdjustment();
+            pending.add(delta, callback);
+            pendingAdjustments.put(id, pending);
+        }
+
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PendingAdjustment pending;
+                synchronized (pendingAdjustments) {
+                    pending = pendingAdjustments.remove(id);
+                }
+                applyAdjustment(id, pending);
+            }
+        });
+    }
+
+    //Runs on the writer thread. If the provider throws, every merged change receives the error
+    private void applyAdjustment(long id, PendingAdjustment pending) {
+        int size = pending.deltas.size();
+        int[] results = new int[size];
+
+        try {
+            //Changes are only merged when they all go the same way. A decrease refused at 0 followed by an increase
+            //mustn't cancel out to no change at all
+            int totalDelta = 0;
+            boolean increases = false;
+            boolean decreases = false;
+            for (int delta : pending.deltas) {
+                totalDelta += delta;
+                increases |= delta > 0;
+                decreases |= delta < 0;
+            }
+            int quantity = increases && decreases ? -1 : BookContract.adjustQuantity(contentResolver, id, totalDelta);
+            if (quantity != -1 || size == 1) {
+                for (int i = 0; i < size; i++) {
+                    results[i] = quantity;
+                }
+            } else {
+                //The merged change was refused or couldn't be merged, apply the changes one by one in the order they were made,
+                //so each is refused only if it alone would go negative
+                for (int i = 0; i < size; i++) {
+                    results[i] = BookContract.adjustQuantity(contentResolver, id, pending.deltas.get(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Callback<Integer> callback : pending.callbacks) {
+                deliverError(callback, e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < size; i++) {
+            deliver(pending.callbacks.get(i), results[i]);
+        }
+    }
+
+    //Sells copies of a book and records the sale. The callback receives the new quantity, or -1 if the book
+    //doesn't exist or doesn't have enough copies. The callback may be null
+    public void sell(long id, int quantity, Callback<Integer> callback) {
+        addSale(new PendingSale(id, null, quantity, callback));
+    }
+
+    //Sells copies of the book with an ISBN, as read by a barcode scanner, and records the sale. Scans are committed
+    //together with the other sales waiting for the writer. The callback receives the new quantity, -1 if the book
+    //doesn't have enough copies or BookContract.SALE_UNKNOWN_ISBN if no book has the ISBN. The callback may be null
+    public void sellByIsbn(String isbn, int quantity, Callback<Integer> callback) {
+        addSale(new PendingSale(-1, isbn, quantity, callback));
+    }
+
+    //Helper method to queue a sale, and the commit of the queue unless one is already waiting
+    private void addSale(PendingSale sale) {
+        synchronized (pendingSales) {
+            pendingSales.add(sale);
+            //A commit is already waiting for the writer, it will take this sale too
+            if (pendingSales.size() > 1) {
+                return;
+            }
+        }
+
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<PendingSale> sales;
+                synchronized (pendingSales) {
+                    sales = new ArrayList<>(pendingSales);
+                    pendingSales.clear();
+                }
+                applySales(sales);
+            }
+        });
+    }
+
+    //Runs on the writer thread. Sales by id and by ISBN are committed separately, one transaction each
+    private void applySales(List<PendingSale> sales) {
+        List<PendingSale> salesById = new ArrayList<>();
+        List<PendingSale> salesByIsbn = new ArrayList<>();
+        for (PendingSale sale : sales) {
+            if (sale.isbn == null) {
+                salesById.add(sale);
+            } else {
+                salesByIsbn.add(sale);
+            }
+        }
+        if (!salesById.isEmpty()) {
+            applySalesById(salesById);
+        }
+        if (!salesByIsbn.isEmpty()) {
+            applySalesByIsbn(salesByIsbn);
+        }
+    }
+
+    //Runs on the writer thread
+    private void applySalesById(List<PendingSale> sales) {
+        long[] ids = new long[sales.size()];
+        int[] quantities = new int[sales.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = sales.get(i).id;
+            quantities[i] = sales.get(i).quantity;
+        }
+        try {
+            int[] results = BookContract.sell(contentResolver, ids, quantities);
+            for (int i = 0; i < ids.length; i++) {
+                deliver(sales.get(i).callback, results == null ? -1 : results[i]);
+            }
+        } catch (RuntimeException e) {
+            for (PendingSale sale : sales) {
+                deliverError(sale.callback, e);
+            }
+        }
+    }
+
+    //Runs on the writer thread
+    private void applySalesByIsbn(List<PendingSale> sales) {
+        String[] isbns = new String[sales.size()];
+        int[] quantities = new int[sales.size()];
+        for (int i = 0; i < isbns.length; i++) {
+            isbns[i] = sales.get(i).isbn;
+            quantities[i] = sales.get(i).quantity;
+        }
+        try {
+            Bundle result = BookContract.sellByIsbn(contentResolver, isbns, quantities);
+            int[] results = result == null ? null : result.getIntArray(BookContract.EXTRA_QUANTITIES);
+            for (int i = 0; i < isbns.length; i++) {
+                deliver(sales.get(i).callback, results == null ? -1 : results[i]);
+            }
+        } catch (RuntimeException e) {
+            for (PendingSale sale : sales) {
+                deliverError(sale.callback, e);
+            }
+        }
+    }
+
+    //Inserts a book. The callback receives the URI of the new book, or null if it wasn't inserted
+    public void insert(final ContentValues values, final Callback<Uri> callback) {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deliver(callback, contentResolver.insert(BookEntry.CONTENT_URI, values));
+                } catch (RuntimeException e) {
+                    deliverError(callback, e);
+                }
+            }
+        });
+    }
+
+    //Updates the book or books of the URI. The callback receives the number of updated rows
+    public void update(final Uri uri, final ContentValues values, final Callback<Integer> callback) {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deliver(callback, contentResolver.update(uri, values, null, null));
+                } catch (RuntimeException e) {
+                    deliverError(callback, e);
+                }
+            }
+        });
+    }
+
+    //Deletes the book or all books of the URI. The callback receives the number of deleted books and the id of the delete.
+    //The delete can be undone with undoDelete() for DeletionEntry.UNDO_WINDOW_MILLIS, then its books are purged
+    public void delete(final Uri uri, final Callback<Deletion> callback) {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Bundle result = BookContract.delete(contentResolver, uri);
+                    int rowsDeleted = result.getInt(BookContract.EXTRA_DELETED);
+                    if (rowsDeleted != 0) {
+                        //One purge after the last of several deletes takes the books of all of them
+                        mainHandler.removeCallbacks(purgeTask);
+                        mainHandler.postDelayed(purgeTask, PURGE_DELAY_MILLIS);
+                    }
+                    deliver(callback, new Deletion(rowsDeleted, result.getLong(BookContract.EXTRA_DELETION_ID)));
+                } catch (RuntimeException e) {
+                    deliverError(callback, e);
+                }
+            }
+        });
+    }
+
+    //Undoes the delete with the id delete() returned. The callback receives the number of books brought back,
+    //0 if the delete was made too long ago to be undone
+    public void undoDelete(final long deletionId, final Callback<Integer> callback) {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deliver(callback, BookContract.undoDelete(contentResolver, deletionId));
+                } catch (RuntimeException e) {
+                    deliverError(callback, e);
+                }
+            }
+        });
+    }
+
+    //Removes the deleted books that can't be brought back anymore from the database, one batch at a time.
+    //Every batch is queued behind the writes waiting meanwhile, so a large purge doesn't hold up the screens
+    public void purgeDeleted() {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int purged;
+                try {
+                    purged = BookContract.purgeDeleted(contentResolver);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Purge failed", e);
+                    return;
+                }
+                if (purged != 0) {
+                    purgeDeleted();
+                }
+            }
+        });
+    }
+
+    //Helper method to pass a result to the callback on the main thread
+    private <T> void deliver(final Callback<T> callback, final T result) {
+        if (callback == null) {
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onResult(result);
+            }
+        });
+    }
+
+    //Helper method to pass an error to the callback on the main thread
+    private <T> void deliverError(final Callback<T> callback, final RuntimeException e) {
+        if (callback == null) {
+            Log.e(LOG_TAG, "Operation failed", e);
+            return;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onError(e);
+            }
+        });
+    }
+
+    //Sale waiting to be written, with its callback. Sales by ISBN have an ISBN in place of the id
+    private static class PendingSale {
+
+        final long id;
+        final String isbn;
+        final int quantity;
+        final Callback<Integer> callback;
+
+        PendingSale(long id, String isbn, int quantity, Callback<Integer> callback) {
+            this.id = id;
+            this.isbn = isbn;
+            this.quantity = quantity;
+            this.callback = callback;
+        }
+    }
+
+    //Quantity changes of one book waiting to be written, with the callback of each change
+    private static class PendingAdjustment {
+
+        final List<Integer> deltas = new ArrayList<>();
+        final List<Callback<Integer>> callbacks = new ArrayList<>();
+
+        void add(int delta, Callback<Integer> callback) {
+            deltas.add(delta);
+            callbacks.add(callback);
+        }
+    }
+}
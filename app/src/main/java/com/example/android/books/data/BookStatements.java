@@ -0,0 +1,111 @@
+package com.example.android.books.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Pools of compiled statements for the statements BookProvider runs most often, so that they are compiled
+//once instead of on every call. A compiled statement keeps its bound values, so it can only be used by one thread
+//at a time: callers take a statement, use it and give it back, and a new one is compiled when all are in use
+class BookStatements {
+
+    //Number of idle statements kept for each SQL string, extra ones are closed when they are given back
+    static final int MAX_IDLE_STATEMENTS = 4;
+
+    //Identifies a pooled statement
+    static final int INSERT_BOOK = 0;
+    static final int ADJUST_QUANTITY = 1;
+    static final int QUERY_QUANTITY = 2;
+    static final int FIND_SUPPLIER = 3;
+    static final int INSERT_SUPPLIER = 4;
+    static final int UPDATE_SUPPLIER_NUMBER = 5;
+    static final int INSERT_SALE = 6;
+    static final int ADJUST_QUANTITY_BY_ISBN = 7;
+    static final int FIND_BOOK_BY_ISBN = 8;
+    static final int PURGE_DELETED_ISBN = 9;
+    static final int COUNT_DELETED_ISBN = 10;
+
+    private final SQLiteDatabase db;
+    private final Pool[] pools;
+
+    //Set once the pools are closed, statements given back after that are closed instead of kept
+    private volatile boolean closed = false;
+
+    //Takes the SQL of every statement, in the order of their ids
+    BookStatements(SQLiteDatabase db, String... sql) {
+        this.db = db;
+        pools = new Pool[sql.length];
+        for (int i = 0; i < sql.length; i++) {
+            pools[i] = new Pool(sql[i]);
+        }
+    }
+
+    //Returns true if the statements were compiled for the database
+    boolean isFor(SQLiteDatabase database) {
+        return db == database;
+    }
+
+    //Takes a statement out of its pool, compiling a new one if none is idle. It must be given back with release()
+    SQLiteStatement acquire(int statement) {
+        return pools[statement].acquire();
+    }
+
+    //Gives a statement taken with acquire() back to its pool
+    void release(int statement, SQLiteStatement compiled) {
+        pools[statement].release(compiled);
+    }
+
+    //Closes all idle statements, and every statement still in use once it is given back
+    void close() {
+        closed = true;
+        for (Pool pool : pools) {
+            pool.close();
+        }
+    }
+
+    private class Pool {
+
+        private final String sql;
+        private final ConcurrentLinkedQueue<SQLiteStatement> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        Pool(String sql) {
+            this.sql = sql;
+        }
+
+        SQLiteStatement acquire() {
+            SQLiteStatement statement = idle.poll();
+            if (statement == null) {
+                return db.compileStatement(sql);
+            }
+            idleCount.decrementAndGet();
+            return statement;
+        }
+
+        void release(SQLiteStatement statement) {
+            statement.clearBindings();
+            if (closed) {
+                statement.close();
+            } else if (idleCount.incrementAndGet() <= MAX_IDLE_STATEMENTS) {
+                idle.offer(statement);
+                //The pool may have been closed while the statement was added, don't leave it behind
+                if (closed) {
+                    close();
+                }
+            } else {
+                idleCount.decrementAndGet();
+                statement.close();
+            }
+        }
+
+        void close() {
+            SQLiteStatement statement;
+            while ((statement = idle.poll()) != null) {
+                idleCount.decrementAndGet();
+                statement.close();
+            }
+        }
+    }
+}
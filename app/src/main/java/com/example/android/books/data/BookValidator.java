@@ -0,0 +1,84 @@
+package com.example.android.books.data;
+
+import android.content.ContentValues;
+import android.text.TextUtils;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+//Rules a book must satisfy before it can be stored,
+//shared by the provider and everything that prepares rows for it
+public final class BookValidator {
+
+    private BookValidator() {
+
+    }
+
+    //Checks the values of a new book, throwing an exception that describes the first invalid value
+    public static void validateBook(ContentValues contentValues) {
+        validateTitle(contentValues);
+        validatePrice(contentValues);
+
+        //Check that quantity, if given, is not negative
+        Integer quantity = contentValues.getAsInteger(BookEntry.COLUMN_QUANTITY);
+        if(quantity != null && quantity < 0) {
+            throw new IllegalArgumentException("Book requires a valid quantity");
+        }
+
+        validateSupplierName(contentValues);
+        validateIsbn(contentValues);
+    }
+
+    //Checks the values of an update of books. Only the values the update changes are checked,
+    //by the same rules as the values of a new book
+    public static void validateChanges(ContentValues contentValues) {
+        if(contentValues.containsKey(BookEntry.COLUMN_BOOK_NAME)) {
+            validateTitle(contentValues);
+        }
+        if(contentValues.containsKey(BookEntry.COLUMN_PRICE)) {
+            validatePrice(contentValues);
+        }
+        //A quantity that is updated can't be removed, the column has no value to fall back to
+        if(contentValues.containsKey(BookEntry.COLUMN_QUANTITY)) {
+            Integer quantity = contentValues.getAsInteger(BookEntry.COLUMN_QUANTITY);
+            if(quantity == null || quantity < 0) {
+                throw new IllegalArgumentException("Book requires a valid quantity");
+            }
+        }
+        if(contentValues.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)) {
+            validateSupplierName(contentValues);
+        }
+        validateIsbn(contentValues);
+    }
+
+    //Helper method to check that book name is not null
+    private static void validateTitle(ContentValues contentValues) {
+        String bookName = contentValues.getAsString(BookEntry.COLUMN_BOOK_NAME);
+        if(bookName == null || TextUtils.isEmpty(bookName)) {
+            throw new IllegalArgumentException("Book requires a title");
+        }
+    }
+
+    //Helper method to check that price is not null, and not negative
+    private static void validatePrice(ContentValues contentValues) {
+        Integer price = contentValues.getAsInteger(BookEntry.COLUMN_PRICE);
+        if((price != null && price < 0) || price == null) {
+            throw new IllegalArgumentException("Book requires a price");
+        }
+    }
+
+    //Helper method to check that supplier name is not null
+    private static void validateSupplierName(ContentValues contentValues) {
+        String supplierName = contentValues.getAsString(BookEntry.COLUMN_SUPPLIER_NAME);
+        if(supplierName == null || TextUtils.isEmpty(supplierName)) {
+            throw new IllegalArgumentException("Book requires a name of supplier");
+        }
+    }
+
+    //Helper method to check that ISBN, if given, is a valid ISBN-10 or ISBN-13. An empty ISBN means no ISBN
+    private static void validateIsbn(ContentValues contentValues) {
+        String isbn = contentValues.getAsString(BookEntry.COLUMN_ISBN);
+        if(!TextUtils.isEmpty(isbn) && Isbn.normalize(isbn) == null) {
+            throw new IllegalArgumentException("Book requires a valid ISBN");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.android.books.data;
+
+//Conversion of the ISBNs typed in or read by a barcode scanner to the single form the books table stores,
+//so every way of writing an ISBN finds the same book through the unique index
+public final class Isbn {
+
+    private Isbn() {
+
+    }
+
+    //Returns the 13 digits of an ISBN-13, or of an ISBN-10 converted to ISBN-13, ignoring hyphens and spaces.
+    //Returns null if the text isn't an ISBN or its check digit is wrong
+    public static String normalize(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(13);
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            //Only the check digit of an ISBN-10 can be an X
+            if ((c < '0' || c > '9') && !((c == 'X' || c == 'x') && digits.length() == 9)) {
+                return null;
+            }
+            digits.append(Character.toUpperCase(c));
+        }
+
+        if (digits.length() == 13) {
+            //The X was let through as the check digit of an ISBN-10, an ISBN-13 has digits only
+            if (digits.charAt(9) == 'X') {
+                return null;
+            }
+            return checkDigit13(digits) == digits.charAt(12) - '0' ? digits.toString() : null;
+        }
+        if (digits.length() != 10 || checkDigit10(digits) != digits.charAt(9)) {
+            return null;
+        }
+        //An ISBN-10 is the ISBN-13 with the 978 prefix and its own check digit
+        digits.setLength(9);
+        digits.insert(0, "978");
+        digits.append(checkDigit13(digits));
+        return digits.toString();
+    }
+
+    //Helper method to compute the check digit of the first 12 digits of an ISBN-13
+    private static int checkDigit13(CharSequence digits) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (digits.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    //Helper method to compute the check digit of the first 9 digits of an ISBN-10, where 10 is written as X
+    private static char checkDigit10(CharSequence digits) {
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            sum += (digits.charAt(i) - '0') * (10 - i);
+        }
+        int check = (11 - sum % 11) % 11;
+        return check == 10 ? 'X' : (char) ('0' + check);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.android.books.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+//One step of the database schema, upgrading it from its start version to the next version.
+//Steps must keep the existing data, they run inside the transaction of the upgrade
+abstract class Migration {
+
+    //Version of the schema this step upgrades from
+    final int startVersion;
+
+    Migration(int startVersion) {
+        this.startVersion = startVersion;
+    }
+
+    abstract void migrate(SQLiteDatabase db);
+}
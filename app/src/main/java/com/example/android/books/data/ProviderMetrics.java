@@ -0,0 +1,199 @@
+package com.example.android.books.data;
+
+import android.os.Bundle;
+
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Counters of the work BookProvider does, by operation and by the kind of URI it was given:
+//how often it ran, a histogram of how long it took, and how many rows it touched or returned.
+//Recording only adds to atomic counters and never locks or allocates, so it is cheap enough to stay on in release builds.
+//Latencies are counted in buckets whose bounds double, bucket i holding the times from 2^i up to 2^(i+1) microseconds
+public final class ProviderMetrics {
+
+    //Operations that are measured
+    public static final int OP_QUERY = 0;
+    public static final int OP_INSERT = 1;
+    public static final int OP_BULK_INSERT = 2;
+    public static final int OP_UPDATE = 3;
+    public static final int OP_DELETE = 4;
+    public static final int OP_APPLY_BATCH = 5;
+    public static final int OP_ADJUST_QUANTITY = 6;
+    public static final int OP_NOTIFY = 7;
+    public static final int OP_OPEN_DATABASE = 8;
+    public static final int OP_SELL = 9;
+    public static final int OP_APPLY_REMOTE_CHANGES = 10;
+    public static final int OP_MAINTENANCE = 11;
+    public static final int OP_UNDO_DELETE = 12;
+    public static final int OP_PURGE_DELETED = 13;
+    private static final String[] OPERATION_NAMES = {
+            "query", "insert", "bulkInsert", "update", "delete", "applyBatch", "adjustQuantity", "notify", "openDatabase", "sell",
+            "applyRemoteChanges", "maintenance", "undoDelete", "purgeDeleted"};
+
+    //Kinds of URI, the same as the matches of the UriMatcher of BookProvider. NONE is for work that has no URI
+    public static final int MATCH_NONE = 0;
+    public static final int MATCH_BOOKS = 1;
+    public static final int MATCH_BOOK_ID = 2;
+    public static final int MATCH_BOOKS_SEARCH = 3;
+    public static final int MATCH_AGGREGATES = 4;
+    public static final int MATCH_AGGREGATE_TOTALS = 5;
+    public static final int MATCH_SUPPLIERS = 6;
+    public static final int MATCH_SUPPLIER_ID = 7;
+    public static final int MATCH_SUPPLIER_BOOKS = 8;
+    public static final int MATCH_SALES = 9;
+    public static final int MATCH_SALES_HOURLY = 10;
+    public static final int MATCH_SALES_DAILY = 11;
+    public static final int MATCH_CHANGES = 12;
+    public static final int MATCH_MAINTENANCE = 13;
+    public static final int MATCH_BOOK_ISBN = 14;
+    private static final String[] MATCH_NAMES = {"-", "books", "books/#", "books/search", "aggregates", "aggregates/totals",
+            "suppliers", "suppliers/#", "suppliers/#/books", "sales", "sales/hourly", "sales/daily", "changes", "maintenance",
+            "books/isbn"};
+
+    //Latencies of 2^23 microseconds (8 seconds) and more all go into the last bucket
+    public static final int BUCKETS = 24;
+
+    private static final int KEYS = OPERATION_NAMES.length * MATCH_NAMES.length;
+
+    //Keys of the bundle returned by toBundle()
+    private static final String KEY_TRANSACTIONS = "transactions";
+    private static final String KEY_PREFIX = "op:";
+
+    //Positions of the values in the array stored for each operation in the bundle
+    private static final int VALUE_COUNT = 0;
+    private static final int VALUE_TOTAL_NANOS = 1;
+    private static final int VALUE_ROWS = 2;
+    private static final int VALUE_FIRST_BUCKET = 3;
+
+    private static final ProviderMetrics instance = new ProviderMetrics();
+
+    private final AtomicLongArray counts = new AtomicLongArray(KEYS);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(KEYS);
+    private final AtomicLongArray rows = new AtomicLongArray(KEYS);
+    private final AtomicLongArray buckets = new AtomicLongArray(KEYS * BUCKETS);
+    private final AtomicLong transactions = new AtomicLong();
+
+    private volatile boolean enabled = true;
+
+    private ProviderMetrics() {
+    }
+
+    //The counters are shared by the whole process, like the database
+    public static ProviderMetrics getInstance() {
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    //Returns the start time to pass to record(), so that a disabled recorder doesn't even read the clock
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    //Records one run of an operation that started at startNanos and touched or returned the given number of rows
+    public void record(int operation, int match, long startNanos, long rowCount) {
+        if (!enabled || startNanos == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        int key = operation * MATCH_NAMES.length + (match >= 0 && match < MATCH_NAMES.length ? match : MATCH_NONE);
+        counts.incrementAndGet(key);
+        totalNanos.addAndGet(key, nanos);
+        rows.addAndGet(key, rowCount);
+        buckets.incrementAndGet(key * BUCKETS + bucketOf(nanos));
+    }
+
+    //Records that a transaction was committed or rolled back
+    public void recordTransaction() {
+        if (enabled) {
+            transactions.incrementAndGet();
+        }
+    }
+
+    //Helper method to find the bucket of a latency: the position of the highest bit of the microseconds
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = micros <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    //Sets all counters back to 0. Runs that are being recorded at the same time may be partly kept
+    public void reset() {
+        for (int key = 0; key < KEYS; key++) {
+            counts.set(key, 0);
+            totalNanos.set(key, 0);
+            rows.set(key, 0);
+        }
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        transactions.set(0);
+    }
+
+    //Copies the counters into a bundle, with one long array per operation and URI that has run at least once
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLong(KEY_TRANSACTIONS, transactions.get());
+        for (int key = 0; key < KEYS; key++) {
+            long count = counts.get(key);
+            if (count == 0) {
+                continue;
+            }
+            long[] values = new long[VALUE_FIRST_BUCKET + BUCKETS];
+            values[VALUE_COUNT] = count;
+            values[VALUE_TOTAL_NANOS] = totalNanos.get(key);
+            values[VALUE_ROWS] = rows.get(key);
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                values[VALUE_FIRST_BUCKET + bucket] = buckets.get(key * BUCKETS + bucket);
+            }
+            bundle.putLongArray(KEY_PREFIX + OPERATION_NAMES[key / MATCH_NAMES.length] + " " + MATCH_NAMES[key % MATCH_NAMES.length], values);
+        }
+        return bundle;
+    }
+
+    //Formats a bundle returned by toBundle() as a table, one line per operation and URI.
+    //Percentiles are the upper bounds of the buckets they fall into
+    public static String format(Bundle bundle) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "%-28s %8s %9s %8s %8s %8s %9s%n",
+                "operation", "count", "mean us", "p50 us", "p90 us", "p99 us", "rows/op"));
+        for (String key : new TreeSet<>(bundle.keySet())) {
+            if (!key.startsWith(KEY_PREFIX)) {
+                continue;
+            }
+            long[] values = bundle.getLongArray(key);
+            long count = values[VALUE_COUNT];
+            text.append(String.format(Locale.US, "%-28s %8d %9.1f %8d %8d %8d %9.1f%n",
+                    key.substring(KEY_PREFIX.length()),
+                    count,
+                    values[VALUE_TOTAL_NANOS] / 1000.0 / count,
+                    percentile(values, count, 0.5),
+                    percentile(values, count, 0.9),
+                    percentile(values, count, 0.99),
+                    (double) values[VALUE_ROWS] / count));
+        }
+        text.append(String.format(Locale.US, "%ntransactions: %d%n", bundle.getLong(KEY_TRANSACTIONS)));
+        return text.toString();
+    }
+
+    //Helper method to find the upper bound in microseconds of the bucket holding the given fraction of the runs
+    private static long percentile(long[] values, long count, double fraction) {
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += values[VALUE_FIRST_BUCKET + bucket];
+            if (seen >= target) {
+                return 1L << (bucket + 1);
+            }
+        }
+        return 1L << BUCKETS;
+    }
+}
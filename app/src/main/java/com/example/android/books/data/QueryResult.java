@@ -0,0 +1,205 @@
+package com.example.android.books.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+//Immutable copy of the rows of a query, so one result can be shared by every screen observing the query
+//and compared with the next result to tell whether the data really changed.
+//Meant for small results like one book or the aggregates, the list of all books is paged by BookPager
+public final class QueryResult {
+
+    private final String[] columns;
+    private final Object[][] rows;
+
+    private QueryResult(String[] columns, Object[][] rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    //Copies all rows of the cursor, from its first row. Doesn't close the cursor
+    static QueryResult fromCursor(Cursor cursor) {
+        String[] columns = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        cursor.moveToPosition(-1);
+        for (int row = 0; cursor.moveToNext(); row++) {
+            Object[] values = new Object[columns.length];
+            for (int column = 0; column < columns.length; column++) {
+                values[column] = getValue(cursor, column);
+            }
+            rows[row] = values;
+        }
+        return new QueryResult(columns, rows);
+    }
+
+    //Copies the columns of the current row of the cursor, as the result of a query of that row alone with the columns
+    //as its projection. Returns null if the cursor lacks any of the columns. Doesn't move or close the cursor
+    public static QueryResult fromRow(Cursor cursor, String[] columns) {
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int column = cursor.getColumnIndex(columns[i]);
+            if (column == -1) {
+                return null;
+            }
+            values[i] = getValue(cursor, column);
+        }
+        return new QueryResult(columns.clone(), new Object[][] {values});
+    }
+
+    //Helper method to read a value of the cursor as the type it is stored with
+    private static Object getValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return cursor.getString(column);
+        }
+    }
+
+    public int getCount() {
+        return rows.length;
+    }
+
+    //Returns a new cursor over the rows. The rows aren't copied, so every observer can have its own cursor cheaply.
+    //The cursor should be closed like any other, though it holds no resources
+    public Cursor toCursor() {
+        return new ResultCursor();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof QueryResult)) {
+            return false;
+        }
+        QueryResult result = (QueryResult) other;
+        return Arrays.equals(columns, result.columns) && Arrays.deepEquals(rows, result.rows);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(columns) + Arrays.deepHashCode(rows);
+    }
+
+    //Read-only cursor over the shared rows. Values are converted the way SQLite converts them
+    private class ResultCursor extends AbstractCursor {
+
+        @Override
+        public int getCount() {
+            return rows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return columns;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            } else if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            if (value instanceof byte[]) {
+                throw new IllegalStateException("Column " + columns[column] + " holds a blob");
+            }
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            if (value instanceof String) {
+                try {
+                    return Long.parseLong((String) value);
+                } catch (NumberFormatException e) {
+                    return (long) getDouble(column);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            if (value instanceof String) {
+                try {
+                    return Double.parseDouble((String) value);
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            if (value == null || value instanceof byte[]) {
+                return (byte[]) value;
+            }
+            //SQLite stores text as UTF-8, whatever the default charset of the device
+            return value.toString().getBytes(Charset.forName("UTF-8"));
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+
+        //Helper method to get the value of the column in the current row
+        private Object get(int column) {
+            int position = getPosition();
+            if (position < 0 || position >= rows.length) {
+                throw new IllegalStateException("Cursor isn't on a row, it is at position " + position);
+            }
+            if (column < 0 || column >= columns.length) {
+                throw new IllegalStateException("Column " + column + " doesn't exist");
+            }
+            return rows[position][column];
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+
+//Query of BookProvider that any number of screens observe together, in place of one CursorLoader per screen.
+//Get it from BookRepository.query(), which returns the same query for the same URI, projection, selection and sort order,
+//so screens showing the same data share one execution and one result.
+//The query runs in the background, and runs again after a change only while it has observers. Changes that arrive
+//while it runs are merged into one more run. Observers only hear of a result that differs from the last one.
+//Must be used from the main thread
+public class SharedQuery {
+
+    //Time a prefetched query keeps watching the data for the observer it was prefetched for
+    static final long PREFETCH_MILLIS = 2000;
+
+    //Receives the results of the query on the main thread
+    public interface Observer {
+        void onChanged(QueryResult result);
+    }
+
+    //Told when the query gains its first observer or loses its last one
+    interface ActivityListener {
+        void onActive(SharedQuery query);
+
+        void onInactive(SharedQuery query);
+    }
+
+    private final ContentResolver contentResolver;
+    private final Executor executor;
+    private final String key;
+    private final Uri uri;
+    private final String[] projection;
+    private final String selection;
+    private final String[] selectionArgs;
+    private final String sortOrder;
+    private final ActivityListener activityListener;
+
+    //Id of the book if the URI is the one of a single book, otherwise -1
+    private final long bookId;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Observer> observers = new ArrayList<>();
+
+    //Last result each observer received, so an observer that comes back, like a screen that is started again,
+    //doesn't receive the result it already shows. Weak, so observers that are gone don't leak
+    private final Map<Observer, QueryResult> deliveredResults = new WeakHashMap<>();
+
+    //Last result, shown right away to new observers while the query runs again. Null until the first run is done
+    private QueryResult result;
+    private boolean running = false;
+
+    //True if the data changed while the query was running, so it has to run again once it is done
+    private boolean changedWhileRunning = false;
+
+    //Keeps the query active while it is prefetched
+    private final Observer prefetchObserver = new Observer() {
+        @Override
+        public void onChanged(QueryResult result) {
+        }
+    };
+
+    private final Runnable endPrefetchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            removeObserver(prefetchObserver);
+        }
+    };
+
+    //Runs the query again whenever the books change
+    private final ContentObserver contentObserver = new ContentObserver(handler) {
+        //Called before API 16, where the URI that changed isn't known
+        @Override
+        public void onChange(boolean selfChange) {
+            onDataChanged(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri changedUri) {
+            onDataChanged(changedUri);
+        }
+    };
+
+    //The activity listener may be null
+    SharedQuery(ContentResolver contentResolver, Executor executor, Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder, ActivityListener activityListener) {
+        this.contentResolver = contentResolver;
+        this.executor = executor;
+        this.key = getKey(uri, projection, selection, selectionArgs, sortOrder);
+        this.uri = uri;
+        this.projection = projection == null ? null : projection.clone();
+        this.selection = selection;
+        this.selectionArgs = selectionArgs == null ? null : selectionArgs.clone();
+        this.sortOrder = sortOrder;
+        this.activityListener = activityListener;
+        bookId = getBookId(uri);
+    }
+
+    //Returns the key under which equal queries are shared
+    static String getKey(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        //The separator can't be part of a URI or of SQL
+        return uri + "\u0000" + Arrays.toString(projection) + "\u0000" + selection + "\u0000"
+                + Arrays.toString(selectionArgs) + "\u0000" + sortOrder;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    //Adds an observer. It receives the last result right away if there is one it hasn't received yet,
+    //and every new result that differs from it.
+    //The first observer starts watching the data and runs the query, in case the data changed while nobody watched it
+    public void observe(Observer observer) {
+        if (observers.contains(observer)) {
+            return;
+        }
+        observers.add(observer);
+        if (result != null) {
+            deliver(observer, result);
+        }
+        if (observers.size() == 1) {
+            //Provider changes are all reported under the URI of the books, see BookChangeNotifier.
+            //Other URIs are watched too for the few changes reported under their own URI, like maintenance runs
+            contentResolver.registerContentObserver(BookEntry.CONTENT_URI, true, contentObserver);
+            if (!isBooksUri(uri)) {
+                contentResolver.registerContentObserver(uri, true, contentObserver);
+            }
+            if (activityListener != null) {
+                activityListener.onActive(this);
+            }
+            //A run still in progress from before may have missed changes made meanwhile
+            if (running) {
+                changedWhileRunning = true;
+            } else {
+                run();
+            }
+        }
+    }
+
+    //Removes an observer. Once the last one is gone the query stops watching the data, but keeps its last result
+    public void removeObserver(Observer observer) {
+        if (!observers.remove(observer) || !observers.isEmpty()) {
+            return;
+        }
+        contentResolver.unregisterContentObserver(contentObserver);
+        changedWhileRunning = false;
+        if (activityListener != null) {
+            activityListener.onInactive(this);
+        }
+    }
+
+    //Starts the query ahead of an observer that is about to come, like the screen opened by a tap on a row.
+    //The snapshot is the result the caller already holds, like the row of a list, or null if it has none. It becomes
+    //the result of the query unless the query is observed already, and is shown until the run started here checks it.
+    //The query stays active for PREFETCH_MILLIS, so an observer coming within that time takes its result as it is,
+    //without running it once more
+    public void prefetch(QueryResult snapshot) {
+        if (snapshot != null && observers.isEmpty() && !running) {
+            result = snapshot;
+        }
+        observe(prefetchObserver);
+        handler.removeCallbacks(endPrefetchRunnable);
+        handler.postDelayed(endPrefetchRunnable, PREFETCH_MILLIS);
+    }
+
+    //Helper method to run the query again after a change, unless the change is known not to touch its rows
+    private void onDataChanged(Uri changedUri) {
+        if (observers.isEmpty()) {
+            return;
+        }
+        //A single book only changes with changes of itself or of all books
+        if (bookId != -1 && changedUri != null && getBookId(changedUri) != -1 && getBookId(changedUri) != bookId) {
+            return;
+        }
+        if (running) {
+            changedWhileRunning = true;
+            return;
+        }
+        run();
+    }
+
+    //Helper method to run the query in the background. Only one run is in progress at a time
+    private void run() {
+        running = true;
+        //Results are only set on the main thread between runs, so the result a run starts from is the one it ends on
+        final QueryResult oldResult = result;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                QueryResult newResult = null;
+                Cursor cursor = contentResolver.query(uri, projection, selection, selectionArgs, sortOrder);
+                if (cursor != null) {
+                    try {
+                        newResult = QueryResult.fromCursor(cursor);
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                //Compare here rather than on the main thread, and let equal results go
+                final QueryResult changedResult = newResult == null || newResult.equals(oldResult) ? null : newResult;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRunDone(changedResult);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onRunDone(QueryResult changedResult) {
+        running = false;
+        if (changedResult != null) {
+            result = changedResult;
+            for (Observer observer : new ArrayList<>(observers)) {
+                deliver(observer, changedResult);
+            }
+        }
+        if (changedWhileRunning && !observers.isEmpty()) {
+            changedWhileRunning = false;
+            run();
+        }
+    }
+
+    //Helper method to pass a result to an observer, unless it has received it already
+    private void deliver(Observer observer, QueryResult newResult) {
+        if (deliveredResults.put(observer, newResult) != newResult) {
+            observer.onChanged(newResult);
+        }
+    }
+
+    //Helper method to check if the URI is the one of all books or one of its descendants
+    private static boolean isBooksUri(Uri uri) {
+        return uri.toString().startsWith(BookEntry.CONTENT_URI.toString());
+    }
+
+    //Helper method to get the id of the book of a URI of a single book, or -1 for any other URI
+    private static long getBookId(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (!isBooksUri(uri) || segments.size() != 2) {
+            return -1;
+        }
+        try {
+            return ContentUris.parseId(uri);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.books.maintenance;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.books.cover.CoverLoader;
+import com.example.android.books.data.BookContract;
+import com.example.android.books.data.BookContract.MaintenanceEntry;
+
+import java.util.UUID;
+
+//Runs the maintenance pass of the database once a day, while the device is idle and charging.
+//The pass runs on a thread of its own and is stopped after its current step as soon as the device is in use again.
+//JobScheduler exists from API 21, older devices aren't maintained
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class MaintenanceJobService extends JobService {
+
+    private static final String LOG_TAG = MaintenanceJobService.class.getSimpleName();
+
+    private static final int JOB_ID = 1;
+
+    //Set when the device is in use again, so the purge of deleted books stops after its current batch
+    //and the steps after it don't start
+    private volatile boolean stopped;
+
+    //Tag of the maintenance pass of the current job, so stopping the job stops its own pass only,
+    //even if the stop reaches the provider before the pass does
+    private volatile String passTag;
+
+    //Schedules the daily pass, unless it is already scheduled.
+    //Scheduling it again would restart the period, so the pass would never run for users who open the app every day
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+        scheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context, MaintenanceJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(AlarmManager.INTERVAL_DAY)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        stopped = false;
+        final String tag = UUID.randomUUID().toString();
+        passTag = tag;
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    //Remove the deleted books first, so the pass can return the space they took to the file system
+                    int purged = 0;
+                    int batch;
+                    while (!stopped && (batch = BookContract.purgeDeleted(getContentResolver())) != 0) {
+                        purged += batch;
+                    }
+                    if (purged != 0) {
+                        Log.i(LOG_TAG, "Purged " + purged + " deleted books");
+                    }
+                    //The provider skips the pass if the last one finished recently
+                    Bundle pass = null;
+                    if (!stopped) {
+                        pass = getContentResolver().call(MaintenanceEntry.CONTENT_URI,
+                                BookContract.METHOD_RUN_MAINTENANCE, tag, null);
+                    }
+                    if (pass != null) {
+                        Log.i(LOG_TAG, "Maintenance took " + pass.getLong(MaintenanceEntry.COLUMN_DURATION_MILLIS) +
+                                " ms and reclaimed " + pass.getLong(MaintenanceEntry.COLUMN_BYTES_RECLAIMED) + " bytes");
+                    }
+                    //Covers of books deleted while the app wasn't showing them, like deletes from sync
+                    if (!stopped) {
+                        CoverLoader.getInstance(MaintenanceJobService.this).deleteOrphanedCovers();
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Maintenance failed", e);
+                }
+                jobFinished(params, false);
+            }
+        }, LOG_TAG);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        stopped = true;
+        getContentResolver().call(MaintenanceEntry.CONTENT_URI, BookContract.METHOD_STOP_MAINTENANCE, passTag, null);
+        //The next period runs it again
+        return false;
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.android.books.sync;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.RemoteException;
+
+import com.example.android.books.data.BookContract;
+import com.example.android.books.data.BookContract.ChangeEntry;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+//Keeps the books of the device in sync with the server, sending and receiving only the books that changed.
+//A sync first pushes the pending changes from the journal of the provider in batches, deleting the entries
+//the server has received, then pulls the books changed on the server since the last pull, also in batches.
+//The server version of the last pull is saved, so an interrupted sync continues where it stopped.
+//Nothing in the app runs it yet, as there is no server to configure. Whatever starts it has to add the INTERNET
+//permission to the manifest. Must be run off the main thread
+public class SyncEngine {
+
+    //Default number of changed books sent or received per request
+    public static final int DEFAULT_BATCH_SIZE = 200;
+
+    private static final String PREFERENCES_NAME = "sync";
+    private static final String KEY_SERVER_VERSION = "server_version";
+
+    private static final int TIMEOUT_MILLIS = 15000;
+
+    //Counters of the work done by one sync
+    public static final class Result {
+        public final int pushed;
+        public final int pulled;
+        public final long bytesSent;
+        public final long bytesReceived;
+
+        Result(int pushed, int pulled, long bytesSent, long bytesReceived) {
+            this.pushed = pushed;
+            this.pulled = pulled;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+        }
+
+        @Override
+        public String toString() {
+            return "pushed " + pushed + ", pulled " + pulled + ", sent " + bytesSent + " B, received " + bytesReceived + " B";
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final SharedPreferences preferences;
+    private final URL serverUrl;
+    private final int batchSize;
+
+    private long bytesSent;
+    private long bytesReceived;
+
+    //The URL of the server must end with a slash, the paths of the requests are added to it
+    public SyncEngine(Context context, URL serverUrl, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.contentResolver = context.getContentResolver();
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.serverUrl = serverUrl;
+        this.batchSize = batchSize;
+    }
+
+    public SyncEngine(Context context, URL serverUrl) {
+        this(context, serverUrl, DEFAULT_BATCH_SIZE);
+    }
+
+    //Pushes the local changes and pulls the changes of the server.
+    //Only one sync may run at a time, since the journal is read and acknowledged in separate steps
+    public synchronized Result sync() throws IOException {
+        bytesSent = 0;
+        bytesReceived = 0;
+        int pushed = push();
+        int pulled = pull();
+        return new Result(pushed, pulled, bytesSent, bytesReceived);
+    }
+
+    //Helper method to send the pending changes, oldest first. Returns the number of changed books sent
+    private int push() throws IOException {
+        Uri uri = ChangeEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(batchSize))
+                .build();
+        int pushed = 0;
+        while (true) {
+            List<ContentValues> changes = new ArrayList<>();
+            ArrayList<ContentProviderOperation> acknowledgements = new ArrayList<>();
+            Cursor cursor = contentResolver.query(uri, null, null, null, null);
+            if (cursor == null) {
+                throw new IOException("Cannot read the pending changes");
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    ContentValues change = readChange(cursor);
+                    //Once the server has the change, delete the entries merged into it, but not newer ones
+                    acknowledgements.add(ContentProviderOperation.newDelete(ChangeEntry.CONTENT_URI)
+                            .withSelection(ChangeEntry.COLUMN_SYNC_ID + " = ? AND " + ChangeEntry._ID + " <= ?",
+                                    new String[] {change.getAsString(ChangeEntry.COLUMN_SYNC_ID),
+                                            change.getAsString(ChangeEntry._ID)})
+                            .build());
+                    change.remove(ChangeEntry._ID);
+                    changes.add(change);
+                }
+            } finally {
+                cursor.close();
+            }
+            if (changes.isEmpty()) {
+                return pushed;
+            }
+
+            send(new URL(serverUrl, SyncProtocol.PATH_PUSH), new SyncProtocol.Message(0, false, changes));
+            try {
+                contentResolver.applyBatch(BookContract.CONTENT_AUTHORITY, acknowledgements);
+            } catch (RemoteException | OperationApplicationException e) {
+                throw new IOException("Cannot delete the changes that were sent", e);
+            }
+            pushed += changes.size();
+            if (changes.size() < batchSize) {
+                return pushed;
+            }
+        }
+    }
+
+    //Helper method to receive and apply the changes of the server since the last pull.
+    //Returns the number of changed books received
+    private int pull() throws IOException {
+        int pulled = 0;
+        long version = preferences.getLong(KEY_SERVER_VERSION, 0);
+        SyncProtocol.Message message;
+        do {
+            URL url = new URL(serverUrl, SyncProtocol.PATH_PULL + "?" +
+                    SyncProtocol.PARAMETER_SINCE + "=" + version + "&" +
+                    SyncProtocol.PARAMETER_LIMIT + "=" + batchSize);
+            message = receive(url);
+            if (!message.changes.isEmpty()) {
+                Bundle extras = new Bundle();
+                extras.putParcelableArrayList(BookContract.EXTRA_CHANGES, new ArrayList<>(message.changes));
+                contentResolver.call(ChangeEntry.CONTENT_URI, BookContract.METHOD_APPLY_REMOTE_CHANGES, null, extras);
+                pulled += message.changes.size();
+            }
+            //Saved after every batch, so the next sync doesn't receive the applied changes again
+            version = message.version;
+            preferences.edit().putLong(KEY_SERVER_VERSION, version).apply();
+        } while (message.more);
+        return pulled;
+    }
+
+    //Helper method to read a merged change of the journal, with the deleted flag as a boolean
+    private static ContentValues readChange(Cursor cursor) {
+        ContentValues change = new ContentValues();
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            String column = cursor.getColumnName(i);
+            if (ChangeEntry.COLUMN_DELETED.equals(column)) {
+                change.put(column, cursor.getInt(i) != 0);
+            } else if (cursor.isNull(i)) {
+                change.putNull(column);
+            } else if (cursor.getType(i) == Cursor.FIELD_TYPE_INTEGER) {
+                change.put(column, cursor.getLong(i));
+            } else {
+                change.put(column, cursor.getString(i));
+            }
+        }
+        return change;
+    }
+
+    //Helper method to post a message to the server
+    private void send(URL url, SyncProtocol.Message message) throws IOException {
+        byte[] body = SyncProtocol.encode(message);
+        HttpURLConnection connection = open(url);
+        try {
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", SyncProtocol.CONTENT_TYPE);
+            connection.setRequestProperty("Content-Encoding", SyncProtocol.ENCODING_GZIP);
+            connection.setFixedLengthStreamingMode(body.length);
+            OutputStream outputStream = connection.getOutputStream();
+            try {
+                outputStream.write(body);
+            } finally {
+                outputStream.close();
+            }
+            checkResponse(connection);
+            bytesSent += body.length;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    //Helper method to get a message from the server
+    private SyncProtocol.Message receive(URL url) throws IOException {
+        HttpURLConnection connection = open(url);
+        try {
+            checkResponse(connection);
+            if (!SyncProtocol.ENCODING_GZIP.equals(connection.getContentEncoding())) {
+                throw new IOException("Expected a compressed response from " + url);
+            }
+            CountingInputStream inputStream = new CountingInputStream(connection.getInputStream());
+            try {
+                return SyncProtocol.decode(inputStream);
+            } finally {
+                inputStream.close();
+                bytesReceived += inputStream.count;
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    //Helper method to open a connection that asks for a compressed response.
+    //Asking for it explicitly keeps HttpURLConnection from decompressing it, so it is decoded the same way everywhere
+    private static HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestProperty("Accept-Encoding", SyncProtocol.ENCODING_GZIP);
+        return connection;
+    }
+
+    private static void checkResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Server responded " + code + " to " + connection.getURL());
+        }
+    }
+
+    //Stream that counts the bytes read through it
+    private static class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.android.books.sync;
+
+import android.content.ContentValues;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.ChangeEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+//Messages exchanged with the sync server, as gzip compressed JSON.
+//A push posts the changes of the books to PATH_PUSH as {"changes": [...]}, every change merging all local changes
+//of one book since the last push. A pull gets the books changed on the server after a server version from
+//PATH_PULL?since=version&limit=n, and receives {"version": v, "more": true|false, "changes": [...]}
+//with the current state of every changed book, in the order of the server versions.
+//Every change is an object with the columns of ChangeEntry: the sync id, whether the book was deleted,
+//the sum of the quantity changes (pushes only) and the columns of the book.
+//The server merges pushed changes by the same rules the provider applies to pulled ones: a delete wins,
+//the title, author, price and supplier with the most recent updated_at win, and quantities add up
+public final class SyncProtocol {
+
+    //Paths of the requests, relative to the URL of the server
+    public static final String PATH_PUSH = "push";
+    public static final String PATH_PULL = "pull";
+
+    //Query parameters of a pull
+    public static final String PARAMETER_SINCE = "since";
+    public static final String PARAMETER_LIMIT = "limit";
+
+    //Fields of the messages
+    public static final String FIELD_CHANGES = "changes";
+    public static final String FIELD_VERSION = "version";
+    public static final String FIELD_MORE = "more";
+
+    //Fields of a change that are read as numbers, the others are text, except for the deleted flag
+    private static final String[] NUMBER_FIELDS = {
+            ChangeEntry.COLUMN_QUANTITY_DELTA,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_VERSION,
+            BookEntry.COLUMN_UPDATED_AT};
+
+    public static final String CONTENT_TYPE = "application/json; charset=utf-8";
+    public static final String ENCODING_GZIP = "gzip";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private SyncProtocol() {
+
+    }
+
+    //A decoded message. Push requests only have changes
+    public static final class Message {
+        public final long version;
+        public final boolean more;
+        public final List<ContentValues> changes;
+
+        public Message(long version, boolean more, List<ContentValues> changes) {
+            this.version = version;
+            this.more = more;
+            this.changes = changes;
+        }
+    }
+
+    //Helper method that encodes a message as compressed JSON
+    public static byte[] encode(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(bytes), UTF_8));
+        try {
+            writer.beginObject();
+            writer.name(FIELD_VERSION).value(message.version);
+            writer.name(FIELD_MORE).value(message.more);
+            writer.name(FIELD_CHANGES).beginArray();
+            for (ContentValues change : message.changes) {
+                writeChange(writer, change);
+            }
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            //Closing the writer finishes the compressed stream
+            writer.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    //Helper method that decodes a message from a stream of compressed JSON
+    public static Message decode(InputStream inputStream) throws IOException {
+        long version = 0;
+        boolean more = false;
+        List<ContentValues> changes = new ArrayList<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(new GZIPInputStream(inputStream), UTF_8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (FIELD_VERSION.equals(name)) {
+                    version = reader.nextLong();
+                } else if (FIELD_MORE.equals(name)) {
+                    more = reader.nextBoolean();
+                } else if (FIELD_CHANGES.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        changes.add(readChange(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    //Newer servers may add fields
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return new Message(version, more, changes);
+    }
+
+    //Helper method that writes one change as an object with a field for every value
+    private static void writeChange(JsonWriter writer, ContentValues change) throws IOException {
+        writer.beginObject();
+        for (String key : change.keySet()) {
+            Object value = change.get(key);
+            writer.name(key);
+            if (value == null) {
+                writer.nullValue();
+            } else if (value instanceof Boolean) {
+                writer.value((Boolean) value);
+            } else if (value instanceof Number) {
+                writer.value(((Number) value).longValue());
+            } else {
+                writer.value(value.toString());
+            }
+        }
+        writer.endObject();
+    }
+
+    //Helper method that reads one change, with the numbers as longs
+    private static ContentValues readChange(JsonReader reader) throws IOException {
+        ContentValues change = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                change.putNull(name);
+            } else if (ChangeEntry.COLUMN_DELETED.equals(name)) {
+                change.put(name, reader.nextBoolean());
+            } else if (isNumberField(name)) {
+                change.put(name, reader.nextLong());
+            } else {
+                change.put(name, reader.nextString());
+            }
+        }
+        reader.endObject();
+        return change;
+    }
+
+    private static boolean isNumberField(String name) {
+        for (String field : NUMBER_FIELDS) {
+            if (field.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
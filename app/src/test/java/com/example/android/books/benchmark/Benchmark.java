@@ -0,0 +1,133 @@
+package com.example.android.books.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Runs an operation a number of times after warming it up, and reports the time per operation.
+ * Every run is timed on its own, so a single slow run (for example a garbage collection)
+ * shows up in the maximum without moving the median.
+ */
+public final class Benchmark {
+
+    /**
+     * The code that is measured. One run may perform several operations,
+     * for example one insert per book of a batch.
+     */
+    public abstract static class Operation {
+
+        /**
+         * Prepares a run without being timed, for example to put back the rows the previous run deleted.
+         */
+        public void setUp(int iteration) throws Exception {
+        }
+
+        public abstract void run(int iteration) throws Exception;
+    }
+
+    private static final int DEFAULT_WARMUP_RUNS = 3;
+    private static final int DEFAULT_RUNS = 10;
+
+    private final String name;
+    private final int rows;
+    private int warmupRuns = DEFAULT_WARMUP_RUNS;
+    private int runs = DEFAULT_RUNS;
+    private int operationsPerRun = 1;
+
+    /**
+     * @param name name of the benchmark in the results
+     * @param rows number of books in the table while the benchmark runs
+     */
+    public Benchmark(String name, int rows) {
+        this.name = name;
+        this.rows = rows;
+    }
+
+    public Benchmark warmupRuns(int warmupRuns) {
+        this.warmupRuns = warmupRuns;
+        return this;
+    }
+
+    public Benchmark runs(int runs) {
+        this.runs = runs;
+        return this;
+    }
+
+    public Benchmark operationsPerRun(int operationsPerRun) {
+        this.operationsPerRun = operationsPerRun;
+        return this;
+    }
+
+    /**
+     * Warms up and measures the operation. Iterations are numbered across the warm-up and the measured runs,
+     * so an operation can use the number to pick a different book every time.
+     */
+    public Result measure(Operation operation) throws Exception {
+        int iteration = 0;
+        for (int i = 0; i < warmupRuns; i++) {
+            operation.setUp(iteration);
+            operation.run(iteration++);
+        }
+
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            operation.setUp(iteration);
+            long start = System.nanoTime();
+            operation.run(iteration++);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+
+        long total = 0;
+        for (long runNanos : nanos) {
+            total += runNanos;
+        }
+        return new Result(name, rows, runs, operationsPerRun,
+                (double) nanos[0] / operationsPerRun,
+                (double) nanos[runs / 2] / operationsPerRun,
+                (double) total / runs / operationsPerRun,
+                (double) nanos[(int) Math.min(runs - 1, (long) Math.ceil(runs * 0.99) - 1)] / operationsPerRun,
+                (double) nanos[runs - 1] / operationsPerRun);
+    }
+
+    /**
+     * Times of one benchmark in nanoseconds per operation.
+     */
+    public static final class Result {
+
+        public final String name;
+        public final int rows;
+        public final int runs;
+        public final int operationsPerRun;
+        public final double minNanos;
+        public final double medianNanos;
+        public final double meanNanos;
+        public final double p99Nanos;
+        public final double maxNanos;
+
+        Result(String name, int rows, int runs, int operationsPerRun,
+               double minNanos, double medianNanos, double meanNanos, double p99Nanos, double maxNanos) {
+            this.name = name;
+            this.rows = rows;
+            this.runs = runs;
+            this.operationsPerRun = operationsPerRun;
+            this.minNanos = minNanos;
+            this.medianNanos = medianNanos;
+            this.meanNanos = meanNanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * Operations per second at the median time.
+         */
+        public double getOperationsPerSecond() {
+            return medianNanos == 0 ? 0 : 1e9 / medianNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US, "%-28s %7d rows  median %12.1f ns/op  p99 %12.1f ns/op  %12.0f ops/s",
+                    name, rows, medianNanos, p99Nanos, getOperationsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android.books.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects benchmark results and writes them as JSON, one file per suite, so that the numbers
+ * of two builds can be compared by a script.
+ * The directory is taken from the system property benchmark.outputDir, which the build sets to
+ * build/benchmark-results.
+ */
+public final class BenchmarkReport {
+
+    public static final String PROPERTY_OUTPUT_DIR = "benchmark.outputDir";
+
+    private static final String DEFAULT_OUTPUT_DIR = "build/benchmark-results";
+
+    private final String suite;
+    private final List<Benchmark.Result> results = new ArrayList<>();
+
+    public BenchmarkReport(String suite) {
+        this.suite = suite;
+    }
+
+    public void add(Benchmark.Result result) {
+        results.add(result);
+        System.out.println(result);
+    }
+
+    /**
+     * Writes the results to &lt;outputDir&gt;/&lt;suite&gt;.json and returns the file.
+     */
+    public File write() throws IOException {
+        File directory = new File(System.getProperty(PROPERTY_OUTPUT_DIR, DEFAULT_OUTPUT_DIR));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, suite + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+        try {
+            writer.write(toJson());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"suite\": \"").append(suite).append("\",\n");
+        json.append("  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n");
+        json.append("  \"java\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            Benchmark.Result result = results.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"name\": \"").append(result.name).append('"')
+                    .append(", \"rows\": ").append(result.rows)
+                    .append(", \"runs\": ").append(result.runs)
+                    .append(", \"operationsPerRun\": ").append(result.operationsPerRun)
+                    .append(", \"minNanos\": ").append(format(result.minNanos))
+                    .append(", \"medianNanos\": ").append(format(result.medianNanos))
+                    .append(", \"meanNanos\": ").append(format(result.meanNanos))
+                    .append(", \"p99Nanos\": ").append(format(result.p99Nanos))
+                    .append(", \"maxNanos\": ").append(format(result.maxNanos))
+                    .append(", \"operationsPerSecond\": ").append(format(result.getOperationsPerSecond()))
+                    .append('}');
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.1f", value);
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.android.books.benchmark;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.books.data.BookContract;
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookPager;
+import com.example.android.books.data.BookProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the provider paths the app depends on at several table sizes, running on the JVM.
+ * The sizes are taken from the system property benchmark.sizes (for example
+ * ./gradlew testDebugUnitTest -Pbenchmark.sizes=1000,10000), and the results are written to
+ * build/benchmark-results/data-layer.json.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class DataLayerBenchmark {
+
+    public static final String PROPERTY_SIZES = "benchmark.sizes";
+
+    private static final String DEFAULT_SIZES = "1000,10000,100000";
+
+    //Columns bound by the list, the same as the projection of MainActivity
+    private static final String[] LIST_PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_BOOK_NAME,
+            BookEntry.COLUMN_AUTHOR,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY};
+
+    //Number of single-row operations timed in one run
+    private static final int OPERATIONS_PER_RUN = 100;
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void measureDataLayer() throws Exception {
+        BenchmarkReport report = new BenchmarkReport("data-layer");
+        for (String size : System.getProperty(PROPERTY_SIZES, DEFAULT_SIZES).split(",")) {
+            measureAtSize(report, Integer.parseInt(size.trim()));
+        }
+        File file = report.write();
+        assertTrue(file.length() > 0);
+    }
+
+    private void measureAtSize(BenchmarkReport report, final int rows) throws Exception {
+        contentResolver.delete(BookEntry.CONTENT_URI, null, null);
+        purgeDeleted();
+        assertEquals(rows, contentResolver.bulkInsert(BookEntry.CONTENT_URI, createRows(0, rows)));
+        final long firstId = queryFirstId();
+
+        //Inserts add rows, so delete them again before each run to keep the table at its size
+        final long lastId = queryLastId();
+        report.add(new Benchmark("insert", rows).operationsPerRun(OPERATIONS_PER_RUN).measure(new Benchmark.Operation() {
+            private ContentValues[] values;
+
+            @Override
+            public void setUp(int iteration) {
+                contentResolver.delete(BookEntry.CONTENT_URI, BookEntry._ID + ">?", new String[] {String.valueOf(lastId)});
+                purgeDeleted();
+                values = createRows(iteration, OPERATIONS_PER_RUN);
+            }
+
+            @Override
+            public void run(int iteration) {
+                for (ContentValues book : values) {
+                    contentResolver.insert(BookEntry.CONTENT_URI, book);
+                }
+            }
+        }));
+        contentResolver.delete(BookEntry.CONTENT_URI, BookEntry._ID + ">?", new String[] {String.valueOf(lastId)});
+        purgeDeleted();
+
+        report.add(new Benchmark("query by id", rows).operationsPerRun(OPERATIONS_PER_RUN).measure(new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                for (int i = 0; i < OPERATIONS_PER_RUN; i++) {
+                    Cursor cursor = contentResolver.query(bookUri(firstId, rows, iteration * OPERATIONS_PER_RUN + i),
+                            LIST_PROJECTION, null, null, null);
+                    cursor.moveToFirst();
+                    cursor.close();
+                }
+            }
+        }));
+
+        report.add(new Benchmark("update by id", rows).operationsPerRun(OPERATIONS_PER_RUN).measure(new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                ContentValues values = new ContentValues();
+                values.put(BookEntry.COLUMN_PRICE, iteration);
+                for (int i = 0; i < OPERATIONS_PER_RUN; i++) {
+                    contentResolver.update(bookUri(firstId, rows, iteration * OPERATIONS_PER_RUN + i), values, null, null);
+                }
+            }
+        }));
+
+        report.add(new Benchmark("adjust quantity", rows).operationsPerRun(OPERATIONS_PER_RUN).measure(new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                for (int i = 0; i < OPERATIONS_PER_RUN; i++) {
+                    long id = firstId + (iteration * OPERATIONS_PER_RUN + i) % rows;
+                    BookContract.adjustQuantity(contentResolver, id, i % 2 == 0 ? 1 : -1);
+                }
+            }
+        }));
+
+        //Scans read every row the way the list binds them: by page, reading each bound column
+        report.add(new Benchmark("scan and bind", rows).runs(3).warmupRuns(1).operationsPerRun(rows).measure(new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                assertEquals(rows, scanAndBind());
+            }
+        }));
+
+        report.add(new Benchmark("full query", rows).runs(3).warmupRuns(1).operationsPerRun(rows).measure(new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, LIST_PROJECTION, null, null, BookEntry._ID);
+                assertEquals(rows, cursor.getCount());
+                cursor.close();
+            }
+        }));
+
+        //Each run deletes the newest books, and they are put back before the next run
+        report.add(new Benchmark("delete by id", rows).operationsPerRun(OPERATIONS_PER_RUN).measure(new Benchmark.Operation() {
+            private long firstDeletedId;
+
+            @Override
+            public void setUp(int iteration) {
+                purgeDeleted();
+                contentResolver.bulkInsert(BookEntry.CONTENT_URI, createRows(iteration, OPERATIONS_PER_RUN));
+                firstDeletedId = queryLastId() - OPERATIONS_PER_RUN + 1;
+            }
+
+            @Override
+            public void run(int iteration) {
+                for (int i = 0; i < OPERATIONS_PER_RUN; i++) {
+                    assertEquals(1, contentResolver.delete(
+                            ContentUris.withAppendedId(BookEntry.CONTENT_URI, firstDeletedId + i), null, null));
+                }
+            }
+        }));
+    }
+
+    //Helper method to remove the deleted books, so the table keeps its size from run to run
+    private void purgeDeleted() {
+        Bundle extras = new Bundle();
+        extras.putBoolean(BookContract.EXTRA_FORCE, true);
+        while (contentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_PURGE_DELETED, null, extras)
+                .getInt(BookContract.EXTRA_PURGED) != 0) {
+            //Each call removes one batch
+        }
+    }
+
+    //Helper method to read all rows page by page and format them like BookListAdapter, returns the number of rows
+    private int scanAndBind() {
+        int idColumnIndex = 0;
+        int nameColumnIndex = 1;
+        int authorColumnIndex = 2;
+        int priceColumnIndex = 3;
+        int quantityColumnIndex = 4;
+
+        int rowsRead = 0;
+        long lastId = 0;
+        int checksum = 0;
+        while (true) {
+            Uri pageUri = BookEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, String.valueOf(BookPager.DEFAULT_PAGE_SIZE))
+                    .build();
+            Cursor cursor = contentResolver.query(pageUri, LIST_PROJECTION, BookEntry._ID + ">?",
+                    new String[] {String.valueOf(lastId)}, BookEntry._ID);
+            try {
+                if (cursor.getCount() == 0) {
+                    break;
+                }
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(idColumnIndex);
+                    String name = cursor.getString(nameColumnIndex);
+                    String author = cursor.getString(authorColumnIndex);
+                    String price = Integer.toString(cursor.getInt(priceColumnIndex));
+                    String quantity = Integer.toString(cursor.getInt(quantityColumnIndex));
+                    checksum += name.length() + (author == null ? 0 : author.length()) + price.length() + quantity.length();
+                    rowsRead++;
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        //Keep the JIT from dropping the formatting
+        assertTrue(checksum > 0);
+        return rowsRead;
+    }
+
+    //Helper method to pick a book by a number, spreading the numbers over the whole table
+    private static Uri bookUri(long firstId, int rows, int number) {
+        return ContentUris.withAppendedId(BookEntry.CONTENT_URI, firstId + (number * 7919L) % rows);
+    }
+
+    private long queryFirstId() {
+        return queryId(BookEntry._ID);
+    }
+
+    private long queryLastId() {
+        return queryId(BookEntry._ID + " DESC");
+    }
+
+    private long queryId(String sortOrder) {
+        Uri uri = BookEntry.CONTENT_URI.buildUpon().appendQueryParameter(BookContract.QUERY_PARAMETER_LIMIT, "1").build();
+        Cursor cursor = contentResolver.query(uri, new String[] {BookEntry._ID}, null, null, sortOrder);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues[] createRows(int seed, int count) {
+        ContentValues[] rows = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + (seed + i));
+            values.put(BookEntry.COLUMN_AUTHOR, "Author " + (i % 100));
+            values.put(BookEntry.COLUMN_PRICE, i % 50);
+            values.put(BookEntry.COLUMN_QUANTITY, 10 + i % 20);
+            values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 10));
+            values.put(BookEntry.COLUMN_SUPPLIER_NUMBER, "555000" + (i % 10));
+            rows[i] = values;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.books.catalog;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.books.data.BookContract;
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class CatalogImporterTest {
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void rowRejectedByTheProviderDoesntStopTheChunk() throws IOException {
+        //The ISBN stays with the deleted book while its delete can be undone, so the provider rejects the row
+        ContentValues deleted = new ContentValues();
+        deleted.put(BookEntry.COLUMN_BOOK_NAME, "Deleted");
+        deleted.put(BookEntry.COLUMN_PRICE, 10);
+        deleted.put(BookEntry.COLUMN_QUANTITY, 1);
+        deleted.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        deleted.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        Uri uri = contentResolver.insert(BookEntry.CONTENT_URI, deleted);
+        contentResolver.delete(uri, null, null);
+
+        String csv = "book_name,price,quantity,supplier_name,isbn\n" +
+                "Dune,10,1,Supplier,\n" +
+                "Taken,10,1,Supplier,9780306406157\n" +
+                "Emma,10,1,Supplier,\n";
+        ImportReport report = new CatalogImporter(contentResolver, CatalogImporter.DEFAULT_CHUNK_SIZE)
+                .importCatalog(new ByteArrayInputStream(csv.getBytes(Charset.forName("UTF-8"))), null);
+
+        assertEquals(2, report.getRowsImported());
+        assertEquals(1, report.getRowsFailed());
+        assertTrue(report.getErrors().get(0).startsWith("Row 3: "));
+        assertEquals(2, count());
+    }
+
+    private int count() {
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.android.books.catalog;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CsvParserTest {
+
+    @Test
+    public void readsPlainRecords() throws IOException {
+        CsvParser parser = new CsvParser(new StringReader("a,b,c\n1,2,3\n"));
+        assertArrayEquals(new String[] {"a", "b", "c"}, parser.readRecord());
+        assertArrayEquals(new String[] {"1", "2", "3"}, parser.readRecord());
+        assertNull(parser.readRecord());
+    }
+
+    @Test
+    public void readsQuotedFields() throws IOException {
+        CsvParser parser = new CsvParser(new StringReader("\"Smith, John\",\"He said \"\"hi\"\"\",\"two\nlines\"\r\nnext,,\n"));
+        assertArrayEquals(new String[] {"Smith, John", "He said \"hi\"", "two\nlines"}, parser.readRecord());
+        assertEquals(1, parser.getRecordLine());
+        assertArrayEquals(new String[] {"next", "", ""}, parser.readRecord());
+        assertEquals(3, parser.getRecordLine());
+        assertNull(parser.readRecord());
+    }
+
+    @Test
+    public void skipsBlankLinesAndReadsLastRecordWithoutLineBreak() throws IOException {
+        CsvParser parser = new CsvParser(new StringReader("\n\na,b\n\nc,d"));
+        assertArrayEquals(new String[] {"a", "b"}, parser.readRecord());
+        assertEquals(3, parser.getRecordLine());
+        assertArrayEquals(new String[] {"c", "d"}, parser.readRecord());
+        assertEquals(5, parser.getRecordLine());
+        assertNull(parser.readRecord());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnterminatedQuote() throws IOException {
+        new CsvParser(new StringReader("\"never closed,1\n")).readRecord();
+    }
+}
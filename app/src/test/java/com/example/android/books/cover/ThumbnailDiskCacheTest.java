@@ -0,0 +1,92 @@
+package com.example.android.books.cover;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class ThumbnailDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("thumbnails");
+    }
+
+    @Test
+    public void leastRecentlyUsedThumbnailIsDeletedWhenFull() {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 250);
+        cache.put("1_60x90", new byte[100]);
+        cache.put("2_60x90", new byte[100]);
+        assertNotNull(cache.get("1_60x90"));
+
+        cache.put("3_60x90", new byte[100]);
+
+        assertNotNull(cache.get("1_60x90"));
+        assertNull(cache.get("2_60x90"));
+        assertNotNull(cache.get("3_60x90"));
+        assertFalse(new File(dir, "2_60x90").exists());
+        assertEquals(200, cache.getSize());
+    }
+
+    @Test
+    public void orderOfUseSurvivesRestart() {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000);
+        cache.put("1_60x90", new byte[100]);
+        cache.put("2_60x90", new byte[100]);
+        cache.put("3_60x90", new byte[100]);
+        //Times set apart, since file systems keep them in seconds
+        assertTrue(new File(dir, "1_60x90").setLastModified(3000000));
+        assertTrue(new File(dir, "2_60x90").setLastModified(1000000));
+        assertTrue(new File(dir, "3_60x90").setLastModified(2000000));
+
+        ThumbnailDiskCache restarted = new ThumbnailDiskCache(dir, 250);
+
+        assertEquals(200, restarted.getSize());
+        assertNull(restarted.get("2_60x90"));
+        assertNotNull(restarted.get("1_60x90"));
+        assertNotNull(restarted.get("3_60x90"));
+    }
+
+    @Test
+    public void removeAllDeletesEverySizeOfOneCover() {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(dir, 1000);
+        cache.put("1_60x90", new byte[100]);
+        cache.put("1_120x180", new byte[200]);
+        cache.put("11_60x90", new byte[100]);
+
+        cache.removeAll("1_");
+
+        assertNull(cache.get("1_60x90"));
+        assertNull(cache.get("1_120x180"));
+        assertNotNull(cache.get("11_60x90"));
+        assertEquals(100, cache.getSize());
+        assertEquals(1, dir.list().length);
+    }
+
+    @Test
+    public void sampleSizeKeepsCoverAtLeastAsLargeAsView() {
+        assertEquals(1, CoverDecoder.calculateInSampleSize(100, 150, 60, 90));
+        assertEquals(8, CoverDecoder.calculateInSampleSize(1200, 1800, 120, 180));
+        assertEquals(4, CoverDecoder.calculateInSampleSize(1200, 1800, 120, 300));
+        assertEquals(1, CoverDecoder.calculateInSampleSize(50, 50, 60, 90));
+    }
+}
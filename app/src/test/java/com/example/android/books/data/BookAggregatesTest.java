@@ -0,0 +1,116 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.books.data.BookContract.AggregateEntry;
+import com.example.android.books.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookAggregatesTest {
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void aggregatesFollowInsertsUpdatesAndDeletes() {
+        Uri first = insertBook("Supplier A", 10, 3);
+        insertBook("Supplier A", 20, 0);
+        Uri third = insertBook("Supplier B", 5, 8);
+
+        assertSupplier(0, "Supplier A", 2, 3, 30, 1, 2);
+        assertSupplier(1, "Supplier B", 1, 8, 40, 0, 0);
+
+        BookContract.adjustQuantity(contentResolver, ContentUris.parseId(first), 4);
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier A");
+        contentResolver.update(third, values, null, null);
+        assertSupplier(0, "Supplier A", 3, 15, 110, 1, 1);
+        assertEquals(1, count(AggregateEntry.CONTENT_URI));
+
+        contentResolver.delete(BookEntry.CONTENT_URI, null, null);
+        assertEquals(0, count(AggregateEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void totalsSumAllSuppliers() {
+        insertBook("Supplier A", 10, 3);
+        insertBook("Supplier B", 20, 0);
+        insertBook("Supplier C", 5, 8);
+
+        Cursor cursor = contentResolver.query(AggregateEntry.TOTALS_URI, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(3, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_SUPPLIER_COUNT)));
+            assertEquals(3, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_TITLE_COUNT)));
+            assertEquals(11, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_UNIT_COUNT)));
+            assertEquals(70, cursor.getLong(cursor.getColumnIndex(AggregateEntry.COLUMN_STOCK_VALUE)));
+            assertEquals(1, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT)));
+            assertEquals(2, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_LOW_STOCK_COUNT)));
+        } finally {
+            cursor.close();
+        }
+
+        cursor = contentResolver.query(AggregateEntry.TOTALS_URI, new String[] {AggregateEntry.COLUMN_STOCK_VALUE}, null, null, null);
+        try {
+            assertEquals(1, cursor.getColumnCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(70, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Uri insertBook(String supplier, int price, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, "Book");
+        values.put(BookEntry.COLUMN_PRICE, price);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplier);
+        return contentResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    private void assertSupplier(int position, String supplier, int titles, int units, long value, int outOfStock, int lowStock) {
+        Cursor cursor = contentResolver.query(AggregateEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToPosition(position));
+            assertEquals(supplier, cursor.getString(cursor.getColumnIndex(AggregateEntry.COLUMN_SUPPLIER_NAME)));
+            assertEquals(titles, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_TITLE_COUNT)));
+            assertEquals(units, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_UNIT_COUNT)));
+            assertEquals(value, cursor.getLong(cursor.getColumnIndex(AggregateEntry.COLUMN_STOCK_VALUE)));
+            assertEquals(outOfStock, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_OUT_OF_STOCK_COUNT)));
+            assertEquals(lowStock, cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_LOW_STOCK_COUNT)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookCacheTest {
+
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_QUANTITY};
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void secondReadIsServedFromCache() {
+        Uri uri = insertBook("Title", 5);
+
+        assertEquals("Title", readName(uri));
+        assertEquals("Title", readName(uri));
+
+        Bundle stats = getStats();
+        assertEquals(1, stats.getLong(BookContract.EXTRA_CACHE_MISSES));
+        assertEquals(1, stats.getLong(BookContract.EXTRA_CACHE_HITS));
+    }
+
+    @Test
+    public void writesInvalidateCachedBook() {
+        Uri uri = insertBook("Title", 5);
+        readName(uri);
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, "New title");
+        contentResolver.update(uri, values, null, null);
+        assertEquals("New title", readName(uri));
+
+        BookContract.adjustQuantity(contentResolver, ContentUris.parseId(uri), 2);
+        assertEquals(7, readQuantity(uri));
+
+        values.put(BookEntry.COLUMN_BOOK_NAME, "Renamed");
+        contentResolver.update(BookEntry.CONTENT_URI, values, null, null);
+        assertEquals("Renamed", readName(uri));
+
+        contentResolver.delete(uri, null, null);
+        Cursor cursor = contentResolver.query(uri, PROJECTION, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    @Test
+    public void bookReadBeforeInvalidationIsNotCached() {
+        BookCache cache = new BookCache();
+        long generation = cache.getGeneration();
+        cache.invalidate(1);
+        cache.put(createBook(1), generation);
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void countsOnlyEvictionsBySize() {
+        BookCache cache = new BookCache();
+        for (int i = 0; i < BookCache.MAX_BOOKS + 10; i++) {
+            cache.put(createBook(i), cache.getGeneration());
+        }
+        assertEquals(10, cache.getEvictionCount());
+        assertEquals(BookCache.MAX_BOOKS, cache.getSize());
+
+        cache.invalidateAll();
+        assertEquals(10, cache.getEvictionCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    private Uri insertBook(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        return contentResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    private String readName(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(cursor.getColumnIndex(BookEntry.COLUMN_BOOK_NAME));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int readQuantity(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(cursor.getColumnIndex(BookEntry.COLUMN_QUANTITY));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Bundle getStats() {
+        return contentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_GET_CACHE_STATS, null, null);
+    }
+
+    private static Book createBook(long id) {
+        MatrixCursor cursor = new MatrixCursor(Book.COLUMNS);
+        cursor.addRow(new Object[] {id, "Title", null, 10, 1, "Supplier", null, null});
+        cursor.moveToFirst();
+        Book book = Book.fromCursor(cursor);
+        cursor.close();
+        return book;
+    }
+}
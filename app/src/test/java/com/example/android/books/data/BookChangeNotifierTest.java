@@ -0,0 +1,112 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookChangeNotifierTest {
+
+    private ContentResolver contentResolver;
+    private ShadowContentResolver shadowContentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+        shadowContentResolver = shadowOf(contentResolver);
+    }
+
+    @Test
+    public void burstOfQuantityChangesNotifiesTheBookOnce() {
+        long id = insertBook();
+        endWindow();
+        shadowContentResolver.getNotifiedUris().clear();
+
+        for (int i = 0; i < 100; i++) {
+            BookContract.adjustQuantity(contentResolver, id, 1);
+        }
+        assertTrue(notifiedUris().isEmpty());
+
+        endWindow();
+        List<Uri> uris = notifiedUris();
+        assertEquals(1, uris.size());
+        assertEquals(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), uris.get(0));
+    }
+
+    @Test
+    public void deleteOfOneBookNotifiesOnce() {
+        long id = insertBook();
+        endWindow();
+        shadowContentResolver.getNotifiedUris().clear();
+
+        contentResolver.delete(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), null, null);
+        endWindow();
+
+        List<Uri> uris = notifiedUris();
+        assertEquals(1, uris.size());
+        assertEquals(BookEntry.CONTENT_URI, uris.get(0));
+    }
+
+    @Test
+    public void manyChangedBooksNotifyAllBooks() {
+        long[] ids = new long[BookChangeNotifier.MAX_ROW_NOTIFICATIONS + 1];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = insertBook();
+        }
+        endWindow();
+        shadowContentResolver.getNotifiedUris().clear();
+
+        for (long id : ids) {
+            BookContract.adjustQuantity(contentResolver, id, -1);
+        }
+        endWindow();
+
+        List<Uri> uris = notifiedUris();
+        assertEquals(1, uris.size());
+        assertEquals(BookEntry.CONTENT_URI, uris.get(0));
+    }
+
+    private long insertBook() {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, "Title");
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, 5);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        return ContentUris.parseId(contentResolver.insert(BookEntry.CONTENT_URI, values));
+    }
+
+    private static void endWindow() {
+        ShadowLooper.idleMainLooper(BookChangeNotifier.WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private List<Uri> notifiedUris() {
+        List<Uri> uris = new ArrayList<>();
+        for (ShadowContentResolver.NotifiedUri notifiedUri : shadowContentResolver.getNotifiedUris()) {
+            uris.add(notifiedUri.uri);
+        }
+        return uris;
+    }
+}
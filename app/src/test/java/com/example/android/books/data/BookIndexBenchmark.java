@@ -0,0 +1,134 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares sorting and filtering 100k books with SQL ORDER BY queries
+ * and with the in-memory BookIndex, running on the JVM.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookIndexBenchmark {
+
+    private static final int ROWS = 100000;
+
+    private static final int LOW_STOCK = 3;
+
+    //Runs of each measurement, the first ones warm up the JIT
+    private static final int RUNS = 5;
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+        contentResolver.bulkInsert(BookEntry.CONTENT_URI, createRows(ROWS));
+    }
+
+    @Test
+    public void compareSortAndFilter() {
+        long start = System.nanoTime();
+        BookIndex index = BookIndex.build(contentResolver);
+        long buildNanos = System.nanoTime() - start;
+        assertEquals(ROWS, index.size());
+
+        long[] sqlIds = null;
+        long sqlNanos = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            start = System.nanoTime();
+            sqlIds = queryIds(null, BookEntry.COLUMN_PRICE + " DESC, " + BookEntry._ID);
+            sqlNanos = Math.min(sqlNanos, System.nanoTime() - start);
+        }
+
+        long[] indexIds = null;
+        long indexNanos = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            start = System.nanoTime();
+            indexIds = index.query(BookIndex.SORT_PRICE, true, null);
+            indexNanos = Math.min(indexNanos, System.nanoTime() - start);
+        }
+        assertArrayEquals(sqlIds, indexIds);
+
+        long sqlFilterNanos = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            start = System.nanoTime();
+            sqlIds = queryIds(BookEntry.COLUMN_QUANTITY + " <= " + LOW_STOCK, BookEntry.COLUMN_QUANTITY + ", " + BookEntry._ID);
+            sqlFilterNanos = Math.min(sqlFilterNanos, System.nanoTime() - start);
+        }
+
+        long indexFilterNanos = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            start = System.nanoTime();
+            indexIds = index.query(BookIndex.SORT_QUANTITY, false, BookIndex.Filter.lowStock(LOW_STOCK));
+            indexFilterNanos = Math.min(indexFilterNanos, System.nanoTime() - start);
+        }
+        assertArrayEquals(sqlIds, indexIds);
+
+        System.out.println("Build index:               " + buildNanos / 1000 + " us");
+        System.out.println("Sort by price, SQL:        " + sqlNanos / 1000 + " us");
+        System.out.println("Sort by price, index:      " + indexNanos / 1000 + " us");
+        System.out.println("Low stock, SQL:            " + sqlFilterNanos / 1000 + " us");
+        System.out.println("Low stock, index:          " + indexFilterNanos / 1000 + " us");
+    }
+
+    @Test
+    public void followsChangesOfSingleBooks() {
+        BookIndex index = BookIndex.build(contentResolver);
+
+        index.put(1, "Book 0", null, 10, 99, "Supplier 0");
+        assertEquals(99, index.getQuantity(1));
+
+        index.remove(2);
+        assertEquals(ROWS - 1, index.size());
+        assertEquals(-1, index.getQuantity(2));
+
+        long[] ids = index.query(BookIndex.SORT_QUANTITY, true, null);
+        assertEquals(1, ids[0]);
+    }
+
+    private long[] queryIds(String selection, String sortOrder) {
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, new String[] {BookEntry._ID}, selection, null, sortOrder);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues[] createRows(int count) {
+        Random random = new Random(42);
+        ContentValues[] rows = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + random.nextInt(count / 10));
+            values.put(BookEntry.COLUMN_AUTHOR, "Author " + (i % 100));
+            values.put(BookEntry.COLUMN_PRICE, random.nextInt(5000));
+            values.put(BookEntry.COLUMN_QUANTITY, random.nextInt(40));
+            values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 10));
+            rows[i] = values;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.SaleEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookIsbnTest {
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void normalizeAcceptsIsbn10AndIsbn13() {
+        assertEquals("9780306406157", Isbn.normalize("978-0-306-40615-7"));
+        assertEquals("9780306406157", Isbn.normalize("0 306 40615 2"));
+        assertEquals("9780804429573", Isbn.normalize("080442957x"));
+        assertNull(Isbn.normalize("9780306406158"));
+        assertNull(Isbn.normalize("978030640X155"));
+        assertNull(Isbn.normalize("0-306-40615"));
+        assertNull(Isbn.normalize("abc"));
+    }
+
+    @Test
+    public void bookIsFoundByAnyFormOfItsIsbn() {
+        long id = ContentUris.parseId(insertBook("0-306-40615-2", 3));
+
+        Cursor cursor = contentResolver.query(BookEntry.buildIsbnUri("978 0306 406157"), null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(id, cursor.getLong(cursor.getColumnIndex(BookEntry._ID)));
+            assertEquals("9780306406157", cursor.getString(cursor.getColumnIndex(BookEntry.COLUMN_ISBN)));
+        } finally {
+            cursor.close();
+        }
+        assertEquals(0, count(BookEntry.buildIsbnUri("not an isbn")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidIsbnIsRejected() {
+        insertBook("9780306406158", 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidIsbnIsRejectedOnUpdate() {
+        Uri book = insertBook("9780306406157", 3);
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_ISBN, "9780306406158");
+        contentResolver.update(book, values, null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeQuantityIsRejectedOnUpdate() {
+        Uri book = insertBook(null, 3);
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_QUANTITY, -1);
+        contentResolver.update(book, values, null, null);
+    }
+
+    @Test
+    public void secondBookWithSameIsbnIsRejected() {
+        insertBook("9780306406157", 3);
+
+        assertNull(insertBook("0-306-40615-2", 3));
+    }
+
+    @Test
+    public void sellByIsbnLowersQuantityAndRecordsSale() {
+        long id = ContentUris.parseId(insertBook("9780306406157", 2));
+        insertBook(null, 5);
+
+        Bundle result = BookContract.sellByIsbn(contentResolver,
+                new String[] {"0-306-40615-2", "9780306406157", "9780306406157", "9780804429573"}, new int[] {1, 1, 1, 1});
+
+        assertArrayEquals(new int[] {1, 0, -1, BookContract.SALE_UNKNOWN_ISBN}, result.getIntArray(BookContract.EXTRA_QUANTITIES));
+        assertArrayEquals(new long[] {id, id, id, -1}, result.getLongArray(BookContract.EXTRA_BOOK_IDS));
+        assertEquals(2, count(SaleEntry.CONTENT_URI));
+    }
+
+    private Uri insertBook(String isbn, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, "Book");
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        values.put(BookEntry.COLUMN_ISBN, isbn);
+        return contentResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.MaintenanceEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookMaintenanceTest {
+
+    private static final int BOOKS = 2000;
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void passReclaimsSpaceAfterMassDelete() {
+        insertBooks();
+        contentResolver.delete(BookEntry.CONTENT_URI, null, null);
+        purgeDeleted();
+
+        //New databases are created with incremental vacuum, so every pass returns the free pages in steps
+        Bundle first = runMaintenance(true);
+        assertTrue(first.getLong(MaintenanceEntry.COLUMN_BYTES_RECLAIMED) > 0);
+        assertEquals(1, first.getLong(MaintenanceEntry.COLUMN_INTEGRITY_OK));
+        assertEquals(1, first.getLong(MaintenanceEntry.COLUMN_COMPLETED));
+
+        insertBooks();
+        contentResolver.delete(BookEntry.CONTENT_URI, null, null);
+        purgeDeleted();
+        Bundle second = runMaintenance(true);
+        assertTrue(second.getLong(MaintenanceEntry.COLUMN_BYTES_RECLAIMED) > 0);
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void databaseIsSwitchedToIncrementalVacuumWhenOpened() {
+        //A database made without the pointer map, like the ones of earlier versions of the app
+        File file = RuntimeEnvironment.application.getDatabasePath("Legacy.db");
+        file.getParentFile().mkdirs();
+        SQLiteDatabase legacy = SQLiteDatabase.openOrCreateDatabase(file, null);
+        legacy.execSQL("CREATE TABLE legacy (value TEXT)");
+        assertEquals(0, DatabaseUtils.longForQuery(legacy, "PRAGMA auto_vacuum", null));
+        legacy.close();
+
+        BookDbHelper dbHelper = new BookDbHelper(RuntimeEnvironment.application, "Legacy.db", BookDbHelper.Options.DEFAULT);
+        try {
+            assertEquals(BookDbHelper.AUTO_VACUUM_INCREMENTAL,
+                    DatabaseUtils.longForQuery(dbHelper.getWritableDatabase(), "PRAGMA auto_vacuum", null));
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void passIsSkippedRightAfterAnother() {
+        assertNotNull(runMaintenance(true));
+
+        assertNull(runMaintenance(false));
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void statisticsAreRefreshedAfterLargeChangesOnly() {
+        assertEquals(1, runMaintenance(true).getLong(MaintenanceEntry.COLUMN_ANALYZED));
+        assertEquals(0, runMaintenance(true).getLong(MaintenanceEntry.COLUMN_ANALYZED));
+
+        insertBooks();
+
+        assertEquals(1, runMaintenance(true).getLong(MaintenanceEntry.COLUMN_ANALYZED));
+    }
+
+    @Test
+    public void stopBeforeThePassStartsSkipsThatPassOnly() {
+        contentResolver.call(MaintenanceEntry.CONTENT_URI, BookContract.METHOD_STOP_MAINTENANCE, "job", null);
+
+        assertNull(runMaintenance("job", true));
+        assertEquals(0, count());
+
+        //The stop is used up, and doesn't stop passes with other tags
+        assertEquals(1, runMaintenance("other job", true).getLong(MaintenanceEntry.COLUMN_COMPLETED));
+        assertNotNull(runMaintenance("job", true));
+    }
+
+    private Bundle runMaintenance(boolean force) {
+        return runMaintenance(null, force);
+    }
+
+    private Bundle runMaintenance(String tag, boolean force) {
+        Bundle extras = new Bundle();
+        extras.putBoolean(BookContract.EXTRA_FORCE, force);
+        return contentResolver.call(MaintenanceEntry.CONTENT_URI, BookContract.METHOD_RUN_MAINTENANCE, tag, extras);
+    }
+
+    //Removes the deleted books right away, instead of after the time their delete can be undone
+    private void purgeDeleted() {
+        Bundle extras = new Bundle();
+        extras.putBoolean(BookContract.EXTRA_FORCE, true);
+        while (contentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_PURGE_DELETED, null, extras)
+                .getInt(BookContract.EXTRA_PURGED) != 0) {
+            //Each call removes one batch
+        }
+    }
+
+    private void insertBooks() {
+        ContentValues[] rows = new ContentValues[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+            values.put(BookEntry.COLUMN_AUTHOR, "Author " + (i % 300));
+            values.put(BookEntry.COLUMN_PRICE, i % 50);
+            values.put(BookEntry.COLUMN_QUANTITY, i % 20);
+            values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 10));
+            rows[i] = values;
+        }
+        contentResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+    }
+
+    private int count() {
+        Cursor cursor = contentResolver.query(MaintenanceEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
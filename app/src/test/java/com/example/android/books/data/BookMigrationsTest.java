@@ -0,0 +1,296 @@
+package com.example.android.books.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookMigrationsTest {
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        BookMigrations.createVersion1(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void migration1To2KeepsBooksAndAddsIndexes() {
+        insertBooks(3);
+
+        BookMigrations.MIGRATION_1_2.migrate(db);
+
+        assertEquals(3, DatabaseUtils.queryNumEntries(db, BookEntry.TABLE_NAME));
+        assertTrue(indexExists("books_book_name_index"));
+        assertTrue(indexExists("books_author_index"));
+        assertTrue(indexExists("books_supplier_name_index"));
+        assertTrue(indexExists("books_quantity_index"));
+    }
+
+    @Test
+    public void migration2To3IndexesExistingAndNewBooksForSearch() {
+        insertBooks(3);
+        BookMigrations.MIGRATION_1_2.migrate(db);
+
+        BookMigrations.MIGRATION_2_3.migrate(db);
+
+        assertEquals(1, countMatches("book* 1*"));
+        insertBooks(20);
+        assertEquals(12, countMatches("book* 1*"));
+        db.execSQL("UPDATE books SET book_name = 'Renamed' WHERE book_name = 'Book 1'");
+        assertEquals(2, countMatches("renamed*"));
+        db.execSQL("DELETE FROM books WHERE book_name = 'Renamed'");
+        assertEquals(0, countMatches("renamed*"));
+    }
+
+    @Test
+    public void migration3To4KeepsSupplierAggregatesUpToDate() {
+        insertBooks(200);
+        BookMigrations.MIGRATION_1_2.migrate(db);
+        BookMigrations.MIGRATION_2_3.migrate(db);
+
+        BookMigrations.MIGRATION_3_4.migrate(db);
+
+        assertEquals(groupedSummary(), storedSummary());
+        insertBooks(30);
+        db.execSQL("UPDATE books SET quantity = 0 WHERE _id % 7 = 0");
+        db.execSQL("UPDATE books SET price = price + 1, supplier_name = 'Supplier 99' WHERE _id % 11 = 0");
+        db.execSQL("DELETE FROM books WHERE supplier_name = 'Supplier 3'");
+        assertEquals(groupedSummary(), storedSummary());
+        assertEquals(0, DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM supplier_summary WHERE supplier_name = 'Supplier 3'", null));
+    }
+
+    @Test
+    public void migration4To5MovesSuppliersToTheirOwnTable() {
+        insertBooks(100);
+        db.execSQL("UPDATE books SET supplier_number = 'old' WHERE supplier_name = 'Supplier 1' AND _id < 50");
+        db.execSQL("UPDATE books SET supplier_number = 'new' WHERE supplier_name = 'Supplier 1' AND _id >= 50");
+        BookMigrations.migrate(db, 1, 4);
+
+        BookMigrations.MIGRATION_4_5.migrate(db);
+
+        assertEquals(100, DatabaseUtils.queryNumEntries(db, BookEntry.TABLE_NAME));
+        assertEquals(50, DatabaseUtils.queryNumEntries(db, "suppliers"));
+        assertEquals("new", DatabaseUtils.stringForQuery(db,
+                "SELECT supplier_number FROM suppliers WHERE supplier_name = 'Supplier 1'", null));
+        assertEquals("Supplier 7", DatabaseUtils.stringForQuery(db,
+                "SELECT supplier_name FROM books_with_suppliers WHERE book_name = 'Book 57'", null));
+        assertTrue(indexExists("books_supplier_id_index"));
+        assertTrue(queryPlan("SELECT _id FROM books_with_suppliers WHERE supplier_id = 3").contains("INDEX"));
+
+        //Renaming a supplier renames it for the search and the aggregates of all its books
+        db.execSQL("UPDATE suppliers SET supplier_name = 'Renamed' WHERE supplier_name = 'Supplier 7'");
+        assertEquals(2, countMatches("renamed*"));
+        assertEquals(2, DatabaseUtils.longForQuery(db,
+                "SELECT title_count FROM supplier_summary_with_names WHERE supplier_name = 'Renamed'", null));
+        db.execSQL("UPDATE suppliers SET supplier_name = 'Supplier 7' WHERE supplier_name = 'Renamed'");
+        insertBooks(60);
+        assertEquals(50, DatabaseUtils.queryNumEntries(db, "suppliers"));
+        assertEquals(4, DatabaseUtils.longForQuery(db,
+                "SELECT title_count FROM supplier_summary_with_names WHERE supplier_name = 'Supplier 7'", null));
+    }
+
+    @Test
+    public void migration6To7JournalsExistingAndNewChanges() {
+        insertBooks(10);
+        BookMigrations.migrate(db, 1, 6);
+
+        BookMigrations.MIGRATION_6_7.migrate(db);
+
+        //Existing books get a sync id each and are journaled as inserts
+        assertEquals(10, DatabaseUtils.longForQuery(db, "SELECT COUNT(DISTINCT sync_id) FROM books", null));
+        assertEquals(10, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM book_changes WHERE operation = 1", null));
+
+        insertBooks(1);
+        db.execSQL("UPDATE books SET quantity = quantity + 2 WHERE _id = 1");
+        db.execSQL("UPDATE books SET price = price + 1 WHERE _id = 1");
+        db.execSQL("DELETE FROM books WHERE _id = 2");
+
+        assertEquals(10, DatabaseUtils.longForQuery(db, "SELECT COUNT(DISTINCT sync_id) FROM books_with_suppliers", null));
+        assertEquals(3, DatabaseUtils.longForQuery(db, "SELECT version FROM books WHERE _id = 1", null));
+        assertEquals(2, DatabaseUtils.longForQuery(db,
+                "SELECT SUM(quantity_delta) FROM book_changes WHERE book_id = 1 AND operation = 2", null));
+        assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM book_changes WHERE operation = 3", null));
+        assertEquals(11, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM book_changes WHERE operation = 1", null));
+    }
+
+    @Test
+    public void migration8To9AddsUniqueIsbnThatIsSynced() {
+        insertBooks(3);
+        BookMigrations.migrate(db, 1, 8);
+
+        BookMigrations.MIGRATION_8_9.migrate(db);
+
+        db.execSQL("UPDATE books SET isbn = '9780306406157' WHERE _id = 1");
+        assertEquals("9780306406157", DatabaseUtils.stringForQuery(db,
+                "SELECT isbn FROM books_with_suppliers WHERE _id = 1", null));
+        assertEquals(2, DatabaseUtils.longForQuery(db, "SELECT version FROM books WHERE _id = 1", null));
+        assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM book_changes WHERE operation = 2", null));
+        assertTrue(queryPlan("UPDATE books SET quantity = quantity - 1 WHERE isbn = '9780306406157'").contains("books_isbn_index"));
+        try {
+            db.execSQL("UPDATE books SET isbn = '9780306406157' WHERE _id = 2");
+            fail("Two books with the same ISBN");
+        } catch (SQLiteConstraintException e) {
+            //Expected
+        }
+    }
+
+    @Test
+    public void migration9To10HidesDeletedBooksFromViewAndAggregates() {
+        insertBooks(4);
+        BookMigrations.migrate(db, 1, 9);
+
+        BookMigrations.MIGRATION_9_10.migrate(db);
+
+        db.execSQL("INSERT INTO book_deletions (deleted_at) VALUES (1)");
+        db.execSQL("UPDATE books SET deletion_id = 1 WHERE _id = 1");
+        assertEquals(3, DatabaseUtils.queryNumEntries(db, BookEntry.VIEW_NAME));
+        assertEquals(3, DatabaseUtils.longForQuery(db, "SELECT SUM(title_count) FROM supplier_summary", null));
+
+        //Deleting all books hides every book up to the highest id, but not the books added later
+        db.execSQL("INSERT INTO book_deletions (deleted_at, through_book_id) SELECT 2, MAX(_id) FROM books");
+        db.execSQL("DELETE FROM supplier_summary");
+        insertBooks(1);
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, BookEntry.VIEW_NAME));
+        assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT SUM(title_count) FROM supplier_summary", null));
+
+        //Purging the deleted books journals their deletes and leaves the aggregates alone
+        db.execSQL("DELETE FROM books WHERE _id <= 4");
+        assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT SUM(title_count) FROM supplier_summary", null));
+        assertEquals(4, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM book_changes WHERE operation = 3", null));
+    }
+
+    @Test
+    public void migrateRunsAllStepsToCurrentVersion() {
+        insertBooks(3);
+
+        BookMigrations.migrate(db, 1, BookDbHelper.DB_VERSION);
+
+        assertEquals(3, DatabaseUtils.queryNumEntries(db, BookEntry.TABLE_NAME));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void migrateRejectsUnknownVersion() {
+        BookMigrations.migrate(db, 1, BookDbHelper.DB_VERSION + 1);
+    }
+
+    //Seeds a table with enough rows for the planner to weigh the new indexes and checks that it uses them
+    @Test
+    public void indexesAreUsedAfterAnalyze() {
+        insertBooks(1000);
+        String[] queries = {
+                "SELECT _id FROM books WHERE supplier_name = 'Supplier 7'",
+                "SELECT _id FROM books WHERE author = 'Author 42'",
+                "SELECT _id FROM books WHERE quantity = 0",
+                "SELECT _id FROM books ORDER BY book_name LIMIT 50"};
+
+        BookMigrations.MIGRATION_1_2.migrate(db);
+        db.execSQL("ANALYZE");
+
+        for (String query : queries) {
+            String plan = queryPlan(query);
+            assertTrue(plan, plan.contains("INDEX"));
+        }
+    }
+
+    //Inserts books into the books table of the current version of the schema,
+    //which names the supplier up to version 4 and refers to it by id from version 5
+    private void insertBooks(int count) {
+        boolean hasSuppliers = DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'suppliers'", null) == 1;
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < count; i++) {
+                values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+                values.put(BookEntry.COLUMN_AUTHOR, "Author " + (i % 1000));
+                values.put(BookEntry.COLUMN_PRICE, i % 50);
+                values.put(BookEntry.COLUMN_QUANTITY, i % 100);
+                if (hasSuppliers) {
+                    values.put(BookEntry.COLUMN_SUPPLIER_ID, DatabaseUtils.longForQuery(db,
+                            "SELECT _id FROM suppliers WHERE supplier_name = ?", new String[] {"Supplier " + (i % 50)}));
+                } else {
+                    values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 50));
+                }
+                db.insert(BookEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private long countMatches(String expression) {
+        return DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM books_fts WHERE books_fts MATCH ?", new String[] {expression});
+    }
+
+    //Returns the aggregates the triggers keep, one line per supplier
+    private String storedSummary() {
+        return queryToString("SELECT supplier_name, title_count, unit_count, stock_value, out_of_stock_count, low_stock_count " +
+                "FROM supplier_summary ORDER BY supplier_name");
+    }
+
+    //Returns the same aggregates computed from all the books
+    private String groupedSummary() {
+        return queryToString("SELECT supplier_name, COUNT(*), SUM(quantity), SUM(price * quantity), SUM(quantity = 0), SUM(quantity < 5) " +
+                "FROM books GROUP BY supplier_name ORDER BY supplier_name");
+    }
+
+    private String queryToString(String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            StringBuilder rows = new StringBuilder();
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    rows.append(cursor.getString(i)).append(i == cursor.getColumnCount() - 1 ? '\n' : ' ');
+                }
+            }
+            return rows.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private boolean indexExists(String name) {
+        return DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?", new String[] {name}) == 1;
+    }
+
+    private String queryPlan(String sql) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            StringBuilder plan = new StringBuilder();
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append("; ");
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+}
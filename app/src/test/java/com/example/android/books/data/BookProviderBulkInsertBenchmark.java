@@ -0,0 +1,107 @@
+package com.example.android.books.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the rows per second of inserting a catalogue one row at a time
+ * with bulkInsert() and applyBatch(), running on the JVM.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookProviderBulkInsertBenchmark {
+
+    private static final int ROWS = 5000;
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void compareInsertPaths() throws Exception {
+        ContentValues[] rows = createRows(ROWS);
+
+        long start = System.nanoTime();
+        for (ContentValues row : rows) {
+            contentResolver.insert(BookEntry.CONTENT_URI, row);
+        }
+        long perRowNanos = System.nanoTime() - start;
+        assertEquals(ROWS, countBooks());
+        contentResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+        start = System.nanoTime();
+        int inserted = contentResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+        long bulkNanos = System.nanoTime() - start;
+        assertEquals(ROWS, inserted);
+        assertEquals(ROWS, countBooks());
+        contentResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (ContentValues row : rows) {
+            operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI).withValues(row).build());
+        }
+        start = System.nanoTime();
+        contentResolver.applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+        long batchNanos = System.nanoTime() - start;
+        assertEquals(ROWS, countBooks());
+
+        System.out.println("insert():      " + rowsPerSecond(perRowNanos) + " rows/s");
+        System.out.println("bulkInsert():  " + rowsPerSecond(bulkNanos) + " rows/s");
+        System.out.println("applyBatch():  " + rowsPerSecond(batchNanos) + " rows/s");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bulkInsertRejectsInvalidRow() {
+        ContentValues[] rows = createRows(3);
+        rows[1].remove(BookEntry.COLUMN_BOOK_NAME);
+        contentResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+    }
+
+    private static ContentValues[] createRows(int count) {
+        ContentValues[] rows = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+            values.put(BookEntry.COLUMN_AUTHOR, "Author " + (i % 100));
+            values.put(BookEntry.COLUMN_PRICE, i % 50);
+            values.put(BookEntry.COLUMN_QUANTITY, i % 20);
+            values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier " + (i % 10));
+            values.put(BookEntry.COLUMN_SUPPLIER_NUMBER, "555000" + (i % 10));
+            rows[i] = values;
+        }
+        return rows;
+    }
+
+    private int countBooks() {
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, new String[] {BookEntry._ID}, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long rowsPerSecond(long nanos) {
+        return ROWS * 1000000000L / Math.max(nanos, 1);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.net.Uri;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.SaleEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookSalesTest {
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void sellLowersQuantityAndRecordsSale() {
+        long id = ContentUris.parseId(insertBook(12, 5));
+
+        assertEquals(3, BookContract.sell(contentResolver, id, 2));
+
+        Cursor cursor = contentResolver.query(SaleEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(id, cursor.getLong(cursor.getColumnIndex(SaleEntry.COLUMN_BOOK_ID)));
+            assertEquals(2, cursor.getInt(cursor.getColumnIndex(SaleEntry.COLUMN_QUANTITY)));
+            assertEquals(12, cursor.getInt(cursor.getColumnIndex(SaleEntry.COLUMN_PRICE)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void refusedSalesAreNotRecorded() {
+        long first = ContentUris.parseId(insertBook(10, 1));
+        long second = ContentUris.parseId(insertBook(20, 4));
+
+        int[] quantities = BookContract.sell(contentResolver, new long[] {first, second, first, 999}, new int[] {1, 3, 1, 1});
+
+        assertArrayEquals(new int[] {0, 1, -1, -1}, quantities);
+        assertEquals(2, count(SaleEntry.CONTENT_URI));
+    }
+
+    @Test
+    public void bucketsSumUpSales() {
+        long first = ContentUris.parseId(insertBook(10, 10));
+        long second = ContentUris.parseId(insertBook(5, 10));
+        BookContract.sell(contentResolver, new long[] {first, second, first}, new int[] {1, 2, 3});
+
+        for (Uri uri : new Uri[] {SaleEntry.HOURLY_URI, SaleEntry.DAILY_URI}) {
+            Cursor cursor = contentResolver.query(uri, null, null, null, null);
+            try {
+                assertEquals(1, cursor.getCount());
+                assertTrue(cursor.moveToFirst());
+                assertEquals(3, cursor.getInt(cursor.getColumnIndex(SaleEntry.COLUMN_SALE_COUNT)));
+                assertEquals(6, cursor.getInt(cursor.getColumnIndex(SaleEntry.COLUMN_UNITS)));
+                assertEquals(50, cursor.getLong(cursor.getColumnIndex(SaleEntry.COLUMN_REVENUE)));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    @Test
+    public void salesOfDeletedBooksAreKept() {
+        Uri book = insertBook(10, 3);
+        BookContract.sell(contentResolver, ContentUris.parseId(book), 1);
+
+        contentResolver.delete(book, null, null);
+
+        assertEquals(1, count(SaleEntry.CONTENT_URI));
+    }
+
+    @Test(expected = SQLiteConstraintException.class)
+    public void ledgerRefusesChanges() {
+        BookContract.sell(contentResolver, ContentUris.parseId(insertBook(10, 3)), 1);
+
+        new BookDbHelper(RuntimeEnvironment.application).getWritableDatabase()
+                .execSQL("DELETE FROM " + SaleEntry.TABLE_NAME);
+    }
+
+    private Uri insertBook(int price, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, "Book");
+        values.put(BookEntry.COLUMN_PRICE, price);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        return contentResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.books.data.BookContract.AggregateEntry;
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.ChangeEntry;
+import com.example.android.books.data.BookContract.DeletionEntry;
+import com.example.android.books.data.BookContract.SupplierEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookSoftDeleteTest {
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void deletedBookIsLeftOutOfQueriesSearchAndAggregates() {
+        Uri book = insertBook("Dune", null, 3);
+        insertBook("Emma", null, 2);
+
+        assertEquals(1, contentResolver.delete(book, null, null));
+
+        assertEquals(1, count(BookEntry.CONTENT_URI));
+        assertEquals(0, count(book));
+        assertEquals(0, count(BookEntry.buildSearchUri("dune")));
+        assertEquals(1, titleCount());
+        assertEquals(-1, BookContract.adjustQuantity(contentResolver, ContentUris.parseId(book), 1));
+        assertEquals(0, contentResolver.delete(book, null, null));
+    }
+
+    @Test
+    public void undoBringsBackTheDeleteItIsGiven() {
+        Uri first = insertBook("Dune", null, 3);
+        Uri second = insertBook("Emma", null, 2);
+        long firstDeletion = delete(first);
+        long secondDeletion = delete(second);
+
+        //Not the last delete, but the one the undo was offered for
+        assertEquals(1, BookContract.undoDelete(contentResolver, firstDeletion));
+        assertEquals(1, count(first));
+        assertEquals(0, count(second));
+        assertEquals(1, titleCount());
+
+        assertEquals(1, BookContract.undoDelete(contentResolver, secondDeletion));
+        assertEquals(2, count(BookEntry.CONTENT_URI));
+        assertEquals(2, titleCount());
+        assertEquals(0, BookContract.undoDelete(contentResolver, secondDeletion));
+    }
+
+    @Test
+    public void undoOfEarlierDeleteAllLeavesBooksOfLaterDeletesDeleted() {
+        Uri first = insertBook("Dune", null, 3);
+        insertBook("Emma", null, 2);
+        long deleteAll = delete(BookEntry.CONTENT_URI);
+        Uri added = insertBook("Persuasion", null, 1);
+        delete(added);
+
+        assertEquals(2, BookContract.undoDelete(contentResolver, deleteAll));
+
+        assertEquals(1, count(first));
+        assertEquals(0, count(added));
+        assertEquals(2, titleCount());
+    }
+
+    @Test
+    public void undoOfDeleteAllKeepsBooksAddedSince() {
+        for (int i = 0; i < 5; i++) {
+            insertBook("Book " + i, null, i);
+        }
+        Bundle deletion = BookContract.delete(contentResolver, BookEntry.CONTENT_URI);
+        assertEquals(5, deletion.getInt(BookContract.EXTRA_DELETED));
+        assertEquals(0, count(BookEntry.CONTENT_URI));
+        assertEquals(0, count(AggregateEntry.CONTENT_URI));
+        insertBook("New", null, 1);
+
+        assertEquals(5, BookContract.undoDelete(contentResolver, deletion.getLong(BookContract.EXTRA_DELETION_ID)));
+
+        assertEquals(6, count(BookEntry.CONTENT_URI));
+        assertEquals(6, titleCount());
+    }
+
+    @Test
+    public void deleteCantBeUndoneAfterItsWindow() {
+        Uri book = insertBook("Dune", null, 3);
+        long deletion = delete(book);
+        expireDeletes();
+
+        assertEquals(0, BookContract.undoDelete(contentResolver, deletion));
+        assertEquals(0, count(book));
+    }
+
+    @Test
+    public void purgeRemovesExpiredDeletesInBatchesAndJournalsThem() {
+        ContentValues[] values = new ContentValues[450];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = bookValues("Book " + i, null, 1);
+        }
+        contentResolver.bulkInsert(BookEntry.CONTENT_URI, values);
+        contentResolver.delete(BookEntry.CONTENT_URI, null, null);
+        Uri kept = insertBook("Kept", null, 1);
+        contentResolver.delete(kept, null, null);
+
+        //Deletes that can still be undone aren't purged
+        assertEquals(0, BookContract.purgeDeleted(contentResolver));
+        expireDeletes();
+
+        assertEquals(200, BookContract.purgeDeleted(contentResolver));
+        assertEquals(200, BookContract.purgeDeleted(contentResolver));
+        assertEquals(51, BookContract.purgeDeleted(contentResolver));
+        assertEquals(0, BookContract.purgeDeleted(contentResolver));
+
+        SQLiteDatabase db = new BookDbHelper(RuntimeEnvironment.application).getWritableDatabase();
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, BookEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, DeletionEntry.TABLE_NAME));
+        assertEquals(451, count(ChangeEntry.CONTENT_URI, ChangeEntry.COLUMN_DELETED + " = 1"));
+    }
+
+    @Test
+    public void forcedPurgeRemovesDeletesThatCouldStillBeUndone() {
+        insertBook("Dune", null, 3);
+        long deletion = delete(BookEntry.CONTENT_URI);
+
+        Bundle extras = new Bundle();
+        extras.putBoolean(BookContract.EXTRA_FORCE, true);
+        Bundle result = contentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_PURGE_DELETED, null, extras);
+
+        assertEquals(1, result.getInt(BookContract.EXTRA_PURGED));
+        assertEquals(0, BookContract.undoDelete(contentResolver, deletion));
+    }
+
+    @Test
+    public void isbnOfDeletedBookIsKeptWhileTheDeleteCanBeUndone() {
+        Uri deleted = insertBook("Dune", "9780306406157", 3);
+        long deletion = delete(deleted);
+
+        try {
+            insertBook("Dune", "0-306-40615-2", 1);
+            fail("The ISBN of a book whose delete can be undone was taken");
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+
+        assertEquals(1, BookContract.undoDelete(contentResolver, deletion));
+        assertEquals(1, count(BookEntry.buildIsbnUri("9780306406157")));
+    }
+
+    @Test
+    public void isbnOfDeletedBookCanBeGivenToAnotherBookOnceTheDeleteIsFinal() {
+        Uri deleted = insertBook("Dune", "9780306406157", 3);
+        contentResolver.delete(deleted, null, null);
+        expireDeletes();
+
+        Uri book = insertBook("Dune", "0-306-40615-2", 1);
+
+        assertNotNull(book);
+        assertEquals(1, count(BookEntry.buildIsbnUri("9780306406157")));
+    }
+
+    @Test
+    public void supplierWithOnlyDeletedBooksCanBeDeleted() {
+        Uri book = insertBook("Dune", null, 3);
+        Cursor cursor = contentResolver.query(book, new String[] {BookEntry.COLUMN_SUPPLIER_ID}, null, null, null);
+        long supplierId;
+        try {
+            cursor.moveToFirst();
+            supplierId = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+        contentResolver.delete(book, null, null);
+
+        assertEquals(1, contentResolver.delete(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId), null, null));
+    }
+
+    //Deletes the books of the URI and returns the id of the delete
+    private long delete(Uri uri) {
+        return BookContract.delete(contentResolver, uri).getLong(BookContract.EXTRA_DELETION_ID);
+    }
+
+    //Moves every delete back past the time it can be undone
+    private void expireDeletes() {
+        new BookDbHelper(RuntimeEnvironment.application).getWritableDatabase().execSQL("UPDATE " + DeletionEntry.TABLE_NAME +
+                " SET " + DeletionEntry.COLUMN_DELETED_AT + " = " + DeletionEntry.COLUMN_DELETED_AT + " - " + DeletionEntry.UNDO_WINDOW_MILLIS);
+    }
+
+    private Uri insertBook(String name, String isbn, int quantity) {
+        return contentResolver.insert(BookEntry.CONTENT_URI, bookValues(name, isbn, quantity));
+    }
+
+    private ContentValues bookValues(String name, String isbn, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        if (isbn != null) {
+            values.put(BookEntry.COLUMN_ISBN, isbn);
+        }
+        return values;
+    }
+
+    private long titleCount() {
+        Cursor cursor = contentResolver.query(AggregateEntry.TOTALS_URI, new String[] {AggregateEntry.COLUMN_TITLE_COUNT}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(Uri uri) {
+        return count(uri, null);
+    }
+
+    private int count(Uri uri, String selection) {
+        Cursor cursor = contentResolver.query(uri, null, selection, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.android.books.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookStatementsTest {
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void statementIsReusedOnceGivenBack() {
+        BookStatements statements = new BookStatements(db, "SELECT 1");
+        SQLiteStatement statement = statements.acquire(0);
+        statements.release(0, statement);
+
+        SQLiteStatement reused = statements.acquire(0);
+        assertEquals(statement, reused);
+        assertEquals(1, reused.simpleQueryForLong());
+    }
+
+    @Test
+    public void statementGivenBackAfterCloseIsClosed() {
+        BookStatements statements = new BookStatements(db, "SELECT 1");
+        SQLiteStatement idle = statements.acquire(0);
+        SQLiteStatement inUse = statements.acquire(0);
+        statements.release(0, idle);
+
+        statements.close();
+        statements.release(0, inUse);
+
+        assertClosed(idle);
+        assertClosed(inUse);
+    }
+
+    private static void assertClosed(SQLiteStatement statement) {
+        try {
+            statement.simpleQueryForLong();
+            fail("Statement wasn't closed");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.net.Uri;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.SupplierEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BookSuppliersTest {
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void booksWithTheSameSupplierShareOneSupplier() {
+        Uri first = insertBook("First", "SuperNova", "111");
+        Uri second = insertBook("Second", "SuperNova", "222");
+        insertBook("Third", "Other", null);
+
+        assertEquals(2, count(SupplierEntry.CONTENT_URI));
+        //The newer number is saved on the supplier, for both books
+        assertEquals("222", readString(first, BookEntry.COLUMN_SUPPLIER_NUMBER));
+        assertEquals(readString(first, BookEntry.COLUMN_SUPPLIER_ID), readString(second, BookEntry.COLUMN_SUPPLIER_ID));
+    }
+
+    @Test
+    public void renamingSupplierRenamesItForAllBooks() {
+        Uri first = insertBook("First", "SuperNova", "111");
+        insertBook("Second", "SuperNova", null);
+        long supplierId = Long.parseLong(readString(first, BookEntry.COLUMN_SUPPLIER_ID));
+
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Nova Books");
+        assertEquals(1, contentResolver.update(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId), values, null, null));
+
+        assertEquals("Nova Books", readString(first, BookEntry.COLUMN_SUPPLIER_NAME));
+        assertEquals(2, count(BookEntry.buildSearchUri("nova")));
+        assertEquals(2, count(SupplierEntry.buildBooksUri(supplierId)));
+    }
+
+    @Test
+    public void booksCanBeSelectedAndMovedBySupplierName() {
+        insertBook("First", "SuperNova", null);
+        insertBook("Second", "Other", null);
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Moved");
+        assertEquals(1, contentResolver.update(BookEntry.CONTENT_URI, values,
+                BookEntry.COLUMN_SUPPLIER_NAME + " = ?", new String[] {"SuperNova"}));
+        assertEquals(3, count(SupplierEntry.CONTENT_URI));
+
+        assertEquals(1, contentResolver.delete(BookEntry.CONTENT_URI,
+                BookEntry.COLUMN_SUPPLIER_NAME + " = ?", new String[] {"Moved"}));
+        assertEquals(1, count(BookEntry.CONTENT_URI));
+    }
+
+    @Test(expected = SQLiteConstraintException.class)
+    public void supplierWithBooksCantBeDeleted() {
+        Uri book = insertBook("First", "SuperNova", null);
+        long supplierId = Long.parseLong(readString(book, BookEntry.COLUMN_SUPPLIER_ID));
+
+        contentResolver.delete(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId), null, null);
+    }
+
+    @Test
+    public void supplierWithoutBooksCanBeDeleted() {
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Unused");
+        Uri supplier = contentResolver.insert(SupplierEntry.CONTENT_URI, values);
+
+        assertEquals(1, contentResolver.delete(supplier, null, null));
+        assertEquals(0, count(SupplierEntry.CONTENT_URI));
+    }
+
+    private Uri insertBook(String name, String supplierName, String supplierNumber) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, supplierName);
+        if (supplierNumber != null) {
+            values.put(BookEntry.COLUMN_SUPPLIER_NUMBER, supplierNumber);
+        }
+        return contentResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    private String readString(Uri uri, String column) {
+        Cursor cursor = contentResolver.query(uri, new String[] {column}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
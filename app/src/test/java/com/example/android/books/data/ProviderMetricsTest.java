@@ -0,0 +1,84 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+
+import com.example.android.books.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class ProviderMetricsTest {
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+        contentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_RESET_METRICS, null, null);
+    }
+
+    @Test
+    public void recordsOperationsByUri() {
+        ContentValues[] rows = new ContentValues[3];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(BookEntry.COLUMN_BOOK_NAME, "Book " + i);
+            rows[i].put(BookEntry.COLUMN_PRICE, 10);
+            rows[i].put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        }
+        contentResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, null, null, null, null);
+        cursor.close();
+        cursor = contentResolver.query(BookEntry.CONTENT_URI, null, null, null, null);
+        cursor.close();
+
+        Bundle metrics = getMetrics();
+        long[] bulkInsert = metrics.getLongArray("op:bulkInsert books");
+        assertEquals(1, bulkInsert[0]);
+        assertEquals(3, bulkInsert[2]);
+        long[] query = metrics.getLongArray("op:query books");
+        assertEquals(2, query[0]);
+        assertEquals(6, query[2]);
+        assertEquals(1, metrics.getLong("transactions"));
+        assertTrue(ProviderMetrics.format(metrics).contains("bulkInsert books"));
+    }
+
+    @Test
+    public void resetClearsCounters() {
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, null, null, null, null);
+        cursor.close();
+        contentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_RESET_METRICS, null, null);
+        assertNull(getMetrics().getLongArray("op:query books"));
+    }
+
+    @Test
+    public void disabledMetricsRecordNothing() {
+        ProviderMetrics.getInstance().setEnabled(false);
+        try {
+            Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, null, null, null, null);
+            cursor.close();
+        } finally {
+            ProviderMetrics.getInstance().setEnabled(true);
+        }
+        assertNull(getMetrics().getLongArray("op:query books"));
+    }
+
+    private Bundle getMetrics() {
+        return contentResolver.call(BookEntry.CONTENT_URI, BookContract.METHOD_GET_METRICS, null, null);
+    }
+}
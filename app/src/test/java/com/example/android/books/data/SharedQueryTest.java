@@ -0,0 +1,236 @@
+package com.example.android.books.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.books.data.BookContract.AggregateEntry;
+import com.example.android.books.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class SharedQueryTest {
+
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_BOOK_NAME, BookEntry.COLUMN_QUANTITY};
+
+    private ContentResolver contentResolver;
+
+    //Runs queries on the calling thread and counts them
+    private int runs = 0;
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            runs++;
+            task.run();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void equalQueriesAreShared() {
+        BookRepository repository = BookRepository.getInstance(RuntimeEnvironment.application);
+        Uri uri = insertBook("Dune", 3);
+
+        SharedQuery query = repository.query(uri, PROJECTION.clone(), null, null, null);
+
+        assertSame(query, repository.query(uri, PROJECTION.clone(), null, null, null));
+        assertNotSame(query, repository.query(uri, new String[] {BookEntry._ID}, null, null, null));
+        assertNotSame(query, repository.query(AggregateEntry.CONTENT_URI, PROJECTION, null, null, null));
+    }
+
+    @Test
+    public void observersShareOneRunAndOneResult() {
+        SharedQuery query = newQuery(insertBook("Dune", 3));
+        RecordingObserver first = new RecordingObserver();
+        RecordingObserver second = new RecordingObserver();
+
+        query.observe(first);
+        query.observe(second);
+
+        assertEquals(1, runs);
+        assertEquals(1, second.results.size());
+        assertSame(first.results.get(0), second.results.get(0));
+        assertEquals("Dune", first.getName());
+    }
+
+    @Test
+    public void changeIsDeliveredOnlyIfTheResultDiffers() {
+        Uri uri = insertBook("Dune", 3);
+        SharedQuery query = newQuery(uri);
+        RecordingObserver observer = new RecordingObserver();
+        query.observe(observer);
+
+        update(uri, "Dune");
+        endWindow();
+        assertEquals(2, runs);
+        assertEquals(1, observer.results.size());
+
+        update(uri, "Emma");
+        endWindow();
+        assertEquals(3, runs);
+        assertEquals(2, observer.results.size());
+        assertEquals("Emma", observer.getName());
+    }
+
+    @Test
+    public void changesOfOtherBooksDontRunTheQueryOfABook() {
+        SharedQuery query = newQuery(insertBook("Dune", 3));
+        Uri other = insertBook("Emma", 2);
+        endWindow();
+        query.observe(new RecordingObserver());
+
+        update(other, "Persuasion");
+        endWindow();
+
+        assertEquals(1, runs);
+    }
+
+    @Test
+    public void queryRunsOnlyWhileObserved() {
+        Uri uri = insertBook("Dune", 3);
+        SharedQuery query = newQuery(uri);
+        RecordingObserver observer = new RecordingObserver();
+        query.observe(observer);
+        query.removeObserver(observer);
+
+        update(uri, "Emma");
+        endWindow();
+        assertEquals(1, runs);
+
+        //Coming back doesn't deliver the result again, only the one that changed meanwhile
+        query.observe(observer);
+        assertEquals(2, runs);
+        assertEquals(2, observer.results.size());
+        assertEquals("Emma", observer.getName());
+    }
+
+    @Test
+    public void prefetchedRowIsShownWithoutRunningTheQueryAgain() {
+        Uri uri = insertBook("Dune", 3);
+        SharedQuery query = newQuery(uri);
+        QueryResult snapshot = readRow(uri);
+
+        query.prefetch(snapshot);
+        assertEquals(1, runs);
+
+        //The check found the row unchanged, so the screen gets the row of the list and no run of its own
+        RecordingObserver observer = new RecordingObserver();
+        query.observe(observer);
+        assertEquals(1, runs);
+        assertEquals(1, observer.results.size());
+        assertSame(snapshot, observer.results.get(0));
+    }
+
+    @Test
+    public void outdatedRowIsReplacedByThePrefetch() {
+        Uri uri = insertBook("Dune", 3);
+        SharedQuery query = newQuery(uri);
+        QueryResult snapshot = readRow(uri);
+        update(uri, "Emma");
+
+        query.prefetch(snapshot);
+        RecordingObserver observer = new RecordingObserver();
+        query.observe(observer);
+
+        assertEquals(1, observer.results.size());
+        assertEquals("Emma", observer.getName());
+    }
+
+    @Test
+    public void prefetchStopsWatchingAfterItsTime() {
+        Uri uri = insertBook("Dune", 3);
+        endWindow();
+        SharedQuery query = newQuery(uri);
+        query.prefetch(null);
+
+        ShadowLooper.idleMainLooper(SharedQuery.PREFETCH_MILLIS, TimeUnit.MILLISECONDS);
+        update(uri, "Emma");
+        endWindow();
+        assertEquals(1, runs);
+
+        query.observe(new RecordingObserver());
+        assertEquals(2, runs);
+    }
+
+    private SharedQuery newQuery(Uri uri) {
+        return new SharedQuery(contentResolver, executor, uri, PROJECTION, null, null, null, null);
+    }
+
+    //Lets the window of the change notifier end, so it notifies the observers
+    private void endWindow() {
+        ShadowLooper.idleMainLooper(BookChangeNotifier.WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    //Reads the book from the list of all books, like the list screen does
+    private QueryResult readRow(Uri uri) {
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, PROJECTION, BookEntry._ID + "=?",
+                new String[] {uri.getLastPathSegment()}, null);
+        try {
+            cursor.moveToFirst();
+            return QueryResult.fromRow(cursor, PROJECTION);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Uri insertBook(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, 10);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        return contentResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    private void update(Uri uri, String name) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        contentResolver.update(uri, values, null, null);
+    }
+
+    //Keeps every result it receives
+    private static class RecordingObserver implements SharedQuery.Observer {
+
+        final List<QueryResult> results = new ArrayList<>();
+
+        @Override
+        public void onChanged(QueryResult result) {
+            results.add(result);
+        }
+
+        //Returns the name of the book in the last result
+        String getName() {
+            Cursor cursor = results.get(results.size() - 1).toCursor();
+            try {
+                cursor.moveToFirst();
+                return cursor.getString(cursor.getColumnIndex(BookEntry.COLUMN_BOOK_NAME));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
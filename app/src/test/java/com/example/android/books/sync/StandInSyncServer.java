@@ -0,0 +1,221 @@
+package com.example.android.books.sync;
+
+import android.content.ContentValues;
+
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.ChangeEntry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//In-process HTTP server that speaks SyncProtocol and keeps the books in memory, merging pushed changes
+//by the rules of the protocol. Other devices are simulated by merging changes into it directly
+class StandInSyncServer {
+
+    private final HttpServer server;
+
+    //Current state of every book by its sync id, deleted books included
+    private final Map<String, ContentValues> books = new HashMap<>();
+
+    //Server version of the last change, in total and of every book
+    private long version = 0;
+    private final Map<String, Long> bookVersions = new HashMap<>();
+
+    //Number of changes received by every push, and compressed bytes received in total
+    private final List<Integer> pushSizes = new ArrayList<>();
+    private long bytesReceived = 0;
+
+    StandInSyncServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/" + SyncProtocol.PATH_PUSH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handlePush(exchange);
+            }
+        });
+        server.createContext("/" + SyncProtocol.PATH_PULL, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handlePull(exchange);
+            }
+        });
+        server.start();
+    }
+
+    URL getUrl() throws IOException {
+        return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), "/");
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    synchronized List<Integer> getPushSizes() {
+        return new ArrayList<>(pushSizes);
+    }
+
+    synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    //Returns the current state of a book, or null if the server has never received it
+    synchronized ContentValues getBook(String syncId) {
+        ContentValues book = books.get(syncId);
+        return book == null ? null : new ContentValues(book);
+    }
+
+    //Merges a change into the books: a delete wins, the fields of the most recent change win
+    //and quantity deltas add up
+    synchronized void merge(ContentValues change) {
+        String syncId = change.getAsString(ChangeEntry.COLUMN_SYNC_ID);
+        ContentValues book = books.get(syncId);
+        if (book != null && book.getAsBoolean(ChangeEntry.COLUMN_DELETED)) {
+            return;
+        }
+        Long delta = change.getAsLong(ChangeEntry.COLUMN_QUANTITY_DELTA);
+        if (book == null) {
+            book = new ContentValues();
+            book.put(ChangeEntry.COLUMN_SYNC_ID, syncId);
+            book.put(BookEntry.COLUMN_QUANTITY, 0L);
+            book.put(BookEntry.COLUMN_UPDATED_AT, Long.MIN_VALUE);
+            book.put(BookEntry.COLUMN_VERSION, 0L);
+            books.put(syncId, book);
+        }
+        if (Boolean.TRUE.equals(change.getAsBoolean(ChangeEntry.COLUMN_DELETED))) {
+            book.put(ChangeEntry.COLUMN_DELETED, true);
+        } else {
+            book.put(ChangeEntry.COLUMN_DELETED, false);
+            book.put(BookEntry.COLUMN_QUANTITY, book.getAsLong(BookEntry.COLUMN_QUANTITY) + (delta == null ? 0 : delta));
+            long updatedAt = change.getAsLong(BookEntry.COLUMN_UPDATED_AT);
+            if (updatedAt >= book.getAsLong(BookEntry.COLUMN_UPDATED_AT)) {
+                book.put(BookEntry.COLUMN_BOOK_NAME, change.getAsString(BookEntry.COLUMN_BOOK_NAME));
+                book.put(BookEntry.COLUMN_AUTHOR, change.getAsString(BookEntry.COLUMN_AUTHOR));
+                book.put(BookEntry.COLUMN_PRICE, change.getAsLong(BookEntry.COLUMN_PRICE));
+                book.put(BookEntry.COLUMN_SUPPLIER_NAME, change.getAsString(BookEntry.COLUMN_SUPPLIER_NAME));
+                book.put(BookEntry.COLUMN_SUPPLIER_NUMBER, change.getAsString(BookEntry.COLUMN_SUPPLIER_NUMBER));
+                book.put(BookEntry.COLUMN_ISBN, change.getAsString(BookEntry.COLUMN_ISBN));
+                book.put(BookEntry.COLUMN_UPDATED_AT, updatedAt);
+            }
+        }
+        book.put(BookEntry.COLUMN_VERSION, book.getAsLong(BookEntry.COLUMN_VERSION) + 1);
+        version++;
+        bookVersions.put(syncId, version);
+    }
+
+    private void handlePush(HttpExchange exchange) throws IOException {
+        if (!SyncProtocol.ENCODING_GZIP.equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            respond(exchange, 415, null);
+            return;
+        }
+        CountingStream body = new CountingStream(exchange.getRequestBody());
+        SyncProtocol.Message message = SyncProtocol.decode(body);
+        long currentVersion;
+        synchronized (this) {
+            for (ContentValues change : message.changes) {
+                merge(change);
+            }
+            pushSizes.add(message.changes.size());
+            bytesReceived += body.count;
+            currentVersion = version;
+        }
+        respond(exchange, 200, SyncProtocol.encode(new SyncProtocol.Message(currentVersion, false, new ArrayList<ContentValues>())));
+    }
+
+    private void handlePull(HttpExchange exchange) throws IOException {
+        long since = 0;
+        int limit = Integer.MAX_VALUE;
+        for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+            String[] pair = parameter.split("=");
+            if (SyncProtocol.PARAMETER_SINCE.equals(pair[0])) {
+                since = Long.parseLong(pair[1]);
+            } else if (SyncProtocol.PARAMETER_LIMIT.equals(pair[0])) {
+                limit = Integer.parseInt(pair[1]);
+            }
+        }
+
+        List<ContentValues> changes = new ArrayList<>();
+        boolean more = false;
+        long lastVersion;
+        synchronized (this) {
+            lastVersion = version;
+            //Books changed after since, in the order of their last change
+            List<String> changed = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : bookVersions.entrySet()) {
+                if (entry.getValue() > since) {
+                    changed.add(entry.getKey());
+                }
+            }
+            Collections.sort(changed, new Comparator<String>() {
+                @Override
+                public int compare(String first, String second) {
+                    return Long.compare(bookVersions.get(first), bookVersions.get(second));
+                }
+            });
+            if (changed.size() > limit) {
+                more = true;
+                changed = changed.subList(0, limit);
+                lastVersion = bookVersions.get(changed.get(limit - 1));
+            }
+            for (String syncId : changed) {
+                changes.add(new ContentValues(books.get(syncId)));
+            }
+        }
+        respond(exchange, 200, SyncProtocol.encode(new SyncProtocol.Message(lastVersion, more, changes)));
+    }
+
+    private static void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        if (body != null) {
+            exchange.getResponseHeaders().set("Content-Type", SyncProtocol.CONTENT_TYPE);
+            exchange.getResponseHeaders().set("Content-Encoding", SyncProtocol.ENCODING_GZIP);
+        }
+        exchange.sendResponseHeaders(code, body == null ? -1 : body.length);
+        if (body != null) {
+            OutputStream outputStream = exchange.getResponseBody();
+            outputStream.write(body);
+            outputStream.close();
+        }
+        exchange.close();
+    }
+
+    //Stream that counts the bytes read through it
+    private static class CountingStream extends FilterInputStream {
+
+        long count;
+
+        CountingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.android.books.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.books.data.BookContract;
+import com.example.android.books.data.BookContract.BookEntry;
+import com.example.android.books.data.BookContract.ChangeEntry;
+import com.example.android.books.data.BookProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class SyncEngineTest {
+
+    private static final int BOOKS = 120;
+    private static final int BATCH_SIZE = 50;
+
+    private ContentResolver contentResolver;
+    private StandInSyncServer server;
+    private SyncEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        Robolectric.buildContentProvider(BookProvider.class).create(BookContract.CONTENT_AUTHORITY);
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+        server = new StandInSyncServer();
+        engine = new SyncEngine(RuntimeEnvironment.application, server.getUrl(), BATCH_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void smallEditSendsOnlyTheChangedBook() throws Exception {
+        ContentValues[] rows = new ContentValues[BOOKS];
+        for (int i = 0; i < BOOKS; i++) {
+            rows[i] = book("Book " + i, 10, 5);
+        }
+        contentResolver.bulkInsert(BookEntry.CONTENT_URI, rows);
+
+        //The first sync sends every book in batches
+        SyncEngine.Result first = engine.sync();
+        assertEquals(BOOKS, first.pushed);
+        assertEquals(Arrays.asList(50, 50, 20), server.getPushSizes());
+        assertEquals(0, count(ChangeEntry.CONTENT_URI));
+
+        //Several edits of one book are merged into one change
+        long id = queryLong(BookEntry.CONTENT_URI, BookEntry._ID);
+        Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
+        ContentValues price = new ContentValues();
+        price.put(BookEntry.COLUMN_PRICE, 12);
+        contentResolver.update(uri, price, null, null);
+        BookContract.adjustQuantity(contentResolver, id, -1);
+
+        SyncEngine.Result second = engine.sync();
+        assertEquals(1, second.pushed);
+        assertEquals(1, (int) server.getPushSizes().get(3));
+        assertTrue(second.bytesSent < first.bytesSent / 5);
+
+        ContentValues onServer = server.getBook(querySyncId(uri));
+        assertEquals(12, (long) onServer.getAsLong(BookEntry.COLUMN_PRICE));
+        assertEquals(4, (long) onServer.getAsLong(BookEntry.COLUMN_QUANTITY));
+    }
+
+    @Test
+    public void quantityChangesOfDevicesAddUp() throws Exception {
+        Uri uri = contentResolver.insert(BookEntry.CONTENT_URI, book("Shared", 10, 10));
+        engine.sync();
+        String syncId = querySyncId(uri);
+
+        //Another device sells 3 copies while this one sells 2
+        ContentValues otherDevice = server.getBook(syncId);
+        otherDevice.remove(BookEntry.COLUMN_QUANTITY);
+        otherDevice.put(ChangeEntry.COLUMN_QUANTITY_DELTA, -3);
+        server.merge(otherDevice);
+        BookContract.sell(contentResolver, ContentUris.parseId(uri), 2);
+
+        engine.sync();
+
+        assertEquals(5, queryLong(uri, BookEntry.COLUMN_QUANTITY));
+        assertEquals(5, (long) server.getBook(syncId).getAsLong(BookEntry.COLUMN_QUANTITY));
+    }
+
+    @Test
+    public void remoteInsertsUpdatesAndDeletesArePulled() throws Exception {
+        ContentValues remote = book("Remote", 20, 3);
+        remote.put(ChangeEntry.COLUMN_SYNC_ID, "remote-book");
+        remote.put(ChangeEntry.COLUMN_QUANTITY_DELTA, 3);
+        remote.put(BookEntry.COLUMN_UPDATED_AT, 1000L);
+        server.merge(remote);
+
+        SyncEngine.Result result = engine.sync();
+        assertEquals(1, result.pulled);
+        Uri uri = findBySyncId("remote-book");
+        assertEquals(3, queryLong(uri, BookEntry.COLUMN_QUANTITY));
+        //Applied changes aren't sent back
+        assertEquals(0, count(ChangeEntry.CONTENT_URI));
+
+        remote.put(BookEntry.COLUMN_BOOK_NAME, "Renamed");
+        remote.put(ChangeEntry.COLUMN_QUANTITY_DELTA, 0);
+        remote.put(BookEntry.COLUMN_UPDATED_AT, 2000L);
+        server.merge(remote);
+        engine.sync();
+        assertEquals("Renamed", queryString(uri, BookEntry.COLUMN_BOOK_NAME));
+
+        ContentValues delete = new ContentValues();
+        delete.put(ChangeEntry.COLUMN_SYNC_ID, "remote-book");
+        delete.put(ChangeEntry.COLUMN_DELETED, true);
+        server.merge(delete);
+        engine.sync();
+        assertEquals(0, count(BookEntry.CONTENT_URI));
+        assertEquals(0, engine.sync().pushed);
+    }
+
+    @Test
+    public void newerLocalEditWinsOverOlderRemoteEdit() throws Exception {
+        Uri uri = contentResolver.insert(BookEntry.CONTENT_URI, book("Local", 10, 1));
+        engine.sync();
+        String syncId = querySyncId(uri);
+
+        //A remote edit made before the local one
+        ContentValues remote = server.getBook(syncId);
+        remote.put(BookEntry.COLUMN_BOOK_NAME, "Remote");
+        remote.put(BookEntry.COLUMN_UPDATED_AT, remote.getAsLong(BookEntry.COLUMN_UPDATED_AT) + 1);
+        remote.put(ChangeEntry.COLUMN_QUANTITY_DELTA, 0);
+        server.merge(remote);
+        ContentValues local = new ContentValues();
+        local.put(BookEntry.COLUMN_BOOK_NAME, "Newer");
+        contentResolver.update(uri, local, null, null);
+
+        engine.sync();
+
+        assertEquals("Newer", queryString(uri, BookEntry.COLUMN_BOOK_NAME));
+        assertEquals("Newer", server.getBook(syncId).getAsString(BookEntry.COLUMN_BOOK_NAME));
+    }
+
+    @Test
+    public void bookDeletedHereStaysDeletedWhenEditedElsewhere() throws Exception {
+        Uri uri = contentResolver.insert(BookEntry.CONTENT_URI, book("Local", 10, 1));
+        engine.sync();
+        String syncId = querySyncId(uri);
+        long deletion = BookContract.delete(contentResolver, uri).getLong(BookContract.EXTRA_DELETION_ID);
+
+        ContentValues remote = server.getBook(syncId);
+        remote.put(BookEntry.COLUMN_BOOK_NAME, "Remote");
+        remote.put(BookEntry.COLUMN_UPDATED_AT, remote.getAsLong(BookEntry.COLUMN_UPDATED_AT) + 1);
+        remote.put(ChangeEntry.COLUMN_QUANTITY_DELTA, 0);
+        server.merge(remote);
+        engine.sync();
+
+        assertEquals(0, count(BookEntry.CONTENT_URI));
+        //Undoing the delete brings the book back as it was edited elsewhere
+        assertEquals(1, BookContract.undoDelete(contentResolver, deletion));
+        assertEquals("Remote", queryString(uri, BookEntry.COLUMN_BOOK_NAME));
+    }
+
+    @Test
+    public void remoteDeleteTakesOverTheDeleteMadeHere() throws Exception {
+        Uri uri = contentResolver.insert(BookEntry.CONTENT_URI, book("Local", 10, 1));
+        engine.sync();
+        String syncId = querySyncId(uri);
+        long deletion = BookContract.delete(contentResolver, uri).getLong(BookContract.EXTRA_DELETION_ID);
+
+        ContentValues delete = new ContentValues();
+        delete.put(ChangeEntry.COLUMN_SYNC_ID, syncId);
+        delete.put(ChangeEntry.COLUMN_DELETED, true);
+        server.merge(delete);
+        engine.sync();
+
+        assertEquals(0, BookContract.undoDelete(contentResolver, deletion));
+        assertEquals(0, count(BookEntry.CONTENT_URI));
+        //The delete isn't sent back
+        assertEquals(0, engine.sync().pushed);
+    }
+
+    private static ContentValues book(String name, int price, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_BOOK_NAME, name);
+        values.put(BookEntry.COLUMN_PRICE, price);
+        values.put(BookEntry.COLUMN_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Supplier");
+        return values;
+    }
+
+    private Uri findBySyncId(String syncId) {
+        Cursor cursor = contentResolver.query(BookEntry.CONTENT_URI, new String[] {BookEntry._ID},
+                BookEntry.COLUMN_SYNC_ID + " = ?", new String[] {syncId}, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return ContentUris.withAppendedId(BookEntry.CONTENT_URI, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String querySyncId(Uri uri) {
+        return queryString(uri, BookEntry.COLUMN_SYNC_ID);
+    }
+
+    private String queryString(Uri uri, String column) {
+        Cursor cursor = contentResolver.query(uri, new String[] {column}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long queryLong(Uri uri, String column) {
+        Cursor cursor = contentResolver.query(uri, new String[] {column}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = contentResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}